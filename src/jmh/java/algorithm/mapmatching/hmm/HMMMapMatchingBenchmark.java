@@ -0,0 +1,55 @@
+package algorithm.mapmatching.hmm;
+
+import org.openjdk.jmh.annotations.*;
+import preprocessing.BenchmarkFixture;
+import util.object.roadnetwork.RoadNetworkGraph;
+import util.object.spatialobject.Trajectory;
+import util.settings.MapMatchingProperty;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the end-to-end {@link HMMMapMatching#doMatching} on synthetic trajectories, including candidate search, routing, Viterbi
+ * decoding and result building.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HMMMapMatchingBenchmark {
+
+	@Param({"60"})
+	private int gridSize;
+	@Param({"50"})
+	private int numOfTrajectories;
+	@Param({"5", "30"})
+	private int samplingInterval;    // in second
+	@Param({"false", "true"})
+	private boolean indexedViterbi;
+
+	private HMMMapMatching mapMatching;
+	private List<Trajectory> trajectoryList;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		RoadNetworkGraph roadMap = BenchmarkFixture.generateGridMap(gridSize, 0.002, 30);
+		MapMatchingProperty property = BenchmarkFixture.getMatchingProperty();
+		property.setProperty("algorithm.mapmatching.hmm.IndexedViterbi", indexedViterbi + "");
+		mapMatching = new HMMMapMatching(roadMap, property);
+		trajectoryList = BenchmarkFixture.generateTrajectories(roadMap, numOfTrajectories, 20, 5, samplingInterval, 30);
+	}
+
+	@Benchmark
+	public int doMatching() {
+		int checksum = 0;
+		for (Trajectory traj : trajectoryList)
+			checksum += mapMatching.doMatching(traj).getMatchResult().getCompleteMatchRouteAtRank(0).getRoadIDList().size();
+		return checksum;
+	}
+}
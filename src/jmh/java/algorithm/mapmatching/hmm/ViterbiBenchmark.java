@@ -0,0 +1,133 @@
+package algorithm.mapmatching.hmm;
+
+import org.openjdk.jmh.annotations.*;
+import preprocessing.BenchmarkFixture;
+import util.dijkstra.RoutingGraph;
+import util.function.DistanceFunction;
+import util.index.grid.SegmentGridIndex;
+import util.object.roadnetwork.RoadNetworkGraph;
+import util.object.spatialobject.Trajectory;
+import util.object.spatialobject.TrajectoryPoint;
+import util.object.structure.Pair;
+import util.object.structure.PointMatch;
+import util.settings.MapMatchingProperty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the Viterbi decoding of HMM map-matching in isolation. The time steps of each trajectory, including the emission and
+ * transition probabilities in both map and array form, are computed in the setup, so each invocation only runs
+ * {@link ViterbiEngine#nextStep} over all time steps and retrieves the ranked sequences. Time steps that break the HMM are dropped in
+ * the setup.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ViterbiBenchmark {
+
+	@Param({"60"})
+	private int gridSize;
+	@Param({"50"})
+	private int numOfTrajectories;
+	@Param({"1", "3"})
+	private int rankLength;
+	@Param({"map", "indexed"})
+	private String engine;
+
+	private List<List<TimeStep<PointMatch, TrajectoryPoint, RoadPath>>> timeStepLists;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		RoadNetworkGraph roadMap = BenchmarkFixture.generateGridMap(gridSize, 0.002, 30);
+		MapMatchingProperty property = BenchmarkFixture.getMatchingProperty();
+		DistanceFunction distFunc = roadMap.getDistanceFunction();
+		RoutingGraph routingGraph = new RoutingGraph(roadMap, false, property);
+		SegmentGridIndex segmentIndex = new SegmentGridIndex(roadMap);
+		HMMProbabilities hmmProbabilities = new HMMProbabilities(property.getPropertyDouble("algorithm.mapmatching.Sigma"),
+				property.getPropertyDouble("algorithm.mapmatching.hmm.Beta"));
+		int candidateRange = property.getPropertyInteger("algorithm.mapmatching.CandidateRange");
+		timeStepLists = new ArrayList<>();
+		for (Trajectory traj : BenchmarkFixture.generateTrajectories(roadMap, numOfTrajectories, 20, 5, 5, 30)) {
+			List<List<PointMatch>> candidateLists = segmentIndex.searchRoadNeighbours(traj.getSTPoints(), candidateRange);
+			List<TimeStep<PointMatch, TrajectoryPoint, RoadPath>> timeStepList = new ArrayList<>();
+			ViterbiAlgorithm<PointMatch, TrajectoryPoint, RoadPath> viterbi = new ViterbiAlgorithm<>(rankLength);
+			for (int i = 0; i < traj.size(); i++) {
+				if (candidateLists.get(i).isEmpty())
+					continue;
+				TimeStep<PointMatch, TrajectoryPoint, RoadPath> timeStep = new TimeStep<>(traj.get(i), candidateLists.get(i));
+				timeStep.emissionLogProbabilityList = new double[timeStep.candidates.size()];
+				int index = 0;
+				for (PointMatch candidate : timeStep.candidates) {
+					double emissionLogProbability = hmmProbabilities.emissionLogProbability(distFunc.distance(traj.get(i), candidate.getMatchPoint()));
+					timeStep.addEmissionLogProbability(candidate, emissionLogProbability);
+					timeStep.emissionLogProbabilityList[index++] = emissionLogProbability;
+				}
+				if (timeStepList.isEmpty()) {
+					viterbi.startWithInitialObservation(timeStep);
+					timeStepList.add(timeStep);
+					continue;
+				}
+				TimeStep<PointMatch, TrajectoryPoint, RoadPath> prevTimeStep = timeStepList.get(timeStepList.size() - 1);
+				computeTransitionProbabilities(prevTimeStep, timeStep, routingGraph, hmmProbabilities, distFunc);
+				viterbi.nextStep(prevTimeStep, timeStep);
+				if (viterbi.isBroken())
+					viterbi.setToUnbroken();
+				else
+					timeStepList.add(timeStep);
+			}
+			if (!timeStepList.isEmpty())
+				timeStepLists.add(timeStepList);
+		}
+	}
+
+	private void computeTransitionProbabilities(TimeStep<PointMatch, TrajectoryPoint, RoadPath> prevTimeStep,
+												TimeStep<PointMatch, TrajectoryPoint, RoadPath> timeStep, RoutingGraph routingGraph,
+												HMMProbabilities hmmProbabilities, DistanceFunction distFunc) {
+		double linearDistance = distFunc.distance(prevTimeStep.observation, timeStep.observation);
+		double timeDiff = timeStep.observation.time() - prevTimeStep.observation.time();
+		List<PointMatch> sources = new ArrayList<>(prevTimeStep.candidates);
+		List<PointMatch> candidates = new ArrayList<>(timeStep.candidates);
+		List<List<Pair<Double, List<String>>>> shortestPathResultMatrix = routingGraph.calculateManyToNAStarSP(sources, candidates,
+				timeStep.observation, Math.min(50 * timeDiff, linearDistance * 8));
+		timeStep.transitionLogProbabilityMatrix = new double[sources.size()][candidates.size()];
+		timeStep.roadPathMatrix = new RoadPath[sources.size()][candidates.size()];
+		for (int s = 0; s < sources.size(); s++) {
+			Arrays.fill(timeStep.transitionLogProbabilityMatrix[s], Double.NEGATIVE_INFINITY);
+			for (int i = 0; i < candidates.size(); i++) {
+				Pair<Double, List<String>> shortestPathResult = shortestPathResultMatrix.get(s).get(i);
+				if (shortestPathResult._1() == Double.POSITIVE_INFINITY)
+					continue;
+				RoadPath roadPath = new RoadPath(sources.get(s), candidates.get(i), shortestPathResult._2());
+				double transitionLogProbability = hmmProbabilities.transitionLogProbability(shortestPathResult._1(), linearDistance, timeDiff);
+				timeStep.addRoadPath(sources.get(s), candidates.get(i), roadPath);
+				timeStep.addTransitionLogProbability(sources.get(s), candidates.get(i), transitionLogProbability);
+				timeStep.roadPathMatrix[s][i] = roadPath;
+				timeStep.transitionLogProbabilityMatrix[s][i] = transitionLogProbability;
+			}
+		}
+	}
+
+	@Benchmark
+	public double nextStep() {
+		double checksum = 0;
+		for (List<TimeStep<PointMatch, TrajectoryPoint, RoadPath>> timeStepList : timeStepLists) {
+			ViterbiEngine<PointMatch, TrajectoryPoint, RoadPath> viterbi = engine.equals("indexed") ?
+					new IndexedViterbiAlgorithm<>(rankLength) : new ViterbiAlgorithm<>(rankLength);
+			viterbi.startWithInitialObservation(timeStepList.get(0));
+			for (int i = 1; i < timeStepList.size(); i++)
+				viterbi.nextStep(timeStepList.get(i - 1), timeStepList.get(i));
+			for (Pair<List<SequenceState<PointMatch, TrajectoryPoint, RoadPath>>, Double> rankedSequence : viterbi.computeMostLikelySequence())
+				checksum += rankedSequence._2();
+		}
+		return checksum;
+	}
+}
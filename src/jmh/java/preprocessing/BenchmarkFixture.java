@@ -0,0 +1,142 @@
+package preprocessing;
+
+import util.function.DistanceFunction;
+import util.function.GreatCircleDistanceFunction;
+import util.object.roadnetwork.RoadNetworkGraph;
+import util.object.roadnetwork.RoadNode;
+import util.object.roadnetwork.RoadWay;
+import util.object.spatialobject.Trajectory;
+import util.object.spatialobject.TrajectoryPoint;
+import util.object.structure.Pair;
+import util.settings.MapMatchingProperty;
+
+import java.util.*;
+
+/**
+ * Fixtures shared by the map-matching benchmarks. The map is a jittered grid of double-directed roads and the trajectories are
+ * generated by {@link TrajectoryGenerator} along random walks on the map, so the benchmarks are reproducible without any dataset.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+public class BenchmarkFixture {
+
+	private static final double GRID_ORIGIN_LON = 116.3;
+	private static final double GRID_ORIGIN_LAT = 39.9;
+	private static final double TRAVEL_SPEED = 10;    // in meter per second
+
+	/**
+	 * Generate a grid map of <tt>gridSize</tt> x <tt>gridSize</tt> intersections. Every intersection is moved by a small random offset,
+	 * each road has one intermediate node and a few roads are removed or only kept in one direction.
+	 *
+	 * @param gridSize     The number of intersections per row and column.
+	 * @param gridInterval The distance between two adjacent intersections, in degree.
+	 * @param seed         The random seed.
+	 * @return The synthetic map.
+	 */
+	public static RoadNetworkGraph generateGridMap(int gridSize, double gridInterval, long seed) {
+		if (gridSize < 2)
+			throw new IllegalArgumentException("The grid size should be at least 2: " + gridSize);
+		DistanceFunction distFunc = new GreatCircleDistanceFunction();
+		Random random = new Random(seed);
+		double jitter = gridInterval * 0.15;
+		RoadNetworkGraph roadMap = new RoadNetworkGraph(false, distFunc);
+		RoadNode[][] intersections = new RoadNode[gridSize][gridSize];
+		List<RoadNode> nodeList = new ArrayList<>();
+		for (int i = 0; i < gridSize; i++) {
+			for (int j = 0; j < gridSize; j++) {
+				intersections[i][j] = new RoadNode(i * gridSize + j + "", GRID_ORIGIN_LON + i * gridInterval + random.nextDouble() * jitter,
+						GRID_ORIGIN_LAT + j * gridInterval + random.nextDouble() * jitter, distFunc);
+				nodeList.add(intersections[i][j]);
+			}
+		}
+		roadMap.addNodes(nodeList);
+		List<RoadWay> wayList = new ArrayList<>();
+		int wayCount = 0;
+		int miniNodeCount = 0;
+		for (int i = 0; i < gridSize; i++) {
+			for (int j = 0; j < gridSize; j++) {
+				int[][] neighbours = {{i + 1, j}, {i, j + 1}};
+				for (int[] neighbour : neighbours) {
+					if (neighbour[0] >= gridSize || neighbour[1] >= gridSize || random.nextDouble() < 0.1)
+						continue;
+					RoadNode startNode = intersections[i][j];
+					RoadNode endNode = intersections[neighbour[0]][neighbour[1]];
+					double midLon = (startNode.lon() + endNode.lon()) / 2 + (random.nextDouble() - 0.5) * jitter;
+					double midLat = (startNode.lat() + endNode.lat()) / 2 + (random.nextDouble() - 0.5) * jitter;
+					wayCount++;
+					wayList.add(new RoadWay(wayCount + "", new ArrayList<>(Arrays.asList(startNode,
+							new RoadNode(miniNodeCount++ + "-", midLon, midLat, distFunc), endNode)), distFunc));
+					if (random.nextDouble() < 0.8)
+						wayList.add(new RoadWay("-" + wayCount, new ArrayList<>(Arrays.asList(endNode,
+								new RoadNode(miniNodeCount++ + "-", midLon, midLat, distFunc), startNode)), distFunc));
+				}
+			}
+		}
+		roadMap.addWays(wayList);
+		return roadMap;
+	}
+
+	/**
+	 * Generate trajectories along random walks on the map. The points are sampled every <tt>samplingInterval</tt> seconds at a
+	 * constant speed of 10m/s and shifted by Gaussian noise.
+	 *
+	 * @param roadMap          The underlying map.
+	 * @param trajCount        The number of trajectories.
+	 * @param routeSize        The number of roads in each route.
+	 * @param sigma            The Gaussian noise parameter, in meter.
+	 * @param samplingInterval The number of seconds per point.
+	 * @param seed             The random seed.
+	 * @return The generated trajectories.
+	 */
+	public static List<Trajectory> generateTrajectories(RoadNetworkGraph roadMap, int trajCount, int routeSize, double sigma,
+														int samplingInterval, long seed) {
+		Map<String, List<RoadWay>> nodeID2OutgoingWays = new HashMap<>();
+		for (RoadWay way : roadMap.getWays())
+			nodeID2OutgoingWays.computeIfAbsent(way.getFromNode().getID(), k -> new ArrayList<>()).add(way);
+		Random random = new Random(seed);
+		List<Pair<Integer, List<String>>> routeList = new ArrayList<>();
+		Map<Integer, Long> id2TimeDiffMap = new HashMap<>();
+		while (routeList.size() < trajCount) {
+			RoadWay currWay = roadMap.getWays().get(random.nextInt(roadMap.getWays().size()));
+			List<String> route = new ArrayList<>();
+			double length = 0;
+			while (route.size() < routeSize) {
+				route.add(currWay.getID());
+				length += currWay.getLength();
+				List<RoadWay> nextWayList = new ArrayList<>();
+				for (RoadWay way : nodeID2OutgoingWays.getOrDefault(currWay.getToNode().getID(), Collections.emptyList()))
+					if (!way.getToNode().equals(currWay.getFromNode()))    // avoid u-turn
+						nextWayList.add(way);
+				if (nextWayList.isEmpty())
+					break;
+				currWay = nextWayList.get(random.nextInt(nextWayList.size()));
+			}
+			if (route.size() < routeSize)    // dead end, try another route
+				continue;
+			id2TimeDiffMap.put(routeList.size(), Math.max(1, Math.round(length / TRAVEL_SPEED)));
+			routeList.add(new Pair<>(routeList.size(), route));
+		}
+		List<Trajectory> resultTrajList = new ArrayList<>();
+		for (Trajectory traj : TrajectoryGenerator.rawTrajGenerator(routeList, id2TimeDiffMap, roadMap, sigma, samplingInterval)._1()) {
+			// the generator assigns one second per point, reset the timestamps according to the sampling interval
+			List<TrajectoryPoint> pointList = new ArrayList<>();
+			for (int i = 0; i < traj.size(); i++)
+				pointList.add(new TrajectoryPoint(traj.get(i).x(), traj.get(i).y(), (long) i * samplingInterval, traj.getDistanceFunction()));
+			resultTrajList.add(new Trajectory(traj.getID(), pointList));
+		}
+		return resultTrajList;
+	}
+
+	/**
+	 * @return The map-matching properties used by the benchmarks, which follows the default settings of <tt>mapmatching.properties</tt>.
+	 */
+	public static MapMatchingProperty getMatchingProperty() {
+		MapMatchingProperty property = new MapMatchingProperty();
+		property.setProperty("algorithm.mapmatching.CandidateRange", "20");
+		property.setProperty("algorithm.mapmatching.Sigma", "4");
+		property.setProperty("algorithm.mapmatching.hmm.Beta", "0.008");
+		property.setProperty("algorithm.mapmatching.hmm.RankLength", "1");
+		return property;
+	}
+}
@@ -0,0 +1,146 @@
+package util.dijkstra;
+
+import org.openjdk.jmh.annotations.*;
+import preprocessing.BenchmarkFixture;
+import util.function.DistanceFunction;
+import util.function.GreatCircleDistanceFunction;
+import util.io.MapReader;
+import util.object.roadnetwork.RoadNetworkGraph;
+import util.object.roadnetwork.RoadNode;
+import util.object.roadnetwork.RoadWay;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the pointer-linked {@link MinPriorityQueue} with the {@link IndexedMinHeap} by running bounded Dijkstra searches over the
+ * mini edges of a road map. The map is a synthetic grid of <tt>gridSize</tt> x <tt>gridSize</tt> intersections by default, or is read
+ * through {@link MapReader} from <tt>mapPath</tt> if given, e.g. <tt>-p mapPath=...</tt>. The same set of random sources is used for
+ * every queue.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PriorityQueueBenchmark {
+
+	@Param({""})
+	private String mapPath;    // the map file, the grid map is used if empty
+	@Param({"60"})
+	private int gridSize;
+	@Param({"2000"})
+	private double maxSearchDist;    // in meter
+	@Param({"1000"})
+	private int numOfSources;
+	@Param({"2", "4", "8"})
+	private int arity;
+
+	private int[] edgeStart;    // adjacency of each vertex in compressed sparse row format
+	private int[] edgeTarget;
+	private double[] edgeLength;
+	private int[] sources;
+	private IndexedMinHeap indexedMinHeap;
+	private double[] distance;
+	private boolean[] visited;
+	private int[] touched;    // the vertices reached in the current search, reset afterwards
+
+	@Setup(Level.Trial)
+	public void setup() {
+		RoadNetworkGraph roadMap = mapPath.isEmpty() ? BenchmarkFixture.generateGridMap(gridSize, 0.002, 30) :
+				MapReader.readMap(mapPath, false, new GreatCircleDistanceFunction());
+		DistanceFunction distFunc = roadMap.getDistanceFunction();
+		Map<String, Integer> nodeID2Index = new HashMap<>();
+		for (RoadNode node : roadMap.getNodes())
+			nodeID2Index.put(node.getID(), nodeID2Index.size());
+		List<int[]> edgeList = new ArrayList<>();
+		List<Double> lengthList = new ArrayList<>();
+		for (RoadWay way : roadMap.getWays()) {
+			for (int i = 1; i < way.getNodes().size() - 1; i++)
+				nodeID2Index.put(way.getNode(i).getID(), nodeID2Index.size());
+			for (int i = 0; i < way.getNodes().size() - 1; i++) {
+				edgeList.add(new int[]{nodeID2Index.get(way.getNode(i).getID()), nodeID2Index.get(way.getNode(i + 1).getID())});
+				lengthList.add(distFunc.distance(way.getNode(i).toPoint(), way.getNode(i + 1).toPoint()));
+			}
+		}
+		int vertexCount = nodeID2Index.size();
+		edgeStart = new int[vertexCount + 1];
+		edgeTarget = new int[edgeList.size()];
+		edgeLength = new double[edgeList.size()];
+		for (int[] edge : edgeList)
+			edgeStart[edge[0] + 1]++;
+		for (int i = 0; i < vertexCount; i++)
+			edgeStart[i + 1] += edgeStart[i];
+		int[] cursor = Arrays.copyOf(edgeStart, vertexCount);
+		for (int i = 0; i < edgeList.size(); i++) {
+			int slot = cursor[edgeList.get(i)[0]]++;
+			edgeTarget[slot] = edgeList.get(i)[1];
+			edgeLength[slot] = lengthList.get(i);
+		}
+		Random random = new Random(30);
+		sources = new int[numOfSources];
+		for (int i = 0; i < numOfSources; i++)
+			sources[i] = random.nextInt(vertexCount);
+		indexedMinHeap = new IndexedMinHeap(vertexCount, arity);
+		distance = new double[vertexCount];
+		visited = new boolean[vertexCount];
+		touched = new int[vertexCount + 1];
+	}
+
+	@Benchmark
+	public double minPriorityQueue() {
+		double checksum = 0;
+		for (int source : sources) {
+			MinPriorityQueue minHeap = new MinPriorityQueue();
+			HashMap<Integer, Double> vertexDistFromSource = new HashMap<>();
+			HashSet<Integer> vertexVisited = new HashSet<>();
+			vertexDistFromSource.put(source, 0d);
+			int currIndex = source;
+			while (currIndex != -1 && vertexDistFromSource.get(currIndex) < maxSearchDist) {
+				for (int e = edgeStart[currIndex]; e < edgeStart[currIndex + 1]; e++) {
+					double tentative = vertexDistFromSource.get(currIndex) + edgeLength[e];
+					if (!vertexVisited.contains(edgeTarget[e]) && minHeap.decreaseKey(edgeTarget[e], tentative))
+						vertexDistFromSource.put(edgeTarget[e], tentative);
+				}
+				vertexVisited.add(currIndex);
+				checksum += vertexDistFromSource.get(currIndex);
+				currIndex = minHeap.extractMin();
+			}
+		}
+		return checksum;
+	}
+
+	@Benchmark
+	public double indexedMinHeap() {
+		double checksum = 0;
+		for (int source : sources) {
+			int touchedCount = 0;
+			indexedMinHeap.clear();
+			distance[source] = 0;
+			touched[touchedCount++] = source;
+			int currIndex = source;
+			while (currIndex != -1 && distance[currIndex] < maxSearchDist) {
+				for (int e = edgeStart[currIndex]; e < edgeStart[currIndex + 1]; e++) {
+					int next = edgeTarget[e];
+					double tentative = distance[currIndex] + edgeLength[e];
+					if (!visited[next]) {
+						if (!indexedMinHeap.contains(next))
+							touched[touchedCount++] = next;
+						if (indexedMinHeap.decreaseKey(next, tentative))
+							distance[next] = tentative;
+					}
+				}
+				visited[currIndex] = true;
+				checksum += distance[currIndex];
+				currIndex = indexedMinHeap.extractMin();
+			}
+			for (int i = 0; i < touchedCount; i++)
+				visited[touched[i]] = false;
+		}
+		return checksum;
+	}
+}
@@ -0,0 +1,87 @@
+package util.dijkstra;
+
+import org.openjdk.jmh.annotations.*;
+import preprocessing.BenchmarkFixture;
+import util.function.DistanceFunction;
+import util.index.grid.SegmentGridIndex;
+import util.object.roadnetwork.RoadNetworkGraph;
+import util.object.spatialobject.Trajectory;
+import util.object.spatialobject.TrajectoryPoint;
+import util.object.structure.Pair;
+import util.object.structure.PointMatch;
+import util.settings.MapMatchingProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the one-to-many A* search of {@link RoutingGraph} with the same queries as the HMM transition computation: from every
+ * candidate of a trajectory point to all candidates of the next point, bounded by the maximum travel distance between the two points.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RoutingBenchmark {
+
+	@Param({"60"})
+	private int gridSize;
+	@Param({"50"})
+	private int numOfTrajectories;
+	@Param({"5", "30"})
+	private int samplingInterval;    // in second
+
+	private RoutingGraph routingGraph;
+	private List<PointMatch> sourceList;
+	private List<List<PointMatch>> destinationLists;
+	private List<TrajectoryPoint> referencePointList;
+	private List<Double> maxSearchDistList;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		RoadNetworkGraph roadMap = BenchmarkFixture.generateGridMap(gridSize, 0.002, 30);
+		MapMatchingProperty property = BenchmarkFixture.getMatchingProperty();
+		DistanceFunction distFunc = roadMap.getDistanceFunction();
+		routingGraph = new RoutingGraph(roadMap, false, property);
+		SegmentGridIndex segmentIndex = new SegmentGridIndex(roadMap);
+		int candidateRange = property.getPropertyInteger("algorithm.mapmatching.CandidateRange");
+		sourceList = new ArrayList<>();
+		destinationLists = new ArrayList<>();
+		referencePointList = new ArrayList<>();
+		maxSearchDistList = new ArrayList<>();
+		for (Trajectory traj : BenchmarkFixture.generateTrajectories(roadMap, numOfTrajectories, 20, 5, samplingInterval, 30)) {
+			List<List<PointMatch>> candidateLists = segmentIndex.searchRoadNeighbours(traj.getSTPoints(), candidateRange);
+			for (int i = 1; i < traj.size(); i++) {
+				TrajectoryPoint prevPoint = traj.get(i - 1);
+				TrajectoryPoint currPoint = traj.get(i);
+				double linearDistance = distFunc.distance(prevPoint, currPoint);
+				double maxDistance = Math.min(50 * (currPoint.time() - prevPoint.time()), linearDistance * 8);
+				for (PointMatch source : candidateLists.get(i - 1)) {
+					sourceList.add(source);
+					destinationLists.add(candidateLists.get(i));
+					referencePointList.add(currPoint);
+					maxSearchDistList.add(maxDistance);
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public double calculateOneToNAStarSP() {
+		double checksum = 0;
+		for (int i = 0; i < sourceList.size(); i++) {
+			for (Pair<Double, List<String>> result : routingGraph.calculateOneToNAStarSP(sourceList.get(i), destinationLists.get(i),
+					referencePointList.get(i), maxSearchDistList.get(i))) {
+				if (result._1() != Double.POSITIVE_INFINITY)
+					checksum += result._1();
+			}
+		}
+		return checksum;
+	}
+}
@@ -0,0 +1,77 @@
+package util.index.rtree;
+
+import org.openjdk.jmh.annotations.*;
+import preprocessing.BenchmarkFixture;
+import util.index.grid.SegmentGridIndex;
+import util.object.roadnetwork.RoadNetworkGraph;
+import util.object.spatialobject.Trajectory;
+import util.object.spatialobject.TrajectoryPoint;
+import util.object.structure.PointMatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the candidate search of all points of a set of trajectories on a synthetic grid map. The {@link RTreeIndexing} search is
+ * compared with the single-point and batched search of {@link SegmentGridIndex}, which return the same candidates.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CandidateSearchBenchmark {
+
+	@Param({"60"})
+	private int gridSize;
+	@Param({"20", "50"})
+	private double radius;    // in meter
+	@Param({"100"})
+	private int numOfTrajectories;
+
+	private RTreeIndexing rTreeIndex;
+	private SegmentGridIndex segmentIndex;
+	private List<List<TrajectoryPoint>> trajPointLists;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		RoadNetworkGraph roadMap = BenchmarkFixture.generateGridMap(gridSize, 0.002, 30);
+		rTreeIndex = new RTreeIndexing(roadMap);
+		segmentIndex = new SegmentGridIndex(roadMap);
+		trajPointLists = new ArrayList<>();
+		for (Trajectory traj : BenchmarkFixture.generateTrajectories(roadMap, numOfTrajectories, 20, 5, 5, 30))
+			trajPointLists.add(traj.getSTPoints());
+	}
+
+	@Benchmark
+	public int rTreeSearchNeighbours() {
+		int checksum = 0;
+		for (List<TrajectoryPoint> pointList : trajPointLists)
+			for (TrajectoryPoint point : pointList)
+				checksum += rTreeIndex.searchNeighbours(point, radius).size();
+		return checksum;
+	}
+
+	@Benchmark
+	public int segmentGridSearchNeighbours() {
+		int checksum = 0;
+		for (List<TrajectoryPoint> pointList : trajPointLists)
+			for (TrajectoryPoint point : pointList)
+				checksum += segmentIndex.searchNeighbours(point, radius).size();
+		return checksum;
+	}
+
+	@Benchmark
+	public int segmentGridBatchSearchNeighbours() {
+		int checksum = 0;
+		for (List<TrajectoryPoint> pointList : trajPointLists)
+			for (List<PointMatch> candidateList : segmentIndex.searchNeighbours(pointList, radius))
+				checksum += candidateList.size();
+		return checksum;
+	}
+}
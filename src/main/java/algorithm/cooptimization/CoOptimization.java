@@ -2,6 +2,7 @@ package algorithm.cooptimization;
 
 import algorithm.mapinference.kde.KDEMapInference;
 import algorithm.mapinference.lineclustering.LineClusteringMapInference;
+import algorithm.mapmatching.MatchingMapSnapshot;
 import algorithm.mapmatching.hmm.HMMMapMatching;
 import algorithm.mapmerge.MapMerge;
 import org.apache.log4j.Logger;
@@ -90,11 +91,20 @@ class CoOptimization {
 			} else {
 				// step 1-old: KDE map inference
 				KDEMapInference mapInference = new KDEMapInference(prop);
-				String localDir = System.getProperty("user.dir");
-				mapInference.mapInferenceProcess(localDir + "/src/main/python/",
-						cacheFolder + "unmatchedTrajectoryNextInput/" + iteration + "/",
-						cacheFolder + "inference/" + iteration + "/");
-				inferenceResult = MapReader.readWays(cacheFolder + "inference/" + iteration + "/", new HashMap<>(), distFunc);
+				if (mapInference.isNativeInference()) {
+					List<Trajectory> unmatchedTrajList = new ArrayList<>();
+					for (Triplet<Trajectory, String, String> unmatchedTraj : prevMatchResultPair._2())
+						unmatchedTrajList.add(unmatchedTraj._1());
+					// all trajectories are matched in the previous iteration, nothing to infer
+					inferenceResult = unmatchedTrajList.isEmpty() ? new ArrayList<>() :
+							new ArrayList<>(mapInference.mapInferenceProcess(unmatchedTrajList).getWays());
+				} else {
+					String localDir = System.getProperty("user.dir");
+					mapInference.mapInferenceProcess(localDir + "/src/main/python/",
+							cacheFolder + "unmatchedTrajectoryNextInput/" + iteration + "/",
+							cacheFolder + "inference/" + iteration + "/");
+					inferenceResult = MapReader.readWays(cacheFolder + "inference/" + iteration + "/", new HashMap<>(), distFunc);
+				}
 				for (RoadWay roadWay : inferenceResult) {
 					roadWay.setId("temp_" + roadWay.getID());
 					roadWay.setNewRoad(true);
@@ -400,8 +410,11 @@ class CoOptimization {
 	(Stream<Trajectory> rawTrajectoryList, RoadNetworkGraph roadMap, int iteration, String matchType,
 	 CoOptimizationFunc coOptimizationFunc, BaseProperty prop) throws ExecutionException, InterruptedException {
 		
-		// start matching process
-		HMMMapMatching mapMatching = new HMMMapMatching(roadMap, prop);
+		// start matching process, the map update iterations insert new roads, which a map snapshot does not support
+		boolean isNewRoadIncluded = prop.contains("algorithm.cooptimization.isNewRoadIncluded") && prop.getPropertyBoolean("algorithm" +
+				".cooptimization.isNewRoadIncluded");
+		HMMMapMatching mapMatching = isNewRoadIncluded ? new HMMMapMatching(roadMap, prop) :
+				new HMMMapMatching(new MatchingMapSnapshot(roadMap, false, prop), prop);
 		Stream<MatchResultWithUnmatchedTraj> currCombinedMatchResultStream = mapMatching.trajectoryStreamMatchingProcess(rawTrajectoryList);
 		List<MatchResultWithUnmatchedTraj> currCombinedMatchResultList = currCombinedMatchResultStream.collect(Collectors.toList());
 		List<MultipleTrajectoryMatchResult> currMatchResultList = new ArrayList<>();
@@ -143,12 +143,16 @@ public class MapInferenceMain {
 				break;
 			case "KDE":
 				KDEMapInference kdeMapInference = new KDEMapInference(property);
-				if (dataSet.equals("Berlin") || dataSet.equals("Chicago")) {
-					inputTrajFolder = cacheFolder + "kdeTraj/";
-					IOService.cleanFolder(cacheFolder + "kdeTraj/");
-					TrajectoryWriter.writeTrajectories(inputTrajList, inputTrajFolder);
+				if (kdeMapInference.isNativeInference()) {
+					outputMap = kdeMapInference.mapInferenceProcess(inputTrajList);
+				} else {
+					if (dataSet.equals("Berlin") || dataSet.equals("Chicago")) {
+						inputTrajFolder = cacheFolder + "kdeTraj/";
+						IOService.cleanFolder(cacheFolder + "kdeTraj/");
+						TrajectoryWriter.writeTrajectories(inputTrajList, inputTrajFolder);
+					}
+					outputMap = kdeMapInference.mapInferenceProcess(pythonRootFolder + "kde/", inputTrajFolder, cacheFolder + "kde/");
 				}
-				outputMap = kdeMapInference.mapInferenceProcess(pythonRootFolder + "kde/", inputTrajFolder, cacheFolder + "kde/");
 				SpatialUtils.convertMapWGS2UTM(outputMap);
 				MapWriter.writeMap(outputMap, outputMapFolder + "KDE_" + dataSpec + ".txt");
 				break;
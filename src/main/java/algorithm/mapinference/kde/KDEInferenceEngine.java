@@ -0,0 +1,666 @@
+package algorithm.mapinference.kde;
+
+import algorithm.mapinference.lineclustering.DouglasPeuckerFilter;
+import org.apache.log4j.Logger;
+import util.function.DistanceFunction;
+import util.object.roadnetwork.RoadNetworkGraph;
+import util.object.roadnetwork.RoadNode;
+import util.object.roadnetwork.RoadWay;
+import util.object.spatialobject.Trajectory;
+import util.object.spatialobject.TrajectoryPoint;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * The KDE map inference of Biagioni and Eriksson running in the JVM, which follows the first three steps of the Python version:
+ * <tt>kde.py</tt>, <tt>skeleton.py</tt> and <tt>graph_extract.py</tt>.
+ * <ol>
+ * <li>Each trajectory is drawn onto a grid of <tt>cellSize</tt> meters, a cell gains the same intensity for every trajectory passing
+ * it, and the counts are smoothed by a Gaussian kernel of <tt>gaussianBlur</tt> cells.</li>
+ * <li>The density is closed by a disk and thinned into a one-cell wide skeleton, starting from the densest cells and lowering the
+ * threshold step by step so that the skeleton of the dense roads is kept when the sparse roads are added.</li>
+ * <li>The skeleton cells with one or more than two branches become intersections, the cells between two intersections form a road
+ * which is simplified by the Douglas-Peucker algorithm and added in both directions.</li>
+ * </ol>
+ * The grids are primitive arrays and each step runs on the rows or cells in parallel. The result does not depend on the thread count.
+ * The grid is built in the coordinate system of the trajectories, the cell size is converted by the distance function of the
+ * trajectories.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+final class KDEInferenceEngine {
+	
+	private static final Logger LOG = Logger.getLogger(KDEInferenceEngine.class);
+	private static final int TRAJECTORY_INTENSITY = 32;    // the intensity a trajectory adds to a cell, same as the line value in kde.py
+	private static final int MAX_INTENSITY = 65535;    // the density image of kde.py has 16 bits
+	private static final int CLOSING_RADIUS = 8;    // the radius of the disk used in grey closing, in cells
+	private static final int[] DENSITY_THRESHOLDS = {256, 128, 64, 32, 16, 15, 14, 13, 12, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1};
+	private static final int BORDER = 2;    // the empty cells around the grid required by the crossing detection
+	private static final double DP_EPSILON = 10;    // the Douglas-Peucker threshold of the extracted roads, in meter
+	// the 8 neighbours in clockwise order starting from north, the row index increases southwards
+	private static final int[] NEIGHBOUR_ROWS = {-1, -1, 0, 1, 1, 1, 0, -1};
+	private static final int[] NEIGHBOUR_COLS = {0, 1, 1, 1, 0, -1, -1, -1};
+	// the neighbour order in which a road is traced, N, E, S, W, NE, SE, SW, NW
+	private static final int[] TRACE_ORDER = {0, 2, 4, 6, 1, 3, 5, 7};
+	// the 16 cells on the ring of distance 2 in clockwise order starting from north, and the inner neighbours connecting them
+	private static final int[] RING_ROWS = {-2, -2, -2, -1, 0, 1, 2, 2, 2, 2, 2, 1, 0, -1, -2, -2};
+	private static final int[] RING_COLS = {0, 1, 2, 2, 2, 2, 2, 1, 0, -1, -2, -2, -2, -2, -2, -1};
+	private static final int[][] RING_LINKS = {{7, 0, 1}, {0, 1}, {1}, {1, 2}, {1, 2, 3}, {2, 3}, {3}, {3, 4}, {3, 4, 5}, {4, 5},
+			{5}, {5, 6}, {5, 6, 7}, {6, 7}, {7}, {7, 0}};
+	
+	private final double cellSize;
+	private final int gaussianBlur;
+	private final int numOfThreads;
+	
+	/**
+	 * @param cellSize     The grid cell size, in meter.
+	 * @param gaussianBlur The size of the Gaussian kernel, in cells.
+	 * @param numOfThreads The number of threads, =-1 if full utilisation is expected.
+	 */
+	KDEInferenceEngine(double cellSize, int gaussianBlur, int numOfThreads) {
+		if (cellSize <= 0 || gaussianBlur < 0)
+			throw new IllegalArgumentException("The cell size should be positive and the Gaussian blur should not be negative: " + cellSize
+					+ "," + gaussianBlur);
+		this.cellSize = cellSize;
+		this.gaussianBlur = gaussianBlur;
+		this.numOfThreads = numOfThreads == -1 ? Runtime.getRuntime().availableProcessors() : numOfThreads;
+		if (this.numOfThreads <= 0)
+			throw new IllegalArgumentException("The number of threads should be positive: " + numOfThreads);
+	}
+	
+	/**
+	 * Infer the road map from the trajectories.
+	 *
+	 * @param trajList The input trajectories, which share the same distance function.
+	 * @return The inferred map, whose roads are in both directions.
+	 */
+	RoadNetworkGraph inferMap(List<Trajectory> trajList) {
+		if (trajList == null || trajList.isEmpty())
+			throw new IllegalArgumentException("The KDE map inference requires at least one trajectory.");
+		long startTime = System.currentTimeMillis();
+		DistanceFunction distFunc = trajList.get(0).getDistanceFunction();
+		Raster raster = new Raster(trajList, distFunc, cellSize, gaussianBlur / 2 + CLOSING_RADIUS + BORDER + 1);
+		ForkJoinPool forkJoinPool = new ForkJoinPool(numOfThreads);
+		try {
+			int[] density = forkJoinPool.submit(() -> blur(raster, rasterise(raster, trajList))).join();
+			LOG.debug("KDE density generated on a " + raster.width + "x" + raster.height + " grid, time elapsed: "
+					+ (System.currentTimeMillis() - startTime) / 1000.0 + "s.");
+			byte[] skeleton = forkJoinPool.submit(() -> skeletonise(raster, close(raster, density))).join();
+			LOG.debug("Skeleton generated, time elapsed: " + (System.currentTimeMillis() - startTime) / 1000.0 + "s.");
+			byte[] crossingImage = forkJoinPool.submit(() -> identifyCrossings(raster, skeleton)).join();
+			RoadNetworkGraph resultMap = extractGraph(raster, crossingImage, distFunc);
+			LOG.info("KDE map inference finished, " + resultMap.getWays().size() + " roads inferred from " + trajList.size()
+					+ " trajectories, time elapsed: " + (System.currentTimeMillis() - startTime) / 1000.0 + "s.");
+			return resultMap;
+		} finally {
+			forkJoinPool.shutdown();
+		}
+	}
+	
+	/**
+	 * Count the trajectories passing each cell. A trajectory is counted once in a cell even if it passes the cell multiple times.
+	 */
+	private AtomicIntegerArray rasterise(Raster raster, List<Trajectory> trajList) {
+		AtomicIntegerArray trajCounts = new AtomicIntegerArray(raster.size());
+		IntStream.range(0, trajList.size()).parallel().forEach(index -> {
+			for (int cell : traceCells(raster, trajList.get(index)))
+				trajCounts.incrementAndGet(cell);
+		});
+		return trajCounts;
+	}
+	
+	/**
+	 * @return The distinct cells on the polyline of the trajectory, drawn by the Bresenham algorithm.
+	 */
+	private static int[] traceCells(Raster raster, Trajectory traj) {
+		int[] cells = new int[64];
+		int cellCount = 0;
+		int prevRow = raster.row(traj.get(0).y());
+		int prevCol = raster.col(traj.get(0).x());
+		cells[cellCount++] = raster.index(prevRow, prevCol);
+		for (int i = 1; i < traj.size(); i++) {
+			TrajectoryPoint point = traj.get(i);
+			int row = raster.row(point.y());
+			int col = raster.col(point.x());
+			int rowDiff = Math.abs(row - prevRow);
+			int colDiff = Math.abs(col - prevCol);
+			int rowStep = row > prevRow ? 1 : -1;
+			int colStep = col > prevCol ? 1 : -1;
+			int error = colDiff - rowDiff;
+			int currRow = prevRow;
+			int currCol = prevCol;
+			while (currRow != row || currCol != col) {
+				int doubleError = 2 * error;
+				if (doubleError > -rowDiff) {
+					error -= rowDiff;
+					currCol += colStep;
+				}
+				if (doubleError < colDiff) {
+					error += colDiff;
+					currRow += rowStep;
+				}
+				if (cellCount == cells.length)
+					cells = Arrays.copyOf(cells, cells.length * 2);
+				cells[cellCount++] = raster.index(currRow, currCol);
+			}
+			prevRow = row;
+			prevCol = col;
+		}
+		return distinct(cells, cellCount);
+	}
+	
+	/**
+	 * Smooth the trajectory counts by a separable Gaussian kernel, whose standard deviation is derived from the kernel size in the same
+	 * way as OpenCV.
+	 */
+	private int[] blur(Raster raster, AtomicIntegerArray trajCounts) {
+		int radius = gaussianBlur / 2;
+		double sigma = 0.3 * (radius - 1) + 0.8;
+		double[] kernel = new double[2 * radius + 1];
+		double kernelSum = 0;
+		for (int k = -radius; k <= radius; k++) {
+			kernel[k + radius] = Math.exp(-k * k / (2 * sigma * sigma));
+			kernelSum += kernel[k + radius];
+		}
+		for (int k = 0; k < kernel.length; k++)
+			kernel[k] /= kernelSum;
+		
+		int width = raster.width;
+		int height = raster.height;
+		float[] rowBlurred = new float[raster.size()];
+		IntStream.range(0, height).parallel().forEach(row -> {
+			int offset = row * width;
+			for (int col = 0; col < width; col++) {
+				int count = trajCounts.get(offset + col);
+				if (count == 0)
+					continue;
+				for (int k = Math.max(-radius, -col); k <= Math.min(radius, width - 1 - col); k++)
+					rowBlurred[offset + col + k] += (float) (count * TRAJECTORY_INTENSITY * kernel[k + radius]);
+			}
+		});
+		int[] density = new int[raster.size()];
+		IntStream.range(0, height).parallel().forEach(row -> {
+			double[] rowSum = new double[width];
+			for (int k = Math.max(-radius, -row); k <= Math.min(radius, height - 1 - row); k++) {
+				int sourceOffset = (row + k) * width;
+				double weight = kernel[k + radius];
+				for (int col = 0; col < width; col++)
+					rowSum[col] += rowBlurred[sourceOffset + col] * weight;
+			}
+			int offset = row * width;
+			for (int col = 0; col < width; col++)
+				density[offset + col] = (int) Math.min(MAX_INTENSITY, Math.round(rowSum[col]));
+		});
+		return density;
+	}
+	
+	/**
+	 * Grey closing of the density by a disk, i.e. the dilation followed by the erosion, which fills the small gaps between the
+	 * trajectories of the same road.
+	 */
+	private int[] close(Raster raster, int[] image) {
+		return diskFilter(raster, diskFilter(raster, image, true), false);
+	}
+	
+	/**
+	 * The maximum (dilation) or minimum (erosion) of the image within a disk of {@link #CLOSING_RADIUS}. The cells outside the grid are
+	 * regarded as zero. The disk is split into rows, each of which is a sliding window of the corresponding image row.
+	 */
+	private static int[] diskFilter(Raster raster, int[] image, boolean isDilation) {
+		int width = raster.width;
+		int height = raster.height;
+		int[] result = new int[raster.size()];
+		IntStream.range(0, height).parallel().forEach(row -> {
+			int[] window = new int[width];
+			int[] deque = new int[width];
+			int offset = row * width;
+			Arrays.fill(result, offset, offset + width, isDilation ? 0 : Integer.MAX_VALUE);
+			for (int rowDiff = -CLOSING_RADIUS; rowDiff <= CLOSING_RADIUS; rowDiff++) {
+				int sourceRow = row + rowDiff;
+				if (sourceRow < 0 || sourceRow >= height) {
+					if (!isDilation)
+						Arrays.fill(result, offset, offset + width, 0);
+					continue;
+				}
+				int halfWidth = (int) Math.sqrt(CLOSING_RADIUS * CLOSING_RADIUS - rowDiff * rowDiff);
+				slidingExtreme(image, sourceRow * width, width, halfWidth, isDilation, window, deque);
+				for (int col = 0; col < width; col++)
+					result[offset + col] = isDilation ? Math.max(result[offset + col], window[col]) : Math.min(result[offset + col],
+							window[col]);
+			}
+		});
+		return result;
+	}
+	
+	/**
+	 * The maximum or minimum of <tt>image[offset + col - halfWidth ... offset + col + halfWidth]</tt> for every column, computed by a
+	 * monotonic queue. The minimum is zero if the window exceeds the row.
+	 */
+	private static void slidingExtreme(int[] image, int offset, int width, int halfWidth, boolean isMax, int[] window, int[] deque) {
+		int head = 0;
+		int tail = 0;
+		for (int i = 0; i < width + halfWidth; i++) {
+			if (i < width) {
+				int value = image[offset + i];
+				while (tail > head && (isMax ? image[offset + deque[tail - 1]] <= value : image[offset + deque[tail - 1]] >= value))
+					tail--;
+				deque[tail++] = i;
+			}
+			int col = i - halfWidth;
+			if (col < 0)
+				continue;
+			while (deque[head] < col - halfWidth)
+				head++;
+			window[col] = !isMax && (col < halfWidth || col + halfWidth >= width) ? 0 : image[offset + deque[head]];
+		}
+	}
+	
+	/**
+	 * Thin the density into a skeleton. At each threshold, the cells above the threshold are added to the skeleton of the previous
+	 * threshold and thinned again. The skeleton cells are counted up at every threshold, only the cells added at the current threshold
+	 * can be removed, so the skeleton of the denser area is kept.
+	 */
+	private static byte[] skeletonise(Raster raster, int[] image) {
+		byte[] skeleton = new byte[raster.size()];
+		CellMarks cellMarks = new CellMarks(raster.size());
+		for (int threshold : DENSITY_THRESHOLDS) {
+			IntStream.range(0, raster.size()).parallel().forEach(cell -> {
+				if (image[cell] >= threshold && raster.isInner(cell))
+					skeleton[cell]++;
+			});
+			thin(raster, skeleton, cellMarks);
+		}
+		return skeleton;
+	}
+	
+	/**
+	 * Remove the new cells of value 1 by the two sub-iterations of the Zhang-Suen thinning until no cell can be removed, then remove the
+	 * cells inside pools. Each sub-iteration decides the removable cells on the same image and removes them together.
+	 */
+	private static void thin(Raster raster, byte[] image, CellMarks cellMarks) {
+		int[] checkCells = IntStream.range(0, raster.size()).parallel().filter(cell -> {
+			if (image[cell] != 1)
+				return false;
+			int neighbourCount = countNeighbours(raster, image, cell);
+			return neighbourCount >= 2 && neighbourCount <= 6;
+		}).toArray();
+		while (checkCells.length > 0) {
+			int[] firstNextCells = subIteration(raster, image, checkCells, true, cellMarks);
+			int[] secondNextCells = subIteration(raster, image, cellMarks.union(checkCells, firstNextCells), false, cellMarks);
+			checkCells = cellMarks.union(firstNextCells, secondNextCells);
+		}
+		int[] poolCells = IntStream.range(0, raster.size()).parallel().filter(cell -> image[cell] == 1
+				&& countNeighbours(raster, image, cell) > 6).toArray();
+		for (int cell : poolCells)
+			image[cell] = 0;
+	}
+	
+	/**
+	 * @return The neighbours of value 1 of the removed cells, which should be checked again.
+	 */
+	private static int[] subIteration(Raster raster, byte[] image, int[] checkCells, boolean isFirst, CellMarks cellMarks) {
+		int[] removedCells = IntStream.of(checkCells).parallel().filter(cell -> isRemovable(raster, image, cell, isFirst)).toArray();
+		int[] nextCells = new int[removedCells.length * 8];
+		int nextCount = 0;
+		for (int cell : removedCells) {
+			for (int k = 0; k < 8; k++) {
+				int neighbour = cell + raster.neighbourOffsets[k];
+				if (image[neighbour] == 1)
+					nextCells[nextCount++] = neighbour;
+			}
+		}
+		for (int cell : removedCells)
+			image[cell] = 0;
+		return cellMarks.distinct(nextCells, nextCount);
+	}
+	
+	/**
+	 * The removal condition of the Zhang-Suen thinning. The transitions are counted on the binary image, otherwise a cell next to the
+	 * skeleton of an earlier threshold is never removed and the skeleton grows thicker at every threshold.
+	 */
+	private static boolean isRemovable(Raster raster, byte[] image, int cell, boolean isFirst) {
+		if (image[cell] != 1)
+			return false;
+		int[] p = new int[8];    // p2 ... p9 in the Zhang-Suen thinning
+		int neighbourCount = 0;
+		for (int k = 0; k < 8; k++) {
+			p[k] = image[cell + raster.neighbourOffsets[k]];
+			if (p[k] != 0)
+				neighbourCount++;
+		}
+		if (neighbourCount < 2 || neighbourCount > 6)
+			return false;
+		if (isFirst ? p[0] * p[2] * p[4] != 0 || p[2] * p[4] * p[6] != 0 : p[0] * p[2] * p[6] != 0 || p[0] * p[4] * p[6] != 0)
+			return false;
+		int transitionSum = 0;
+		for (int k = 0; k < 8; k++) {
+			if (p[k] == 0 && p[(k + 1) % 8] != 0)
+				transitionSum++;
+		}
+		return transitionSum == 1;
+	}
+	
+	private static int countNeighbours(Raster raster, byte[] image, int cell) {
+		int neighbourCount = 0;
+		for (int k = 0; k < 8; k++) {
+			if (image[cell + raster.neighbourOffsets[k]] != 0)
+				neighbourCount++;
+		}
+		return neighbourCount;
+	}
+	
+	/**
+	 * Mark the skeleton cells by the number of branches leaving the cell, which is the number of connected components on the ring of
+	 * distance 2. A cell without branch is removed, and the cells with one branch (dead end) or more than two branches (crossing) are
+	 * marked as 2.
+	 */
+	private static byte[] identifyCrossings(Raster raster, byte[] skeleton) {
+		byte[] crossingImage = new byte[raster.size()];
+		IntStream.range(0, raster.size()).parallel().forEach(cell -> {
+			if (skeleton[cell] == 0)
+				return;
+			boolean[] fringe = new boolean[RING_ROWS.length];
+			for (int k = 0; k < RING_ROWS.length; k++) {
+				if (skeleton[cell + raster.offset(RING_ROWS[k], RING_COLS[k])] == 0)
+					continue;
+				for (int link : RING_LINKS[k]) {
+					if (skeleton[cell + raster.neighbourOffsets[link]] != 0) {
+						fringe[k] = true;
+						break;
+					}
+				}
+			}
+			int componentCount = 0;
+			for (int k = 0; k < fringe.length; k++) {
+				if (!fringe[k] && fringe[(k + 1) % fringe.length])
+					componentCount++;
+			}
+			crossingImage[cell] = (byte) (componentCount == 0 ? 0 : componentCount == 2 ? 1 : 2);
+		});
+		return crossingImage;
+	}
+	
+	/**
+	 * Group the adjacent crossing cells into intersections and trace the roads between them, then build the map.
+	 */
+	private static RoadNetworkGraph extractGraph(Raster raster, byte[] image, DistanceFunction distFunc) {
+		int[] crossingCells = IntStream.range(0, raster.size()).filter(cell -> image[cell] == 2).toArray();
+		Map<Integer, Intersection> cell2Intersection = new HashMap<>();
+		List<int[]> roadCellsList = new ArrayList<>();
+		for (int cell : crossingCells) {
+			if (image[cell] == 2) {
+				// group all adjacent crossing cells
+				List<Integer> clusterCells = new ArrayList<>();
+				ArrayDeque<Integer> queue = new ArrayDeque<>();
+				image[cell] = 3;
+				queue.add(cell);
+				while (!queue.isEmpty()) {
+					int currCell = queue.poll();
+					clusterCells.add(currCell);
+					for (int k = 0; k < 8; k++) {
+						int neighbour = currCell + raster.neighbourOffsets[k];
+						if (image[neighbour] == 2) {
+							image[neighbour] = 3;
+							queue.add(neighbour);
+						}
+					}
+				}
+				Intersection intersection = new Intersection(raster, clusterCells);
+				for (int clusterCell : clusterCells)
+					cell2Intersection.put(clusterCell, intersection);
+			}
+		}
+		for (int cell : crossingCells) {
+			image[cell] = -1;    // do not go back to the current cell
+			for (int k = 0; k < 8; k++) {
+				int neighbour = cell + raster.neighbourOffsets[k];
+				if (image[neighbour] == 1) {
+					int[] roadCells = traceRoad(raster, image, neighbour, cell);
+					if (roadCells != null)
+						roadCellsList.add(roadCells);
+				}
+			}
+			image[cell] = 3;
+		}
+		
+		Map<Intersection, RoadNode> intersection2Node = new LinkedHashMap<>();
+		List<RoadWay> wayList = new ArrayList<>();
+		DouglasPeuckerFilter dpFilter = new DouglasPeuckerFilter(DP_EPSILON, distFunc);
+		int miniNodeCount = 0;
+		for (int[] roadCells : roadCellsList) {
+			RoadNode startNode = intersection2Node.computeIfAbsent(cell2Intersection.get(roadCells[0]),
+					intersection -> new RoadNode(intersection2Node.size() + "", intersection.x, intersection.y, distFunc));
+			RoadNode endNode = intersection2Node.computeIfAbsent(cell2Intersection.get(roadCells[roadCells.length - 1]),
+					intersection -> new RoadNode(intersection2Node.size() + "", intersection.x, intersection.y, distFunc));
+			if (startNode == endNode)
+				continue;    // the loops are removed as in the output map of the Python version
+			List<RoadNode> nodeList = new ArrayList<>(roadCells.length);
+			nodeList.add(startNode);
+			for (int i = 1; i < roadCells.length - 1; i++)
+				nodeList.add(new RoadNode("", raster.cellX(roadCells[i]), raster.cellY(roadCells[i]), distFunc));
+			nodeList.add(endNode);
+			RoadWay way = dpFilter.dpSimplifier(new RoadWay(wayList.size() / 2 + 1 + "", nodeList, distFunc));
+			List<RoadNode> reverseNodeList = new ArrayList<>(way.size());
+			reverseNodeList.add(endNode);
+			for (int i = way.size() - 2; i > 0; i--) {
+				way.getNode(i).setId(miniNodeCount++ + "-");
+				reverseNodeList.add(new RoadNode(miniNodeCount++ + "-", way.getNode(i).lon(), way.getNode(i).lat(), distFunc));
+			}
+			reverseNodeList.add(startNode);
+			wayList.add(way);
+			wayList.add(new RoadWay("-" + way.getID(), reverseNodeList, distFunc));
+		}
+		Set<RoadNode> usedNodeSet = new LinkedHashSet<>();
+		for (RoadWay way : wayList) {
+			usedNodeSet.add(way.getFromNode());
+			usedNodeSet.add(way.getToNode());
+		}
+		List<RoadNode> nodeList = new ArrayList<>();
+		for (RoadNode node : intersection2Node.values()) {
+			if (usedNodeSet.contains(node))
+				nodeList.add(node);
+		}
+		RoadNetworkGraph resultMap = new RoadNetworkGraph(false, distFunc);
+		resultMap.addNodes(nodeList);
+		resultMap.addWays(wayList);
+		return resultMap;
+	}
+	
+	/**
+	 * Trace the road cells from a crossing until the next crossing. The traced cells are removed from the image.
+	 *
+	 * @return The cells of the road, which start and end at a crossing cell, or null if the road does not reach any crossing.
+	 */
+	private static int[] traceRoad(Raster raster, byte[] image, int startCell, int crossingCell) {
+		List<Integer> roadCells = new ArrayList<>();
+		roadCells.add(crossingCell);
+		ArrayDeque<Integer> queue = new ArrayDeque<>();
+		image[startCell] = 0;
+		queue.add(startCell);
+		while (!queue.isEmpty()) {
+			int currCell = queue.poll();
+			roadCells.add(currCell);
+			for (int k : TRACE_ORDER) {
+				int neighbour = currCell + raster.neighbourOffsets[k];
+				if (image[neighbour] == 1) {
+					image[neighbour] = 0;
+					queue.add(neighbour);
+				}
+			}
+		}
+		// the crossing next to the last road cell, or the closest one to the end if the last cell is not next to any crossing
+		for (int i = roadCells.size() - 1; i > 0; i--) {
+			for (int k : TRACE_ORDER) {
+				int neighbour = roadCells.get(i) + raster.neighbourOffsets[k];
+				if (image[neighbour] >= 2) {
+					int[] result = new int[i + 2];
+					for (int j = 0; j <= i; j++)
+						result[j] = roadCells.get(j);
+					result[i + 1] = neighbour;
+					return result;
+				}
+			}
+		}
+		LOG.debug("A skeleton road does not end at any crossing, skip it.");
+		return null;
+	}
+	
+	/**
+	 * @return The sorted distinct values of <tt>values[0 ... count-1]</tt>.
+	 */
+	private static int[] distinct(int[] values, int count) {
+		int[] sorted = Arrays.copyOf(values, count);
+		Arrays.sort(sorted);
+		int distinctCount = 0;
+		for (int i = 0; i < count; i++) {
+			if (i == 0 || sorted[i] != sorted[i - 1])
+				sorted[distinctCount++] = sorted[i];
+		}
+		return Arrays.copyOf(sorted, distinctCount);
+	}
+	
+	/**
+	 * The grid covering all trajectory points with a margin, the row index increases southwards as in the image of the Python version.
+	 */
+	private static final class Raster {
+		private final double minX;
+		private final double maxY;
+		private final double cellWidth;    // the coordinate offsets of the cell size
+		private final double cellHeight;
+		private final int width;
+		private final int height;
+		private final int margin;
+		private final int[] neighbourOffsets = new int[8];    // the index offsets of the 8 neighbours
+		
+		private Raster(List<Trajectory> trajList, DistanceFunction distFunc, double cellSize, int margin) {
+			double minX = Double.POSITIVE_INFINITY;
+			double maxX = Double.NEGATIVE_INFINITY;
+			double minY = Double.POSITIVE_INFINITY;
+			double maxY = Double.NEGATIVE_INFINITY;
+			for (Trajectory traj : trajList) {
+				for (TrajectoryPoint point : traj) {
+					minX = Math.min(minX, point.x());
+					maxX = Math.max(maxX, point.x());
+					minY = Math.min(minY, point.y());
+					maxY = Math.max(maxY, point.y());
+				}
+			}
+			this.cellWidth = distFunc.getCoordinateOffsetX(cellSize, (minY + maxY) / 2);
+			this.cellHeight = distFunc.getCoordinateOffsetY(cellSize, (minX + maxX) / 2);
+			this.margin = margin;
+			this.minX = minX - margin * cellWidth;
+			this.maxY = maxY + margin * cellHeight;
+			long gridWidth = (long) Math.floor((maxX - minX) / cellWidth) + 1 + 2L * margin;
+			long gridHeight = (long) Math.floor((maxY - minY) / cellHeight) + 1 + 2L * margin;
+			if (gridWidth * gridHeight > Integer.MAX_VALUE - 8)
+				throw new IllegalArgumentException("The KDE grid is too large: " + gridWidth + "x" + gridHeight + ", increase the cell size.");
+			this.width = (int) gridWidth;
+			this.height = (int) gridHeight;
+			for (int k = 0; k < 8; k++)
+				neighbourOffsets[k] = offset(NEIGHBOUR_ROWS[k], NEIGHBOUR_COLS[k]);
+		}
+		
+		private int size() {
+			return width * height;
+		}
+		
+		private int row(double y) {
+			return Math.min(height - 1 - margin, Math.max(margin, (int) Math.floor((maxY - y) / cellHeight)));
+		}
+		
+		private int col(double x) {
+			return Math.min(width - 1 - margin, Math.max(margin, (int) Math.floor((x - minX) / cellWidth)));
+		}
+		
+		private int index(int row, int col) {
+			return row * width + col;
+		}
+		
+		private int offset(int rowDiff, int colDiff) {
+			return rowDiff * width + colDiff;
+		}
+		
+		/**
+		 * @return True if the cell is not on the border required by the crossing detection.
+		 */
+		private boolean isInner(int cell) {
+			int row = cell / width;
+			int col = cell % width;
+			return row >= BORDER && row < height - BORDER && col >= BORDER && col < width - BORDER;
+		}
+		
+		private double x(double col) {
+			return minX + (col + 0.5) * cellWidth;
+		}
+		
+		private double y(double row) {
+			return maxY - (row + 0.5) * cellHeight;
+		}
+		
+		private double cellX(int cell) {
+			return x(cell % width);
+		}
+		
+		private double cellY(int cell) {
+			return y(cell / width);
+		}
+	}
+	
+	/**
+	 * Removes the duplicate cells in the cell lists of thinning without sorting. A cell is marked by the stamp of the current operation,
+	 * so the marks never need to be cleared.
+	 */
+	private static final class CellMarks {
+		private final int[] marks;
+		private int stamp = 0;
+		
+		private CellMarks(int size) {
+			this.marks = new int[size];
+		}
+		
+		/**
+		 * @return The distinct cells of <tt>cells[0 ... count-1]</tt>, in the order of their first occurrence.
+		 */
+		private int[] distinct(int[] cells, int count) {
+			stamp++;
+			int[] result = new int[count];
+			int distinctCount = 0;
+			for (int i = 0; i < count; i++) {
+				if (marks[cells[i]] != stamp) {
+					marks[cells[i]] = stamp;
+					result[distinctCount++] = cells[i];
+				}
+			}
+			return Arrays.copyOf(result, distinctCount);
+		}
+		
+		private int[] union(int[] cells1, int[] cells2) {
+			int[] cells = Arrays.copyOf(cells1, cells1.length + cells2.length);
+			System.arraycopy(cells2, 0, cells, cells1.length, cells2.length);
+			return distinct(cells, cells.length);
+		}
+	}
+	
+	/**
+	 * A group of adjacent crossing cells, located at the centre of the cells.
+	 */
+	private static final class Intersection {
+		private final double x;
+		private final double y;
+		
+		private Intersection(Raster raster, List<Integer> cells) {
+			double rowSum = 0;
+			double colSum = 0;
+			for (int cell : cells) {
+				rowSum += cell / raster.width;
+				colSum += cell % raster.width;
+			}
+			this.x = raster.x(colSum / cells.size());
+			this.y = raster.y(rowSum / cells.size());
+		}
+	}
+}
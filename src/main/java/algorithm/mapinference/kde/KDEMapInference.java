@@ -8,6 +8,7 @@ import util.io.IOService;
 import util.object.roadnetwork.RoadNetworkGraph;
 import util.object.roadnetwork.RoadNode;
 import util.object.roadnetwork.RoadWay;
+import util.object.spatialobject.Trajectory;
 import util.settings.BaseProperty;
 
 import java.io.BufferedReader;
@@ -18,7 +19,8 @@ import java.util.*;
 
 /**
  * Command line entrance for Biagioni KDE map inference algorithm. The original code is written in Python and we run the Python code
- * through this class.
+ * through this class. The density, skeleton and graph extraction steps are also available in Java by {@link KDEInferenceEngine}, which
+ * runs on the trajectories in memory without the Python subprocess.
  * <p>
  * Reference:
  * <p>
@@ -34,11 +36,32 @@ public class KDEMapInference {
 	private int cellSize;    // meter
 	private int gaussianBlur;
 	private String os;
+	private boolean isNativeInference;    // run the map inference in Java instead of Python
+	private int numOfThreads;    // the number of threads in Java map inference, -1 = full utilisation
 	
 	public KDEMapInference(BaseProperty prop) {
 		this.cellSize = prop.getPropertyInteger("algorithm.mapinference.kde.CellSize");
 		this.gaussianBlur = prop.getPropertyInteger("algorithm.mapinference.kde.GaussianBlur");
 		this.os = prop.getPropertyString("OS");
+		this.isNativeInference = prop.contains("algorithm.mapinference.kde.NativeInference")
+				&& prop.getPropertyBoolean("algorithm.mapinference.kde.NativeInference");
+		this.numOfThreads = prop.contains("algorithm.mapinference.kde.NumOfThreads") ?
+				prop.getPropertyInteger("algorithm.mapinference.kde.NumOfThreads") : -1;
+	}
+	
+	public boolean isNativeInference() {
+		return isNativeInference;
+	}
+	
+	/**
+	 * Run the KDE map inference in Java. Only the density, skeleton and graph extraction steps are performed, the topology refinement
+	 * of the Python version, which map-matches the trajectories to the skeleton map, is not included.
+	 *
+	 * @param trajList The input trajectories.
+	 * @return The inferred map, in the coordinate system of the trajectories.
+	 */
+	public RoadNetworkGraph mapInferenceProcess(List<Trajectory> trajList) {
+		return new KDEInferenceEngine(this.cellSize, this.gaussianBlur, this.numOfThreads).inferMap(trajList);
 	}
 	
 	// use python script to run map inference python code
@@ -0,0 +1,157 @@
+package algorithm.mapinference.lineclustering;
+
+import util.function.DistanceFunction;
+import util.function.HausdorffDistanceFunction;
+import util.object.spatialobject.Trajectory;
+import util.object.spatialobject.TrajectoryPoint;
+
+import java.util.*;
+
+/**
+ * Candidate search for trajectory clustering. If the Hausdorff distance between two trajectories is below the threshold, each corner
+ * of their bounding boxes is within the threshold from the same corner of the other box. So the member trajectories of the clusters
+ * are bucketed by the lower-left corner of their bounding boxes into a grid whose cell size is the coordinate offset of the threshold,
+ * and only the members in the 3x3 cells around a query trajectory, whose bounding boxes pass the corner check, are compared by the
+ * Hausdorff distance. The clustering result is the same as comparing the trajectory with every cluster.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+final class ClusterIndex {
+
+	// The coordinate offset of the threshold is enlarged by this ratio to absorb the rounding of the distance function.
+	private static final double OFFSET_MARGIN = 1.01;
+
+	private final HausdorffDistanceFunction hausdorffDistFunc;
+	private final double distThresh;
+	private final double cellWidth;    // the coordinate offsets of the distance threshold
+	private final double cellHeight;
+	private final Map<Long, List<Integer>> cell2MemberList = new HashMap<>();
+	private final List<Integer> emptyMemberList = new ArrayList<>();    // the members without points, which have no bounding box
+	private final List<HausdorffDistanceFunction.IndexedTrajectory> memberList = new ArrayList<>();
+	private final List<Cluster> memberOwnerList = new ArrayList<>();    // the cluster each member currently belongs to
+	private final Map<Cluster, List<Integer>> cluster2MemberList = new HashMap<>();
+	private final Map<Cluster, Integer> cluster2Order = new HashMap<>();    // the creation order of the clusters
+	private int clusterCount = 0;
+
+	/**
+	 * Create an empty index.
+	 *
+	 * @param trajList   All trajectories to be clustered, used to find the coordinate offset of the threshold.
+	 * @param df         The distance function of the trajectories.
+	 * @param distThresh The maximum allowable distance between trajectories within one cluster.
+	 */
+	ClusterIndex(List<Trajectory> trajList, DistanceFunction df, double distThresh) {
+		this.hausdorffDistFunc = new HausdorffDistanceFunction(df);
+		this.distThresh = distThresh;
+		// the longitude offset of a distance is the largest at the highest latitude
+		double maxAbsY = 0;
+		for (Trajectory traj : trajList) {
+			for (TrajectoryPoint point : traj)
+				maxAbsY = Math.max(maxAbsY, Math.abs(point.y()));
+		}
+		this.cellWidth = df.getCoordinateOffsetX(distThresh, maxAbsY) * OFFSET_MARGIN;
+		this.cellHeight = df.getCoordinateOffsetY(distThresh, 0) * OFFSET_MARGIN;
+	}
+
+	/**
+	 * Register a new cluster with its first trajectory.
+	 */
+	void addCluster(Cluster cluster, Trajectory traj) {
+		cluster2Order.put(cluster, clusterCount++);
+		cluster2MemberList.put(cluster, new ArrayList<>());
+		addMember(cluster, traj);
+	}
+
+	/**
+	 * Register a trajectory added to an existing cluster.
+	 */
+	void addMember(Cluster cluster, Trajectory traj) {
+		int memberIndex = memberList.size();
+		HausdorffDistanceFunction.IndexedTrajectory member = hausdorffDistFunc.index(traj);
+		memberList.add(member);
+		memberOwnerList.add(cluster);
+		cluster2MemberList.get(cluster).add(memberIndex);
+		if (member.size() == 0)
+			emptyMemberList.add(memberIndex);
+		else if (isSearchable())
+			cell2MemberList.computeIfAbsent(getCellID(cellIndex(member.minX(), cellWidth), cellIndex(member.minY(), cellHeight)),
+					k -> new ArrayList<>()).add(memberIndex);
+	}
+
+	/**
+	 * Move all members of the removed cluster to the merged cluster, same as {@link Cluster#merge(Cluster)}.
+	 */
+	void mergeCluster(Cluster mergedCluster, Cluster removedCluster) {
+		List<Integer> removedMemberList = cluster2MemberList.remove(removedCluster);
+		for (int memberIndex : removedMemberList)
+			memberOwnerList.set(memberIndex, mergedCluster);
+		cluster2MemberList.get(mergedCluster).addAll(removedMemberList);
+		cluster2Order.remove(removedCluster);
+	}
+
+	/**
+	 * Find the clusters whose distance to the trajectory is below the threshold, which is the minimum Hausdorff distance between the
+	 * trajectory and the cluster members.
+	 *
+	 * @param traj The query trajectory.
+	 * @return The clusters close to the trajectory, in the order of creation.
+	 */
+	List<Cluster> getCloseClusters(Trajectory traj) {
+		if (!isSearchable())
+			return new ArrayList<>();
+		HausdorffDistanceFunction.IndexedTrajectory query = hausdorffDistFunc.index(traj);
+		Map<Cluster, List<Integer>> candidateMap = new HashMap<>();
+		if (query.size() == 0) {
+			// the distance between two empty trajectories is 0, while an empty and a non-empty trajectory are infinitely far apart
+			for (int memberIndex : emptyMemberList)
+				candidateMap.computeIfAbsent(memberOwnerList.get(memberIndex), k -> new ArrayList<>()).add(memberIndex);
+		} else {
+			long cellX = cellIndex(query.minX(), cellWidth);
+			long cellY = cellIndex(query.minY(), cellHeight);
+			for (long x = cellX - 1; x <= cellX + 1; x++) {
+				for (long y = cellY - 1; y <= cellY + 1; y++) {
+					List<Integer> cellMemberList = cell2MemberList.get(getCellID(x, y));
+					if (cellMemberList == null)
+						continue;
+					for (int memberIndex : cellMemberList) {
+						if (isBoundaryClose(memberList.get(memberIndex), query))
+							candidateMap.computeIfAbsent(memberOwnerList.get(memberIndex), k -> new ArrayList<>()).add(memberIndex);
+					}
+				}
+			}
+		}
+		List<Cluster> candidateClusterList = new ArrayList<>(candidateMap.keySet());
+		candidateClusterList.sort(Comparator.comparingInt(cluster2Order::get));
+		List<Cluster> resultList = new ArrayList<>();
+		for (Cluster cluster : candidateClusterList) {
+			for (int memberIndex : candidateMap.get(cluster)) {
+				if (hausdorffDistFunc.isWithinDistance(memberList.get(memberIndex), query, distThresh)) {
+					resultList.add(cluster);
+					break;
+				}
+			}
+		}
+		return resultList;
+	}
+
+	/**
+	 * No trajectories are within a non-positive threshold, and the grid cannot be built.
+	 */
+	private boolean isSearchable() {
+		return cellWidth > 0 && cellHeight > 0;
+	}
+
+	private boolean isBoundaryClose(HausdorffDistanceFunction.IndexedTrajectory traj1, HausdorffDistanceFunction.IndexedTrajectory traj2) {
+		return Math.abs(traj1.minX() - traj2.minX()) <= cellWidth && Math.abs(traj1.maxX() - traj2.maxX()) <= cellWidth
+				&& Math.abs(traj1.minY() - traj2.minY()) <= cellHeight && Math.abs(traj1.maxY() - traj2.maxY()) <= cellHeight;
+	}
+
+	private static long cellIndex(double value, double cellSize) {
+		return (long) Math.floor(value / cellSize);
+	}
+
+	private static long getCellID(long x, long y) {
+		return x * 0x9E3779B97F4A7C15L + y;    // collisions only merge cells, which are filtered by the boundary check
+	}
+}
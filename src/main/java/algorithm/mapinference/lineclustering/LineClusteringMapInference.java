@@ -14,6 +14,11 @@ import util.object.structure.Triplet;
 import util.settings.BaseProperty;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 /**
  * Trace clustering algorithm proposed in "X. Liu, J. Biagioni, J. Eriksson, Y. Wang, G. Forman, and Y. Zhu. Mining large-scale, sparse
@@ -77,7 +82,9 @@ public class LineClusteringMapInference {
 	}
 	
 	/**
-	 * Cluster the input trajectories according to their trajectory-wise distance.
+	 * Cluster the input trajectories according to their trajectory-wise distance. A trajectory joins the first cluster within the
+	 * distance threshold and merges all other clusters within the threshold into it. The close clusters are found through
+	 * {@link ClusterIndex} instead of comparing with every cluster.
 	 *
 	 * @param unmatchedTraj Input trajectories.
 	 * @param df            The distance measurement between points.
@@ -85,35 +92,13 @@ public class LineClusteringMapInference {
 	 * @return A list of clusters containing all trajectories.
 	 */
 	private List<Cluster> basicUnmatchedClustering(List<Triplet<Trajectory, String, String>> unmatchedTraj, DistanceFunction df, double distThresh) {
-		List<Cluster> resultClusterList = new ArrayList<>();
-		HausdorffDistanceFunction distFunc = new HausdorffDistanceFunction(df);
-		int clusterCount = 0;
-		for (Triplet<Trajectory, String, String> trajInfo : unmatchedTraj) {
-			Cluster mergedCluster = null;   // the current trajectory is merged to one of the existing cluster, null = not merged to any
-			Iterator<Cluster> it = resultClusterList.iterator();
-			Trajectory traj = trajInfo._1();
-			while (it.hasNext()) {
-				Cluster currCluster = it.next();
-				if (currCluster.getDistance(traj, distFunc) < distThresh) {  // current trajectory is going to be merged
-					if (mergedCluster == null) {  // not yet merged to any cluster, merge to the current one
-						currCluster.add(traj);
-						currCluster.addStartAnchor(trajInfo._2());
-						currCluster.addEndAnchor(trajInfo._3());
-						mergedCluster = currCluster;
-					} else {
-						mergedCluster.merge(currCluster);
-						it.remove();
-					}
-				}
-			}
-			if (mergedCluster == null) {  // no existing cluster is close to the current trajectory, create a new cluster
-				Cluster createCluster = new Cluster(clusterCount + "", traj);
-				createCluster.addStartAnchor(trajInfo._2());
-				createCluster.addEndAnchor(trajInfo._3());
-				resultClusterList.add(createCluster);
-				clusterCount++;
-			}
-		}
+		List<Trajectory> trajList = new ArrayList<>(unmatchedTraj.size());
+		for (Triplet<Trajectory, String, String> trajInfo : unmatchedTraj)
+			trajList.add(trajInfo._1());
+		List<Cluster> resultClusterList = indexedClustering(trajList, df, distThresh, (cluster, i) -> {
+			cluster.addStartAnchor(unmatchedTraj.get(i)._2());
+			cluster.addEndAnchor(unmatchedTraj.get(i)._3());
+		});
 		int trajCount = 0;
 		for (Cluster cluster : resultClusterList)
 			trajCount += cluster.size();
@@ -124,7 +109,8 @@ public class LineClusteringMapInference {
 	}
 	
 	/**
-	 * Cluster the input trajectories according to their trajectory-wise distance.
+	 * Cluster the input trajectories according to their trajectory-wise distance, see
+	 * {@link #basicUnmatchedClustering(List, DistanceFunction, double)}.
 	 *
 	 * @param trajList   Input trajectories.
 	 * @param df         The distance measurement between points.
@@ -132,36 +118,61 @@ public class LineClusteringMapInference {
 	 * @return A list of clusters containing all trajectories.
 	 */
 	private List<Cluster> basicClustering(List<Trajectory> trajList, DistanceFunction df, double distThresh) {
-		List<Cluster> resultClusterList = new ArrayList<>();
-		HausdorffDistanceFunction distFunc = new HausdorffDistanceFunction(df);
+		List<Cluster> resultClusterList = indexedClustering(trajList, df, distThresh, (cluster, i) -> {
+		});
+		int trajCount = 0;
+		for (Cluster cluster : resultClusterList)
+			trajCount += cluster.size();
+		if (trajCount != trajList.size())
+			LOG.info("The total number of clustered trajectory is not equivalent to the input: " + trajCount + ", " + trajList.size());
+		LOG.info("Basic clustering finished. Total number of clusters: " + resultClusterList.size() + ".");
+		return resultClusterList;
+	}
+	
+	/**
+	 * The clustering shared by {@link #basicClustering(List, DistanceFunction, double)} and
+	 * {@link #basicUnmatchedClustering(List, DistanceFunction, double)}.
+	 *
+	 * @param trajList      Input trajectories.
+	 * @param df            The distance measurement between points.
+	 * @param distThresh    The maximum allowable distance between trajectories within one cluster.
+	 * @param joinListener  Called once a trajectory, given by its index in the input, joins or creates a cluster.
+	 * @return A list of clusters in the order of creation.
+	 */
+	private List<Cluster> indexedClustering(List<Trajectory> trajList, DistanceFunction df, double distThresh,
+											BiConsumer<Cluster, Integer> joinListener) {
+		List<Cluster> clusterList = new ArrayList<>();
+		Set<Cluster> removedClusterSet = new HashSet<>();
+		ClusterIndex clusterIndex = new ClusterIndex(trajList, df, distThresh);
 		int clusterCount = 0;
-		for (Trajectory traj : trajList) {
+		for (int i = 0; i < trajList.size(); i++) {
+			Trajectory traj = trajList.get(i);
 			Cluster mergedCluster = null;   // the current trajectory is merged to one of the existing cluster, null = not merged to any
-			Iterator<Cluster> it = resultClusterList.iterator();
-			while (it.hasNext()) {
-				Cluster currCluster = it.next();
-				if (currCluster.getDistance(traj, distFunc) < distThresh) {  // current trajectory is going to be merged
-					if (mergedCluster == null) {  // not yet merged to any cluster, merge to the current one
-						currCluster.add(traj);
-						mergedCluster = currCluster;
-					} else {
-						mergedCluster.merge(currCluster);
-						it.remove();
-					}
+			for (Cluster currCluster : clusterIndex.getCloseClusters(traj)) {    // current trajectory is going to be merged
+				if (mergedCluster == null) {  // not yet merged to any cluster, merge to the current one
+					currCluster.add(traj);
+					clusterIndex.addMember(currCluster, traj);
+					joinListener.accept(currCluster, i);
+					mergedCluster = currCluster;
+				} else {
+					mergedCluster.merge(currCluster);
+					clusterIndex.mergeCluster(mergedCluster, currCluster);
+					removedClusterSet.add(currCluster);
 				}
 			}
 			if (mergedCluster == null) {  // no existing cluster is close to the current trajectory, create a new cluster
 				Cluster createCluster = new Cluster(clusterCount + "", traj);
-				resultClusterList.add(createCluster);
+				clusterIndex.addCluster(createCluster, traj);
+				joinListener.accept(createCluster, i);
+				clusterList.add(createCluster);
 				clusterCount++;
 			}
 		}
-		int trajCount = 0;
-		for (Cluster cluster : resultClusterList)
-			trajCount += cluster.size();
-		if (trajCount != trajList.size())
-			LOG.info("The total number of clustered trajectory is not equivalent to the input: " + trajCount + ", " + trajList.size());
-		LOG.info("Basic clustering finished. Total number of clusters: " + resultClusterList.size() + ".");
+		List<Cluster> resultClusterList = new ArrayList<>(clusterList.size() - removedClusterSet.size());
+		for (Cluster cluster : clusterList) {
+			if (!removedClusterSet.contains(cluster))
+				resultClusterList.add(cluster);
+		}
 		return resultClusterList;
 	}
 	
@@ -183,10 +194,13 @@ public class LineClusteringMapInference {
 		}
 		List<Cluster> initialClusterList = basicUnmatchedClustering(filteredTrajList, distFunc, maxClusteringDist);
 		
+		// a single trajectory is a road itself unless it is empty
+		RoadWay[] inferredRoads = fitPrincipalCurves(initialClusterList, cluster -> cluster.size() != 1 || cluster.getTraj(0).size() == 0,
+				distFunc, getNumOfThreads(prop));
 		List<RoadWay> outputRoadWay = new ArrayList<>();
 		DouglasPeuckerFilter dpFilter = new DouglasPeuckerFilter(dpEpsilon, distFunc);
-		PrincipalCurveGenerator principalCurveGen = new PrincipalCurveGenerator(distFunc);
-		for (Cluster cluster : initialClusterList) {
+		for (int clusterCount = 0; clusterCount < initialClusterList.size(); clusterCount++) {
+			Cluster cluster = initialClusterList.get(clusterCount);
 			if (cluster.size() == 1) {
 				List<RoadNode> currNodeList = new ArrayList<>();
 				Trajectory traj = cluster.getTraj(0);
@@ -215,15 +229,9 @@ public class LineClusteringMapInference {
 						continue;
 				}
 			}
-			try {
-//                System.out.println("Start " + cluster.getID() + " generation which has " + cluster.getTrajectoryList().size() + " " +
-//                        "trajectories.");
-				RoadWay inferredRoad = principalCurveGen.startPrincipalCurveGen(cluster);
+			if (inferredRoads[clusterCount] != null) {    // otherwise the principal curve generation failed, ignore the cluster
 				newRoadID2AnchorPoints.put(cluster.getId(), new Pair<>(cluster.getStartAnchorPoints(), cluster.getEndAnchorPoints()));
-				outputRoadWay.add(dpFilter.dpSimplifier(inferredRoad));
-			} catch (IllegalStateException | IndexOutOfBoundsException e) {
-//                e.printStackTrace();
-//                LOG.warning("WARNING! Ignore cluster " + cluster.getID() + " due to principal curve generation failure.");
+				outputRoadWay.add(dpFilter.dpSimplifier(inferredRoads[clusterCount]));
 			}
 		}
 		return outputRoadWay;
@@ -240,10 +248,11 @@ public class LineClusteringMapInference {
 			trajList.addAll(splitTrajectory(traj, maxAngleChange, distFunc));
 		}
 		List<Cluster> initialClusterList = basicClustering(trajList, distFunc, maxClusteringDist);
+		RoadWay[] inferredRoads = fitPrincipalCurves(initialClusterList, cluster -> cluster.size() != 1, distFunc, getNumOfThreads(prop));
 		List<RoadWay> outputRoadWay = new ArrayList<>();
 		DouglasPeuckerFilter dpFilter = new DouglasPeuckerFilter(dpEpsilon, distFunc);
-		PrincipalCurveGenerator principalCurveGen = new PrincipalCurveGenerator(distFunc);
-		for (Cluster cluster : initialClusterList) {
+		for (int clusterCount = 0; clusterCount < initialClusterList.size(); clusterCount++) {
+			Cluster cluster = initialClusterList.get(clusterCount);
 			if (cluster.size() == 1) {
 				List<RoadNode> currNodeList = new ArrayList<>();
 				Trajectory traj = cluster.getTraj(0);
@@ -258,20 +267,63 @@ public class LineClusteringMapInference {
 				outputRoadWay.add(dpFilter.dpSimplifier(currWay));
 				continue;
 			}
-			try {
-//                System.out.println("Start " + cluster.getID() + " generation which has " + cluster.getTrajectoryList().size() + " " +
-//                        "trajectories.");
-				RoadWay inferredRoad = principalCurveGen.startPrincipalCurveGen(cluster);
-				outputRoadWay.add(dpFilter.dpSimplifier(inferredRoad));
-			} catch (IllegalStateException | IndexOutOfBoundsException e) {
-				e.printStackTrace();
+			if (inferredRoads[clusterCount] != null)
+				outputRoadWay.add(dpFilter.dpSimplifier(inferredRoads[clusterCount]));
+			else
 				LOG.warn("WARNING! Ignore cluster " + cluster.getId() + " due to principal curve generation failure.");
-			}
 		}
 		
 		return convert2Map(outputRoadWay);
 	}
 	
+	/**
+	 * Fit the principal curves of the selected clusters concurrently. Each curve only depends on its own cluster, so the result is
+	 * independent of the number of threads.
+	 *
+	 * @param clusterList  The clusters.
+	 * @param isFitted     Whether a principal curve is needed for the cluster.
+	 * @param distFunc     The distance function.
+	 * @param numOfThreads The number of threads.
+	 * @return The inferred road of each cluster, null if the cluster is not selected or the principal curve generation fails.
+	 * @throws InterruptedException The fitting is interrupted.
+	 */
+	private RoadWay[] fitPrincipalCurves(List<Cluster> clusterList, Predicate<Cluster> isFitted, DistanceFunction distFunc,
+										 int numOfThreads) throws InterruptedException {
+		RoadWay[] inferredRoads = new RoadWay[clusterList.size()];
+		AtomicBoolean isInterrupted = new AtomicBoolean(false);
+		PrincipalCurveGenerator principalCurveGen = new PrincipalCurveGenerator(distFunc);
+		ForkJoinPool forkJoinPool = new ForkJoinPool(numOfThreads);
+		try {
+			forkJoinPool.submit(() -> IntStream.range(0, clusterList.size()).parallel().forEach(clusterCount -> {
+				Cluster cluster = clusterList.get(clusterCount);
+				if (isInterrupted.get() || !isFitted.test(cluster))
+					return;
+				try {
+					inferredRoads[clusterCount] = principalCurveGen.startPrincipalCurveGen(cluster);
+				} catch (IllegalStateException | IndexOutOfBoundsException e) {
+					LOG.debug("Principal curve generation failed for cluster " + cluster.getId() + ": " + e.getMessage());
+				} catch (InterruptedException e) {
+					isInterrupted.set(true);
+				}
+			})).join();
+		} finally {
+			forkJoinPool.shutdown();
+		}
+		if (isInterrupted.get())
+			throw new InterruptedException("The principal curve fitting is interrupted.");
+		return inferredRoads;
+	}
+	
+	private int getNumOfThreads(BaseProperty prop) {
+		int numOfThreads = prop.contains("algorithm.mapinference.lineclustering.NumOfThreads") ?
+				prop.getPropertyInteger("algorithm.mapinference.lineclustering.NumOfThreads") : -1;
+		if (numOfThreads == -1)
+			numOfThreads = Runtime.getRuntime().availableProcessors();
+		if (numOfThreads <= 0)
+			throw new IllegalArgumentException("The number of threads should be positive: " + numOfThreads);
+		return numOfThreads;
+	}
+	
 	private RoadNetworkGraph convert2Map(List<RoadWay> outputRoadWay) {
 		DistanceFunction distFunc = outputRoadWay.get(0).getDistanceFunction();
 		Map<String, RoadNode> location2NodeMap = new LinkedHashMap<>();
@@ -1,7 +1,5 @@
 package algorithm.mapinference.lineclustering.pcurves.LinearAlgebra;
 
-import util.function.GreatCircleDistanceFunction;
-
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -32,7 +30,6 @@ abstract public class GraphAbstract extends Sample {
 	
 	final double Dist2Squared(Vektor vektor) {
 		double dist;
-		GreatCircleDistanceFunction distFunc = new GreatCircleDistanceFunction();
 		try {
 			dist = vektor.Dist2Squared(GetLineSegmentAt(0));
 		} catch (ArrayIndexOutOfBoundsException e) {
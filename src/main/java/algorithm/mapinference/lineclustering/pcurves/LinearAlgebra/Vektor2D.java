@@ -22,7 +22,7 @@ public class Vektor2D extends VektorObject {
 	
 	double coordX;
 	double coordY;
-	private GreatCircleDistanceFunction distFunc = new GreatCircleDistanceFunction();
+	private static final GreatCircleDistanceFunction DIST_FUNC = new GreatCircleDistanceFunction();    // thread-safe, shared by all vektors
 	
 	Vektor2D() {
 		coordX = 0;
@@ -161,7 +161,7 @@ public class Vektor2D extends VektorObject {
 	
 	@Override
 	final public double Dist2(Vektor vektor) {
-		return distFunc.pointToPointDistance(this.coordX, this.coordY, ((Vektor2D) vektor).coordX, ((Vektor2D) vektor).coordY);
+		return DIST_FUNC.pointToPointDistance(this.coordX, this.coordY, ((Vektor2D) vektor).coordX, ((Vektor2D) vektor).coordY);
 	}
 	
 	@Override
@@ -178,7 +178,7 @@ public class Vektor2D extends VektorObject {
 		double coordY1 = point1.coordY;
 		double coordX2 = point2.coordX;
 		double coordY2 = point2.coordY;
-		return distFunc.pointToSegmentProjectionDistance(coordX, coordY, coordX1, coordY1, coordX2, coordY2);
+		return DIST_FUNC.pointToSegmentProjectionDistance(coordX, coordY, coordX1, coordY1, coordX2, coordY2);
 	}
 	
 	@Override
@@ -194,7 +194,7 @@ public class Vektor2D extends VektorObject {
 		double coordY1 = point1.coordY;
 		double coordX2 = point2.coordX;
 		double coordY2 = point2.coordY;
-		Point resultPoint = distFunc.getClosestPoint(coordX, coordY, coordX1, coordY1, coordX2, coordY2);
+		Point resultPoint = DIST_FUNC.getClosestPoint(coordX, coordY, coordX1, coordY1, coordX2, coordY2);
 		return new Vektor2D(resultPoint.x(), resultPoint.y());
 	}
 	
@@ -204,7 +204,7 @@ public class Vektor2D extends VektorObject {
 		Vektor2D point2 = (Vektor2D) line.GetVektor2();
 		if (point1.equals(point2))
 			return point1.Clone();
-		Point resultPoint = distFunc.getProjection(coordX, coordY, point1.coordX, point1.coordY, point2.coordX, point2.coordY);
+		Point resultPoint = DIST_FUNC.getProjection(coordX, coordY, point1.coordX, point1.coordY, point2.coordX, point2.coordY);
 		return new Vektor2D(resultPoint.x(), resultPoint.y());
 	}
 	
@@ -2,6 +2,10 @@ package algorithm.mapinference.lineclustering.pcurves.PrincipalCurve;
 
 import algorithm.mapinference.lineclustering.pcurves.Optimize.Optimizer;
 
+/**
+ * Fits a principal curve on the calling thread. The algorithm runs without any pause between the steps, and the curves fitted by
+ * different instances are independent, so multiple curves can be fitted concurrently on different threads.
+ */
 public class PrincipalCurveAlgorithm {
 	// Debug strings
 	public final static String DEBUG_INITIALIZE = "Initializing... ";
@@ -32,30 +36,18 @@ public class PrincipalCurveAlgorithm {
 		Continue();
 	}
 	
-	public synchronized void Continue() throws InterruptedException, IllegalStateException {
+	public void Continue() throws InterruptedException, IllegalStateException {
 		// Debug fd = new Debug(DEBUG_OUTER_ITERATION);
-		try {
-			wait(0, 1);
-		} catch (InterruptedException e) {
-		}
 		
 		// fd.SetIterator(principalCurve.GetSize()-2);
 		boolean cont = true;
 		while (cont) {
 			// fd.Iterate();
-			try {
-				wait(0, 1);
-			} catch (InterruptedException e) {
-			}
 			OuterStep();
 			cont = !stop && AddOneVertexAsMidpoint(false);
 		}
 		
 		// fd.Terminate();
-		try {
-			wait(0, 1);
-		} catch (InterruptedException e) {
-		}
 	}
 	
 	final public boolean InnerStep() throws IllegalStateException {
@@ -63,12 +55,8 @@ public class PrincipalCurveAlgorithm {
 		return OptimizeVertices();
 	}
 	
-	public synchronized void OuterStep() throws InterruptedException, IllegalStateException {
+	public void OuterStep() throws InterruptedException, IllegalStateException {
 		// Debug fd = new Debug(DEBUG_INNER_ITERATION);
-		try {
-			wait(0, 1);
-		} catch (InterruptedException e) {
-		}
 		iteration = 0;
 		boolean cont = true;
 		while (!stop && (iteration < 2 || cont) && iteration < 500) {
@@ -76,20 +64,12 @@ public class PrincipalCurveAlgorithm {
 				throw new InterruptedException();
 			iteration++;
 			// fd.Iterate();
-			try {
-				wait(0, 1);
-			} catch (InterruptedException e) {
-			}
 			cont = InnerStep();
 		}
 		// fd.Terminate();
-		try {
-			wait(0, 1);
-		} catch (InterruptedException e) {
-		}
 	}
 	
-	public synchronized void Initialize(int randomSeed) {
+	public void Initialize(int randomSeed) {
 		
 		iteration = 0;
 		
@@ -97,12 +77,8 @@ public class PrincipalCurveAlgorithm {
 		
 	}
 	
-	final public synchronized boolean AddOneVertexAsMidpoint(boolean addAnyway) {
+	final public boolean AddOneVertexAsMidpoint(boolean addAnyway) {
 		// Debug fd = new Debug(DEBUG_ADD_VERTEX_AS_ONE_MIDPOINT);
-		try {
-			wait(0, 1);
-		} catch (InterruptedException e) {
-		}
 		
 		boolean cont = false;
 		
@@ -114,32 +90,20 @@ public class PrincipalCurveAlgorithm {
 			cont = principalCurve.AddOneVertexAsMidpointOfLongestSegment(addAnyway);
 		
 		// fd.Terminate();
-		try {
-			wait(1);
-		} catch (InterruptedException e) {
-		}
 		
 		return cont;
 	}
 	
-	private synchronized void RepartitionVoronoiRegions() throws IllegalStateException {
+	private void RepartitionVoronoiRegions() throws IllegalStateException {
 		// Debug fd = new Debug(DEBUG_REPARTITION_VORONOI_REGIONS);
-		try {
-			wait(0, 1);
-		} catch (InterruptedException e) {
-		}
 		
 		principalCurve.RepartitionVoronoiRegions();
 		
 		// fd.Terminate();
 	}
 	
-	private synchronized boolean OptimizeVertices() {
+	private boolean OptimizeVertices() {
 		// Debug fd = new Debug(DEBUG_OPTIMIZE_VERTICES);
-		try {
-			wait(0, 1);
-		} catch (InterruptedException e) {
-		}
 		
 		principalCurve.SetSteepestDescentDirections();
 		Optimizer optimizer = new Optimizer(principalCurve);
@@ -147,10 +111,6 @@ public class PrincipalCurveAlgorithm {
 		double criterionAfter = optimizer.Optimize(principalCurveParameters.relativeChangeInCriterionThreshold, 1);
 		
 		// fd.Terminate();
-		try {
-			wait(1);
-		} catch (InterruptedException e) {
-		}
 		
 		return Math.abs((criterionBefore - criterionAfter) / criterionBefore) >= principalCurveParameters.relativeChangeInCriterionThreshold;
 	}
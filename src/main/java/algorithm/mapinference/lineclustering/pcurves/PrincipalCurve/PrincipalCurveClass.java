@@ -14,6 +14,8 @@ public class PrincipalCurveClass extends GraphAbstract implements Optimizable {
 	
 	private static final Logger LOG = Logger.getLogger(PrincipalCurveClass.class);
 	private List<Edge> edges;
+	private final Vektor prototypeVektor; // the vektor type of the sample, cloned by the vertices and statistics of this curve
+	private final PenaltyCoefficients penaltyCoefficients = new PenaltyCoefficients();
 	private PrincipalCurveSample sample;
 	private Sample oldVertices = new Sample(); // vertices from the previous iteration
 	private double MSE;
@@ -31,10 +33,19 @@ public class PrincipalCurveClass extends GraphAbstract implements Optimizable {
 		this.principalCurveParameters = principalCurveParameters;
 		points = new ArrayList<>(in_sample.getSize());
 		edges = new ArrayList<>(in_sample.getSize());
+		prototypeVektor = in_sample.GetPointAt(0).DefaultClone();
 		sample = new PrincipalCurveSample(in_sample);
 		MSE = penalty = objective = 0;
-		ElementVertex.principalCurve = this;
-		Vertex.prototypeVektor = in_sample.GetPointAt(0).DefaultClone();
+		// the vertices and edges created on this thread belong to this curve from now on
+		ElementVertex.SetCurrentPrincipalCurve(this);
+	}
+	
+	final public Vektor GetPrototypeVektor() {
+		return prototypeVektor;
+	}
+	
+	final public PenaltyCoefficients GetPenaltyCoefficients() {
+		return penaltyCoefficients;
 	}
 	
 	final public LineSegmentObject GetLineSegmentObjectAt(int index) {
@@ -374,13 +385,13 @@ public class PrincipalCurveClass extends GraphAbstract implements Optimizable {
 			oldVertices = Clone();
 		}
 		
-		PenaltyCoefficients.ANGLE_PENALTY_COEFFICIENT =
+		penaltyCoefficients.anglePenaltyCoefficient =
 				anglePenaltyCoefficient(GetNumOfLineSegments(), sample.GetWeight(), MSE) * sample.GetRadius()
 						* sample.GetRadius();
-		PenaltyCoefficients.LENGTH_PENALTY_COEFFICIENT =
+		penaltyCoefficients.lengthPenaltyCoefficient =
 				principalCurveParameters.relativeLengthPenaltyCoefficient
 						* anglePenaltyCoefficient(GetNumOfLineSegments(), sample.GetWeight(), MSE);
-		PenaltyCoefficients.WEIGHT_DIFFERENCE_PENALTY_COEFFICIENT = 0.01;
+		penaltyCoefficients.weightDifferencePenaltyCoefficient = 0.01;
 		
 		objective = MSE + penalty;
 		// System.out.println("\tAFTER:\tobjective = " + objective + "\tMSE = " + MSE + "\tpenalty = " + penalty);
@@ -676,14 +687,14 @@ public class PrincipalCurveClass extends GraphAbstract implements Optimizable {
 	// interface Optimizable BEGIN
 	// ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 	@Override
-	final public synchronized void OptimizingStep(double step) {
+	final public void OptimizingStep(double step) {
 		for (int i = 0; i < GetNumOfVertexes(); i++) {
 			GetVertexAt(i).AddEqual(steepestDescentDirections[i].Mul(step));
 		}
 	}
 	
 	@Override
-	final public synchronized double GetCriterion() {
+	final public double GetCriterion() {
 		MSE = 0;
 		penalty = 0;
 		int n = GetNumOfVertexes();
@@ -726,8 +737,7 @@ public class PrincipalCurveClass extends GraphAbstract implements Optimizable {
 		public PrincipalCurveSample(Sample in_sample) {
 			super(1);
 			this.sample = new Sample();
-			PrincipalCurveSampleVektor.prototypeVektor = in_sample.GetPointAt(0).DefaultClone();
-			statisticsDegreeOne = new OnlineSampleStatisticsDegreeOne(PrincipalCurveSampleVektor.prototypeVektor);
+			statisticsDegreeOne = new OnlineSampleStatisticsDegreeOne(prototypeVektor);
 			statistics[0] = statisticsDegreeOne;
 			for (int i = 0; i < in_sample.getSize(); i++)
 				AddPoint(new PrincipalCurveSampleVektor(in_sample.GetPointAt(i)));
@@ -6,7 +6,6 @@ import algorithm.mapinference.lineclustering.pcurves.LinearAlgebra.Vektor2D;
 import algorithm.mapinference.lineclustering.pcurves.LinearAlgebra.Weighted;
 
 final public class PrincipalCurveSampleVektor extends Vektor2D implements Weighted {
-	static public Vektor prototypeVektor;
 	public Object cluster;
 	private int indexOfNearestSegment;
 	// An UPPER BOUND of the distance from the second nearest segment
@@ -1,6 +1,7 @@
 package algorithm.mapinference.lineclustering.pcurves.PrincipalCurve.Vertex.Elements;
 
 import algorithm.mapinference.lineclustering.pcurves.LinearAlgebra.*;
+import algorithm.mapinference.lineclustering.pcurves.PrincipalCurve.PrincipalCurveClass;
 import algorithm.mapinference.lineclustering.pcurves.PrincipalCurve.PrincipalCurveSampleVektor;
 
 final public class Edge extends LineSegmentAbstract {
@@ -8,12 +9,13 @@ final public class Edge extends LineSegmentAbstract {
 	private int pointIndex1;
 	private int pointIndex2;
 	private EdgeCluster set;
+	private final PrincipalCurveClass principalCurve = ElementVertex.GetCurrentPrincipalCurve();
 	
 	public Edge(Sample in_curve, int in_pointIndex1, int in_pointIndex2) {
 		curve = in_curve;
 		pointIndex1 = in_pointIndex1;
 		pointIndex2 = in_pointIndex2;
-		set = new EdgeCluster(PrincipalCurveSampleVektor.prototypeVektor);
+		set = new EdgeCluster(principalCurve.GetPrototypeVektor());
 	}
 	
 	final public void IncrementPointIndexes(int lowerIndex) {
@@ -141,13 +143,13 @@ final public class Edge extends LineSegmentAbstract {
 	}
 	
 	final public double GetLengthPenalty() {
-		return PenaltyCoefficients.LENGTH_PENALTY_COEFFICIENT * GetEdgeAsLineSegmentObject().GetLengthSquared();
+		return principalCurve.GetPenaltyCoefficients().lengthPenaltyCoefficient * GetEdgeAsLineSegmentObject().GetLengthSquared();
 	}
 	
 	final public NumeratorAndDenominator GetNumeratorAndDenominatorForLengthPenalty() {
-		NumeratorAndDenominator nd = new NumeratorAndDenominator(Vertex.prototypeVektor);
-		nd.numerator.AddEqual(GetVektor2().Mul(PenaltyCoefficients.LENGTH_PENALTY_COEFFICIENT * 2));
-		nd.denominator += PenaltyCoefficients.LENGTH_PENALTY_COEFFICIENT * 2;
+		NumeratorAndDenominator nd = new NumeratorAndDenominator(principalCurve.GetPrototypeVektor());
+		nd.numerator.AddEqual(GetVektor2().Mul(principalCurve.GetPenaltyCoefficients().lengthPenaltyCoefficient * 2));
+		nd.denominator += principalCurve.GetPenaltyCoefficients().lengthPenaltyCoefficient * 2;
 		return nd;
 	}
 	
@@ -2,24 +2,44 @@ package algorithm.mapinference.lineclustering.pcurves.PrincipalCurve.Vertex.Elem
 
 import algorithm.mapinference.lineclustering.pcurves.PrincipalCurve.PrincipalCurveClass;
 
-// if you compile first time, comment out //*, and uncomment //**
-// once PrincipalCurve.PrincipalCurveClass exists, restore the file
 abstract public class ElementVertex {
-	public static PrincipalCurveClass principalCurve;// *
+	// the principal curve being fitted on each thread, a new element vertex belongs to the curve of its thread
+	private static final ThreadLocal<PrincipalCurveClass> CURRENT_PRINCIPAL_CURVE = new ThreadLocal<>();
+	protected final PrincipalCurveClass principalCurve = GetCurrentPrincipalCurve();
+	
+	static public PrincipalCurveClass GetCurrentPrincipalCurve() {
+		PrincipalCurveClass currPrincipalCurve = CURRENT_PRINCIPAL_CURVE.get();
+		if (currPrincipalCurve == null)
+			throw new IllegalStateException("No principal curve is being fitted on the current thread.");
+		return currPrincipalCurve;
+	}
+	
+	/**
+	 * Bind the principal curve to the current thread, the vertices and edges created afterwards on the thread belong to it.
+	 *
+	 * @param currPrincipalCurve The principal curve, or null to release the curve of the current thread.
+	 */
+	static public void SetCurrentPrincipalCurve(PrincipalCurveClass currPrincipalCurve) {
+		if (currPrincipalCurve == null)
+			CURRENT_PRINCIPAL_CURVE.remove();
+		else
+			CURRENT_PRINCIPAL_CURVE.set(currPrincipalCurve);
+	}
+	
+	final protected int GetEdgeVertexIndex1At(int index) {
+		return principalCurve.GetEdgeAt(index).GetVertexIndex1();
+	}
 	
-	static protected int GetEdgeVertexIndex1At(int index) {
-		return principalCurve.GetEdgeAt(index).GetVertexIndex1();// *
-		// ** return 0;
+	final protected int GetEdgeVertexIndex2At(int index) {
+		return principalCurve.GetEdgeAt(index).GetVertexIndex2();
 	}
 	
-	static protected int GetEdgeVertexIndex2At(int index) {
-		return principalCurve.GetEdgeAt(index).GetVertexIndex2();// *
-		// ** return 0;
+	final protected Edge GetEdgeAt(int index) {
+		return principalCurve.GetEdgeAt(index);
 	}
 	
-	static protected Edge GetEdgeAt(int index) {
-		return principalCurve.GetEdgeAt(index);// *
-		// ** return null;
+	final protected PenaltyCoefficients GetPenaltyCoefficients() {
+		return principalCurve.GetPenaltyCoefficients();
 	}
 	
 	abstract public void ReplaceEdgeIndexesForInsertion(int oei, int nei1, int nei2, Vertex vertex);
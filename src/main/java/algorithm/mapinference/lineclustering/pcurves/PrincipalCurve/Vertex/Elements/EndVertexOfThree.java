@@ -85,12 +85,12 @@ public class EndVertexOfThree extends EndVertexOfTwo {
 	}
 	
 	public double GetAnglePenalty() {
-		return (PenaltyCoefficients.ANGLE_PENALTY_COEFFICIENT * (1 + GetEdge1().GetVertex2().CosAngle(GetVertex(),
+		return (GetPenaltyCoefficients().anglePenaltyCoefficient * (1 + GetEdge1().GetVertex2().CosAngle(GetVertex(),
 				GetEdge2().GetVertex2())));
 	}
 	
 	public NumeratorAndDenominator GetNumeratorAndDenominatorForAnglePenalty() {
-		NumeratorAndDenominator nd = new NumeratorAndDenominator(Vertex.prototypeVektor);
+		NumeratorAndDenominator nd = new NumeratorAndDenominator(principalCurve.GetPrototypeVektor());
 		
 		Vektor c = GetVertex();
 		Vektor a = GetEdge1().GetVertex2();
@@ -102,12 +102,12 @@ public class EndVertexOfThree extends EndVertexOfTwo {
 		double Bd = Ad.Mul(Ad);
 		double Fc = Ac.Mul(Ad) / Bc;
 		if (Fc > -0.2) {
-			nd.numerator.AddEqual(Ad.Add(a).Mul(PenaltyCoefficients.ANGLE_PENALTY_COEFFICIENT));
-			nd.denominator += PenaltyCoefficients.ANGLE_PENALTY_COEFFICIENT;
+			nd.numerator.AddEqual(Ad.Add(a).Mul(GetPenaltyCoefficients().anglePenaltyCoefficient));
+			nd.denominator += GetPenaltyCoefficients().anglePenaltyCoefficient;
 		} else {
 			double J = 1 / Math.sqrt(Bc * Bd);
-			nd.numerator.AddEqual(Ad.Sub(a.Mul(Fc)).Mul(PenaltyCoefficients.ANGLE_PENALTY_COEFFICIENT * J));
-			nd.denominator += PenaltyCoefficients.ANGLE_PENALTY_COEFFICIENT * -J * Fc;
+			nd.numerator.AddEqual(Ad.Sub(a.Mul(Fc)).Mul(GetPenaltyCoefficients().anglePenaltyCoefficient * J));
+			nd.denominator += GetPenaltyCoefficients().anglePenaltyCoefficient * -J * Fc;
 		}
 		return nd;
 	}
@@ -129,7 +129,7 @@ final public class EndVertexOfY extends EndVertexOfThree {
 		Vertex ac = (Vertex) a.Sub(c);
 		Vertex ad = (Vertex) a.Sub(d);
 		
-		penalty += PenaltyCoefficients.ANGLE_PENALTY_COEFFICIENT * (1 + ac.Mul(ad) / (ac.Norm2() * ad.Norm2()));
+		penalty += GetPenaltyCoefficients().anglePenaltyCoefficient * (1 + ac.Mul(ad) / (ac.Norm2() * ad.Norm2()));
 		return penalty;
 	}
 	
@@ -148,8 +148,8 @@ final public class EndVertexOfY extends EndVertexOfThree {
 		double Fc = Ac.Mul(Ad) / Bc;
 		double J = 1 / Math.sqrt(Bc * Bd);
 		
-		nd.numerator.AddEqual(Ad.Sub(a.Mul(Fc)).Mul(PenaltyCoefficients.ANGLE_PENALTY_COEFFICIENT * J));
-		nd.denominator += PenaltyCoefficients.ANGLE_PENALTY_COEFFICIENT * -J * Fc;
+		nd.numerator.AddEqual(Ad.Sub(a.Mul(Fc)).Mul(GetPenaltyCoefficients().anglePenaltyCoefficient * J));
+		nd.denominator += GetPenaltyCoefficients().anglePenaltyCoefficient * -J * Fc;
 		
 		return nd;
 	}
@@ -187,7 +187,7 @@ final public class MiddleVertexOfThree extends ElementVertex implements HasTwoSy
 	}
 	
 	final public double GetAnglePenalty() {
-		return (PenaltyCoefficients.ANGLE_PENALTY_COEFFICIENT * (1 + GetVertex().CosAngle(GetEdge1().GetVertex2(),
+		return (GetPenaltyCoefficients().anglePenaltyCoefficient * (1 + GetVertex().CosAngle(GetEdge1().GetVertex2(),
 				GetEdge2().GetVertex2())));
 	}
 	
@@ -198,7 +198,7 @@ final public class MiddleVertexOfThree extends ElementVertex implements HasTwoSy
 	}
 	
 	final public NumeratorAndDenominator GetNumeratorAndDenominatorForAnglePenalty() {
-		NumeratorAndDenominator nd = new NumeratorAndDenominator(Vertex.prototypeVektor);
+		NumeratorAndDenominator nd = new NumeratorAndDenominator(principalCurve.GetPrototypeVektor());
 		
 		Vektor c = GetVertex();
 		Vektor a = GetEdge1().GetVertex2();
@@ -212,8 +212,8 @@ final public class MiddleVertexOfThree extends ElementVertex implements HasTwoSy
 		double Fb = Aa.Mul(Ab) / Bb;
 		double J = 1 / Math.sqrt(Ba * Bb);
 		
-		nd.numerator.AddEqual(a.Mul(1 - Fa).Add(b.Mul(1 - Fb)).Mul(PenaltyCoefficients.ANGLE_PENALTY_COEFFICIENT * J));
-		nd.denominator += PenaltyCoefficients.ANGLE_PENALTY_COEFFICIENT * J * (2 - Fa - Fb);
+		nd.numerator.AddEqual(a.Mul(1 - Fa).Add(b.Mul(1 - Fb)).Mul(GetPenaltyCoefficients().anglePenaltyCoefficient * J));
+		nd.denominator += GetPenaltyCoefficients().anglePenaltyCoefficient * J * (2 - Fa - Fb);
 		
 		return nd;
 	}
@@ -239,13 +239,13 @@ final public class MiddleVertexOfThree extends ElementVertex implements HasTwoSy
 	}
 	
 	final public NumeratorAndDenominator GetNumeratorAndDenominatorForWeightDifferencePenalty() {
-		NumeratorAndDenominator nd = new NumeratorAndDenominator(Vertex.prototypeVektor);
+		NumeratorAndDenominator nd = new NumeratorAndDenominator(principalCurve.GetPrototypeVektor());
 		
 		if (GetSetSizeSum() == 0 || GetSetWeightSum() == 0)
 			return nd;
 		
 		double num_1 =
-				PenaltyCoefficients.WEIGHT_DIFFERENCE_PENALTY_COEFFICIENT
+				GetPenaltyCoefficients().weightDifferencePenaltyCoefficient
 						* (GetEdgeAt(edgeIndex1).GetSetWeight() - GetEdgeAt(edgeIndex2).GetSetWeight())
 						/ (GetSetWeightSum());
 		nd.numerator.AddEqual(GetEdge1().GetVertex2().Sub(GetEdge2().GetVertex2()).Mul(num_1));
@@ -1,7 +1,8 @@
 package algorithm.mapinference.lineclustering.pcurves.PrincipalCurve.Vertex.Elements;
 
+// The penalty coefficients of one principal curve, updated by the curve after each repartition of the Voronoi regions
 final public class PenaltyCoefficients {
-	public static double ANGLE_PENALTY_COEFFICIENT;
-	public static double LENGTH_PENALTY_COEFFICIENT;
-	public static double WEIGHT_DIFFERENCE_PENALTY_COEFFICIENT;        // lambda
+	public double anglePenaltyCoefficient;
+	public double lengthPenaltyCoefficient;
+	public double weightDifferencePenaltyCoefficient;        // lambda
 }
@@ -1,18 +1,19 @@
 package algorithm.mapinference.lineclustering.pcurves.PrincipalCurve.Vertex.Elements;
 
 import algorithm.mapinference.lineclustering.pcurves.LinearAlgebra.*;
+import algorithm.mapinference.lineclustering.pcurves.PrincipalCurve.PrincipalCurveClass;
 import algorithm.mapinference.lineclustering.pcurves.PrincipalCurve.PrincipalCurveSampleVektor;
 import algorithm.mapinference.lineclustering.pcurves.Utilities.MyMath;
 
 abstract public class Vertex extends Vektor2D {
-	static public Vektor prototypeVektor;
+	protected final PrincipalCurveClass principalCurve = ElementVertex.GetCurrentPrincipalCurve();
 	public int label; // for marking checked vertices in creating paths, for filtering vertices
 	private VertexCluster set;
-	private double n = ElementVertex.principalCurve.GetSampleWeight();
+	private double n = principalCurve.GetSampleWeight();
 	
 	protected Vertex(Vektor vektor) {
 		super(vektor);
-		set = new VertexCluster(PrincipalCurveSampleVektor.prototypeVektor);
+		set = new VertexCluster(principalCurve.GetPrototypeVektor());
 	}
 	
 	protected Vertex(Vertex vertex) {
@@ -90,7 +91,7 @@ abstract public class Vertex extends Vektor2D {
 	}
 	
 	final public NumeratorAndDenominator GetNumeratorAndDenominatorForMSETimesWeight() {
-		NumeratorAndDenominator nd = new NumeratorAndDenominator(PrincipalCurveSampleVektor.prototypeVektor);
+		NumeratorAndDenominator nd = new NumeratorAndDenominator(principalCurve.GetPrototypeVektor());
 		nd.numerator.AddEqual(set.GetSum());
 		nd.denominator += set.GetWeight();
 		return nd;
@@ -8,6 +8,7 @@ import algorithm.mapinference.lineclustering.pcurves.PrincipalCurve.PrincipalCur
 import algorithm.mapinference.lineclustering.pcurves.PrincipalCurve.PrincipalCurveClass;
 import algorithm.mapinference.lineclustering.pcurves.PrincipalCurve.PrincipalCurveParameters;
 import algorithm.mapinference.lineclustering.pcurves.PrincipalCurve.SetOfCurves;
+import algorithm.mapinference.lineclustering.pcurves.PrincipalCurve.Vertex.Elements.ElementVertex;
 import util.function.DistanceFunction;
 import util.object.roadnetwork.RoadNode;
 import util.object.roadnetwork.RoadWay;
@@ -59,10 +60,15 @@ public class PrincipalCurveGenerator {
 		PrincipalCurveAlgorithm algorithmThread = new PrincipalCurveAlgorithm(principalCurve, principalCurveParameters);
 //        if (true)
 //            throw new RuntimeException("This interface should not be used because it does not deal with random seeds");
-		algorithmThread.start(0);
-		
-		// output principal curve coordinates
-		SetOfCurves savePrincipalCurve = principalCurve.ConvertToCurves();
+		SetOfCurves savePrincipalCurve;
+		try {
+			algorithmThread.start(0);
+			// output principal curve coordinates
+			savePrincipalCurve = principalCurve.ConvertToCurves();
+		} finally {
+			// the thread may be reused by other curves
+			ElementVertex.SetCurrentPrincipalCurve(null);
+		}
 		assert savePrincipalCurve != null;
 		List<RoadNode> roadNodeList = new ArrayList<>();
 		for (int i = 0; i < savePrincipalCurve.GetNumOfCurves(); i++) {
@@ -0,0 +1,112 @@
+package algorithm.mapmatching;
+
+/**
+ * A histogram of non-negative long values with bounded relative error, following the bucket layout of HdrHistogram. Values below 128
+ * are counted exactly, and larger values share a bucket with the values of the same highest 7 bits, so the relative error of a reported
+ * percentile is below 1/64. The memory footprint is fixed regardless of the number or range of recorded values.
+ * <p>
+ * The histogram is not thread-safe. Each thread is expected to record into its own histogram and the histograms are merged afterwards.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;    // the number of exact values at the start
+	private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;    // the number of buckets per power of two afterwards
+	private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (64 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT;
+
+	private final long[] counts = new long[BUCKET_COUNT];
+	private long totalCount = 0;
+	private long minValue = Long.MAX_VALUE;
+	private long maxValue = 0;
+	private double sum = 0;
+
+	/**
+	 * Record one value.
+	 *
+	 * @param value The value, should be non-negative.
+	 */
+	public void record(long value) {
+		if (value < 0)
+			throw new IllegalArgumentException("The recorded value should be non-negative: " + value);
+		counts[bucketIndex(value)]++;
+		totalCount++;
+		sum += value;
+		if (value < minValue)
+			minValue = value;
+		if (value > maxValue)
+			maxValue = value;
+	}
+
+	/**
+	 * Add all values recorded in another histogram to the current one.
+	 *
+	 * @param other The histogram to be merged, which is not changed.
+	 */
+	public void merge(LatencyHistogram other) {
+		for (int i = 0; i < BUCKET_COUNT; i++)
+			counts[i] += other.counts[i];
+		totalCount += other.totalCount;
+		sum += other.sum;
+		if (other.minValue < minValue)
+			minValue = other.minValue;
+		if (other.maxValue > maxValue)
+			maxValue = other.maxValue;
+	}
+
+	/**
+	 * Get the value at the given percentile, which is the highest value that shares the bucket with the exact percentile value.
+	 *
+	 * @param percentile The percentile, in the range of [0, 100].
+	 * @return The value at the percentile, 0 if the histogram is empty.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("The percentile should be within [0, 100]: " + percentile);
+		if (totalCount == 0)
+			return 0;
+		long targetCount = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+		long currCount = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			currCount += counts[i];
+			if (currCount >= targetCount)
+				return Math.min(highestEquivalentValue(i), maxValue);
+		}
+		return maxValue;
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	public long getMinValue() {
+		return totalCount == 0 ? 0 : minValue;
+	}
+
+	public long getMaxValue() {
+		return maxValue;
+	}
+
+	public double getMean() {
+		return totalCount == 0 ? 0 : sum / totalCount;
+	}
+
+	private static int bucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT)
+			return (int) value;
+		// the shift keeps the highest SUB_BUCKET_BITS bits of the value
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+		int subBucket = (int) (value >>> shift);    // within [SUB_BUCKET_HALF_COUNT, SUB_BUCKET_COUNT)
+		return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + subBucket - SUB_BUCKET_HALF_COUNT;
+	}
+
+	private static long highestEquivalentValue(int bucketIndex) {
+		if (bucketIndex < SUB_BUCKET_COUNT)
+			return bucketIndex;
+		int shift = (bucketIndex - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+		long subBucket = (bucketIndex - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
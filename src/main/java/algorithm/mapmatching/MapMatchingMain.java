@@ -2,10 +2,12 @@ package algorithm.mapmatching;
 
 import algorithm.mapinference.lineclustering.DouglasPeuckerFilter;
 import algorithm.mapmatching.hmm.HMMMapMatching;
+import algorithm.mapmatching.mht.MHTMapMatching;
 import algorithm.mapmatching.simpleHMM.SimpleHMMMatching;
 import algorithm.mapmatching.stmatching.FeatureSTMapMatching;
 import algorithm.mapmatching.weightBased.WeightBasedMapMatching;
 import org.apache.log4j.Logger;
+import util.dijkstra.RoutingGraph;
 import util.function.DistanceFunction;
 import util.function.GreatCircleDistanceFunction;
 import util.io.*;
@@ -23,7 +25,6 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -92,6 +93,11 @@ public class MapMatchingMain {
 						+ property.getPropertyString("data.OutlierPct") + "_"
 						+ property.getPropertyString("algorithm.mapmatching.Tolerance");
 				break;
+			case "MHT":
+				parameters = property.getPropertyString("data.DownSample") + "_"
+						+ property.getPropertyString("algorithm.mapmatching.WindowSize") + "_"
+						+ property.getPropertyString("algorithm.mapmatching.mht.BeamWidth");
+				break;
 			default:
 				parameters = "null";
 				break;
@@ -143,7 +149,8 @@ public class MapMatchingMain {
 				trajPointCount += currTraj.size();
 				RoadNetworkGraph currMap = mapReader.readRawMap(i);
 				if (matchingMethod.equals("OF-HMM-old")) {
-					HMMMapMatching mapMatching = new HMMMapMatching(currMap, property);
+					// the road insertion is not used here, so the matcher only needs the candidate search and routing of a snapshot
+					HMMMapMatching mapMatching = new HMMMapMatching(new MatchingMapSnapshot(currMap, false, property), property);
 					MatchResultWithUnmatchedTraj matchResult = mapMatching.doMatching(currTraj);
 					SimpleTrajectoryMatchResult currResult = new SimpleTrajectoryMatchResult(matchResult.getTrajID(),
 							matchResult.getMatchResult().getAllPointMatchResult().get(0),
@@ -165,41 +172,63 @@ public class MapMatchingMain {
 			System.out.println("Total number of trajectory points is " + trajPointCount);
 		} else if (dataSet.contains("Beijing")) {
 			distFunc = new GreatCircleDistanceFunction();
-			RoadNetworkGraph roadMap = MapReader.readMap(inputMapFolder + "0.txt", false, distFunc);
+			// the binary snapshot is created from the map files in the first run and loaded directly afterwards
+			BinaryMapSnapshot binaryMap = property.contains("algorithm.mapmatching.UseMapSnapshot")
+					&& property.getPropertyBoolean("algorithm.mapmatching.UseMapSnapshot") ?
+					BinaryMapSnapshot.readOrCreate(inputMapFolder + "0.txt", false, distFunc) : null;
+			RoadNetworkGraph roadMap = binaryMap != null ? binaryMap.getRoadMap() : MapReader.readMap(inputMapFolder + "0.txt", false,
+					distFunc);
+			if (property.contains("algorithm.mapmatching.UseContractionHierarchy")
+					&& property.getPropertyBoolean("algorithm.mapmatching.UseContractionHierarchy"))
+				property.setProperty("algorithm.mapmatching.path.ContractionHierarchyFile",
+						RoutingGraph.getContractionHierarchyPath(inputMapFolder + "0.txt"));
 			Stream<Trajectory> inputTrajStream;
 			if (!matchingMethod.contains("WGT")) {
 				inputTrajStream = TrajectoryReader.readTrajectoriesToStream(inputTrajFolder, downSampleRate, tolerance, distFunc);
 			} else {
 				inputTrajStream = TrajectoryReader.readTrajectoriesToStream(inputTrajFolder, downSampleRate, 0, distFunc);
 			}
+			boolean isParallelStreamMatching = property.contains("algorithm.mapmatching.ParallelStreamMatching")
+					&& property.getPropertyBoolean("algorithm.mapmatching.ParallelStreamMatching");
+			int maxInFlight = property.contains("algorithm.mapmatching.MaxInFlightTrajectory") ?
+					property.getPropertyInteger("algorithm.mapmatching.MaxInFlightTrajectory") : -1;
+			// the results of the parallel matching are written as soon as they are ready
+			IOService.createFolder(outputMatchResultFolder);
+			IOService.cleanFolder(outputMatchResultFolder);
 
 //			Stream<Trajectory> inputTrajStream = TrajectoryReader.readTrajectoriesToStream(inputTrajFolder, downSampleRate, distFunc);
-			List<Trajectory> inputTrajList = TrajectoryReader.readTrajectoriesToList(inputTrajFolder, downSampleRate, distFunc);
+			// the map structures are built once and shared by the matcher sessions of all worker threads
+			MatchingMapSnapshot mapSnapshot = binaryMap != null ? new MatchingMapSnapshot(binaryMap, matchingMethod.contains("WGT"),
+					property) : new MatchingMapSnapshot(roadMap, matchingMethod.contains("WGT"), property);
 			if (matchingMethod.equals("OF-HMM-old")) {
-				HMMMapMatching mapMatching = new HMMMapMatching(roadMap, property);
+				HMMMapMatching mapMatching = new HMMMapMatching(mapSnapshot, property);
 				long loadingTime = System.currentTimeMillis();
 				LOG.info("Loading complete, loading time: " + (loadingTime - startTaskTime) / 1000.0 + "s.");
-				Stream<MatchResultWithUnmatchedTraj> currCombinedMatchResultStream =
-						mapMatching.trajectoryStreamMatchingProcess(inputTrajStream);
-				List<MatchResultWithUnmatchedTraj> currMatchResultList = currCombinedMatchResultStream.collect(Collectors.toList());
-				for (MatchResultWithUnmatchedTraj currPair : currMatchResultList) {
-					SimpleTrajectoryMatchResult currResult = new SimpleTrajectoryMatchResult(currPair.getTrajID(),
-							currPair.getMatchResult().getAllPointMatchResult().get(0),
-							currPair.getMatchResult().getBestRoadIDList());
-					matchResultList.add(currResult);
-				}
+				mapMatching.trajectoryStreamMatchingProcess(inputTrajStream, currPair -> MatchResultWriter.writeMatchResult(
+						new SimpleTrajectoryMatchResult(currPair.getTrajID(), currPair.getMatchResult().getAllPointMatchResult().get(0),
+								currPair.getMatchResult().getBestRoadIDList()), outputMatchResultFolder));
 //				List<Trajectory> trajectoryList = TrajectoryReader.readTrajectoriesToList(inputTrajFolder, downSampleRate, distFunc);
 //				MatchResultWriter.writeTravelHistoryResults(trajectoryList, matchResultList, roadMap, outputMatchResultFolder);
+				LOG.info("Matching complete, matching time: " + (System.currentTimeMillis() - loadingTime) / 1000.0 + "s, total time:" +
+						(System.currentTimeMillis() - startTaskTime) / 1000.0 + "s.");
+			} else if (!isParallelStreamMatching) {
+				// the trajectories are matched one after another on the current thread, as in the earlier versions
+				List<Trajectory> inputTrajList = TrajectoryReader.readTrajectoriesToList(inputTrajFolder, downSampleRate, distFunc);
+				MapMatchingMethod mapMatching = chooseMatchMethod(matchingMethod, mapSnapshot, property, null);
+				long loadingTime = System.currentTimeMillis();
+				LOG.info("Loading complete, loading time: " + (loadingTime - startTaskTime) / 1000.0 + "s.");
+				matchResultList = mapMatching.sequentialMatching(inputTrajList, isOnline);
 				MatchResultWriter.writeMatchResults(matchResultList, outputMatchResultFolder);
 				LOG.info("Matching complete, matching time: " + (System.currentTimeMillis() - loadingTime) / 1000.0 + "s, total time:" +
 						(System.currentTimeMillis() - startTaskTime) / 1000.0 + "s.");
 			} else {
-				MapMatchingMethod mapMatching = chooseMatchMethod(matchingMethod, roadMap, property);
+				MatchingMetrics metrics = new MatchingMetrics();
 				long loadingTime = System.currentTimeMillis();
 				LOG.info("Loading complete, loading time: " + (loadingTime - startTaskTime) / 1000.0 + "s.");
-                matchResultList = mapMatching.sequentialMatching(inputTrajList, isOnline);
-//				matchResultList = mapMatching.parallelMatching(inputTrajStream, numOfThreads, isOnline);
-				MatchResultWriter.writeMatchResults(matchResultList, outputMatchResultFolder);
+				MapMatchingMethod.streamMatching(() -> chooseMatchMethod(matchingMethod, mapSnapshot, property, metrics), inputTrajStream,
+						numOfThreads, maxInFlight, isOnline, metrics, matchResult -> MatchResultWriter.writeMatchResult(matchResult,
+								outputMatchResultFolder));
+				metrics.writeCSV(property.getPropertyString("path.OutputMatchingMetricsFolder"), logFileName + ".csv");
 //				List<Trajectory> trajectoryList = TrajectoryReader.readTrajectoriesToList(inputTrajFolder, downSampleRate, distFunc);
 //				MatchResultWriter.writeTravelHistoryResults(trajectoryList, matchResultList, roadMap, outputMatchResultFolder);
 				LOG.info("Matching complete, matching time: " + (System.currentTimeMillis() - loadingTime) / 1000.0 + "s, total time:" +
@@ -216,8 +245,37 @@ public class MapMatchingMain {
 				return new FeatureSTMapMatching(roadMap, property);
 			case "SCO":
 				return new WeightBasedMapMatching(roadMap, property);
+			case "MHT":
+				return new MHTMapMatching(roadMap, property);
+			default:
+				throw new IllegalArgumentException("The matching method is not found: " + matchingMethod);
+		}
+	}
+	
+	/**
+	 * Create a matcher session of the given method on a shared map snapshot. The snapshot of the WGT method should be built on the
+	 * loose map.
+	 *
+	 * @param matchingMethod The name of the matching method.
+	 * @param mapSnapshot    The shared map snapshot.
+	 * @param property       The map-matching properties.
+	 * @param metrics        The metrics that record the time spent in each matching stage, currently only supported by the HMM
+	 *                       methods. Null if not required.
+	 * @return The matcher session.
+	 */
+	public static MapMatchingMethod chooseMatchMethod(String matchingMethod, MatchingMapSnapshot mapSnapshot, BaseProperty property,
+													  MatchingMetrics metrics) {
+		switch (matchingMethod.substring(3, 6)) {
+			case "HMM":
+				return new SimpleHMMMatching(mapSnapshot, property, metrics);
+			case "WGT":
+				return new FeatureSTMapMatching(mapSnapshot, property);
+			case "SCO":
+				return new WeightBasedMapMatching(mapSnapshot, property);
+			case "MHT":
+				return new MHTMapMatching(mapSnapshot, property);
 			default:
 				throw new IllegalArgumentException("The matching method is not found: " + matchingMethod);
 		}
 	}
-}
\ No newline at end of file
+}
@@ -6,11 +6,11 @@ import util.object.structure.Pair;
 import util.object.structure.SimpleTrajectoryMatchResult;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.ForkJoinTask;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 /**
@@ -52,64 +52,84 @@ public interface MapMatchingMethod {
 	 * @param inputTrajectory The input trajectory stream.
 	 * @param numOfThreads    The required number of threads. =-1 if full utilisation is expected.
 	 * @param isOnline        If the current map-matching process is online or offline.
-	 * @return List of map-matching results.
+	 * @return List of map-matching results, in completion order.
 	 * @throws ExecutionException   Errors during parallel processing.
 	 * @throws InterruptedException Concurrent error.
 	 */
 	default List<SimpleTrajectoryMatchResult> parallelMatching(Stream<Trajectory> inputTrajectory,
 															   int numOfThreads, boolean isOnline)
 			throws ExecutionException, InterruptedException {
-
-		if (inputTrajectory == null) {
-			throw new IllegalArgumentException("Trajectory stream for map-matching must not be null.");
-		}
-
-		// parallel processing
-		ForkJoinPool forkJoinPool;
-		if (numOfThreads == -1) {
-			forkJoinPool = ForkJoinPool.commonPool();
-		} else {
-			forkJoinPool = new ForkJoinPool(numOfThreads);
-		}
 		List<SimpleTrajectoryMatchResult> result = new ArrayList<>();
-		if (isOnline) {
-			ForkJoinTask<Stream<Pair<List<Double>, SimpleTrajectoryMatchResult>>> taskResult =
-					forkJoinPool.submit(() -> inputTrajectory.parallel().map(this::onlineMatching));
-
-			LOG.info("Current number of threads for map-matching: " + forkJoinPool.getParallelism());
-			while (!taskResult.isDone())
-				Thread.sleep(5);
+		streamMatching(inputTrajectory, numOfThreads, -1, isOnline, result::add);
+		return result;
+	}
 
-			// pull matching result
-			List<Pair<List<Double>, SimpleTrajectoryMatchResult>> tempRes = taskResult.get().collect(Collectors.toList());
-			for (Pair<List<Double>, SimpleTrajectoryMatchResult> tempRe : tempRes) {
-				result.add(tempRe._2());
-			}
+	/**
+	 * Conduct map-matching in parallel mode and hand over each result once it is ready, see {@link StreamMatchingExecutor}.
+	 *
+	 * @param inputTrajectory The input trajectory stream.
+	 * @param numOfThreads    The required number of threads. =-1 if full utilisation is expected.
+	 * @param maxInFlight     The maximum number of trajectories in process. =-1 if four times of the thread count is used.
+	 * @param isOnline        If the current map-matching process is online or offline.
+	 * @param resultConsumer  The receiver of the map-matching results, called on the current thread.
+	 * @return The number of trajectories matched.
+	 * @throws ExecutionException   Errors during parallel processing.
+	 * @throws InterruptedException Concurrent error.
+	 */
+	default int streamMatching(Stream<Trajectory> inputTrajectory, int numOfThreads, int maxInFlight, boolean isOnline,
+							   Consumer<SimpleTrajectoryMatchResult> resultConsumer) throws ExecutionException, InterruptedException {
+		return streamMatching(() -> this, inputTrajectory, numOfThreads, maxInFlight, isOnline, null, resultConsumer);
+	}
 
-			/* summarize latency */
-			List<Double> latencies = new ArrayList<>();
-			for (Pair<List<Double>, SimpleTrajectoryMatchResult> tempRe : tempRes) {
-				latencies.addAll(tempRe._1());
-			}
-			if (latencies.size() > 0) {
-				// get mean value
-				double sum = 0;
-				for (Double latency : latencies) {
-					sum += latency;
+	/**
+	 * Conduct map-matching in parallel mode with one matcher session per worker thread, so that the matcher does not need to be
+	 * thread-safe. The sessions are expected to share the map structures through a {@link MatchingMapSnapshot}.
+	 *
+	 * @param sessionFactory  Creates the matcher session of a worker thread.
+	 * @param inputTrajectory The input trajectory stream.
+	 * @param numOfThreads    The required number of threads. =-1 if full utilisation is expected.
+	 * @param maxInFlight     The maximum number of trajectories in process. =-1 if four times of the thread count is used.
+	 * @param isOnline        If the current map-matching process is online or offline.
+	 * @param metrics         The metrics that record the latency and throughput of the matching, null if not required.
+	 * @param resultConsumer  The receiver of the map-matching results, called on the current thread.
+	 * @return The number of trajectories matched.
+	 * @throws ExecutionException   Errors during parallel processing.
+	 * @throws InterruptedException Concurrent error.
+	 */
+	static int streamMatching(Supplier<? extends MapMatchingMethod> sessionFactory, Stream<Trajectory> inputTrajectory,
+							  int numOfThreads, int maxInFlight, boolean isOnline, MatchingMetrics metrics,
+							  Consumer<SimpleTrajectoryMatchResult> resultConsumer) throws ExecutionException, InterruptedException {
+		StreamMatchingExecutor executor = new StreamMatchingExecutor(numOfThreads, maxInFlight);
+		if (metrics != null)
+			metrics.start();
+		int matchCount;
+		if (isOnline) {
+			double[] latencySummary = new double[2];    // the sum and the count of latencies
+			matchCount = executor.executeWithSessions(inputTrajectory, sessionFactory, (session, traj) -> {
+				Pair<List<Double>, SimpleTrajectoryMatchResult> matchResult = session.onlineMatching(traj);
+				if (metrics != null)
+					metrics.recordTrajectory(traj.size(), matchResult._1());
+				return matchResult;
+			}, matchResult -> {
+				for (Double latency : matchResult._1()) {
+					latencySummary[0] += latency;
+					latencySummary[1]++;
 				}
-				LOG.info("Mean of latency is " + sum / latencies.size());
-			}
-
-		} else {
-			ForkJoinTask<Stream<SimpleTrajectoryMatchResult>> taskResult =
-					forkJoinPool.submit(() -> inputTrajectory.parallel().map(this::offlineMatching));
-
-			LOG.info("Current number of threads for map-matching: " + forkJoinPool.getParallelism());
-			while (!taskResult.isDone())
-				Thread.sleep(5);
-			result = taskResult.get().collect(Collectors.toList());
-		}
-		return result;
+				resultConsumer.accept(matchResult._2());
+			});
+			/* summarize latency */
+			if (latencySummary[1] > 0)
+				LOG.info("Mean of latency is " + latencySummary[0] / latencySummary[1]);
+		} else
+			matchCount = executor.executeWithSessions(inputTrajectory, sessionFactory, (session, traj) -> {
+				SimpleTrajectoryMatchResult matchResult = session.offlineMatching(traj);
+				if (metrics != null)
+					metrics.recordTrajectory(traj.size(), Collections.emptyList());
+				return matchResult;
+			}, resultConsumer);
+		if (metrics != null)
+			metrics.stop();
+		return matchCount;
 	}
 
 	/**
@@ -0,0 +1,114 @@
+package algorithm.mapmatching;
+
+import org.apache.log4j.Logger;
+import util.dijkstra.RoutingGraph;
+import util.function.DistanceFunction;
+import util.index.grid.SegmentGridIndex;
+import util.index.rtree.RTreeIndexing;
+import util.io.BinaryMapSnapshot;
+import util.object.roadnetwork.RoadNetworkGraph;
+import util.settings.BaseProperty;
+
+/**
+ * The map-side structures of map-matching, including the spatial indices, the routing graph and the road lookup of the map. A snapshot
+ * is built once and shared by any number of matcher sessions. None of its structures is modified after construction, and the mutable
+ * state of the shortest path search is kept per thread in {@link RoutingGraph}. The distance function of the map is also shared by all
+ * sessions, which is thread-safe for {@link util.function.GreatCircleDistanceFunction} and {@link util.function.EuclideanDistanceFunction}
+ * as their projection rounding is kept per thread. With these distance functions the sessions on different threads never interfere with
+ * each other.
+ * <p>
+ * Do not use a snapshot in map update, where roads are inserted into the routing graph during the matching.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+public class MatchingMapSnapshot {
+
+	private static final Logger LOG = Logger.getLogger(MatchingMapSnapshot.class);
+	private final RoadNetworkGraph roadMap;    // the input map, the road lookup of the final match result
+	private final RoadNetworkGraph matchingMap;    // the map used in candidate search and routing, can be the loose map of the input map
+	private final boolean isLooseMap;
+	private final DistanceFunction distFunc;
+	private final SegmentGridIndex segmentIndex;
+	private final RoutingGraph routingGraph;
+	private volatile RTreeIndexing rTreeIndex;    // only required by some matchers, built on the first request
+
+	/**
+	 * Build the snapshot of the map.
+	 *
+	 * @param roadMap            The input map.
+	 * @param isLooseMapRequired True if the candidate search and routing is performed on the loose map, see
+	 *                           {@link RoadNetworkGraph#toLooseMap()}.
+	 * @param property           The map-matching properties, used to configure the routing graph.
+	 */
+	public MatchingMapSnapshot(RoadNetworkGraph roadMap, boolean isLooseMapRequired, BaseProperty property) {
+		this(roadMap, isLooseMapRequired, null, property);
+	}
+
+	/**
+	 * Build the snapshot of a map read from a binary map snapshot, whose precomputed routing graph data is used unless the loose map is
+	 * required.
+	 *
+	 * @param binaryMap          The binary map snapshot.
+	 * @param isLooseMapRequired True if the candidate search and routing is performed on the loose map, see
+	 *                           {@link RoadNetworkGraph#toLooseMap()}.
+	 * @param property           The map-matching properties, used to configure the routing graph.
+	 */
+	public MatchingMapSnapshot(BinaryMapSnapshot binaryMap, boolean isLooseMapRequired, BaseProperty property) {
+		this(binaryMap.getRoadMap(), isLooseMapRequired, binaryMap, property);
+	}
+
+	private MatchingMapSnapshot(RoadNetworkGraph roadMap, boolean isLooseMapRequired, BinaryMapSnapshot binaryMap,
+								BaseProperty property) {
+		long startTime = System.currentTimeMillis();
+		this.roadMap = roadMap;
+		this.matchingMap = isLooseMapRequired ? roadMap.toLooseMap() : roadMap;
+		this.isLooseMap = isLooseMapRequired;
+		this.distFunc = roadMap.getDistanceFunction();
+		this.segmentIndex = new SegmentGridIndex(matchingMap);
+		this.routingGraph = binaryMap != null && !isLooseMapRequired ? binaryMap.createRoutingGraph(property) :
+				new RoutingGraph(matchingMap, false, property);
+		LOG.info("Map snapshot for map-matching is built, time spent: " + (System.currentTimeMillis() - startTime) / 1000.0 + "s.");
+	}
+
+	public RoadNetworkGraph getRoadMap() {
+		return roadMap;
+	}
+
+	public RoadNetworkGraph getMatchingMap() {
+		return matchingMap;
+	}
+
+	public boolean isLooseMap() {
+		return isLooseMap;
+	}
+
+	public DistanceFunction getDistanceFunction() {
+		return distFunc;
+	}
+
+	public SegmentGridIndex getSegmentIndex() {
+		return segmentIndex;
+	}
+
+	public RoutingGraph getRoutingGraph() {
+		return routingGraph;
+	}
+
+	/**
+	 * @return The R-tree index of the matching map, which is built on the first call.
+	 */
+	public RTreeIndexing getRTreeIndex() {
+		RTreeIndexing currIndex = rTreeIndex;
+		if (currIndex == null) {
+			synchronized (this) {
+				currIndex = rTreeIndex;
+				if (currIndex == null) {
+					currIndex = new RTreeIndexing(matchingMap);
+					rTreeIndex = currIndex;
+				}
+			}
+		}
+		return currIndex;
+	}
+}
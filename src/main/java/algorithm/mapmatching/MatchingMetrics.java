@@ -0,0 +1,194 @@
+package algorithm.mapmatching;
+
+import util.io.IOService;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Performance metrics of a map-matching run, including the latency percentiles of online matching, the throughput and the time spent
+ * in each matching stage. Every thread records into its own recorder without locking, the recorders are merged when the metrics are
+ * read, which should only happen after the matching finishes.
+ * <p>
+ * The latency is the delay between the arrival of a point and the output of its match, as returned by
+ * {@link MapMatchingMethod#onlineMatching}, measured in seconds of the trajectory time. The stage time is the wall-clock time spent in
+ * the stage summed over the matching threads, so it can exceed the elapsed time when multiple threads are used, and it includes the
+ * time a thread waits for the CPU. The stages are only recorded by {@link algorithm.mapmatching.simpleHMM.SimpleHMMMatching}, i.e.
+ * OF-HMM and the ON-HMM methods, the stage times of the other methods are always zero.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+public class MatchingMetrics {
+
+	private static final double[] LATENCY_PERCENTILES = {50, 95, 99};
+
+	/**
+	 * The stages of the matching of a point.
+	 */
+	public enum Stage {
+		CANDIDATE_SEARCH, ROUTING, VITERBI_UPDATE
+	}
+
+	private final Queue<Recorder> recorderList = new ConcurrentLinkedQueue<>();
+	private final ThreadLocal<Recorder> threadRecorder = ThreadLocal.withInitial(() -> {
+		Recorder recorder = new Recorder();
+		recorderList.add(recorder);
+		return recorder;
+	});
+	private volatile long startTime = -1;    // in nanosecond
+	private volatile long endTime = -1;
+
+	/**
+	 * Start the wall-clock timer of the throughput.
+	 */
+	public void start() {
+		startTime = System.nanoTime();
+		endTime = -1;
+	}
+
+	/**
+	 * Stop the wall-clock timer of the throughput.
+	 */
+	public void stop() {
+		if (startTime == -1)
+			throw new IllegalStateException("The metrics timer is stopped before it starts.");
+		endTime = System.nanoTime();
+	}
+
+	/**
+	 * Record a matched trajectory on the current thread.
+	 *
+	 * @param pointCount  The number of points in the trajectory.
+	 * @param latencyList The latencies of the points in seconds, can be empty in offline matching.
+	 */
+	public void recordTrajectory(int pointCount, List<Double> latencyList) {
+		Recorder recorder = threadRecorder.get();
+		recorder.trajCount++;
+		recorder.pointCount += pointCount;
+		for (Double latency : latencyList)
+			recorder.latencyHistogram.record(Math.round(Math.max(latency, 0) * 1000));    // stored in millisecond
+	}
+
+	/**
+	 * Start timing the given stage on the current thread, the stage being timed on the thread ends at the same time.
+	 *
+	 * @param stage The new stage.
+	 */
+	public void switchStage(Stage stage) {
+		Recorder recorder = threadRecorder.get();
+		long currTime = System.nanoTime();
+		if (recorder.currStage != null)
+			recorder.stageTime[recorder.currStage.ordinal()] += currTime - recorder.stageStartTime;
+		recorder.currStage = stage;
+		recorder.stageStartTime = currTime;
+	}
+
+	/**
+	 * End the stage being timed on the current thread.
+	 */
+	public void endStage() {
+		Recorder recorder = threadRecorder.get();
+		if (recorder.currStage != null)
+			recorder.stageTime[recorder.currStage.ordinal()] += System.nanoTime() - recorder.stageStartTime;
+		recorder.currStage = null;
+	}
+
+	/**
+	 * @return The latency histogram of all threads, in millisecond.
+	 */
+	public LatencyHistogram getLatencyHistogram() {
+		LatencyHistogram result = new LatencyHistogram();
+		for (Recorder recorder : recorderList)
+			result.merge(recorder.latencyHistogram);
+		return result;
+	}
+
+	public long getTrajectoryCount() {
+		long count = 0;
+		for (Recorder recorder : recorderList)
+			count += recorder.trajCount;
+		return count;
+	}
+
+	public long getPointCount() {
+		long count = 0;
+		for (Recorder recorder : recorderList)
+			count += recorder.pointCount;
+		return count;
+	}
+
+	/**
+	 * @param stage The matching stage.
+	 * @return The wall-clock time spent in the stage summed over all threads, in second.
+	 */
+	public double getStageTime(Stage stage) {
+		long time = 0;
+		for (Recorder recorder : recorderList)
+			time += recorder.stageTime[stage.ordinal()];
+		return time / 1e9;
+	}
+
+	/**
+	 * @return The wall-clock time between {@link #start()} and {@link #stop()}, or until now if not stopped, in second.
+	 */
+	public double getElapsedTime() {
+		if (startTime == -1)
+			return 0;
+		return ((endTime == -1 ? System.nanoTime() : endTime) - startTime) / 1e9;
+	}
+
+	/**
+	 * Summarise the metrics as lines of <tt>metric,value</tt> pairs with a header line.
+	 *
+	 * @return The CSV lines.
+	 */
+	public List<String> toCSVLines() {
+		DecimalFormat df = new DecimalFormat("0.###");
+		List<String> lines = new ArrayList<>();
+		lines.add("metric,value");
+		LatencyHistogram latencyHistogram = getLatencyHistogram();
+		lines.add("latency_count," + latencyHistogram.getTotalCount());
+		lines.add("latency_mean_sec," + df.format(latencyHistogram.getMean() / 1000));
+		for (double percentile : LATENCY_PERCENTILES)
+			lines.add("latency_p" + (int) percentile + "_sec," + df.format(latencyHistogram.getValueAtPercentile(percentile) / 1000.0));
+		lines.add("latency_max_sec," + df.format(latencyHistogram.getMaxValue() / 1000.0));
+		double elapsedTime = getElapsedTime();
+		long trajCount = getTrajectoryCount();
+		long pointCount = getPointCount();
+		lines.add("elapsed_sec," + df.format(elapsedTime));
+		lines.add("trajectory_count," + trajCount);
+		lines.add("point_count," + pointCount);
+		lines.add("trajectory_per_sec," + df.format(elapsedTime == 0 ? 0 : trajCount / elapsedTime));
+		lines.add("point_per_sec," + df.format(elapsedTime == 0 ? 0 : pointCount / elapsedTime));
+		for (Stage stage : Stage.values())
+			lines.add(stage.name().toLowerCase() + "_sec," + df.format(getStageTime(stage)));
+		return lines;
+	}
+
+	/**
+	 * Write the metrics summary to a CSV file.
+	 *
+	 * @param outputFolder The output folder, created if not exists.
+	 * @param fileName     The file name.
+	 */
+	public void writeCSV(String outputFolder, String fileName) {
+		IOService.createFolder(outputFolder);
+		IOService.writeFile(toCSVLines(), outputFolder, fileName);
+	}
+
+	/**
+	 * The metrics of one thread, only accessed by the thread itself until the metrics are read.
+	 */
+	private static class Recorder {
+		private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+		private final long[] stageTime = new long[Stage.values().length];    // in nanosecond
+		private long trajCount = 0;
+		private long pointCount = 0;
+		private Stage currStage = null;
+		private long stageStartTime;
+	}
+}
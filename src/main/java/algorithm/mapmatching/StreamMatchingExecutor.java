@@ -0,0 +1,148 @@
+package algorithm.mapmatching;
+
+import org.apache.log4j.Logger;
+import util.object.spatialobject.Trajectory;
+
+import java.util.Iterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Map-match a stream of trajectories on a fixed number of worker threads. A trajectory is only pulled from the input stream when less
+ * than <tt>maxInFlight</tt> trajectories are being matched or waiting to be handed over, so the memory usage is bounded regardless of
+ * the size of the input. Every result is handed to the consumer on the calling thread as soon as its matching completes, thus the
+ * consumer does not need to be thread-safe. The results are delivered in completion order instead of the input order.
+ * <p>
+ * A matcher which is not thread-safe can be run through {@link #executeWithSessions}, where each worker thread creates its own matcher
+ * session on the first trajectory it receives and keeps it until the execution ends.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+public class StreamMatchingExecutor {
+
+	private static final Logger LOG = Logger.getLogger(StreamMatchingExecutor.class);
+	private final int numOfThreads;
+	private final int maxInFlight;    // the maximum number of trajectories submitted but not yet handed over
+
+	/**
+	 * @param numOfThreads The number of worker threads. =-1 if full utilisation is expected.
+	 * @param maxInFlight  The maximum number of trajectories in process, should be no less than the number of threads. =-1 if four
+	 *                     times of the thread count is used.
+	 */
+	public StreamMatchingExecutor(int numOfThreads, int maxInFlight) {
+		this.numOfThreads = numOfThreads == -1 ? Runtime.getRuntime().availableProcessors() : numOfThreads;
+		if (this.numOfThreads <= 0)
+			throw new IllegalArgumentException("The number of threads should be positive: " + numOfThreads);
+		this.maxInFlight = maxInFlight == -1 ? this.numOfThreads * 4 : maxInFlight;
+		if (this.maxInFlight < this.numOfThreads)
+			throw new IllegalArgumentException("The number of in-flight trajectories should be no less than the number of threads: "
+					+ maxInFlight);
+	}
+
+	/**
+	 * Match all trajectories in the input stream and hand over the results.
+	 *
+	 * @param inputTrajectory The input trajectory stream, which is consumed sequentially on the calling thread. Null items are skipped.
+	 * @param matchingFunc    The map-matching function, called concurrently on the worker threads.
+	 * @param resultConsumer  The receiver of the matching results, called on the calling thread.
+	 * @param <R>             The type of the matching result.
+	 * @return The number of trajectories matched.
+	 * @throws ExecutionException   The matching of a trajectory fails, the remaining tasks are cancelled.
+	 * @throws InterruptedException The calling thread is interrupted.
+	 */
+	public <R> int execute(Stream<Trajectory> inputTrajectory, Function<Trajectory, R> matchingFunc, Consumer<R> resultConsumer)
+			throws ExecutionException, InterruptedException {
+		return executeWithSessions(inputTrajectory, () -> matchingFunc, Function::apply, resultConsumer);
+	}
+
+	/**
+	 * Match all trajectories in the input stream with one matcher session per worker thread and hand over the results. A session is
+	 * only accessed by the thread that creates it.
+	 *
+	 * @param inputTrajectory The input trajectory stream, which is consumed sequentially on the calling thread. Null items are skipped.
+	 * @param sessionFactory  Creates the matcher session of a worker thread, called concurrently on the worker threads.
+	 * @param matchingFunc    The map-matching function applied to the session of the current worker thread.
+	 * @param resultConsumer  The receiver of the matching results, called on the calling thread.
+	 * @param <S>             The type of the matcher session.
+	 * @param <R>             The type of the matching result.
+	 * @return The number of trajectories matched.
+	 * @throws ExecutionException   The matching of a trajectory fails, the remaining tasks are cancelled.
+	 * @throws InterruptedException The calling thread is interrupted.
+	 */
+	public <S, R> int executeWithSessions(Stream<Trajectory> inputTrajectory, Supplier<? extends S> sessionFactory,
+										  BiFunction<? super S, Trajectory, R> matchingFunc, Consumer<R> resultConsumer)
+			throws ExecutionException, InterruptedException {
+		if (inputTrajectory == null) {
+			throw new IllegalArgumentException("Trajectory stream for map-matching must not be null.");
+		}
+		if (sessionFactory == null) {
+			throw new IllegalArgumentException("Matcher session factory must not be null.");
+		}
+
+		// the worker threads only live within the current execution, so are their sessions
+		ThreadLocal<S> workerSession = ThreadLocal.withInitial(sessionFactory);
+
+		long startTime = System.currentTimeMillis();
+		ExecutorService workerPool = Executors.newFixedThreadPool(numOfThreads, new WorkerThreadFactory());
+		CompletionService<R> completionService = new ExecutorCompletionService<>(workerPool);
+		int inFlightCount = 0;
+		int completeCount = 0;
+		try {
+			LOG.info("Current number of threads for map-matching: " + numOfThreads + ", maximum in-flight trajectories: " + maxInFlight);
+			Iterator<Trajectory> trajIterator = inputTrajectory.sequential().iterator();
+			while (true) {
+				if (inFlightCount == maxInFlight) {    // wait until one slot is released before reading the next trajectory
+					resultConsumer.accept(completionService.take().get());
+					inFlightCount--;
+					completeCount++;
+				}
+				if (!trajIterator.hasNext())
+					break;
+				Trajectory currTraj = trajIterator.next();
+				if (currTraj == null)
+					continue;
+				completionService.submit(() -> matchingFunc.apply(workerSession.get(), currTraj));
+				inFlightCount++;
+				// hand over the finished results without waiting
+				Future<R> finishedTask;
+				while ((finishedTask = completionService.poll()) != null) {
+					resultConsumer.accept(finishedTask.get());
+					inFlightCount--;
+					completeCount++;
+				}
+			}
+			while (inFlightCount > 0) {
+				resultConsumer.accept(completionService.take().get());
+				inFlightCount--;
+				completeCount++;
+			}
+		} finally {
+			workerPool.shutdownNow();
+		}
+		LOG.info("Stream matching finished, total trajectories: " + completeCount + ", time spent: "
+				+ (System.currentTimeMillis() - startTime) / 1000.0 + "s.");
+		return completeCount;
+	}
+
+	/**
+	 * Creates daemon worker threads so that a failed matching does not keep the JVM alive.
+	 */
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private static final AtomicInteger POOL_COUNT = new AtomicInteger(0);
+		private final int poolID = POOL_COUNT.incrementAndGet();
+		private final AtomicInteger threadCount = new AtomicInteger(0);
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "matching-" + poolID + "-worker-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
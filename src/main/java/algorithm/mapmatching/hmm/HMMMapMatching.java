@@ -1,10 +1,13 @@
 package algorithm.mapmatching.hmm;
 
+import algorithm.mapmatching.MatchingMapSnapshot;
+import algorithm.mapmatching.StreamMatchingExecutor;
 import org.apache.log4j.Logger;
 import util.dijkstra.RoutingGraph;
 import util.function.DistanceFunction;
 import util.index.grid.Grid;
 import util.index.grid.GridPartition;
+import util.index.grid.SegmentGridIndex;
 import util.index.rtree.RTreeIndexing;
 import util.object.roadnetwork.RoadNetworkGraph;
 import util.object.roadnetwork.RoadWay;
@@ -18,8 +21,7 @@ import util.settings.BaseProperty;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 /**
@@ -38,8 +40,13 @@ public class HMMMapMatching implements Serializable {
 	private static final Logger LOG = Logger.getLogger(HMMMapMatching.class);
 	
 	private final int candidateRange;    // in meter
+	private final boolean isBatchCandidateSearch;    // search the candidates of a whole trajectory in one batch
+	private final boolean isRTreeCandidateSearch;    // search the candidates in the R-tree, whose candidate order differs from the grid
 	private final int gapExtensionDist; // in meter
 	private final int rankLength; // in meter
+	private final boolean isIndexedViterbi;    // use the array-based Viterbi algorithm
+	private final int numOfThreads;    // the number of threads in stream matching, =-1 if full utilisation is expected
+	private final int maxInFlight;    // the maximum number of trajectories in process during stream matching
 	
 	/**
 	 * The distance method to use between points
@@ -58,8 +65,9 @@ public class HMMMapMatching implements Serializable {
 	/**
 	 * The index for candidate generation
 	 */
-	private Grid<SegmentWithIndex> grid;
-	private final RTreeIndexing rtree;
+	private Grid<SegmentWithIndex> grid;    // only built when the roads can be inserted during the matching, null if built on a snapshot
+	private final SegmentGridIndex segmentIndex;
+	private final RTreeIndexing rTreeIndex;    // only built if the R-tree candidate search is required, null otherwise
 	/**
 	 * the threshold for extra indexing point, segments that exceed such threshold will generate extra indexing point(s)
 	 */
@@ -67,21 +75,54 @@ public class HMMMapMatching implements Serializable {
 	private HashMap<String, List<RoadWay>> id2DDWayMapping = new HashMap<>(); // the mapping between road id and double-directed roads.
 	
 	public HMMMapMatching(RoadNetworkGraph roadNetworkGraph, BaseProperty prop) {
+		this(roadNetworkGraph, prop, null);
+	}
+	
+	/**
+	 * Create a matcher session on a shared map snapshot, which is not allowed in map update as the roads cannot be inserted into the
+	 * snapshot.
+	 *
+	 * @param mapSnapshot The map snapshot, which should not be a loose map.
+	 * @param prop        The map-matching properties.
+	 */
+	public HMMMapMatching(MatchingMapSnapshot mapSnapshot, BaseProperty prop) {
+		this(mapSnapshot.getRoadMap(), prop, mapSnapshot);
+	}
+	
+	private HMMMapMatching(RoadNetworkGraph roadNetworkGraph, BaseProperty prop, MatchingMapSnapshot mapSnapshot) {
 		this.distFunc = roadNetworkGraph.getDistanceFunction();
 		this.prop = prop;
 		// TODO add this flag to other cases
 		boolean isNewRoadIncluded = prop.contains("algorithm.cooptimization.isNewRoadIncluded") && prop.getPropertyBoolean("algorithm.cooptimization" +
 				".isNewRoadIncluded");
+		if (mapSnapshot != null && (mapSnapshot.isLooseMap() || isNewRoadIncluded))
+			throw new IllegalArgumentException("The map snapshot cannot be used in HMM map-matching with loose map or new roads.");
 		this.candidateRange = prop.getPropertyInteger("algorithm.mapmatching.CandidateRange");
+		this.isBatchCandidateSearch = prop.contains("algorithm.mapmatching.BatchCandidateSearch") && prop.getPropertyBoolean("algorithm" +
+				".mapmatching.BatchCandidateSearch");
+		this.isRTreeCandidateSearch = prop.contains("algorithm.mapmatching.hmm.RTreeCandidateSearch") && prop.getPropertyBoolean("algorithm" +
+				".mapmatching.hmm.RTreeCandidateSearch");
 		this.gapExtensionDist = prop.contains("algorithm.cooptimization.GapExtensionDistance") ? prop.getPropertyInteger("algorithm.cooptimization" +
 				".GapExtensionDistance") : 15;
 		this.rankLength = prop.contains("algorithm.mapmatching.hmm.RankLength") ? prop.getPropertyInteger("algorithm.mapmatching.hmm" +
 				".RankLength") : 1;
+		this.isIndexedViterbi = prop.contains("algorithm.mapmatching.hmm.IndexedViterbi") && prop.getPropertyBoolean("algorithm" +
+				".mapmatching.hmm.IndexedViterbi");
+		this.numOfThreads = prop.contains("algorithm.mapmatching.NumOfThreads") ? prop.getPropertyInteger("algorithm.mapmatching" +
+				".NumOfThreads") : -1;
+		this.maxInFlight = prop.contains("algorithm.mapmatching.MaxInFlightTrajectory") ? prop.getPropertyInteger("algorithm" +
+				".mapmatching.MaxInFlightTrajectory") : -1;
 		double sigma = prop.getPropertyDouble("algorithm.mapmatching.Sigma");
 		double beta = prop.getPropertyDouble("algorithm.mapmatching.hmm.Beta");
 		this.hmmProbabilities = new HMMProbabilities(sigma, beta);
 		this.intervalLength = (4 * Math.sqrt(2) - 2) * candidateRange;   // given such length limit, none of the candidate segment can escape
 		// the grid search
+		if (mapSnapshot != null) {    // the candidate search and routing are served by the snapshot, the road insertion is not supported
+			this.segmentIndex = mapSnapshot.getSegmentIndex();
+			this.rTreeIndex = isRTreeCandidateSearch ? mapSnapshot.getRTreeIndex() : null;
+			this.routingGraph = mapSnapshot.getRoutingGraph();
+			return;
+		}
 		for (RoadWay w : roadNetworkGraph.getWays()) {
 			String id = w.getID().replace("-", "");
 			if (id2DDWayMapping.containsKey(id))
@@ -93,7 +134,8 @@ public class HMMMapMatching implements Serializable {
 			}
 		}
 		buildGridIndex(roadNetworkGraph, isNewRoadIncluded);   // build grid index
-		this.rtree = new RTreeIndexing(roadNetworkGraph);
+		this.segmentIndex = new SegmentGridIndex(roadNetworkGraph);
+		this.rTreeIndex = isRTreeCandidateSearch ? new RTreeIndexing(roadNetworkGraph) : null;
 		this.routingGraph = new RoutingGraph(roadNetworkGraph, isNewRoadIncluded, prop);
 	}
 	
@@ -105,6 +147,8 @@ public class HMMMapMatching implements Serializable {
 	 * @return List of entries added to the index. Will be removed in the future.
 	 */
 	public List<XYObject<SegmentWithIndex>> insertRoadWayIntoMap(String roadID) {
+		if (this.grid == null)
+			throw new IllegalStateException("Roads cannot be inserted into a matcher built on a map snapshot.");
 		this.routingGraph.addRoadByID(roadID);
 		String id = roadID.replace("-", "");
 		if (!id2DDWayMapping.containsKey(id))
@@ -148,6 +192,8 @@ public class HMMMapMatching implements Serializable {
 	 * @param indexEntryList List of entries to be removed.
 	 */
 	public void removeRoadWayFromMap(String roadID, List<XYObject<SegmentWithIndex>> indexEntryList) {
+		if (this.grid == null)
+			throw new IllegalStateException("Roads cannot be removed from a matcher built on a map snapshot.");
 		this.routingGraph.removeRoadByID(roadID);
 		String id = roadID.replace("-", "");
 		if (!id2DDWayMapping.containsKey(id))
@@ -175,21 +221,32 @@ public class HMMMapMatching implements Serializable {
 	
 	public Stream<MatchResultWithUnmatchedTraj> trajectoryStreamMatchingProcess(Stream<Trajectory> inputTrajectory)
 			throws ExecutionException, InterruptedException {
+		List<MatchResultWithUnmatchedTraj> result = new ArrayList<>();
+		trajectoryStreamMatchingProcess(inputTrajectory, result::add);
+		return result.stream();
+	}
+	
+	/**
+	 * Match the trajectory stream on a bounded worker pool and hand over each result once it is ready, see
+	 * {@link StreamMatchingExecutor}.
+	 *
+	 * @param inputTrajectory The input trajectory stream.
+	 * @param resultConsumer  The receiver of the matching results, called on the current thread.
+	 * @return The number of trajectories matched.
+	 */
+	public int trajectoryStreamMatchingProcess(Stream<Trajectory> inputTrajectory, Consumer<MatchResultWithUnmatchedTraj> resultConsumer)
+			throws ExecutionException, InterruptedException {
 		
 		if (inputTrajectory == null) {
 			throw new IllegalArgumentException("Trajectory stream for map-matching must not be null.");
 		}
-		if (this.grid == null || this.grid.isEmpty()) {
-			throw new IllegalArgumentException("Grid index must not be empty nor null.");
+		if (this.segmentIndex == null) {
+			throw new IllegalArgumentException("Segment index must not be null.");
 		}
 		
 		// parallel processing
-		ForkJoinPool forkJoinPool = ForkJoinPool.commonPool();
-		ForkJoinTask<Stream<MatchResultWithUnmatchedTraj>> taskResult =
-				forkJoinPool.submit(() -> inputTrajectory.parallel().map(this::doMatching));
-		while (!taskResult.isDone())
-			Thread.sleep(5);
-		return taskResult.get();
+		StreamMatchingExecutor executor = new StreamMatchingExecutor(numOfThreads, maxInFlight);
+		return executor.execute(inputTrajectory, this::doMatching, resultConsumer);
 	}
 	
 	/**
@@ -290,7 +347,10 @@ public class HMMMapMatching implements Serializable {
 		int indexBeforeCurrBreak = -1;   // the index of the last point before current broken position, -1 = currently no breakpoint
 		final Map<TrajectoryPoint, Collection<PointMatch>> candidatesMap = new HashMap<>(); //Map each point to a list of candidate nodes
 //		computeCandidatesFromGridIndex(trajectory, candidatesMap);
-		computeCandidatesFromRTreeIndex(trajectory, candidatesMap);
+		if (isRTreeCandidateSearch)
+			computeCandidatesFromRTreeIndex(trajectory, candidatesMap);
+		else
+			computeCandidatesFromSegmentIndex(trajectory, candidatesMap);
 //        computeCandidates(trajectory);
 //        LOG.info("Time cost on candidate generation is: " + (System.currentTimeMillis() - startTime));
 		boolean isBrokenTraj = false;
@@ -301,7 +361,8 @@ public class HMMMapMatching implements Serializable {
 		
 		List<Triplet<Trajectory, String, String>> unmatchedTrajectoryList = new ArrayList<>();   // unmatched trajectories
 		
-		ViterbiAlgorithm<PointMatch, TrajectoryPoint, RoadPath> viterbi = new ViterbiAlgorithm<>(rankLength);
+		ViterbiEngine<PointMatch, TrajectoryPoint, RoadPath> viterbi = isIndexedViterbi ? new IndexedViterbiAlgorithm<>(rankLength) :
+				new ViterbiAlgorithm<>(rankLength);
 		TimeStep<PointMatch, TrajectoryPoint, RoadPath> prevTimeStep = null;
 		List<Pair<List<SequenceState<PointMatch, TrajectoryPoint, RoadPath>>, Double>> rankedRoadPositionList = new ArrayList<>(rankLength);
 		for (int i = 0; i < rankLength; i++) {       // first fill all top k results with empty array
@@ -321,7 +382,7 @@ public class HMMMapMatching implements Serializable {
 				timeStep = new TimeStep<>(gpsPoint, candidates);
 				if (prevTimeStep == null) {     // start of the trajectory or the current matching has just been cut off
 					computeEmissionProbabilities(timeStep);
-					viterbi.startWithInitialObservation(timeStep.observation, timeStep.candidates, timeStep.emissionLogProbabilities);
+					viterbi.startWithInitialObservation(timeStep);
 					if (breakPoints.containsKey(i))
 						breakPoints.put(i, 3);  // start the new match from the current point, set it as the breakpoint type 3
 					// successful initialization
@@ -356,12 +417,7 @@ public class HMMMapMatching implements Serializable {
 					//  no time gap, continue the matching process
 					computeEmissionProbabilities(timeStep);
 					computeTransitionProbabilitiesWithConnectivity(prevTimeStep, timeStep);
-					viterbi.nextStep(
-							timeStep.observation,
-							timeStep.candidates, prevTimeStep.candidates,
-							timeStep.emissionLogProbabilities,
-							timeStep.transitionLogProbabilities,
-							timeStep.roadPaths);
+					viterbi.nextStep(prevTimeStep, timeStep);
 					
 					if (viterbi.isBroken()) {
 						// the match stops due to no connection, add the current point and its predecessor to the broken list
@@ -632,16 +688,17 @@ public class HMMMapMatching implements Serializable {
 	}
 	
 	/**
-	 * Compute the candidates list for every GPS point using a radius query.
+	 * Compute the candidates list for every GPS point using a radius query on the R-tree. The candidate set is the same as
+	 * {@link #computeCandidatesFromSegmentIndex}, while the candidates are listed in the R-tree order, which may decide the match
+	 * between equally likely candidates.
 	 *
 	 * @param pointsList    List of GPS trajectory points to map.
 	 * @param candidatesMap the candidate list for every trajectory point
 	 */
 	private void computeCandidatesFromRTreeIndex(Collection<TrajectoryPoint> pointsList,
 												 Map<TrajectoryPoint, Collection<PointMatch>> candidatesMap) {
-//        int candidateCount = 0;
 		for (TrajectoryPoint p : pointsList) {
-			List<PointMatch> searchResult = this.rtree.searchNeighbours(p, candidateRange);
+			List<PointMatch> searchResult = this.rTreeIndex.searchNeighbours(p, candidateRange);
 			for (PointMatch pointMatch : searchResult) {
 				pointMatch.setRoadID(pointMatch.getRoadID().split("\\|")[0]);
 			}
@@ -649,16 +706,43 @@ public class HMMMapMatching implements Serializable {
 		}
 	}
 	
+	/**
+	 * Compute the candidates list for every GPS point using a radius query. The points are queried in one batch along the trajectory
+	 * if <tt>algorithm.mapmatching.BatchCandidateSearch</tt> is set, the result is the same.
+	 *
+	 * @param pointsList    List of GPS trajectory points to map.
+	 * @param candidatesMap the candidate list for every trajectory point
+	 */
+	private void computeCandidatesFromSegmentIndex(List<TrajectoryPoint> pointsList,
+												   Map<TrajectoryPoint, Collection<PointMatch>> candidatesMap) {
+		if (isBatchCandidateSearch) {
+			List<List<PointMatch>> searchResultList = this.segmentIndex.searchRoadNeighbours(pointsList, candidateRange);
+			for (int i = 0; i < pointsList.size(); i++)
+				candidatesMap.put(pointsList.get(i), searchResultList.get(i));
+		} else {
+			for (TrajectoryPoint p : pointsList) {
+				List<PointMatch> searchResult = this.segmentIndex.searchRoadNeighbours(p, candidateRange);
+				candidatesMap.put(p, searchResult);
+			}
+		}
+	}
+	
 	/**
 	 * Compute the emission probabilities between every GPS point and its candidates.
 	 *
 	 * @param timeStep the observation and its candidate
 	 */
 	private void computeEmissionProbabilities(TimeStep<PointMatch, TrajectoryPoint, RoadPath> timeStep) {
+		if (isIndexedViterbi)
+			timeStep.emissionLogProbabilityList = new double[timeStep.candidates.size()];
+		int index = 0;
 		for (PointMatch candidate : timeStep.candidates) {
 			double distance = getDistance(timeStep.observation.x(), timeStep.observation.y(), candidate.lon(), candidate.lat());
-			timeStep.addEmissionLogProbability(candidate,
-					hmmProbabilities.emissionLogProbability(distance));
+			if (isIndexedViterbi)
+				timeStep.emissionLogProbabilityList[index++] = hmmProbabilities.emissionLogProbability(distance);
+			else
+				timeStep.addEmissionLogProbability(candidate,
+						hmmProbabilities.emissionLogProbability(distance));
 		}
 	}
 	
@@ -677,16 +761,26 @@ public class HMMMapMatching implements Serializable {
 //        double maxDistance = 50 * timeDiff;
 		double uTurnPenalty = prop.contains("algorithm.mapmatching.hmm.UTurnPenalty") ? prop.getPropertyDouble("algorithm.mapmatching.hmm" +
 				".UTurnPenalty") : 0;
-		for (PointMatch from : prevTimeStep.candidates) {
-			List<PointMatch> candidates = new ArrayList<>(timeStep.candidates);
-//			List<Pair<Double, List<String>>> shortestPathResultList = routingGraph.calculateOneToNDijkstraSP(from, candidates, maxDistance);
-			List<Pair<Double, List<String>>> shortestPathResultList = routingGraph.calculateOneToNAStarSP(from, candidates,
-					timeStep.observation, maxDistance);
+		List<PointMatch> sources = new ArrayList<>(prevTimeStep.candidates);
+		List<PointMatch> candidates = new ArrayList<>(timeStep.candidates);
+//		List<List<Pair<Double, List<String>>>> shortestPathResultMatrix = routingGraph.calculateManyToNDijkstraSP(sources, candidates,
+//				maxDistance);
+		List<List<Pair<Double, List<String>>>> shortestPathResultMatrix = routingGraph.calculateManyToNAStarSP(sources, candidates,
+				timeStep.observation, maxDistance);
+		if (isIndexedViterbi) {
+			timeStep.transitionLogProbabilityMatrix = new double[sources.size()][candidates.size()];
+			timeStep.roadPathMatrix = new RoadPath[sources.size()][candidates.size()];
+			for (double[] transitionLogProbabilityList : timeStep.transitionLogProbabilityMatrix)
+				Arrays.fill(transitionLogProbabilityList, Double.NEGATIVE_INFINITY);
+		}
+		for (int s = 0; s < sources.size(); s++) {
+			PointMatch from = sources.get(s);
+			List<Pair<Double, List<String>>> shortestPathResultList = shortestPathResultMatrix.get(s);
 			for (int i = 0; i < candidates.size(); i++) {
 				if (shortestPathResultList.get(i)._1() != Double.POSITIVE_INFINITY) {
 					if (shortestPathResultList.get(i)._2().contains(reverseID(from.getRoadID())))
 						shortestPathResultList.get(i).set_1(shortestPathResultList.get(i)._1() + uTurnPenalty);
-					timeStep.addRoadPath(from, candidates.get(i), new RoadPath(from, candidates.get(i), shortestPathResultList.get(i)._2()));
+					RoadPath roadPath = new RoadPath(from, candidates.get(i), shortestPathResultList.get(i)._2());
 //					timeStep.addTransitionLogProbability(from, candidates.get(i), 1);	// test if transition is useless
 					double transitionLogProbability = hmmProbabilities.transitionLogProbability(shortestPathResultList.get(i)._1(),
 							linearDistance, timeDiff);
@@ -694,7 +788,13 @@ public class HMMMapMatching implements Serializable {
 //                    if (!from.getRoadID().equals(candidates.get(i).getRoadID()) && Math.abs(Long.parseLong(from.getRoadID())) == Math.abs
 //                            (Long.parseLong(candidates.get(i).getRoadID())))
 //                        transitionLogProbability += U_TURN_PENALTY;
-					timeStep.addTransitionLogProbability(from, candidates.get(i), transitionLogProbability);
+					if (isIndexedViterbi) {
+						timeStep.roadPathMatrix[s][i] = roadPath;
+						timeStep.transitionLogProbabilityMatrix[s][i] = transitionLogProbability;
+					} else {
+						timeStep.addRoadPath(from, candidates.get(i), roadPath);
+						timeStep.addTransitionLogProbability(from, candidates.get(i), transitionLogProbability);
+					}
 				}
 			}
 		}
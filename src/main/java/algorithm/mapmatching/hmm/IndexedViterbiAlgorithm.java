@@ -0,0 +1,422 @@
+package algorithm.mapmatching.hmm;
+
+import org.apache.log4j.Logger;
+import util.object.structure.LengthObject;
+import util.object.structure.Pair;
+
+import java.util.*;
+
+/**
+ * Viterbi algorithm with top-k back pointers working on position-indexed candidates. It produces the same ranked sequences as
+ * {@link ViterbiAlgorithm}, but reads the emission and transition probabilities from the arrays of {@link TimeStep} and keeps the back
+ * pointers, their probabilities and transition descriptors of each time step in flat arrays indexed by <tt>candidate * k + rank</tt>.
+ * No map lookup or object is needed for a candidate pair during the forward step.
+ * <p>
+ * The predecessors are ranked in the same order as {@link ViterbiAlgorithm}: by probability, then by the length of the predecessor,
+ * then by the hash code of its string and finally by its own hash code. The string hash is only computed when the previous keys are
+ * equal.
+ *
+ * @param <S> the state type
+ * @param <O> the observation type
+ * @param <D> the transition descriptor type
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+public class IndexedViterbiAlgorithm<S extends LengthObject, O, D> implements ViterbiEngine<S, O, D> {
+
+	private static final Logger LOG = Logger.getLogger(IndexedViterbiAlgorithm.class);
+	private final int rankLength;   // the length of the ranked list, default = 1
+	private final List<StepRecord<S, O, D>> stepList = new ArrayList<>();    // the processed time steps of the current sequence
+	/**
+	 * The log probability of the most likely sequence ending at each candidate of the last time step, null if the computation has not
+	 * started.
+	 */
+	private double[] message;
+	private boolean isBroken = false;
+	private int[] rankedIndex = new int[16];    // the reachable predecessors of the current candidate, top ranked ones first
+	private double[] rankedProbability = new double[16];
+
+	public IndexedViterbiAlgorithm(int rankLength) {
+		if (rankLength <= 0)
+			throw new IllegalArgumentException("The rank length should be positive: " + rankLength);
+		this.rankLength = rankLength;
+	}
+
+	@Override
+	public void startWithInitialObservation(TimeStep<S, O, D> timeStep) {
+		if (message != null) {
+			LOG.error("ERROR! The message should be empty");
+			message = null;
+			stepList.clear();
+		}
+		isBroken = false;
+		List<S> candidates = new ArrayList<>(timeStep.candidates);
+		double[] emissionLogProbabilities = timeStep.emissionLogProbabilityList;
+		if (emissionLogProbabilities == null || emissionLogProbabilities.length != candidates.size())
+			throw new IllegalArgumentException("The emission probabilities do not match the candidates.");
+		double[] initialMessage = Arrays.copyOf(emissionLogProbabilities, candidates.size());
+		isBroken = hmmBreak(initialMessage);
+		if (isBroken) {
+			LOG.error("ERROR! The initial state is broken.");
+			return;
+		}
+		message = initialMessage;
+		stepList.add(new StepRecord<>(timeStep.observation, candidates, rankLength));
+	}
+
+	@Override
+	public void nextStep(TimeStep<S, O, D> prevTimeStep, TimeStep<S, O, D> timeStep) {
+		if (message == null) {
+			throw new IllegalStateException("startWithInitialObservation() must be called first.");
+		}
+		if (isBroken) {
+			throw new IllegalStateException("Method must not be called after an HMM break.");
+		}
+		StepRecord<S, O, D> prevStep = stepList.get(stepList.size() - 1);
+		int prevCount = prevStep.candidates.size();
+		List<S> candidates = new ArrayList<>(timeStep.candidates);
+		double[] emissionLogProbabilities = timeStep.emissionLogProbabilityList;
+		double[][] transitionLogProbabilities = timeStep.transitionLogProbabilityMatrix;
+		D[][] transitionDescriptors = timeStep.roadPathMatrix;
+		if (prevTimeStep.candidates.size() != prevCount || transitionLogProbabilities == null || transitionLogProbabilities.length != prevCount)
+			throw new IllegalArgumentException("The transition probabilities do not match the candidates of the previous time step.");
+		if (emissionLogProbabilities == null || emissionLogProbabilities.length != candidates.size())
+			throw new IllegalArgumentException("The emission probabilities do not match the candidates.");
+		if (rankedIndex.length < prevCount) {
+			rankedIndex = new int[prevCount];
+			rankedProbability = new double[prevCount];
+		}
+
+		StepRecord<S, O, D> currStep = new StepRecord<>(timeStep.observation, candidates, rankLength);
+		double[] newMessage = new double[candidates.size()];
+		for (int j = 0; j < candidates.size(); j++) {
+			int reachableCount = 0;
+			for (int i = 0; i < prevCount; i++) {
+				final double logProbability = message[i] + transitionLogProbabilities[i][j];
+				if (logProbability > Double.NEGATIVE_INFINITY) {
+					rankedIndex[reachableCount] = i;
+					rankedProbability[reachableCount] = logProbability;
+					reachableCount++;
+				}
+			}
+			if (reachableCount == 0) {
+				// no transition with non-zero probability, the candidate will not be part of the most likely sequence
+				newMessage[j] = Double.NEGATIVE_INFINITY;
+				continue;
+			}
+			int rankCount = Math.min(rankLength, reachableCount);
+			selectTopRanked(prevStep, reachableCount, rankCount);
+			double optimalProbability = rankedProbability[0] + emissionLogProbabilities[j];
+			newMessage[j] = optimalProbability;
+			currStep.addBackPointer(j, rankedIndex[0], optimalProbability,
+					transitionDescriptors == null ? null : transitionDescriptors[rankedIndex[0]][j]);
+			for (int r = 1; r < rankCount; r++) {
+				double currProbability = rankedProbability[r] + emissionLogProbabilities[j];
+				// predecessors with the same probability as the optimal one are skipped
+				if (Double.compare(currProbability, optimalProbability) != 0)
+					currStep.addBackPointer(j, rankedIndex[r], currProbability,
+							transitionDescriptors == null ? null : transitionDescriptors[rankedIndex[r]][j]);
+			}
+		}
+		isBroken = hmmBreak(newMessage);
+		if (isBroken) return;
+		message = newMessage;
+		stepList.add(currStep);
+	}
+
+	@Override
+	public boolean isBroken() {
+		return isBroken;
+	}
+
+	@Override
+	public void setToUnbroken() {
+		this.isBroken = false;
+	}
+
+	@Override
+	public List<Pair<List<SequenceState<S, O, D>>, Double>> computeMostLikelySequence() {
+		if (message == null) {
+			// Return empty sequence if there is no time steps, it only happens at the last trajectory point when it is the only trajectory
+			// point in the sequence but it doesn't have candidate.
+			return new ArrayList<>();
+		}
+		List<Pair<List<SequenceState<S, O, D>>, Double>> result = retrieveRankedSequences();
+		message = null;
+		stepList.clear();
+		return result;
+	}
+
+	private boolean hmmBreak(double[] message) {
+		for (double logProbability : message) {
+			if (logProbability != Double.NEGATIVE_INFINITY) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Move the top <tt>rankCount</tt> predecessors among the first <tt>reachableCount</tt> items of {@link #rankedIndex} to the front
+	 * in ranking order.
+	 */
+	private void selectTopRanked(StepRecord<S, O, D> prevStep, int reachableCount, int rankCount) {
+		for (int r = 0; r < rankCount; r++) {
+			int best = r;
+			for (int i = r + 1; i < reachableCount; i++) {
+				if (prevStep.compare(rankedIndex[i], rankedProbability[i], rankedIndex[best], rankedProbability[best]) < 0)
+					best = i;
+			}
+			if (best != r) {
+				int index = rankedIndex[r];
+				double probability = rankedProbability[r];
+				rankedIndex[r] = rankedIndex[best];
+				rankedProbability[r] = rankedProbability[best];
+				rankedIndex[best] = index;
+				rankedProbability[best] = probability;
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the candidates of the last time step with the top k probabilities. Candidates with the same probability are eliminated.
+	 */
+	private List<Integer> topRankedFinalStates() {
+		StepRecord<S, O, D> lastStep = stepList.get(stepList.size() - 1);
+		List<Integer> sortedIndexList = new ArrayList<>();
+		for (int i = 0; i < message.length; i++) {
+			if (message[i] > Double.NEGATIVE_INFINITY)
+				sortedIndexList.add(i);
+		}
+		sortedIndexList.sort((a, b) -> lastStep.compare(a, message[a], b, message[b]));
+		List<Integer> result = new ArrayList<>();
+		HashSet<Double> probability = new HashSet<>(rankLength);
+		for (int index : sortedIndexList) {
+			if (result.size() >= rankLength)
+				break;
+			if (!probability.contains(message[index])) {
+				result.add(index);
+				probability.add(message[index]);
+			}
+		}
+		if (result.isEmpty()) // Otherwise an HMM break would have occurred.
+			LOG.error("The HMM breaks without being detected.");
+		return result;
+	}
+
+	/**
+	 * Retrieves top k most likely sequence by walking the back pointers from the last time step. In each round, every partial sequence
+	 * is extended by all back pointers of its earliest state and the top k extensions are kept. The return item can be less than k.
+	 */
+	private List<Pair<List<SequenceState<S, O, D>>, Double>> retrieveRankedSequences() {
+		int lastStepIndex = stepList.size() - 1;
+		StepRecord<S, O, D> lastStep = stepList.get(lastStepIndex);
+		final List<Integer> lastStateList = topRankedFinalStates();
+		double[] probabilityResult = new double[rankLength];
+		final List<List<SequenceState<S, O, D>>> pathResult = new ArrayList<>(rankLength);
+		if (lastStepIndex == 0) {
+			// the matching sequence only contains one point, which is the end point
+			for (int index : lastStateList) {
+				List<SequenceState<S, O, D>> currStateList = new ArrayList<>();
+				currStateList.add(new SequenceState<>(lastStep.candidates.get(index), lastStep.observation, null));
+				pathResult.add(currStateList);
+				probabilityResult[pathResult.size() - 1] = message[index];
+			}
+			return combineResult(pathResult, probabilityResult);
+		}
+
+		// each partial sequence ends at a state whose probability till the end of the sequence is known
+		List<PartialSequence> candidateList = new ArrayList<>();
+		for (int index : lastStateList) {
+			for (int r = 0; r < lastStep.rankCount[index]; r++) {
+				List<SequenceState<S, O, D>> routeSequence = new ArrayList<>();
+				routeSequence.add(new SequenceState<>(lastStep.candidates.get(index), lastStep.observation, lastStep.getDescriptor(index, r)));
+				candidateList.add(new PartialSequence(lastStepIndex - 1, lastStep.getBackPointer(index, r), routeSequence,
+						lastStep.getProbability(index, r)));
+			}
+		}
+		List<PartialSequence> intermediateList = selectTopRanked(candidateList);
+		while (true) {
+			candidateList = new ArrayList<>();
+			for (PartialSequence item : intermediateList) {
+				StepRecord<S, O, D> step = stepList.get(item.stepIndex);
+				// the combined transition and emission probability until the end of the match sequence
+				double remainingProbability = item.probability - step.getMaxProbability(item.candidateIndex);
+				for (int r = 0; r < step.rankCount[item.candidateIndex]; r++) {
+					List<SequenceState<S, O, D>> routeSequence = new ArrayList<>(item.routeSequence);
+					routeSequence.add(new SequenceState<>(step.candidates.get(item.candidateIndex), step.observation,
+							step.getDescriptor(item.candidateIndex, r)));
+					candidateList.add(new PartialSequence(item.stepIndex - 1, step.getBackPointer(item.candidateIndex, r), routeSequence,
+							step.getProbability(item.candidateIndex, r) + remainingProbability));
+				}
+			}
+			if (candidateList.isEmpty()) {
+				// the full path has been retrieved, recover the top k paths
+				for (PartialSequence item : intermediateList) {
+					StepRecord<S, O, D> step = stepList.get(item.stepIndex);
+					List<SequenceState<S, O, D>> rankedResult = item.routeSequence;
+					rankedResult.add(new SequenceState<>(step.candidates.get(item.candidateIndex), step.observation, null));
+					Collections.reverse(rankedResult);
+					pathResult.add(rankedResult);
+					probabilityResult[pathResult.size() - 1] = item.probability;
+				}
+				return combineResult(pathResult, probabilityResult);
+			}
+			intermediateList = selectTopRanked(candidateList);
+		}
+	}
+
+	private List<PartialSequence> selectTopRanked(List<PartialSequence> candidateList) {
+		candidateList.sort(PartialSequence::compareTo);
+		return new ArrayList<>(candidateList.subList(0, Math.min(rankLength, candidateList.size())));
+	}
+
+	private List<Pair<List<SequenceState<S, O, D>>, Double>> combineResult(List<List<SequenceState<S, O, D>>> pathResult,
+																		   double[] probabilityResult) {
+		List<Pair<List<SequenceState<S, O, D>>, Double>> result = new ArrayList<>();
+		for (int i = 0; i < rankLength; i++) {
+			if (i < pathResult.size()) {
+				if (probabilityResult[i] == 0)
+					LOG.error("ERROR! Zero probability for a valid match sequence: " + pathResult.get(i).toString());
+				result.add(new Pair<>(pathResult.get(i), probabilityResult[i]));
+			} else if (probabilityResult[i] != 0) {
+				LOG.error("ERROR! Positive probability for a null match sequence:" + probabilityResult[i]);
+				probabilityResult[i] = 0;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * A partial sequence from the end of the match back to one state, which is the <tt>candidateIndex</tt>-th candidate of the
+	 * <tt>stepIndex</tt>-th time step and not yet included in <tt>routeSequence</tt>.
+	 */
+	private class PartialSequence implements Comparable<PartialSequence> {
+		final int stepIndex;
+		final int candidateIndex;
+		final List<SequenceState<S, O, D>> routeSequence;    // in reverse order
+		final double probability;    // the probability of the sequence till its end
+		private int checksum;
+		private boolean isChecksumComputed = false;
+
+		PartialSequence(int stepIndex, int candidateIndex, List<SequenceState<S, O, D>> routeSequence, double probability) {
+			this.stepIndex = stepIndex;
+			this.candidateIndex = candidateIndex;
+			this.routeSequence = routeSequence;
+			this.probability = probability;
+		}
+
+		/**
+		 * @return The hash code of the unique code of the road sequence, which is used to break ties.
+		 */
+		int getChecksum() {
+			if (!isChecksumComputed) {
+				StringBuilder checksumCode = new StringBuilder(stepList.get(stepIndex).candidates.get(candidateIndex).toString());
+				for (SequenceState<S, O, D> ss : routeSequence) {
+					checksumCode.append(",").append(ss.state.toString());
+				}
+				checksum = checksumCode.toString().hashCode();
+				isChecksumComputed = true;
+			}
+			return checksum;
+		}
+
+		@Override
+		public int compareTo(PartialSequence o) {
+			int result = Double.compare(o.probability, probability);
+			if (result != 0)
+				return result;
+			result = Double.compare(stepList.get(stepIndex).lengths[candidateIndex], stepList.get(o.stepIndex).lengths[o.candidateIndex]);
+			if (result != 0)
+				return result;
+			return Integer.compare(getChecksum(), o.getChecksum());
+		}
+	}
+
+	/**
+	 * The candidates of a processed time step and the top k back pointers of each candidate.
+	 */
+	private static class StepRecord<S extends LengthObject, O, D> {
+		final O observation;
+		final List<S> candidates;
+		final int rankLength;
+		final int[] rankCount;    // the number of back pointers of each candidate
+		final int[] backPointer;    // the candidate index in the previous time step, stored at candidate * rankLength + rank
+		final double[] probabilities;    // the log transition probability to the candidate plus its log emission probability
+		final Object[] transitionDescriptors;
+		final double[] lengths;    // the length of each candidate, used for ranking
+		private final int[] stringHash;    // the hash code of the string of each candidate, computed on demand
+		private final boolean[] isStringHashComputed;
+
+		StepRecord(O observation, List<S> candidates, int rankLength) {
+			this.observation = observation;
+			this.candidates = candidates;
+			this.rankLength = rankLength;
+			int size = candidates.size();
+			this.rankCount = new int[size];
+			this.backPointer = new int[size * rankLength];
+			this.probabilities = new double[size * rankLength];
+			this.transitionDescriptors = new Object[size * rankLength];
+			this.lengths = new double[size];
+			for (int i = 0; i < size; i++)
+				lengths[i] = candidates.get(i).getLength();
+			this.stringHash = new int[size];
+			this.isStringHashComputed = new boolean[size];
+		}
+
+		void addBackPointer(int candidateIndex, int prevCandidateIndex, double probability, D transitionDescriptor) {
+			int slot = candidateIndex * rankLength + rankCount[candidateIndex]++;
+			backPointer[slot] = prevCandidateIndex;
+			probabilities[slot] = probability;
+			transitionDescriptors[slot] = transitionDescriptor;
+		}
+
+		int getBackPointer(int candidateIndex, int rank) {
+			return backPointer[candidateIndex * rankLength + rank];
+		}
+
+		double getProbability(int candidateIndex, int rank) {
+			return probabilities[candidateIndex * rankLength + rank];
+		}
+
+		@SuppressWarnings("unchecked")
+		D getDescriptor(int candidateIndex, int rank) {
+			return (D) transitionDescriptors[candidateIndex * rankLength + rank];
+		}
+
+		double getMaxProbability(int candidateIndex) {
+			double maxProbability = Double.NEGATIVE_INFINITY;
+			for (int r = 0; r < rankCount[candidateIndex]; r++)
+				if (getProbability(candidateIndex, r) > maxProbability)
+					maxProbability = getProbability(candidateIndex, r);
+			return maxProbability;
+		}
+
+		/**
+		 * Compare two candidates of this time step with their given probabilities, the one ranked higher is smaller.
+		 */
+		int compare(int index1, double probability1, int index2, double probability2) {
+			int result = Double.compare(probability2, probability1);
+			if (result != 0)
+				return result;
+			result = Double.compare(lengths[index1], lengths[index2]);
+			if (result != 0)
+				return result;
+			result = Integer.compare(getStringHash(index1), getStringHash(index2));
+			if (result != 0)
+				return result;
+			result = Integer.compare(candidates.get(index1).hashCode(), candidates.get(index2).hashCode());
+			if (result != 0)
+				return result;
+			return Integer.compare(index1, index2);
+		}
+
+		private int getStringHash(int index) {
+			if (!isStringHashComputed[index]) {
+				stringHash[index] = candidates.get(index).toString().hashCode();
+				isStringHashComputed[index] = true;
+			}
+			return stringHash[index];
+		}
+	}
+}
@@ -51,6 +51,16 @@ class TimeStep<S, O, D> implements Serializable {
      */
     public final Map<Transition<S>, D> roadPaths = new HashMap<>();
 
+    /**
+     * Position-indexed counterparts of the maps above, used by {@link IndexedViterbiAlgorithm}. The i-th emission log probability
+     * belongs to the i-th candidate in iteration order, and the transition log probability and road path at [i][j] describe the
+     * transition from the i-th candidate of the previous time step to the j-th candidate of this time step. A missing transition has
+     * a log probability of negative infinity.
+     */
+    public double[] emissionLogProbabilityList;
+    public double[][] transitionLogProbabilityMatrix;
+    public D[][] roadPathMatrix;
+
 
     public TimeStep(O observation, Collection<S> candidates) {
         if (observation == null || candidates == null) {
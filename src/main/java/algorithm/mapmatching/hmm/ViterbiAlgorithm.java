@@ -59,7 +59,7 @@ import java.util.*;
  * @param <D> the transition descriptor type. Pass {@link Object} if transition descriptors are not
  *            needed.
  */
-public class ViterbiAlgorithm<S extends LengthObject, O, D> implements Serializable {
+public class ViterbiAlgorithm<S extends LengthObject, O, D> implements ViterbiEngine<S, O, D>, Serializable {
 	
 	private static final Logger LOG = Logger.getLogger(ViterbiAlgorithm.class);
 	/**
@@ -166,6 +166,17 @@ public class ViterbiAlgorithm<S extends LengthObject, O, D> implements Serializa
 		initializeStateProbabilities(observation, candidates, emissionLogProbabilities);
 	}
 	
+	@Override
+	public void startWithInitialObservation(TimeStep<S, O, D> timeStep) {
+		startWithInitialObservation(timeStep.observation, timeStep.candidates, timeStep.emissionLogProbabilities);
+	}
+	
+	@Override
+	public void nextStep(TimeStep<S, O, D> prevTimeStep, TimeStep<S, O, D> timeStep) {
+		nextStep(timeStep.observation, timeStep.candidates, prevTimeStep.candidates, timeStep.emissionLogProbabilities,
+				timeStep.transitionLogProbabilities, timeStep.roadPaths);
+	}
+	
 	/**
 	 * Processes the next time step. Must not be called if the HMM is broken.
 	 *
@@ -206,7 +217,8 @@ public class ViterbiAlgorithm<S extends LengthObject, O, D> implements Serializa
 		
 	}
 	
-	void setToUnbroken() {
+	@Override
+	public void setToUnbroken() {
 		this.isBroken = false;
 	}
 	
@@ -219,7 +231,8 @@ public class ViterbiAlgorithm<S extends LengthObject, O, D> implements Serializa
 	 * with respect to s_1, ..., s_T, where s_t is a state candidate at time step t,
 	 * o_t is the observation at time step t and T is the number of time steps.
 	 */
-	List<Pair<List<SequenceState<S, O, D>>, Double>> computeMostLikelySequence() {
+	@Override
+	public List<Pair<List<SequenceState<S, O, D>>, Double>> computeMostLikelySequence() {
 		if (message == null) {
 			// Return empty sequence if there is no time steps, it only happens at the last trajectory point when it is the only trajectory
 			// point in the sequence but it doesn't have candidate.
@@ -234,7 +247,8 @@ public class ViterbiAlgorithm<S extends LengthObject, O, D> implements Serializa
 	 * <p>
 	 * An HMM break means that the probability of all states equals zero.
 	 */
-	boolean isBroken() {
+	@Override
+	public boolean isBroken() {
 		return isBroken;
 	}
 	
@@ -0,0 +1,47 @@
+package algorithm.mapmatching.hmm;
+
+import util.object.structure.Pair;
+
+import java.util.List;
+
+/**
+ * The decoding operations used by {@link HMMMapMatching} on a sequence of {@link TimeStep}s. {@link ViterbiAlgorithm} reads the
+ * probabilities from the maps of each time step, while {@link IndexedViterbiAlgorithm} reads them from the position-indexed arrays.
+ *
+ * @param <S> the state type
+ * @param <O> the observation type
+ * @param <D> the transition descriptor type
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+interface ViterbiEngine<S, O, D> {
+
+	/**
+	 * Start the computation at the first time step, whose emission probabilities are used as the initial state probabilities.
+	 *
+	 * @param timeStep The first time step.
+	 */
+	void startWithInitialObservation(TimeStep<S, O, D> timeStep);
+
+	/**
+	 * Process the next time step. Must not be called if the HMM is broken.
+	 *
+	 * @param prevTimeStep The last time step that is successfully processed.
+	 * @param timeStep     The current time step.
+	 */
+	void nextStep(TimeStep<S, O, D> prevTimeStep, TimeStep<S, O, D> timeStep);
+
+	/**
+	 * @return Whether an HMM break occurred in the last time step.
+	 */
+	boolean isBroken();
+
+	void setToUnbroken();
+
+	/**
+	 * Retrieve the top-k most likely sequences and their log probabilities, the computation needs to be restarted afterwards.
+	 *
+	 * @return The ranked sequences, can be less than k.
+	 */
+	List<Pair<List<SequenceState<S, O, D>>, Double>> computeMostLikelySequence();
+}
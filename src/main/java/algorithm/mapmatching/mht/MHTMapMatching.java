@@ -1,10 +1,11 @@
 package algorithm.mapmatching.mht;
 
 import algorithm.mapmatching.MapMatchingMethod;
+import algorithm.mapmatching.MatchingMapSnapshot;
 import org.apache.log4j.Logger;
 import util.dijkstra.RoutingGraph;
 import util.function.DistanceFunction;
-import util.index.rtree.RTreeIndexing;
+import util.index.grid.SegmentGridIndex;
 import util.object.roadnetwork.RoadNetworkGraph;
 import util.object.spatialobject.Trajectory;
 import util.object.spatialobject.TrajectoryPoint;
@@ -14,8 +15,7 @@ import util.object.structure.SimpleTrajectoryMatchResult;
 import util.settings.BaseProperty;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 /**
  * Online map-matching algorithm based on Multiple Hypothesis Theory and route prediction. Implemented according to the paper:
@@ -23,7 +23,19 @@ import java.util.List;
  * Taguchi, S., Koide, S., & Yoshimura, T. (2018). Online map matching with route prediction. IEEE Transactions on Intelligent
  * Transportation Systems, 20(1), 338-347.
  * <p>
- * The speed of trajectory sample is needed.
+ * Each hypothesis is a candidate match of the latest point together with the speed of the vehicle estimated by a Kalman Filter. When a
+ * new point arrives, every hypothesis predicts the travel distance from its speed, and a candidate of the new point is accepted if the
+ * shortest path distance to it is likely under the prediction. The hypotheses reaching the same candidate are merged into the most
+ * likely one, the ones below the update threshold are pruned and at most <tt>BeamWidth</tt> hypotheses are kept, so the cost of each
+ * point is bounded by the beam width and the candidate count.
+ * <p>
+ * The hypotheses form a tree, each hypothesis only refers to its parent and the route from the parent, so the common route prefix is
+ * shared instead of copied. The match of a point is decided once all hypotheses descend from the same hypothesis of that point, or once
+ * it is more than <tt>WindowSize</tt> points behind the latest point, in which case the hypotheses not descending from the most likely
+ * one are dropped. The latency of a point is the time between the point and the point on which its match is decided.
+ * <p>
+ * The speed of trajectory sample is used as the speed observation if available, otherwise the speed is estimated from the distance
+ * between the sample and the previous matched sample.
  *
  * @author uqpchao
  * Created 18/08/2019
@@ -35,67 +47,301 @@ public class MHTMapMatching implements MapMatchingMethod, Serializable {
 	/**
 	 * parameters for the algorithm.
 	 */
-	private final int candidateRange;    // for the initial candidate search
+	private final int candidateRange;    // for the candidate search
 	private final double sigma;        // standard deviation GPS error
 	private final double sigmaA;    // velocity model system error used in Kalman Filter (m/s)
 	private final double sigmaV;    // velocity observation error used in Kalman Filter (km/h)
 	private final double thresholdPrediction;    // prediction threshold
 	private final double thresholdUpdate;        // update threshold
+	private final int beamWidth;    // the maximum number of hypotheses kept after each point
+	private final int windowSize;    // the maximum number of points whose matches are not decided
 	private final DistanceFunction distFunc;
-	private final BaseProperty prop;
-	private final RoadNetworkGraph roadMap;
-	private final RoadNetworkGraph originalMap;
-	private final RTreeIndexing rtree;
+	private final SegmentGridIndex segmentIndex;
 	private final RoutingGraph routingGraph;
 	
 	public MHTMapMatching(RoadNetworkGraph roadMap, BaseProperty property) {
-		this.originalMap = roadMap;
-		this.roadMap = roadMap.toLooseMap();
-		this.prop = property;
-		this.distFunc = roadMap.getDistanceFunction();
+		this(new MatchingMapSnapshot(roadMap, false, property), property);
+	}
+	
+	/**
+	 * Create a matcher session on a shared map snapshot.
+	 *
+	 * @param mapSnapshot The map snapshot, which should not be a loose map.
+	 * @param property    The map-matching properties.
+	 */
+	public MHTMapMatching(MatchingMapSnapshot mapSnapshot, BaseProperty property) {
+		if (mapSnapshot.isLooseMap())
+			throw new IllegalArgumentException("The MHT map-matching does not support loose map.");
+		this.distFunc = mapSnapshot.getDistanceFunction();
 		this.candidateRange = property.getPropertyInteger("algorithm.mapmatching.CandidateRange");
 		this.sigma = property.getPropertyDouble("algorithm.mapmatching.Sigma");
 		this.sigmaA = property.getPropertyDouble("algorithm.mapmatching.mht.SigmaA");
 		this.sigmaV = property.getPropertyDouble("algorithm.mapmatching.mht.SigmaV");
 		this.thresholdPrediction = property.getPropertyDouble("algorithm.mapmatching.mht.PredictionThreshold");
 		this.thresholdUpdate = property.getPropertyDouble("algorithm.mapmatching.mht.UpdateThreshold");
-		this.rtree = new RTreeIndexing(this.roadMap);
-		this.routingGraph = new RoutingGraph(this.roadMap, false, property);
+		this.beamWidth = property.contains("algorithm.mapmatching.mht.BeamWidth") ?
+				property.getPropertyInteger("algorithm.mapmatching.mht.BeamWidth") : 30;
+		this.windowSize = property.getPropertyInteger("algorithm.mapmatching.WindowSize");
+		if (beamWidth <= 0 || windowSize <= 0)
+			throw new IllegalArgumentException("The beam width and window size of MHT map-matching should be positive: " + beamWidth
+					+ "," + windowSize);
+		if (!(thresholdPrediction > 0 && thresholdPrediction < 1))
+			throw new IllegalArgumentException("The prediction threshold should be within (0,1): " + thresholdPrediction);
+		this.segmentIndex = mapSnapshot.getSegmentIndex();
+		this.routingGraph = mapSnapshot.getRoutingGraph();
 	}
 	
 	@Override
 	public Pair<List<Double>, SimpleTrajectoryMatchResult> onlineMatching(Trajectory traj) {
-		// set the latency to zero as it does not rely on match buffer
-		List<Double> latencyList = new ArrayList<>(traj.size());
+		HypothesisTracker tracker = new HypothesisTracker(traj);
 		for (int i = 0; i < traj.size(); i++) {
-			latencyList.add(0d);
+			tracker.update(i);
+		}
+		tracker.finish();
+		List<Double> latencyList = new ArrayList<>(traj.size());
+		for (double latency : tracker.latencies)
+			latencyList.add(latency);
+		return new Pair<>(latencyList, new SimpleTrajectoryMatchResult(traj.getID(), Arrays.asList(tracker.pointMatches),
+				tracker.routeMatchList));
+	}
+	
+	/**
+	 * The hypotheses of one trajectory and the matches decided so far.
+	 */
+	private final class HypothesisTracker {
+		private final Trajectory traj;
+		private final PointMatch[] pointMatches;
+		private final double[] latencies;
+		private final List<String> routeMatchList = new ArrayList<>();
+		private List<Hypothesis> beam = new ArrayList<>();    // the hypotheses of the latest matched point, the most likely first
+		private int decidedLevel = -1;    // the level of the last decided hypothesis in the current tree
+		
+		private HypothesisTracker(Trajectory traj) {
+			this.traj = traj;
+			this.pointMatches = new PointMatch[traj.size()];
+			this.latencies = new double[traj.size()];
 		}
-		// check if the trajectory contains speed information
-		if (traj.get(0).speed() == Double.NEGATIVE_INFINITY) {
-			LOG.debug("The current trajectory does not contains speed info, generate it automatically.");
-			for (int i = 0; i < traj.size() - 1; i++) {
-				TrajectoryPoint currPoint = traj.get(i);
-				TrajectoryPoint nextPoint = traj.get(i + 1);
-				currPoint.setSpeed(distFunc.distance(nextPoint, currPoint) / (nextPoint.time() - currPoint.time()));
+		
+		private void update(int pointIndex) {
+			TrajectoryPoint currPoint = traj.get(pointIndex);
+			List<PointMatch> candidateList = segmentIndex.searchNeighbours(currPoint, candidateRange);
+			if (candidateList.isEmpty()) {
+				// the point is not matched, the hypotheses wait for the next point
+				pointMatches[pointIndex] = new PointMatch(distFunc);
+				return;
+			}
+			double[] measurementProbs = new double[candidateList.size()];
+			for (int i = 0; i < candidateList.size(); i++) {
+				double distance = distFunc.distance(currPoint, candidateList.get(i).getMatchPoint());
+				measurementProbs[i] = Math.exp(-distance * distance / (2 * sigma * sigma));
+			}
+			List<Hypothesis> nextBeam = beam.isEmpty() ? Collections.emptyList() : extend(pointIndex, candidateList, measurementProbs);
+			if (nextBeam.isEmpty()) {
+				// no hypothesis reaches the current point, decide the most likely one and start a new tree
+				if (!beam.isEmpty()) {
+					LOG.debug("No hypothesis reaches point " + pointIndex + " of trajectory " + traj.getID() + ", start new hypotheses.");
+					decide(beam.get(0), currPoint.time());
+				}
+				nextBeam = initialise(pointIndex, candidateList, measurementProbs);
+				decidedLevel = -1;
 			}
-			traj.get(traj.size() - 1).setSpeed(traj.get(traj.size() - 2).speed());
+			beam = nextBeam;
+			if (beam.isEmpty()) {
+				pointMatches[pointIndex] = new PointMatch(distFunc);
+				return;
+			}
+			decideCommonAncestor(currPoint.time());
 		}
 		
-		TrajectoryPoint startTrajPoint = traj.get(0);
-		List<PointMatch> initialPointMatch = rtree.searchNeighbours(startTrajPoint, candidateRange);
-		double observationErrorDist = sigmaV;
-		double avgSpd = startTrajPoint.speed();
+		private void finish() {
+			if (!beam.isEmpty())
+				decide(beam.get(0), traj.get(traj.size() - 1).time());
+			beam = new ArrayList<>();
+		}
 		
-		for (int i = 0; i < traj.size(); i++) {
-			TrajectoryPoint currTrajPoint = traj.get(i);
-			if (i > 0) {
+		private List<Hypothesis> initialise(int pointIndex, List<PointMatch> candidateList, double[] measurementProbs) {
+			TrajectoryPoint currPoint = traj.get(pointIndex);
+			double speed = currPoint.speed() == Double.NEGATIVE_INFINITY ? 0 : currPoint.speed();
+			double speedVariance = (sigmaV / 3.6) * (sigmaV / 3.6);
+			List<Hypothesis> hypothesisList = new ArrayList<>(candidateList.size());
+			for (int i = 0; i < candidateList.size(); i++) {
+				if (measurementProbs[i] > 0)
+					hypothesisList.add(new Hypothesis(null, pointIndex, 0, candidateList.get(i), Collections.emptyList(), speed,
+							speedVariance, measurementProbs[i]));
+			}
+			return prune(hypothesisList);
+		}
+		
+		/**
+		 * Predict the travel distance of each hypothesis and extend it to the candidates of the current point.
+		 */
+		private List<Hypothesis> extend(int pointIndex, List<PointMatch> candidateList, double[] measurementProbs) {
+			TrajectoryPoint currPoint = traj.get(pointIndex);
+			double timeDiff = currPoint.time() - traj.get(beam.get(0).pointIndex).time();
+			double[] predictedVariances = new double[beam.size()];    // the speed variance after prediction
+			double[] distanceVariances = new double[beam.size()];    // the variance of the predicted travel distance
+			double maxDistance = 0;
+			double range = Math.sqrt(-2 * Math.log(thresholdPrediction));    // the prediction probability is below threshold beyond it
+			List<PointMatch> sourceList = new ArrayList<>(beam.size());
+			for (int s = 0; s < beam.size(); s++) {
+				Hypothesis hypothesis = beam.get(s);
+				predictedVariances[s] = hypothesis.speedVariance + (sigmaA * timeDiff) * (sigmaA * timeDiff);
+				distanceVariances[s] = predictedVariances[s] * timeDiff * timeDiff + 2 * sigma * sigma;
+				maxDistance = Math.max(maxDistance, hypothesis.speed * timeDiff + range * Math.sqrt(distanceVariances[s]));
+				sourceList.add(hypothesis.pointMatch);
+			}
+			List<List<Pair<Double, List<String>>>> shortestPathMatrix = routingGraph.calculateManyToNDijkstraSP(sourceList,
+					candidateList, maxDistance);
+			
+			// the most likely hypothesis reaching each candidate
+			int[] predecessors = new int[candidateList.size()];
+			double[] scores = new double[candidateList.size()];
+			Arrays.fill(predecessors, -1);
+			for (int s = 0; s < beam.size(); s++) {
+				Hypothesis hypothesis = beam.get(s);
+				double predictedDistance = hypothesis.speed * timeDiff;
+				for (int i = 0; i < candidateList.size(); i++) {
+					double distance = shortestPathMatrix.get(s).get(i)._1();
+					if (distance == Double.POSITIVE_INFINITY)
+						continue;
+					double predictionProb = Math.exp(-(distance - predictedDistance) * (distance - predictedDistance)
+							/ (2 * distanceVariances[s]));
+					if (predictionProb < thresholdPrediction)
+						continue;
+					double score = hypothesis.probability * predictionProb * measurementProbs[i];
+					if (score > scores[i]) {
+						scores[i] = score;
+						predecessors[i] = s;
+					}
+				}
+			}
 			
+			// the speed observation, estimated from the distance to the previous matched point if the point has no speed
+			double observedSpeed = currPoint.speed() != Double.NEGATIVE_INFINITY ? currPoint.speed() : timeDiff > 0 ?
+					distFunc.distance(currPoint, traj.get(beam.get(0).pointIndex)) / timeDiff : Double.NaN;
+			List<Hypothesis> hypothesisList = new ArrayList<>();
+			double observationVariance = (sigmaV / 3.6) * (sigmaV / 3.6);
+			for (int i = 0; i < candidateList.size(); i++) {
+				if (predecessors[i] == -1)
+					continue;
+				int s = predecessors[i];
+				Hypothesis parent = beam.get(s);
+				Pair<Double, List<String>> path = shortestPathMatrix.get(s).get(i);
+				// Kalman Filter update of the speed, the speed is only predicted if no observation is available
+				double speed = parent.speed;
+				double speedVariance = predictedVariances[s];
+				if (!Double.isNaN(observedSpeed)) {
+					double gain = speedVariance / (speedVariance + observationVariance);
+					speed += gain * (observedSpeed - speed);
+					speedVariance *= 1 - gain;
+				}
+				hypothesisList.add(new Hypothesis(parent, pointIndex, parent.level + 1, candidateList.get(i), path._2(), speed,
+						speedVariance, scores[i]));
 			}
+			return prune(hypothesisList);
 		}
 		
+		/**
+		 * Normalise the hypothesis probabilities, remove the ones below the update threshold and keep the most likely ones within the
+		 * beam width. The order of equally likely hypotheses is kept.
+		 */
+		private List<Hypothesis> prune(List<Hypothesis> hypothesisList) {
+			normalise(hypothesisList);
+			hypothesisList.removeIf(hypothesis -> !(hypothesis.probability >= thresholdUpdate));
+			hypothesisList.sort((h1, h2) -> Double.compare(h2.probability, h1.probability));
+			if (hypothesisList.size() > beamWidth)
+				hypothesisList = new ArrayList<>(hypothesisList.subList(0, beamWidth));
+			normalise(hypothesisList);
+			return hypothesisList;
+		}
 		
-		SimpleTrajectoryMatchResult matchResult = null;
+		private void normalise(List<Hypothesis> hypothesisList) {
+			double probSum = 0;
+			for (Hypothesis hypothesis : hypothesisList)
+				probSum += hypothesis.probability;
+			for (Hypothesis hypothesis : hypothesisList)
+				hypothesis.probability /= probSum;
+		}
+		
+		/**
+		 * Decide the common ancestor of all hypotheses. If the undecided points exceed the window size, the ancestor of the most likely
+		 * hypothesis at the earliest undecided point is decided and the hypotheses not descending from it are dropped.
+		 */
+		private void decideCommonAncestor(long currTime) {
+			Set<Hypothesis> ancestorSet = Collections.newSetFromMap(new IdentityHashMap<>());
+			ancestorSet.addAll(beam);
+			int level = beam.get(0).level;
+			while (ancestorSet.size() > 1 && level > decidedLevel + 1) {
+				Set<Hypothesis> parentSet = Collections.newSetFromMap(new IdentityHashMap<>());
+				for (Hypothesis hypothesis : ancestorSet)
+					parentSet.add(hypothesis.parent);
+				ancestorSet = parentSet;
+				level--;
+			}
+			if (ancestorSet.size() == 1 && level > decidedLevel)
+				decide(ancestorSet.iterator().next(), currTime);
+			
+			int leafLevel = beam.get(0).level;
+			if (leafLevel - decidedLevel > windowSize) {
+				Hypothesis forcedAncestor = getAncestor(beam.get(0), leafLevel - windowSize);
+				beam.removeIf(hypothesis -> getAncestor(hypothesis, forcedAncestor.level) != forcedAncestor);
+				normalise(beam);
+				decide(forcedAncestor, currTime);
+			}
+		}
 		
-		return new Pair<>(latencyList, matchResult);
+		private Hypothesis getAncestor(Hypothesis hypothesis, int level) {
+			while (hypothesis.level > level)
+				hypothesis = hypothesis.parent;
+			return hypothesis;
+		}
+		
+		/**
+		 * Output the matches of the hypothesis and its undecided ancestors, then cut it from its ancestors so that they can be released.
+		 */
+		private void decide(Hypothesis hypothesis, long currTime) {
+			List<Hypothesis> chain = new ArrayList<>();
+			for (Hypothesis curr = hypothesis; curr != null && !curr.isDecided; curr = curr.parent)
+				chain.add(curr);
+			for (int i = chain.size() - 1; i >= 0; i--) {
+				Hypothesis curr = chain.get(i);
+				pointMatches[curr.pointIndex] = curr.pointMatch;
+				latencies[curr.pointIndex] = currTime - traj.get(curr.pointIndex).time();
+				for (String roadID : curr.route) {
+					if (routeMatchList.isEmpty() || !routeMatchList.get(routeMatchList.size() - 1).equals(roadID))
+						routeMatchList.add(roadID);
+				}
+				curr.isDecided = true;
+				curr.parent = null;
+			}
+			decidedLevel = hypothesis.level;
+		}
+	}
+	
+	/**
+	 * A hypothesis of the match of one point, linked to the hypothesis of the previous matched point.
+	 */
+	private static final class Hypothesis {
+		private Hypothesis parent;    // null if it is the first hypothesis of a tree or it is decided
+		private final int pointIndex;
+		private final int level;    // the number of ancestors in the tree
+		private final PointMatch pointMatch;
+		private final List<String> route;    // the roads travelled from the parent, shared with the shortest path result
+		private final double speed;    // the estimated speed in m/s
+		private final double speedVariance;
+		private double probability;
+		private boolean isDecided = false;
+		
+		private Hypothesis(Hypothesis parent, int pointIndex, int level, PointMatch pointMatch, List<String> route, double speed,
+						   double speedVariance, double probability) {
+			this.parent = parent;
+			this.pointIndex = pointIndex;
+			this.level = level;
+			this.pointMatch = pointMatch;
+			this.route = route;
+			this.speed = speed;
+			this.speedVariance = speedVariance;
+			this.probability = probability;
+		}
 	}
-}
\ No newline at end of file
+}
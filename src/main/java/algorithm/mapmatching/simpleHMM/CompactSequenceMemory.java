@@ -0,0 +1,285 @@
+package algorithm.mapmatching.simpleHMM;
+
+import util.object.structure.Pair;
+import util.object.structure.PointMatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fixed sliding window of {@link SequenceMemory#updateFixed} kept in position-indexed arrays. The states are stored in a ring of
+ * reusable slots, each holds the candidate matches, filter probabilities, the index of the chosen predecessor in the previous state
+ * and the route from the predecessor. No candidate object, state id or map entry is created for the states in the window, the
+ * {@link StateCandidate} is only created for the decided candidate of each state when the window is output.
+ * <p>
+ * Like the votes in {@link SequenceMemory}, each candidate counts the candidates of the next state choosing it as predecessor. A
+ * candidate without any successor, except the most likely candidate of its state which is needed when backtracking from an HMM break,
+ * can never be output, so its match and route are released and the release goes on to its predecessor.
+ * <p>
+ * The decided candidates are the same as {@link SequenceMemory#updateFixed} except for ties in the probabilities, which are broken by
+ * the candidate order of the candidate search instead of the iteration order of the hash maps.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+final class CompactSequenceMemory implements StateWindow {
+
+    private final SimpleHMMMatching matcher;
+    private final int maxStateNum;
+    private final StateSlot[] slots;    // the ring of states, the window is slots[head] ... slots[head + count - 1]
+    private int head = 0;
+    private int count = 0;
+    private double[] emiProbs = new double[8];    // buffers reused by all updates
+    private double[][] transitionProbs = new double[0][];
+
+    /**
+     * @param matcher     The matcher which computes the probabilities.
+     * @param maxStateNum The window size, the window is output once it holds more states.
+     */
+    CompactSequenceMemory(SimpleHMMMatching matcher, int maxStateNum) {
+        if (maxStateNum <= 0)
+            throw new IllegalArgumentException("The compact sequence memory requires a positive window size: " + maxStateNum);
+        this.matcher = matcher;
+        this.maxStateNum = maxStateNum;
+        this.slots = new StateSlot[maxStateNum + 1];
+    }
+
+    /**
+     * Same as {@link SimpleHMMMatching#execute} followed by {@link SequenceMemory#updateFixed}.
+     */
+    @Override
+    public void update(StateSample sample, List<PointMatch> neighbourPms, Map<String, StateCandidate> optimalCandidateSeq) {
+        int candidateCount = neighbourPms.size();
+        if (emiProbs.length < candidateCount)
+            emiProbs = new double[Math.max(candidateCount, emiProbs.length * 2)];
+        for (int i = 0; i < candidateCount; i++)
+            emiProbs[i] = matcher.emissionProbability(neighbourPms.get(i), sample);
+
+        StateSlot prev = count == 0 ? null : getSlot(count - 1);
+        StateSlot curr = slots[(head + count) % slots.length];
+        if (curr == null) {
+            curr = new StateSlot();
+            slots[(head + count) % slots.length] = curr;
+        }
+        curr.reset(sample, candidateCount);
+        double normSum = 0;
+
+        if (prev != null && candidateCount > 0) {
+            if (transitionProbs.length < prev.size || (prev.size > 0 && transitionProbs[0].length < candidateCount)) {
+                int width = Math.max(candidateCount, transitionProbs.length == 0 ? 8 : transitionProbs[0].length);
+                transitionProbs = new double[Math.max(prev.size, transitionProbs.length)][width];
+            }
+            List<List<Pair<Double, List<String>>>> shortestPathMatrix = matcher.transitionProbabilities(prev.sample,
+                    Arrays.asList(prev.pointMatches).subList(0, prev.size), sample, neighbourPms, transitionProbs);
+
+            /* Assign the most likely predecessor for each neighbouring point */
+            for (int i = 0; i < candidateCount; i++) {
+                double maxSeqProb = -1;
+                int predecessor = -1;
+                for (int s = 0; s < prev.size; s++) {
+                    if (transitionProbs[s][i] == 0)
+                        continue;
+                    double seqProb = prev.filtProbs[s] * transitionProbs[s][i];
+                    if (seqProb > maxSeqProb) {
+                        predecessor = s;
+                        maxSeqProb = seqProb;
+                    }
+                }
+                /* A neighbouring point is a valid candidate for this sample only if it connects to a predecessor */
+                if (predecessor != -1) {
+                    double filtProb = maxSeqProb * emiProbs[i];
+                    curr.add(neighbourPms.get(i), filtProb, predecessor, shortestPathMatrix.get(predecessor).get(i)._2());
+                    normSum += filtProb;
+                }
+            }
+        }
+
+        /* either initial map-matching or HMM break */
+        if (curr.size == 0) {
+            for (int i = 0; i < candidateCount; i++) {
+                if (emiProbs[i] == 0)
+                    continue;
+                normSum += emiProbs[i];
+                curr.add(neighbourPms.get(i), emiProbs[i], -1, null);
+            }
+        }
+
+        if (curr.size == 0) {
+            // the sample got no neighbouring point on road network
+            curr.reset(null, 0);
+            optimalCandidateSeq.put(Double.toString(sample.getTime()), new StateCandidate());
+            return;
+        }
+        for (int i = 0; i < curr.size; i++) {
+            curr.filtProbs[i] /= normSum;
+            if (curr.filtProbs[i] > curr.filtProbs[curr.filtProbIndex])
+                curr.filtProbIndex = i;
+        }
+        count++;
+        if (prev != null && curr.predecessors[0] != -1) {
+            for (int i = 0; i < curr.size; i++)
+                prev.votes[curr.predecessors[i]]++;
+            for (int i = 0; i < prev.size; i++) {
+                if (prev.votes[i] == 0)
+                    release(count - 2, i);
+            }
+        }
+
+        if (count > maxStateNum) {
+            // force to output all states in window except the one just added, preserve only current state
+            reverse(optimalCandidateSeq, count - 2);
+            head = (head + count - 1) % slots.length;
+            count = 1;
+            Arrays.fill(getSlot(0).predecessors, 0, getSlot(0).size, -1);
+            for (StateSlot slot : slots) {
+                if (slot != null && slot != getSlot(0))
+                    slot.reset(null, 0);
+            }
+        }
+    }
+
+    /**
+     * Same as {@link SequenceMemory#reverse} at the last state.
+     */
+    @Override
+    public void finish(Map<String, StateCandidate> optimalCandidateSeq) {
+        if (count > 0)
+            reverse(optimalCandidateSeq, count - 1);
+        for (StateSlot slot : slots) {
+            if (slot != null)
+                slot.reset(null, 0);
+        }
+        head = 0;
+        count = 0;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public double getSampleTime(int index) {
+        return getSlot(index).sample.getTime();
+    }
+
+    private StateSlot getSlot(int index) {
+        return slots[(head + index) % slots.length];
+    }
+
+    /**
+     * Same as {@link SequenceMemory#reverse}, which backtracks from the most likely candidate of the given state. In
+     * {@link SequenceMemory}, the candidates of the second last state without any successor in the last state are removed, so that
+     * state starts from its only remaining candidate if there is exactly one.
+     */
+    private void reverse(Map<String, StateCandidate> optimalCandidateSeq, int index) {
+        int estimate = getSlot(index).filtProbIndex;
+        if (index == count - 2) {
+            int onlyPredecessor = getOnlyPredecessor(getSlot(count - 1));
+            if (onlyPredecessor != -1)
+                estimate = onlyPredecessor;
+        }
+        for (int i = index; i >= 0; --i) {
+            StateSlot slot = getSlot(i);
+            if (estimate == -1)    // HMM break
+                estimate = slot.filtProbIndex;
+            optimalCandidateSeq.put(Double.toString(slot.sample.getTime()), slot.toStateCandidate(estimate));
+            estimate = slot.predecessors[estimate];
+        }
+    }
+
+    /**
+     * Release a candidate without successor and go on to its predecessor if it has no other successor.
+     *
+     * @param index          The state index in the window.
+     * @param candidateIndex The candidate index in the state.
+     */
+    private void release(int index, int candidateIndex) {
+        while (true) {
+            StateSlot slot = getSlot(index);
+            if (candidateIndex == slot.filtProbIndex || slot.pointMatches[candidateIndex] == null)
+                return;
+            slot.release(candidateIndex);
+            int predecessor = slot.predecessors[candidateIndex];
+            if (predecessor == -1 || index == 0 || --getSlot(index - 1).votes[predecessor] > 0)
+                return;
+            index--;
+            candidateIndex = predecessor;
+        }
+    }
+
+    /**
+     * @return The predecessor index if all candidates of the state share the same predecessor, otherwise -1.
+     */
+    private static int getOnlyPredecessor(StateSlot slot) {
+        int predecessor = slot.predecessors[0];
+        for (int i = 1; i < slot.size; i++) {
+            if (slot.predecessors[i] != predecessor)
+                return -1;
+        }
+        return predecessor;
+    }
+
+    /**
+     * The candidates of one state. The arrays are reused when the slot is refilled.
+     */
+    private static final class StateSlot {
+        private StateSample sample;
+        private int size;
+        private PointMatch[] pointMatches = new PointMatch[0];    // null if the candidate is released
+        private double[] filtProbs = new double[0];
+        private int[] predecessors = new int[0];    // the candidate index in the previous state, -1 if none
+        private int[] votes = new int[0];    // the number of candidates in the next state choosing this candidate
+        private int filtProbIndex;    // the candidate with the largest filter probability
+        private int[] routeEnds = new int[0];    // the route of candidate i is routeRoads[routeEnds[i-1] ... routeEnds[i]-1]
+        private String[] routeRoads = new String[0];    // the road IDs shared with the routing graph
+
+        private void reset(StateSample sample, int capacity) {
+            // release the references of the previous state
+            Arrays.fill(routeRoads, 0, size == 0 ? 0 : routeEnds[size - 1], null);
+            Arrays.fill(pointMatches, 0, size, null);
+            if (pointMatches.length < capacity) {
+                int length = Math.max(capacity, pointMatches.length + (pointMatches.length >> 1));
+                pointMatches = new PointMatch[length];
+                filtProbs = new double[length];
+                predecessors = new int[length];
+                votes = new int[length];
+                routeEnds = new int[length];
+            }
+            this.sample = sample;
+            this.size = 0;
+            this.filtProbIndex = 0;
+        }
+
+        private void add(PointMatch pointMatch, double filtProb, int predecessor, List<String> route) {
+            int routeStart = size == 0 ? 0 : routeEnds[size - 1];
+            int routeSize = route == null ? 0 : route.size();
+            if (routeRoads.length < routeStart + routeSize)
+                routeRoads = Arrays.copyOf(routeRoads, Math.max(routeStart + routeSize, routeRoads.length * 2));
+            for (int i = 0; i < routeSize; i++)
+                routeRoads[routeStart + i] = route.get(i);
+            pointMatches[size] = pointMatch;
+            filtProbs[size] = filtProb;
+            predecessors[size] = predecessor;
+            votes[size] = 0;
+            routeEnds[size] = routeStart + routeSize;
+            size++;
+        }
+
+        private void release(int index) {
+            pointMatches[index] = null;
+            Arrays.fill(routeRoads, index == 0 ? 0 : routeEnds[index - 1], routeEnds[index], null);
+        }
+
+        private StateCandidate toStateCandidate(int index) {
+            StateCandidate candidate = new StateCandidate(pointMatches[index], sample);
+            candidate.setFiltProb(filtProbs[index]);
+            int routeStart = index == 0 ? 0 : routeEnds[index - 1];
+            candidate.setTransition(new StateTransition(new ArrayList<>(Arrays.asList(routeRoads).subList(routeStart,
+                    routeEnds[index]))));
+            return candidate;
+        }
+    }
+}
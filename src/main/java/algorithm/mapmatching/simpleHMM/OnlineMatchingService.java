@@ -0,0 +1,281 @@
+package algorithm.mapmatching.simpleHMM;
+
+import algorithm.mapmatching.MatchingMapSnapshot;
+import org.apache.log4j.Logger;
+import util.object.spatialobject.TrajectoryPoint;
+import util.object.structure.PointMatch;
+import util.settings.BaseProperty;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Streaming map-matching of many vehicles with the online HMM methods (ON-HMM-goh, ON-HMM-eddy and ON-HMM-fixed). The GPS points of
+ * different vehicles arrive interleaved, one point at a time. Each vehicle has a session which only keeps its sliding window, so the
+ * state of a session is bounded by the window size. The match of a point is emitted as soon as the window decides it, and the matches
+ * of a vehicle are always emitted in the time order of the points. The emitted matches are the same as
+ * {@link SimpleHMMMatching#onlineMatching} on the trajectory of all points accepted by the session.
+ * <p>
+ * The points of different vehicles can be accepted concurrently from multiple threads, while the points of one vehicle are processed
+ * one by one. All sessions share the map snapshot and its distance function, see {@link MatchingMapSnapshot} for which distance
+ * functions are thread-safe. The result consumer is called on the thread which accepts the point, closes or expires the session, so it
+ * should be thread-safe if the service is used by more than one thread.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+public class OnlineMatchingService {
+
+    private static final Logger LOG = Logger.getLogger(OnlineMatchingService.class);
+    private final SimpleHMMMatching matcher;
+    private final long sessionTimeout;    // in seconds of the trajectory time
+    private final Consumer<MatchedPoint> resultConsumer;
+    private final Map<String, Session> vehicle2Session = new ConcurrentHashMap<>();
+
+    /**
+     * Create the service on a shared map snapshot. The idle timeout of a session is read from
+     * <tt>algorithm.mapmatching.hmm.SessionTimeout</tt>, default 300 seconds.
+     *
+     * @param mapSnapshot    The map snapshot, which should not be a loose map.
+     * @param property       The map-matching properties, the matching method should be an online HMM method.
+     * @param resultConsumer Receives the matches of all vehicles.
+     */
+    public OnlineMatchingService(MatchingMapSnapshot mapSnapshot, BaseProperty property, Consumer<MatchedPoint> resultConsumer) {
+        this.matcher = new SimpleHMMMatching(mapSnapshot, property);
+        this.matcher.createOnlineWindow();    // fail early if the matching method is not online
+        this.sessionTimeout = property.contains("algorithm.mapmatching.hmm.SessionTimeout") ?
+                property.getPropertyLong("algorithm.mapmatching.hmm.SessionTimeout") : 300;
+        if (sessionTimeout <= 0)
+            throw new IllegalArgumentException("The session timeout should be positive: " + sessionTimeout);
+        this.resultConsumer = resultConsumer;
+    }
+
+    /**
+     * Match a new point of a vehicle, a session is created if the vehicle has no open session. The point is dropped if it is not later
+     * than the last accepted point of the vehicle, as the window cannot go back in time.
+     *
+     * @param vehicleID The vehicle ID.
+     * @param point     The GPS point.
+     * @return False if the point is dropped.
+     */
+    public boolean accept(String vehicleID, TrajectoryPoint point) {
+        if (vehicleID == null || point == null)
+            throw new IllegalArgumentException("The vehicle ID and the point should not be null.");
+        while (true) {
+            Session session = vehicle2Session.computeIfAbsent(vehicleID, k -> new Session(vehicleID, matcher.createOnlineWindow()));
+            synchronized (session) {
+                if (!session.isClosed)
+                    return session.accept(point);
+            }
+            // the session is closed by another thread after it was found, retry with a new session
+        }
+    }
+
+    /**
+     * Decide and emit the matches of all pending points of a vehicle, then close its session. The next point of the vehicle starts a
+     * new session.
+     *
+     * @param vehicleID The vehicle ID.
+     * @return False if the vehicle has no open session.
+     */
+    public boolean closeSession(String vehicleID) {
+        Session session = vehicle2Session.get(vehicleID);
+        if (session == null)
+            return false;
+        synchronized (session) {
+            if (session.isClosed)
+                return false;
+            session.close();
+        }
+        return true;
+    }
+
+    /**
+     * Close the sessions whose last point is more than the session timeout before the given time.
+     *
+     * @param currentTime The current time, in the same unit as the point time.
+     * @return The number of sessions closed.
+     */
+    public int expireIdleSessions(long currentTime) {
+        int expiredCount = 0;
+        for (Session session : vehicle2Session.values()) {
+            synchronized (session) {
+                if (!session.isClosed && currentTime - session.lastTime > sessionTimeout) {
+                    session.close();
+                    expiredCount++;
+                }
+            }
+        }
+        if (expiredCount > 0)
+            LOG.debug(expiredCount + " idle sessions expired, remaining sessions: " + vehicle2Session.size());
+        return expiredCount;
+    }
+
+    /**
+     * Close all open sessions.
+     */
+    public void closeAll() {
+        for (Session session : vehicle2Session.values()) {
+            synchronized (session) {
+                if (!session.isClosed)
+                    session.close();
+            }
+        }
+    }
+
+    public int getSessionCount() {
+        return vehicle2Session.size();
+    }
+
+    /**
+     * The sliding window of one vehicle and the decided states still in the window.
+     */
+    private final class Session {
+        private final String vehicleID;
+        private final StateWindow window;
+        private final Map<String, StateCandidate> decidedCandidates = new HashMap<>(4);    // state id -> candidate
+        private final Set<String> emittedStateIDs = new HashSet<>(4);    // the decided states which are emitted but still in window
+        private ArrayDeque<Long> pendingBreakTimes;    // points without candidates, held until the earlier points are emitted
+        private long lastTime = Long.MIN_VALUE;
+        private boolean isClosed = false;
+
+        private Session(String vehicleID, StateWindow window) {
+            this.vehicleID = vehicleID;
+            this.window = window;
+        }
+
+        private boolean accept(TrajectoryPoint point) {
+            if (point.time() <= lastTime)
+                return false;
+            StateSample sample = new StateSample(point, point.heading(), point.time());
+            matcher.updateSequence(window, sample, matcher.searchCandidates(sample), decidedCandidates);
+            lastTime = point.time();
+            emit(false);
+            return true;
+        }
+
+        private void close() {
+            if (window.size() > 0)
+                matcher.finishSequence(window, decidedCandidates);
+            emit(true);
+            isClosed = true;
+            vehicle2Session.remove(vehicleID, this);
+        }
+
+        /**
+         * Emit the newly decided states in time order. A point without candidates is decided immediately, so it waits until all
+         * earlier states in the window are decided.
+         */
+        private void emit(boolean isFinal) {
+            List<StateCandidate> newCandidateList = new ArrayList<>();
+            Iterator<Map.Entry<String, StateCandidate>> iterator = decidedCandidates.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, StateCandidate> entry = iterator.next();
+                if (emittedStateIDs.contains(entry.getKey()))
+                    continue;
+                if (entry.getValue().getPointMatch() == null) {
+                    if (pendingBreakTimes == null)
+                        pendingBreakTimes = new ArrayDeque<>();
+                    pendingBreakTimes.add((long) Double.parseDouble(entry.getKey()));
+                    iterator.remove();
+                } else {
+                    newCandidateList.add(entry.getValue());
+                    emittedStateIDs.add(entry.getKey());
+                }
+            }
+            newCandidateList.sort(Comparator.comparingDouble(candidate -> candidate.getStateSample().getTime()));
+
+            // the first undecided state in window, the states in window are decided from the front
+            double undecidedTime = Double.POSITIVE_INFINITY;
+            Set<String> windowStateIDs = new HashSet<>();
+            for (int i = 0; i < window.size(); i++) {
+                String stateID = Double.toString(window.getSampleTime(i));
+                windowStateIDs.add(stateID);
+                if (undecidedTime == Double.POSITIVE_INFINITY && !decidedCandidates.containsKey(stateID))
+                    undecidedTime = window.getSampleTime(i);
+            }
+            if (isFinal)
+                undecidedTime = Double.POSITIVE_INFINITY;
+
+            int candidateIndex = 0;
+            while (candidateIndex < newCandidateList.size() || (pendingBreakTimes != null && !pendingBreakTimes.isEmpty()
+                    && pendingBreakTimes.peekFirst() < undecidedTime)) {
+                if (pendingBreakTimes != null && !pendingBreakTimes.isEmpty() && pendingBreakTimes.peekFirst() < undecidedTime
+                        && (candidateIndex == newCandidateList.size()
+                        || pendingBreakTimes.peekFirst() < newCandidateList.get(candidateIndex).getStateSample().getTime())) {
+                    long time = pendingBreakTimes.removeFirst();
+                    resultConsumer.accept(new MatchedPoint(vehicleID, time, new PointMatch(matcher.getDistanceFunction()),
+                            Collections.emptyList(), lastTime - time));
+                } else {
+                    StateCandidate candidate = newCandidateList.get(candidateIndex++);
+                    if (candidate.getId().charAt(0) == '_')
+                        continue;    // skipped as in the trajectory matching
+                    long time = (long) candidate.getStateSample().getTime();
+                    PointMatch pointMatch = matcher.getMatchedPoint(candidate);
+                    // remove the trailing road series number, same as SimpleTrajectoryMatchResult
+                    if (pointMatch.getRoadID().contains("|"))
+                        pointMatch.setRoadID(pointMatch.getRoadID().substring(0, pointMatch.getRoadID().lastIndexOf("|")));
+                    resultConsumer.accept(new MatchedPoint(vehicleID, time, pointMatch, candidate.getTransition().getRoute(),
+                            lastTime - time));
+                }
+            }
+
+            // only the decided states still in window are needed by the later updates
+            decidedCandidates.keySet().retainAll(windowStateIDs);
+            emittedStateIDs.retainAll(windowStateIDs);
+        }
+    }
+
+    /**
+     * The match of one point.
+     */
+    public static final class MatchedPoint {
+        private final String vehicleID;
+        private final long time;
+        private final PointMatch pointMatch;
+        private final List<String> route;
+        private final long latency;
+
+        private MatchedPoint(String vehicleID, long time, PointMatch pointMatch, List<String> route, long latency) {
+            this.vehicleID = vehicleID;
+            this.time = time;
+            this.pointMatch = pointMatch;
+            this.route = route;
+            this.latency = latency;
+        }
+
+        public String getVehicleID() {
+            return vehicleID;
+        }
+
+        /**
+         * @return The time of the matched point.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @return The match of the point, which has no matched segment if the point has no candidate.
+         */
+        public PointMatch getPointMatch() {
+            return pointMatch;
+        }
+
+        /**
+         * @return The IDs of the roads travelled from the previous matched point to this point, which may repeat the last road of the
+         * previous route.
+         */
+        public List<String> getRoute() {
+            return route;
+        }
+
+        /**
+         * @return The time between the point and the latest point of the vehicle when the match is emitted.
+         */
+        public long getLatency() {
+            return latency;
+        }
+    }
+}
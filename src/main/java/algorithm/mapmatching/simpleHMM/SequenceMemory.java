@@ -296,7 +296,7 @@ public class SequenceMemory {
                     filtProbAtLastState = kEstimate.getFiltProb();
                 }
                 String corresStateId = stateMemoryVector.get(i - 1).getId(); // use the predecessor's state id
-                stateUncertainties.computeIfAbsent(corresStateId, k -> new HashMap<>());
+                stateUncertainties.computeIfAbsent(corresStateId, k -> new LinkedHashMap<>());
 
                 if (stateUncertainties.get(corresStateId).get(kEstimate) == null) {
                     stateUncertainties.get(corresStateId).put(kEstimate, filtProbAtLastState);
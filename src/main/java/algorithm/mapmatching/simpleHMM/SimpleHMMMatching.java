@@ -2,11 +2,12 @@ package algorithm.mapmatching.simpleHMM;
 
 
 import algorithm.mapmatching.MapMatchingMethod;
+import algorithm.mapmatching.MatchingMapSnapshot;
+import algorithm.mapmatching.MatchingMetrics;
 import algorithm.mapmatching.hmm.HMMProbabilities;
-import algorithm.mapmatching.weightBased.Utilities;
 import util.dijkstra.RoutingGraph;
 import util.function.DistanceFunction;
-import util.index.rtree.RTreeIndexing;
+import util.index.grid.SegmentGridIndex;
 import util.object.roadnetwork.RoadNetworkGraph;
 import util.object.spatialobject.Point;
 import util.object.spatialobject.Trajectory;
@@ -14,7 +15,6 @@ import util.object.spatialobject.TrajectoryPoint;
 import util.object.structure.Pair;
 import util.object.structure.PointMatch;
 import util.object.structure.SimpleTrajectoryMatchResult;
-import util.object.structure.Triplet;
 import util.settings.BaseProperty;
 
 import java.io.Serializable;
@@ -22,25 +22,55 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 
+/**
+ * HMM map-matching on a sliding window of states. An instance only holds the matching parameters on top of a
+ * {@link MatchingMapSnapshot}, so one instance can be created per worker thread while the snapshot is shared.
+ */
 public class SimpleHMMMatching implements MapMatchingMethod, Serializable {
     private final RoadNetworkGraph roadMap;
     private final RoutingGraph routingGraph;
     private final DistanceFunction distFunc;
-    private final RTreeIndexing rtree;
-    private HMMProbabilities hmmProbabilities;
-    private double candidateRange;
+    private final SegmentGridIndex segmentIndex;
+    private final HMMProbabilities hmmProbabilities;
+    private final double candidateRange;
+    private final boolean isBatchCandidateSearch;    // search the candidates of a whole trajectory in one batch
     //    private double dijkstraDist;
 //    private long maxWaitingTime;
-    private int maxStateNum;
-    private double gamma;
-    private double turnWeight;
-    private String hmmMethod;
+    private final int maxStateNum;
+    private final double gamma;
+    private final double turnWeight;
+    private final String hmmMethod;
+    private final boolean isCompactWindow;    // keep the fixed window in position-indexed arrays, see CompactSequenceMemory
+    private final MatchingMetrics metrics;    // records the time spent in each matching stage, null if not required
 
     public SimpleHMMMatching(RoadNetworkGraph roadMap, BaseProperty property) {
-        this.roadMap = roadMap;
-        this.routingGraph = new RoutingGraph(roadMap, false, property);
-        this.distFunc = roadMap.getDistanceFunction();
-        this.rtree = new RTreeIndexing(roadMap);
+        this(new MatchingMapSnapshot(roadMap, false, property), property);
+    }
+
+    /**
+     * Create a matcher session on a shared map snapshot.
+     *
+     * @param mapSnapshot The map snapshot, which should not be a loose map.
+     * @param property    The map-matching properties.
+     */
+    public SimpleHMMMatching(MatchingMapSnapshot mapSnapshot, BaseProperty property) {
+        this(mapSnapshot, property, null);
+    }
+
+    /**
+     * Create a matcher session on a shared map snapshot and record the time spent in candidate search, routing and Viterbi update.
+     *
+     * @param mapSnapshot The map snapshot, which should not be a loose map.
+     * @param property    The map-matching properties.
+     * @param metrics     The metrics shared by all sessions, null if not required.
+     */
+    public SimpleHMMMatching(MatchingMapSnapshot mapSnapshot, BaseProperty property, MatchingMetrics metrics) {
+        if (mapSnapshot.isLooseMap())
+            throw new IllegalArgumentException("The simple HMM map-matching does not support loose map.");
+        this.roadMap = mapSnapshot.getRoadMap();
+        this.routingGraph = mapSnapshot.getRoutingGraph();
+        this.distFunc = mapSnapshot.getDistanceFunction();
+        this.segmentIndex = mapSnapshot.getSegmentIndex();
         double sigma = property.getPropertyDouble("algorithm.mapmatching.Sigma");
         double beta = property.getPropertyDouble("algorithm.mapmatching.hmm.Beta");
         gamma = property.getPropertyDouble("algorithm.mapmatching.hmm.Eddy.Gamma");
@@ -48,8 +78,13 @@ public class SimpleHMMMatching implements MapMatchingMethod, Serializable {
         turnWeight = property.getPropertyDouble("algorithm.mapmatching.hmm.turnWeight");
         this.hmmProbabilities = new HMMProbabilities(sigma, beta);
         this.candidateRange = property.getPropertyDouble("algorithm.mapmatching.CandidateRange");
+        this.isBatchCandidateSearch = property.contains("algorithm.mapmatching.BatchCandidateSearch")
+                && property.getPropertyBoolean("algorithm.mapmatching.BatchCandidateSearch");
 //        this.dijkstraDist = property.getPropertyDouble("algorithm.mapmatching.sco.DijkstraThreshold");
         this.maxStateNum = property.getPropertyInteger("algorithm.mapmatching.WindowSize");
+        this.isCompactWindow = property.contains("algorithm.mapmatching.hmm.CompactWindow")
+                && property.getPropertyBoolean("algorithm.mapmatching.hmm.CompactWindow");
+        this.metrics = metrics;
     }
 
     /**
@@ -67,26 +102,37 @@ public class SimpleHMMMatching implements MapMatchingMethod, Serializable {
         StateSample previous = prevMemory.getSample();
         double linearDist = distFunc.pointToPointDistance(sample.x(), sample.y(), previous.x(), previous.y());
 
-        final List<PointMatch> targets = new LinkedList<>();
+        final List<PointMatch> targets = new ArrayList<>();
         for (StateCandidate candidate : candidates._2()) {
             targets.add(candidate.getPointMatch());
         }
+        final List<StateCandidate> predecessors = new ArrayList<>(prevMemory.getStateCandidates().values());
+        final List<PointMatch> sources = new ArrayList<>();
+        for (StateCandidate predecessor : predecessors) {
+            sources.add(predecessor.getPointMatch());
+        }
 
         /* predecessor candidate id --> <candidate id, transition> */
         final Map<String, Map<String, Pair<StateTransition, Double>>> transitions = new ConcurrentHashMap<>();
 
-        for (StateCandidate predecessor : prevMemory.getStateCandidates().values()) {
+        double timeDiff = sample.getTime() - previous.getTime();
+        double maxDistance = Math.min((50 * timeDiff), linearDist * 8);
+        /* shortest paths from all predecessors to all candidates, computed in one batch */
+        List<List<Pair<Double, List<String>>>> shortestPathMatrix = routingGraph.calculateManyToNDijkstraSP(sources, targets,
+                maxDistance);
+        //List<List<Pair<Double, List<String>>>> shortestPathMatrix = routingGraph.calculateManyToNAStarSP(sources, targets,
+        //                    new Point(sample.x(), sample.y(), distFunc), maxDistance);
+
+        for (int s = 0; s < predecessors.size(); s++) {
+            StateCandidate predecessor = predecessors.get(s);
             Map<String, Pair<StateTransition, Double>> result = new HashMap<>();
-            double timeDiff = sample.getTime() - previous.getTime();
-            double maxDistance = Math.min((50 * timeDiff), linearDist * 8);
-            List<Triplet<PointMatch, Double, List<String>>> shortestPath = Utilities.getShortestPaths(
-                    routingGraph, targets, predecessor.getPointMatch(), new Point(sample.x(), sample.y(), distFunc), maxDistance);
-            //List<Triplet<PointMatch, Double, List<String>>> shortestPath = Utilities.getShortestPaths(
-            //                    routingGraph, targets, predecessor.getPointMatch(), dijkstraDist);
+            List<Pair<Double, List<String>>> shortestPath = shortestPathMatrix.get(s);
 
             Map<PointMatch, Pair<Double, List<String>>> map = new HashMap<>();
-            for (Triplet<PointMatch, Double, List<String>> triplet : shortestPath) {
-                map.put(triplet._1(), new Pair<>(triplet._2(), triplet._3()));
+            for (int i = 0; i < targets.size(); i++) {
+                if (shortestPath.get(i)._1() != Double.POSITIVE_INFINITY) {
+                    map.put(targets.get(i), shortestPath.get(i));
+                }
             }
 
 
@@ -116,21 +162,64 @@ public class SimpleHMMMatching implements MapMatchingMethod, Serializable {
      * Gets state vector, which is a StateMemory objects and with its emission
      * probability.
      *
-     * @param sample current sample
+     * @param sample       current sample
+     * @param neighbourPms the candidate matches of the sample
      * @return Set of tuples consisting of a {@link StateCandidate} and its emission probability.
      */
-    private Set<StateCandidate> getNeighbourPoints(StateSample sample) {
-        List<PointMatch> neighbourPms = this.rtree.searchNeighbours(sample.getSampleMeasurement(), candidateRange);
+    private Set<StateCandidate> getNeighbourPoints(StateSample sample, List<PointMatch> neighbourPms) {
         Set<StateCandidate> candidates = new LinkedHashSet<>();
         for (PointMatch neighbourPm : neighbourPms) {
             StateCandidate candidate = new StateCandidate(neighbourPm, sample);
-            double dz = distFunc.pointToPointDistance(neighbourPm.lon(), neighbourPm.lat(), sample.x(), sample.y());
-            candidate.setEmiProb(hmmProbabilities.emissionProbability(dz));
+            candidate.setEmiProb(emissionProbability(neighbourPm, sample));
             candidates.add(candidate);
         }
         return candidates;
     }
 
+    double emissionProbability(PointMatch neighbourPm, StateSample sample) {
+        double dz = distFunc.pointToPointDistance(neighbourPm.lon(), neighbourPm.lat(), sample.x(), sample.y());
+        return hmmProbabilities.emissionProbability(dz);
+    }
+
+    /**
+     * Same as {@link #transitions(StateMemory, Pair)} on position-indexed candidates, used by {@link CompactSequenceMemory}.
+     *
+     * @param previous      The previous sample.
+     * @param sources       The candidate matches of the previous sample.
+     * @param sample        The current sample.
+     * @param targets       The candidate matches of the current sample.
+     * @param probabilities Output, the transition probability from each source to each target, 0 if the target is not reachable. The
+     *                      array should be at least as large as the sources and targets.
+     * @return The shortest path matrix indexed by [source][target].
+     */
+    List<List<Pair<Double, List<String>>>> transitionProbabilities(StateSample previous, List<PointMatch> sources, StateSample sample,
+                                                                  List<PointMatch> targets, double[][] probabilities) {
+        switchStage(MatchingMetrics.Stage.ROUTING);
+        double linearDist = distFunc.pointToPointDistance(sample.x(), sample.y(), previous.x(), previous.y());
+        double timeDiff = sample.getTime() - previous.getTime();
+        double maxDistance = Math.min((50 * timeDiff), linearDist * 8);
+        List<List<Pair<Double, List<String>>>> shortestPathMatrix = routingGraph.calculateManyToNDijkstraSP(sources, targets,
+                maxDistance);
+        switchStage(MatchingMetrics.Stage.VITERBI_UPDATE);
+        boolean isFrechet = hmmMethod.toLowerCase().contains("frechet");
+        for (int s = 0; s < sources.size(); s++) {
+            List<Pair<Double, List<String>>> shortestPath = shortestPathMatrix.get(s);
+            for (int i = 0; i < targets.size(); i++) {
+                double distance = shortestPath.get(i)._1();
+                if (distance == Double.POSITIVE_INFINITY) {
+                    probabilities[s][i] = 0;
+                    continue;
+                }
+                List<String> path = shortestPath.get(i)._2();
+                if (isFrechet && path.size() > 0) linearDist = 0;
+                probabilities[s][i] = turnWeight <= 0 ?
+                        hmmProbabilities.transitionProbability(distance, linearDist, timeDiff) :
+                        hmmProbabilities.transitionProbabilityWithTurn(distance, linearDist, timeDiff, path, roadMap, turnWeight);
+            }
+        }
+        return shortestPathMatrix;
+    }
+
 
     /**
      * Executes Hidden Markov Model (HMM) filter iteration that determines for a given measurement
@@ -146,16 +235,29 @@ public class SimpleHMMMatching implements MapMatchingMethod, Serializable {
      * @return StateMemory    which may be empty if an HMM break occurred.
      */
     public StateMemory execute(StateMemory prevStateMemory, StateSample sample) {
+        return execute(prevStateMemory, sample, segmentIndex.searchNeighbours(sample.getSampleMeasurement(), candidateRange));
+    }
+
+    /**
+     * Same as {@link #execute(StateMemory, StateSample)} with the candidate matches of the sample given.
+     *
+     * @param prevStateMemory prevStateMemory, may be empty
+     * @param sample          current sample
+     * @param neighbourPms    the candidate matches of the sample
+     * @return StateMemory    which may be empty if an HMM break occurred.
+     */
+    private StateMemory execute(StateMemory prevStateMemory, StateSample sample, List<PointMatch> neighbourPms) {
         Set<StateCandidate> predecessors = new HashSet<>();
         /* prevStateMemory is null if initial MM */
         if (prevStateMemory != null) {
             predecessors = new LinkedHashSet<>(prevStateMemory.getStateCandidates().values());
         }
 
-        Set<StateCandidate> stateCandidates = new HashSet<>();
+        // keep the candidate search order so that equally likely candidates are chosen the same way in every run
+        Set<StateCandidate> stateCandidates = new LinkedHashSet<>();
 
         /* Get neighbouring points to this sample. If none, return empty an empty StateMemory object */
-        Set<StateCandidate> neighbourPoints = getNeighbourPoints(sample);
+        Set<StateCandidate> neighbourPoints = getNeighbourPoints(sample, neighbourPms);
         if (neighbourPoints.isEmpty()) {
             return new StateMemory(stateCandidates, sample);
         }
@@ -164,8 +266,10 @@ public class SimpleHMMMatching implements MapMatchingMethod, Serializable {
 
         if (!predecessors.isEmpty()) {
 
+            switchStage(MatchingMetrics.Stage.ROUTING);
             Map<String, Map<String, Pair<StateTransition, Double>>> transitions =
                     transitions(prevStateMemory, new Pair<>(sample, neighbourPoints));
+            switchStage(MatchingMetrics.Stage.VITERBI_UPDATE);
 
             /* Assign the most likely predecessor for each neighbouring point */
             for (StateCandidate neighbourPoint : neighbourPoints) {
@@ -217,7 +321,7 @@ public class SimpleHMMMatching implements MapMatchingMethod, Serializable {
         return new StateMemory(stateCandidates, sample);
     }
 
-    private Pair<List<Double>, Pair<List<PointMatch>, List<String>>> pullMatchResult(SequenceMemory sequence,
+    private Pair<List<Double>, Pair<List<PointMatch>, List<String>>> pullMatchResult(StateWindow window,
                                                                                      Trajectory trajectory) {
         if (trajectory.size() == 0) {
             throw new RuntimeException("Invalid trajectory");
@@ -228,27 +332,28 @@ public class SimpleHMMMatching implements MapMatchingMethod, Serializable {
         }
 
         samples.sort((left, right) -> (int) (left.getTime() - right.getTime()));
+        List<List<PointMatch>> sampleCandidateList = null;    // the candidates of each sample, searched in one batch
+        if (isBatchCandidateSearch) {
+            switchStage(MatchingMetrics.Stage.CANDIDATE_SEARCH);
+            List<Point> samplePointList = new ArrayList<>(samples.size());
+            for (StateSample sample : samples) {
+                samplePointList.add(sample.getSampleMeasurement());
+            }
+            sampleCandidateList = segmentIndex.searchNeighbours(samplePointList, candidateRange);
+        }
 
         Map<String, StateCandidate> optimalCandidateSeq = new HashMap<>(); // key is state id
         // calculate latency
         List<Double> latency = new ArrayList<>();
         // Record states have been matched
         Set<String> preStatesRecord = new HashSet<>();
+        int sampleIndex = 0;
         for (StateSample sample : samples) {
-            StateMemory vector = execute(sequence.lastStateMemory(), sample);
-            // ignore a gps point which doesn't have candidate point
-            if (!vector.getStateCandidates().isEmpty()) {
-                if (hmmMethod.toLowerCase().contains("eddy")) {
-                    sequence.updateEddy(vector, sample, optimalCandidateSeq, gamma);
-                } else if (hmmMethod.toLowerCase().contains("goh")) {
-                    sequence.updateGoh(vector, sample, optimalCandidateSeq);
-                } else if (hmmMethod.toLowerCase().contains("fix")) {
-                    sequence.updateFixed(vector, sample, optimalCandidateSeq);
-                } else sequence.updateFixed(vector, sample, optimalCandidateSeq); // offline mode
-            } else {
-                // the sample got no neighbouring point on road network
-                optimalCandidateSeq.put(Double.toString(sample.getTime()), new StateCandidate());
-            }
+            switchStage(MatchingMetrics.Stage.CANDIDATE_SEARCH);
+            List<PointMatch> neighbourPms = sampleCandidateList == null ?
+                    segmentIndex.searchNeighbours(sample.getSampleMeasurement(), candidateRange) : sampleCandidateList.get(sampleIndex);
+            updateSequence(window, sample, neighbourPms, optimalCandidateSeq);
+            sampleIndex++;
 
             if (hmmMethod.toLowerCase().contains("on")) {
                 if (preStatesRecord.size() != optimalCandidateSeq.size()) {
@@ -264,37 +369,27 @@ public class SimpleHMMMatching implements MapMatchingMethod, Serializable {
             }
         }
 
-        List<StateMemory> stateMemories = sequence.getStateMemoryVector();
-        if (stateMemories.size() > 0) {
+        if (window.size() > 0) {
             // calculate latency if online scenario
             if (hmmMethod.toLowerCase().contains("on")) {
-                double lastSampleTime = stateMemories.get(stateMemories.size() - 1).getSample().getTime();
-                for (StateMemory stateMemory : stateMemories) {
-                    latency.add(lastSampleTime - stateMemory.getSample().getTime());
+                double lastSampleTime = window.getSampleTime(window.size() - 1);
+                for (int i = 0; i < window.size(); i++) {
+                    latency.add(lastSampleTime - window.getSampleTime(i));
                 }
             }
 
-            if (hmmMethod.toLowerCase().contains("eddy")) {
-                sequence.forceFinalOutput(optimalCandidateSeq, gamma);
-            } else {
-                // both goh and fixed-window use this method to get last states
-                sequence.reverse(optimalCandidateSeq, sequence.getStateMemoryVector().size() - 1);
-            }
+            finishSequence(window, optimalCandidateSeq);
         }
 
+        endStage();
         List<String> routeMatchResult = new LinkedList<>();
         List<PointMatch> pointMatchResult = new LinkedList<>();
 
         for (TrajectoryPoint trajectoryPoint : trajectory) {
-            String id = Double.toString(trajectoryPoint.time());
-            if (optimalCandidateSeq.get(id).getPointMatch() != null) {
-                StateCandidate candidate = optimalCandidateSeq.get(id);
-                StateSample sample = candidate.getStateSample();
+            StateCandidate candidate = optimalCandidateSeq.get(Double.toString(trajectoryPoint.time()));
+            if (candidate.getPointMatch() != null) {
                 if (candidate.getId().charAt(0) == '_') continue;
-                Point point = distFunc.getClosestPoint(
-                        sample.getSampleMeasurement(), candidate.getPointMatch().getMatchedSegment());
-                PointMatch pm = new PointMatch(point, candidate.getPointMatch().getMatchedSegment(), candidate.getId());
-                pointMatchResult.add(pm);
+                pointMatchResult.add(getMatchedPoint(candidate));
                 routeMatchResult.addAll(candidate.getTransition().getRoute());
             } else {
                 pointMatchResult.add(new PointMatch(distFunc));
@@ -314,6 +409,77 @@ public class SimpleHMMMatching implements MapMatchingMethod, Serializable {
         return new Pair<>(latency, new Pair<>(pointMatchResult, routeMatchResultSimplified));
     }
 
+    /**
+     * Create the sliding window used in online matching.
+     *
+     * @return The sliding window of the configured online method.
+     */
+    StateWindow createOnlineWindow() {
+        if (hmmMethod.toLowerCase().contains("goh")) {
+            return new SequenceMemoryWindow(new SequenceMemory(maxStateNum));
+        } else if (hmmMethod.toLowerCase().contains("fix")) {
+            return isCompactWindow ? new CompactSequenceMemory(this, maxStateNum) :
+                    new SequenceMemoryWindow(new SequenceMemory(maxStateNum));
+        } else if (hmmMethod.toLowerCase().contains("eddy")) {
+            return new SequenceMemoryWindow(new SequenceMemory());
+        }
+        throw new IllegalArgumentException("The matching method is not an online HMM method: " + hmmMethod);
+    }
+
+    /**
+     * Search the candidate matches of a sample.
+     */
+    List<PointMatch> searchCandidates(StateSample sample) {
+        switchStage(MatchingMetrics.Stage.CANDIDATE_SEARCH);
+        return segmentIndex.searchNeighbours(sample.getSampleMeasurement(), candidateRange);
+    }
+
+    /**
+     * Extend the sliding window by one sample. The states whose matches are decided are put into the optimal candidate sequence, and a
+     * sample without any candidate is put with an empty candidate immediately.
+     *
+     * @param window              The sliding window.
+     * @param sample              The new sample, which should be later than the last sample in the window.
+     * @param neighbourPms        The candidate matches of the sample.
+     * @param optimalCandidateSeq The decided candidate of each state, the key is the state id.
+     */
+    void updateSequence(StateWindow window, StateSample sample, List<PointMatch> neighbourPms,
+                        Map<String, StateCandidate> optimalCandidateSeq) {
+        switchStage(MatchingMetrics.Stage.VITERBI_UPDATE);
+        window.update(sample, neighbourPms, optimalCandidateSeq);
+    }
+
+    /**
+     * Decide the matches of all states remaining in a non-empty sliding window at the end of the trajectory.
+     */
+    void finishSequence(StateWindow window, Map<String, StateCandidate> optimalCandidateSeq) {
+        window.finish(optimalCandidateSeq);
+    }
+
+    /**
+     * @param candidate A decided candidate with a point match.
+     * @return The projection of the sample onto the matched road.
+     */
+    PointMatch getMatchedPoint(StateCandidate candidate) {
+        StateSample sample = candidate.getStateSample();
+        Point point = distFunc.getClosestPoint(sample.getSampleMeasurement(), candidate.getPointMatch().getMatchedSegment());
+        return new PointMatch(point, candidate.getPointMatch().getMatchedSegment(), candidate.getId());
+    }
+
+    DistanceFunction getDistanceFunction() {
+        return distFunc;
+    }
+
+    private void switchStage(MatchingMetrics.Stage stage) {
+        if (metrics != null)
+            metrics.switchStage(stage);
+    }
+
+    private void endStage() {
+        if (metrics != null)
+            metrics.endStage();
+    }
+
     /**
      * Matches a full sequence of samples, StateSample objects and returns state
      * representation of the full matching which is a SequenceMemory object. Output the map-matching result eventually.
@@ -325,7 +491,7 @@ public class SimpleHMMMatching implements MapMatchingMethod, Serializable {
     public SimpleTrajectoryMatchResult offlineMatching(Trajectory trajectory) {
         if (trajectory == null) return null;
         Pair<List<PointMatch>, List<String>> pointToRouteResult =
-                pullMatchResult(new SequenceMemory(), trajectory)._2();
+                pullMatchResult(new SequenceMemoryWindow(new SequenceMemory()), trajectory)._2();
 
         List<PointMatch> pointMatchResult = pointToRouteResult._1();
         List<String> routeMatchResult = pointToRouteResult._2();
@@ -335,13 +501,7 @@ public class SimpleHMMMatching implements MapMatchingMethod, Serializable {
     @Override
     public Pair<List<Double>, SimpleTrajectoryMatchResult> onlineMatching(Trajectory trajectory) {
         if (trajectory == null) return null;
-        SequenceMemory sequenceMemory = null;
-        if (hmmMethod.toLowerCase().contains("goh") || hmmMethod.toLowerCase().contains("fix")) {
-            sequenceMemory = new SequenceMemory(maxStateNum);
-        } else if (hmmMethod.toLowerCase().contains("eddy")) {
-            sequenceMemory = new SequenceMemory();
-        }
-        Pair<List<Double>, Pair<List<PointMatch>, List<String>>> result = pullMatchResult(sequenceMemory, trajectory);
+        Pair<List<Double>, Pair<List<PointMatch>, List<String>>> result = pullMatchResult(createOnlineWindow(), trajectory);
         List<Double> latency = result._1();
         Pair<List<PointMatch>, List<String>> pointToRouteResult = result._2();
         List<PointMatch> pointMatchResult = pointToRouteResult._1();
@@ -350,4 +510,53 @@ public class SimpleHMMMatching implements MapMatchingMethod, Serializable {
         return new Pair<>(latency,
                 new SimpleTrajectoryMatchResult(trajectory.getID(), pointMatchResult, routeMatchResult));
     }
+
+    /**
+     * The sliding window of {@link SequenceMemory}, whose states are kept as candidate objects.
+     */
+    private final class SequenceMemoryWindow implements StateWindow {
+        private final SequenceMemory sequence;
+
+        private SequenceMemoryWindow(SequenceMemory sequence) {
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void update(StateSample sample, List<PointMatch> neighbourPms, Map<String, StateCandidate> optimalCandidateSeq) {
+            StateMemory vector = execute(sequence.lastStateMemory(), sample, neighbourPms);
+            // ignore a gps point which doesn't have candidate point
+            if (!vector.getStateCandidates().isEmpty()) {
+                if (hmmMethod.toLowerCase().contains("eddy")) {
+                    sequence.updateEddy(vector, sample, optimalCandidateSeq, gamma);
+                } else if (hmmMethod.toLowerCase().contains("goh")) {
+                    sequence.updateGoh(vector, sample, optimalCandidateSeq);
+                } else if (hmmMethod.toLowerCase().contains("fix")) {
+                    sequence.updateFixed(vector, sample, optimalCandidateSeq);
+                } else sequence.updateFixed(vector, sample, optimalCandidateSeq); // offline mode
+            } else {
+                // the sample got no neighbouring point on road network
+                optimalCandidateSeq.put(Double.toString(sample.getTime()), new StateCandidate());
+            }
+        }
+
+        @Override
+        public void finish(Map<String, StateCandidate> optimalCandidateSeq) {
+            if (hmmMethod.toLowerCase().contains("eddy")) {
+                sequence.forceFinalOutput(optimalCandidateSeq, gamma);
+            } else {
+                // both goh and fixed-window use this method to get last states
+                sequence.reverse(optimalCandidateSeq, sequence.getStateMemoryVector().size() - 1);
+            }
+        }
+
+        @Override
+        public int size() {
+            return sequence.getStateMemoryVector().size();
+        }
+
+        @Override
+        public double getSampleTime(int index) {
+            return sequence.getStateMemoryVector().get(index).getSample().getTime();
+        }
+    }
 }
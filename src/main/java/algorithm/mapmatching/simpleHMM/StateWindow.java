@@ -0,0 +1,44 @@
+package algorithm.mapmatching.simpleHMM;
+
+import util.object.structure.PointMatch;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The sliding window of states in the simple HMM map-matching. The window receives the samples in time order and puts the decided
+ * candidate of each state into the optimal candidate sequence, whose key is the state id, i.e. <tt>Double.toString(sampleTime)</tt>.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+interface StateWindow {
+
+    /**
+     * Extend the window by one sample. A sample without any valid candidate is not added to the window, it is put into the optimal
+     * candidate sequence with an empty candidate immediately.
+     *
+     * @param sample              The new sample, which should be later than the last sample in the window.
+     * @param neighbourPms        The candidate matches of the sample.
+     * @param optimalCandidateSeq The decided candidate of each state.
+     */
+    void update(StateSample sample, List<PointMatch> neighbourPms, Map<String, StateCandidate> optimalCandidateSeq);
+
+    /**
+     * Decide all states remaining in a non-empty window at the end of the trajectory.
+     *
+     * @param optimalCandidateSeq The decided candidate of each state.
+     */
+    void finish(Map<String, StateCandidate> optimalCandidateSeq);
+
+    /**
+     * @return The number of states in the window.
+     */
+    int size();
+
+    /**
+     * @param index The state index in the window, starting from the earliest state.
+     * @return The sample time of the state.
+     */
+    double getSampleTime(int index);
+}
@@ -2,12 +2,15 @@ package algorithm.mapmatching.stmatching;
 
 import algorithm.mapinference.lineclustering.DouglasPeuckerFilter;
 import algorithm.mapmatching.MapMatchingMethod;
+import algorithm.mapmatching.MatchingMapSnapshot;
 import algorithm.mapmatching.hmm.Distributions;
 import org.apache.log4j.Logger;
 import util.dijkstra.RoutingGraph;
 import util.function.DistanceFunction;
+import util.index.grid.SegmentGridIndex;
 import util.index.rtree.RTreeIndexing;
 import util.object.roadnetwork.RoadNetworkGraph;
+import util.object.spatialobject.Point;
 import util.object.spatialobject.Segment;
 import util.object.spatialobject.Trajectory;
 import util.object.spatialobject.TrajectoryPoint;
@@ -46,22 +49,38 @@ public class FeatureSTMapMatching implements MapMatchingMethod, Serializable {
 	private final BaseProperty prop;
 	private final RoadNetworkGraph originalMap;
 	private final RoadNetworkGraph roadMap;
-	private final RTreeIndexing rtree;
+	private final RTreeIndexing rtree;    // used in point-wise candidate search
+	private final SegmentGridIndex segmentIndex;    // used in batch candidate search, candidates are the exact k nearest segments
 	private final RoutingGraph routingGraph;
 	
 	public FeatureSTMapMatching(RoadNetworkGraph roadMap, BaseProperty property) {
-		this.originalMap = roadMap;
-		this.roadMap = roadMap.toLooseMap();    // the current method only accept loose map
+		this(new MatchingMapSnapshot(roadMap, true, property), property);    // the current method only accept loose map
+	}
+	
+	/**
+	 * Create a matcher session on a shared map snapshot.
+	 *
+	 * @param mapSnapshot The map snapshot, which should be built on the loose map.
+	 * @param property    The map-matching properties.
+	 */
+	public FeatureSTMapMatching(MatchingMapSnapshot mapSnapshot, BaseProperty property) {
+		if (!mapSnapshot.isLooseMap())
+			throw new IllegalArgumentException("The feature-based ST-matching requires the snapshot of a loose map.");
+		this.originalMap = mapSnapshot.getRoadMap();
+		this.roadMap = mapSnapshot.getMatchingMap();
 		this.prop = property;
-		this.distFunc = roadMap.getDistanceFunction();
+		this.distFunc = mapSnapshot.getDistanceFunction();
 		this.candidateRange = property.getPropertyInteger("algorithm.mapmatching.CandidateRange");
 		this.sigma = property.getPropertyDouble("algorithm.mapmatching.Sigma");
 		this.tolerance = property.getPropertyDouble("algorithm.mapmatching.Tolerance");
 		this.candidateSize = property.getPropertyInteger("algorithm.mapmatching.wgt.CandidateSize");
 		this.maxCTraj = property.getPropertyInteger("algorithm.mapmatching.wgt.MaxCTraj");
 		this.omega = property.getPropertyDouble("algorithm.mapmatching.wgt.Omega");
-		this.rtree = new RTreeIndexing(this.roadMap);
-		this.routingGraph = new RoutingGraph(this.roadMap, false, property);
+		boolean isBatchCandidateSearch = property.contains("algorithm.mapmatching.BatchCandidateSearch")
+				&& property.getPropertyBoolean("algorithm.mapmatching.BatchCandidateSearch");
+		this.rtree = isBatchCandidateSearch ? null : mapSnapshot.getRTreeIndex();
+		this.segmentIndex = isBatchCandidateSearch ? mapSnapshot.getSegmentIndex() : null;
+		this.routingGraph = mapSnapshot.getRoutingGraph();
 	}
 	
 	@Override
@@ -81,10 +100,18 @@ public class FeatureSTMapMatching implements MapMatchingMethod, Serializable {
 		Map<Integer, double[][]> actionCostMap = new HashMap<>();    // the key point index to the candidate emission probability
 		Map<String, List<String>> transitionPathMap = new HashMap<>();    // the transition route between candidate j to k at key point i,
 		// format: (i_j_k, list of routeID) where 1<i< keyTrajPointList.size(), 0<j,k<candidateSize
+		List<List<PointMatch>> keyPointCandidateList = null;    // the candidates of all key points, searched in one batch
+		if (segmentIndex != null) {
+			List<Point> keyPointList = new ArrayList<>();
+			for (int index : keyTrajPointList)
+				keyPointList.add(traj.get(index));
+			keyPointCandidateList = segmentIndex.searchKNeighbours(keyPointList, candidateSize, candidateRange);
+		}
 		for (int i = 0; i < keyTrajPointList.size(); i++) {
 			TrajectoryPoint currPoint = traj.get(keyTrajPointList.get(i));
 			// find all candidates of the current key point
-			List<PointMatch> candidateList = rtree.searchKNeighbours(currPoint, candidateSize, candidateRange);
+			List<PointMatch> candidateList = keyPointCandidateList != null ? keyPointCandidateList.get(i) :
+					rtree.searchKNeighbours(currPoint, candidateSize, candidateRange);
 			candidateMap.put(i, candidateList);
 			
 			// calculate the emission probability of each candidate
@@ -2,9 +2,10 @@ package algorithm.mapmatching.weightBased;
 
 
 import algorithm.mapmatching.MapMatchingMethod;
+import algorithm.mapmatching.MatchingMapSnapshot;
 import util.dijkstra.RoutingGraph;
 import util.function.DistanceFunction;
-import util.index.rtree.RTreeIndexing;
+import util.index.grid.SegmentGridIndex;
 import util.object.roadnetwork.RoadNetworkGraph;
 import util.object.spatialobject.Point;
 import util.object.spatialobject.Segment;
@@ -22,28 +23,42 @@ import java.util.*;
 /**
  * Subsequent MM
  * Implementation of initial map-matching in Quddus, M., & Washington, S. (2015).
+ * An instance only holds the weights on top of a {@link MatchingMapSnapshot}, so one instance can be created per worker thread while
+ * the snapshot is shared.
  */
 public class WeightBasedMapMatching implements MapMatchingMethod, Serializable {
 
-    private double candidateRange;
-    private DistanceFunction distFunc;
-    private RTreeIndexing rtree;
-    private RoutingGraph routingGraph;
+    private final double candidateRange;
+    private final DistanceFunction distFunc;
+    private final SegmentGridIndex segmentIndex;
+    private final RoutingGraph routingGraph;
 
     //	private double dijkstraThreshold;
-    private double headingWC;
-    private double bearingWC;
-    private double pdWC;
-    private double shortestPathWC;
+    private final double headingWC;
+    private final double bearingWC;
+    private final double pdWC;
+    private final double shortestPathWC;
 
 //	private List<Pair<Integer, List<String>>> outputRouteMatchResult = new ArrayList<>();
 //	private List<Pair<Integer, List<PointMatch>>> outputPointMatchResult = new ArrayList<>();
 
     public WeightBasedMapMatching(RoadNetworkGraph roadMap, BaseProperty property) {
-        this.distFunc = roadMap.getDistanceFunction();
+        this(new MatchingMapSnapshot(roadMap, false, property), property);
+    }
+
+    /**
+     * Create a matcher session on a shared map snapshot.
+     *
+     * @param mapSnapshot The map snapshot, which should not be a loose map.
+     * @param property    The map-matching properties.
+     */
+    public WeightBasedMapMatching(MatchingMapSnapshot mapSnapshot, BaseProperty property) {
+        if (mapSnapshot.isLooseMap())
+            throw new IllegalArgumentException("The weight-based map-matching does not support loose map.");
+        this.distFunc = mapSnapshot.getDistanceFunction();
         this.candidateRange = property.getPropertyInteger("algorithm.mapmatching.CandidateRange");
-        this.rtree = new RTreeIndexing(roadMap);
-        this.routingGraph = new RoutingGraph(roadMap, false, property);
+        this.segmentIndex = mapSnapshot.getSegmentIndex();
+        this.routingGraph = mapSnapshot.getRoutingGraph();
 
 //		this.dijkstraThreshold = property.getPropertyDouble("algorithm.mapmatching.sco.DijkstraThreshold");
 		this.headingWC = property.getPropertyDouble("algorithm.mapmatching.sco.HeadingWC");
@@ -89,8 +104,8 @@ public class WeightBasedMapMatching implements MapMatchingMethod, Serializable {
 
         int iterations = 0;
         while (candiPaths.size() == 0 && sampleIndex < trajectory.size() - 1) {
-            List<PointMatch> firstCandiPMs = rtree.searchNeighbours(trajectory.get(sampleIndex), candidateRange);
-            List<PointMatch> secCandiPMs = rtree.searchNeighbours(trajectory.get(sampleIndex + 1), candidateRange);
+            List<PointMatch> firstCandiPMs = segmentIndex.searchNeighbours(trajectory.get(sampleIndex), candidateRange);
+            List<PointMatch> secCandiPMs = segmentIndex.searchNeighbours(trajectory.get(sampleIndex + 1), candidateRange);
 
             // double is shortest path length
 
@@ -135,7 +150,7 @@ public class WeightBasedMapMatching implements MapMatchingMethod, Serializable {
     private Pair<PointMatch, Integer> subsqtMM(
             PointMatch prevMatchedPM, Trajectory trajectory, int sampleIndex,
             List<String> matchedWaySequence, Map<Integer, PointMatch> matchedPointSequence) {
-        List<PointMatch> secCandiPMs = rtree.searchNeighbours(trajectory.get(sampleIndex), candidateRange);
+        List<PointMatch> secCandiPMs = segmentIndex.searchNeighbours(trajectory.get(sampleIndex), candidateRange);
 
         // List<DestinationPM, shortestPathLength, Path>
         double dijkstraThreshold = getDijkstraDistance(sampleIndex - 1, sampleIndex, trajectory);
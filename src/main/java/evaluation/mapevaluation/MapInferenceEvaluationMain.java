@@ -34,6 +34,8 @@ public class MapInferenceEvaluationMain {
 		String inferenceMethod = property.getPropertyString("algorithm.mapinference.InferenceMethod");
 		String outputMapFolder = property.getPropertyString("path.OutputMapFolder");
 		String dataSpec = property.getPropertyString("data.DataSpec");
+		int numOfThreads = property.contains("algorithm.mapinference.evaluation.NumOfThreads") ? property.getPropertyInteger("algorithm" +
+				".mapinference.evaluation.NumOfThreads") : 1;
 		// log file name
 		String logFileName = "evaluation_" + dataSet + "_" + inferenceMethod + "_" + dataSpec + "_" + initTaskTime;
 		DistanceFunction distFunc;
@@ -66,7 +68,7 @@ public class MapInferenceEvaluationMain {
 		startTaskTime = System.currentTimeMillis();
 		
 		String graphSamplingResult = "GS: " + GraphSamplingMapEvaluation.precisionRecallGraphSamplingMapEval(outputMap, gtMap, 1, 100,
-				50, 1000);    // radius,seeds follows stanojevic2018
+				50, 1000, numOfThreads);    // radius,seeds follows stanojevic2018
 		LOG.info("Graph sampling finish, total time cost: " + (System.currentTimeMillis() - startTaskTime));
 		startTaskTime = System.currentTimeMillis();
 
@@ -13,6 +13,8 @@ import util.object.spatialobject.Point;
 import util.object.structure.XYObject;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * Randomly sample points on ground-truth and output maps and extend them alongside the maps. Use precision/recall/F-score to measure the
@@ -40,10 +42,33 @@ public class GraphSamplingMapEvaluation {
 	 */
 	public static String precisionRecallGraphSamplingMapEval(RoadNetworkGraph outputMap, RoadNetworkGraph gtMap, double hopDist,
 															 double radius, double matchDist, int numOfRoots) {
+		return precisionRecallGraphSamplingMapEval(outputMap, gtMap, hopDist, radius, matchDist, numOfRoots, 1);
+	}
+	
+	/**
+	 * Use precision recall and F-score to measure the map accuracy based on graph sampling method. All roots are drawn beforehand in the
+	 * same sequence as the single-thread evaluation, then evaluated concurrently on the shared read-only maps and index. The counts of
+	 * each root are merged in the root order, so the result is identical regardless of the number of threads.
+	 *
+	 * @param outputMap    The constructed map.
+	 * @param gtMap        The ground-truth map.
+	 * @param hopDist      The distance between two sampled points.
+	 * @param radius       The maximum distance of a sampled point to its root.
+	 * @param matchDist    The maximum distance to be regarded as match.
+	 * @param numOfRoots   The total number of seeds.
+	 * @param numOfThreads The number of threads for the evaluation, =1 if evaluated on the calling thread, =-1 if full utilisation is
+	 *                     expected.
+	 * @return The precision/recall/F-score results.
+	 */
+	public static String precisionRecallGraphSamplingMapEval(RoadNetworkGraph outputMap, RoadNetworkGraph gtMap, double hopDist,
+															 double radius, double matchDist, int numOfRoots, int numOfThreads) {
 		
 		int maxRootDist = 100;    // the maximum allowable distance between the root points in ground-truth and output maps.
 		if (outputMap.getDistanceFunction().getClass() != gtMap.getDistanceFunction().getClass())
 			throw new IllegalArgumentException("Input map and ground-truth map has different coordinate system.");
+		int threadCount = numOfThreads == -1 ? Runtime.getRuntime().availableProcessors() : numOfThreads;
+		if (threadCount <= 0)
+			throw new IllegalArgumentException("The number of threads should be positive: " + numOfThreads);
 		
 		DistanceFunction distFunc = outputMap.getDistanceFunction();
 		
@@ -90,145 +115,197 @@ public class GraphSamplingMapEvaluation {
 			throw new IllegalArgumentException("The size of node and way mapping is different: " + allOutputNodeMapping.size() + "," +
 					allOutputWayMapping.size() + "," + indexPointList.size());
 		outputMapGrid.insertAll(indexPointList);
+		OutputMapIndex outputMapIndex = new OutputMapIndex(outputMap, outputMapGrid, allOutputNodeMapping, allOutputWayMapping, emptyWay);
 		
+		// draw all roots in the same sequence as they are evaluated one by one
 		Random random = new Random(30);
+		RoadWay[] gtRootWays = new RoadWay[numOfRoots];
+		int[] gtRootPositions = new int[numOfRoots];    // the index of the root in its way, =0 if the way has no mini point
+		for (int rootCount = 0; rootCount < numOfRoots; rootCount++) {
+			gtRootWays[rootCount] = gtMap.getWay(random.nextInt(gtMap.getWays().size()));
+			if (gtRootWays[rootCount].size() > 2)
+				gtRootPositions[rootCount] = 1 + random.nextInt(gtRootWays[rootCount].size() - 2);
+		}
+		
+		RootResult[] rootResults = new RootResult[numOfRoots];
+		if (threadCount == 1) {
+			for (int rootCount = 0; rootCount < numOfRoots; rootCount++) {
+				rootResults[rootCount] = rootEvaluation(gtMap, outputMapIndex, gtRootWays[rootCount], gtRootPositions[rootCount], hopDist,
+						radius, matchDist);
+				if (!rootResults[rootCount].isMissing)
+					LOG.info(rootCount + " seeds processed. Total seed required: " + numOfRoots);
+			}
+		} else {
+			LOG.info("Current number of threads for graph sampling evaluation: " + threadCount);
+			ForkJoinPool forkJoinPool = new ForkJoinPool(threadCount);
+			try {
+				forkJoinPool.submit(() -> IntStream.range(0, numOfRoots).parallel().forEach(rootCount -> rootResults[rootCount] =
+						rootEvaluation(gtMap, outputMapIndex, gtRootWays[rootCount], gtRootPositions[rootCount], hopDist, radius,
+								matchDist))).join();
+			} finally {
+				forkJoinPool.shutdown();
+			}
+		}
+		
 		int totalGTSampleCount = 0;
 		int totalOutputSampleCount = 0;
 		int totalMatchedMarbleHoleCount = 0;
 		int missingMatchCount = 0;
-		for (int rootCount = 0; rootCount < numOfRoots; rootCount++) {
-			RoadWay gtRootWay = gtMap.getWay(random.nextInt(gtMap.getWays().size()));
-			RoadNode currGTRoot;
-			double currGTHeading;
-			List<Point> currHoleSampleList;
-			if (gtRootWay.size() > 2) {
-				int position = 1 + random.nextInt(gtRootWay.size() - 2);
-				currGTRoot = gtRootWay.getNode(position);    // avoid selecting intersections
-				RoadNode nextNode = gtRootWay.getNode(position + 1);
-				currGTHeading = distFunc.getHeading(currGTRoot.lon(), currGTRoot.lat(), nextNode.lon(), nextNode.lat());
-				currHoleSampleList = mapTraverse(gtMap, currGTRoot, gtRootWay, hopDist, radius);
-			} else {    // node with no mini point
-				currGTRoot = gtRootWay.getFromNode();
-				currGTHeading = distFunc.getHeading(currGTRoot.lon(), currGTRoot.lat(), gtRootWay.getToNode().lon(), gtRootWay.getToNode().lat());
-				currHoleSampleList = mapTraverse(gtMap, currGTRoot, null, hopDist, radius);
-			}
-			
-			// find the corresponding root on the output map
-			List<Point> candidatePointList = new ArrayList<>();
-			GridPartition<Point> outputCandidatePartition = outputMapGrid.partitionSearch(currGTRoot.lon(), currGTRoot.lat());
-			if (outputCandidatePartition != null) {
-				for (XYObject<Point> pointXYObject : outputCandidatePartition.getObjectsList()) {
-					candidatePointList.add(pointXYObject.getSpatialObject());
-				}
+		for (RootResult result : rootResults) {
+			totalGTSampleCount += result.gtSampleCount;
+			totalOutputSampleCount += result.outputSampleCount;
+			totalMatchedMarbleHoleCount += result.matchedCount;
+			if (result.isMissing)
+				missingMatchCount++;
+		}
+		
+		double precision = totalMatchedMarbleHoleCount / (double) totalOutputSampleCount;
+		double recall = totalMatchedMarbleHoleCount / (double) totalGTSampleCount;
+		double fScore = 2 * precision * recall / (precision + recall);
+		
+		LOG.info("Graph sampling evaluation done. Total missing seed match: " + missingMatchCount);
+		LOG.info("Precision=" + precision + ", edge recall=" + recall + ", edge F-score=" + fScore);
+		
+		return precision + ", " + recall + ", " + fScore;
+	}
+	
+	/**
+	 * Sample both maps around one root and count the matched samples. Only reads the maps and the index, so multiple roots can be
+	 * evaluated concurrently.
+	 *
+	 * @param gtMap          The ground-truth map.
+	 * @param outputMapIndex The output map and its node index.
+	 * @param gtRootWay      The ground-truth way where the root is located.
+	 * @param rootPosition   The index of the root node in <tt>gtRootWay</tt>, ignored if the way has no mini point.
+	 * @param hopDist        The distance between two sampled points.
+	 * @param radius         The maximum distance of a sampled point to its root.
+	 * @param matchDist      The maximum distance to be regarded as match.
+	 * @return The sample counts of the root.
+	 */
+	private static RootResult rootEvaluation(RoadNetworkGraph gtMap, OutputMapIndex outputMapIndex, RoadWay gtRootWay, int rootPosition,
+											 double hopDist, double radius, double matchDist) {
+		DistanceFunction distFunc = outputMapIndex.outputMap.getDistanceFunction();
+		Grid<Point> outputMapGrid = outputMapIndex.outputMapGrid;
+		List<RoadNode> allOutputNodeMapping = outputMapIndex.allOutputNodeMapping;
+		List<RoadWay> allOutputWayMapping = outputMapIndex.allOutputWayMapping;
+		RoadWay emptyWay = outputMapIndex.emptyWay;
+		RoadNode currGTRoot;
+		double currGTHeading;
+		List<Point> currHoleSampleList;
+		if (gtRootWay.size() > 2) {
+			currGTRoot = gtRootWay.getNode(rootPosition);    // avoid selecting intersections
+			RoadNode nextNode = gtRootWay.getNode(rootPosition + 1);
+			currGTHeading = distFunc.getHeading(currGTRoot.lon(), currGTRoot.lat(), nextNode.lon(), nextNode.lat());
+			currHoleSampleList = mapTraverse(gtMap, currGTRoot, gtRootWay, hopDist, radius);
+		} else {    // node with no mini point
+			currGTRoot = gtRootWay.getFromNode();
+			currGTHeading = distFunc.getHeading(currGTRoot.lon(), currGTRoot.lat(), gtRootWay.getToNode().lon(), gtRootWay.getToNode().lat());
+			currHoleSampleList = mapTraverse(gtMap, currGTRoot, null, hopDist, radius);
+		}
+		
+		// find the corresponding root on the output map
+		List<Point> candidatePointList = new ArrayList<>();
+		GridPartition<Point> outputCandidatePartition = outputMapGrid.partitionSearch(currGTRoot.lon(), currGTRoot.lat());
+		if (outputCandidatePartition != null) {
+			for (XYObject<Point> pointXYObject : outputCandidatePartition.getObjectsList()) {
+				candidatePointList.add(pointXYObject.getSpatialObject());
 			}
-			List<GridPartition<Point>> adjacentPartitionList = outputMapGrid.adjacentPartitionSearch(currGTRoot.lon(), currGTRoot.lat());
-			for (GridPartition<Point> partition : adjacentPartitionList) {
-				if (partition != null && !partition.isEmpty()) {
-					for (XYObject<Point> point : partition.getObjectsList()) {
-						candidatePointList.add(point.getSpatialObject());
-					}
+		}
+		List<GridPartition<Point>> adjacentPartitionList = outputMapGrid.adjacentPartitionSearch(currGTRoot.lon(), currGTRoot.lat());
+		for (GridPartition<Point> partition : adjacentPartitionList) {
+			if (partition != null && !partition.isEmpty()) {
+				for (XYObject<Point> point : partition.getObjectsList()) {
+					candidatePointList.add(point.getSpatialObject());
 				}
 			}
-			double minDist = Double.POSITIVE_INFINITY;
-			RoadNode currOutputRoot = null;
-			RoadWay outputRootWay = null;
-			double minHeadingDiff = 180;
-			for (Point pointObject : candidatePointList) {
-				if (pointObject != null) {
-					if (distFunc.distance(pointObject, currGTRoot.toPoint()) < minDist) {
-						int position = Integer.parseInt(pointObject.getID());
-						currOutputRoot = allOutputNodeMapping.get(position);
-						minDist = distFunc.distance(pointObject, currGTRoot.toPoint());
-						if (allOutputWayMapping.get(position).equals(emptyWay)) {    // it is an intersection
-							outputRootWay = null;
-							minHeadingDiff = 180;
-						} else {
-							outputRootWay = allOutputWayMapping.get(position);
-							int pointIndex = -1;
-							for (int i = 0; i < outputRootWay.size(); i++) {
-								if (outputRootWay.getNode(i).equals(currOutputRoot)) {
-									pointIndex = i;
-									break;
-								}
-							}
-							if (pointIndex == -1)
-								throw new IllegalArgumentException("The root node is not on the road way given.");
-							double currOutputHeading = distFunc.getHeading(currOutputRoot.lon(), currOutputRoot.lat(),
-									outputRootWay.getNode(pointIndex + 1).lon(), outputRootWay.getNode(pointIndex + 1).lat());
-							minHeadingDiff = currGTHeading - currOutputHeading;
-							if (minHeadingDiff < 0) {
-								minHeadingDiff += 360;
+		}
+		double minDist = Double.POSITIVE_INFINITY;
+		RoadNode currOutputRoot = null;
+		RoadWay outputRootWay = null;
+		double minHeadingDiff = 180;
+		for (Point pointObject : candidatePointList) {
+			if (pointObject != null) {
+				if (distFunc.distance(pointObject, currGTRoot.toPoint()) < minDist) {
+					int position = Integer.parseInt(pointObject.getID());
+					currOutputRoot = allOutputNodeMapping.get(position);
+					minDist = distFunc.distance(pointObject, currGTRoot.toPoint());
+					if (allOutputWayMapping.get(position).equals(emptyWay)) {    // it is an intersection
+						outputRootWay = null;
+						minHeadingDiff = 180;
+					} else {
+						outputRootWay = allOutputWayMapping.get(position);
+						int pointIndex = -1;
+						for (int i = 0; i < outputRootWay.size(); i++) {
+							if (outputRootWay.getNode(i).equals(currOutputRoot)) {
+								pointIndex = i;
+								break;
 							}
 						}
-					} else if (distFunc.distance(pointObject, currGTRoot.toPoint()) == minDist) {    // can potentially replace the
-						// current candidate, check the heading difference
-						int position = Integer.parseInt(pointObject.getID());
-						if (!allOutputWayMapping.get(position).equals(emptyWay)) {    // it is not an intersection
-							RoadNode currNode = allOutputNodeMapping.get(position);
-							RoadWay currWay = allOutputWayMapping.get(position);
-							int pointIndex = -1;
-							for (int i = 0; i < currWay.size(); i++) {
-								if (currWay.getNode(i).equals(currNode)) {
-									pointIndex = i;
-									break;
-								}
-							}
-							if (pointIndex == -1)
-								throw new IllegalArgumentException("The root node is not on the road way given.");
-							double currOutputHeading = distFunc.getHeading(currNode.lon(), currNode.lat(),
-									currWay.getNode(pointIndex + 1).lon(), currWay.getNode(pointIndex + 1).lat());
-							double angle = currGTHeading - currOutputHeading;
-							if (angle < 0) {
-								angle += 360;
-							}
-							if (angle < minHeadingDiff) {
-								outputRootWay = currWay;
-								minHeadingDiff = angle;
-								currOutputRoot = allOutputNodeMapping.get(position);
+						if (pointIndex == -1)
+							throw new IllegalArgumentException("The root node is not on the road way given.");
+						double currOutputHeading = distFunc.getHeading(currOutputRoot.lon(), currOutputRoot.lat(),
+								outputRootWay.getNode(pointIndex + 1).lon(), outputRootWay.getNode(pointIndex + 1).lat());
+						minHeadingDiff = currGTHeading - currOutputHeading;
+						if (minHeadingDiff < 0) {
+							minHeadingDiff += 360;
+						}
+					}
+				} else if (distFunc.distance(pointObject, currGTRoot.toPoint()) == minDist) {    // can potentially replace the
+					// current candidate, check the heading difference
+					int position = Integer.parseInt(pointObject.getID());
+					if (!allOutputWayMapping.get(position).equals(emptyWay)) {    // it is not an intersection
+						RoadNode currNode = allOutputNodeMapping.get(position);
+						RoadWay currWay = allOutputWayMapping.get(position);
+						int pointIndex = -1;
+						for (int i = 0; i < currWay.size(); i++) {
+							if (currWay.getNode(i).equals(currNode)) {
+								pointIndex = i;
+								break;
 							}
 						}
+						if (pointIndex == -1)
+							throw new IllegalArgumentException("The root node is not on the road way given.");
+						double currOutputHeading = distFunc.getHeading(currNode.lon(), currNode.lat(),
+								currWay.getNode(pointIndex + 1).lon(), currWay.getNode(pointIndex + 1).lat());
+						double angle = currGTHeading - currOutputHeading;
+						if (angle < 0) {
+							angle += 360;
+						}
+						if (angle < minHeadingDiff) {
+							outputRootWay = currWay;
+							minHeadingDiff = angle;
+							currOutputRoot = allOutputNodeMapping.get(position);
+						}
 					}
 				}
 			}
-			
-			if (currOutputRoot == null) {
-				LOG.warn("The current root " + currGTRoot.getID() + " does not have correspondence in output map.");
-				missingMatchCount++;
-				totalGTSampleCount += currHoleSampleList.size();
-				continue;
-			}
-			List<Point> currMarbleSampleList = mapTraverse(outputMap, currOutputRoot, outputRootWay, hopDist, radius);
-			Set<Point> currHoleSampleSet = new HashSet<>(currHoleSampleList);
-			totalOutputSampleCount += currMarbleSampleList.size();
-			totalGTSampleCount += currHoleSampleList.size();
-			// find the matched marbles
-			for (Point marble : currMarbleSampleList) {
-				boolean isMatched = false;
-				double distance = matchDist;
-				Point candidateHole = null;
-				for (Point hole : currHoleSampleList) {
-					if (distFunc.distance(marble, hole) < distance && currHoleSampleSet.contains(hole)) {
-						isMatched = true;
-						candidateHole = hole;
-						distance = distFunc.distance(marble, hole);
-					}
-				}
-				if (isMatched) {
-					totalMatchedMarbleHoleCount++;
-					currHoleSampleSet.remove(candidateHole);
+		}
+		
+		if (currOutputRoot == null) {
+			LOG.warn("The current root " + currGTRoot.getID() + " does not have correspondence in output map.");
+			return new RootResult(currHoleSampleList.size(), 0, 0, true);
+		}
+		List<Point> currMarbleSampleList = mapTraverse(outputMapIndex.outputMap, currOutputRoot, outputRootWay, hopDist, radius);
+		Set<Point> currHoleSampleSet = new HashSet<>(currHoleSampleList);
+		int matchedMarbleHoleCount = 0;
+		// find the matched marbles
+		for (Point marble : currMarbleSampleList) {
+			boolean isMatched = false;
+			double distance = matchDist;
+			Point candidateHole = null;
+			for (Point hole : currHoleSampleList) {
+				if (distFunc.distance(marble, hole) < distance && currHoleSampleSet.contains(hole)) {
+					isMatched = true;
+					candidateHole = hole;
+					distance = distFunc.distance(marble, hole);
 				}
 			}
-			System.out.println(rootCount + " seeds processed. Total seed required: " + numOfRoots);
+			if (isMatched) {
+				matchedMarbleHoleCount++;
+				currHoleSampleSet.remove(candidateHole);
+			}
 		}
-		
-		double precision = totalMatchedMarbleHoleCount / (double) totalOutputSampleCount;
-		double recall = totalMatchedMarbleHoleCount / (double) totalGTSampleCount;
-		double fScore = 2 * precision * recall / (precision + recall);
-		
-		LOG.info("Graph sampling evaluation done. Total missing seed match: " + missingMatchCount);
-		LOG.info("Precision=" + precision + ", edge recall=" + recall + ", edge F-score=" + fScore);
-		
-		return precision + ", " + recall + ", " + fScore;
+		return new RootResult(currHoleSampleList.size(), currMarbleSampleList.size(), matchedMarbleHoleCount, false);
 	}
 	
 	/**
@@ -434,4 +511,41 @@ public class GraphSamplingMapEvaluation {
 		}
 		return resultPointList;
 	}
-}
+	
+	/**
+	 * The output map and the index of its nodes, shared by all roots.
+	 */
+	private static class OutputMapIndex {
+		private final RoadNetworkGraph outputMap;
+		private final Grid<Point> outputMapGrid;
+		private final List<RoadNode> allOutputNodeMapping;
+		private final List<RoadWay> allOutputWayMapping;
+		private final RoadWay emptyWay;    // the way of the intersections in the index
+		
+		private OutputMapIndex(RoadNetworkGraph outputMap, Grid<Point> outputMapGrid, List<RoadNode> allOutputNodeMapping,
+							   List<RoadWay> allOutputWayMapping, RoadWay emptyWay) {
+			this.outputMap = outputMap;
+			this.outputMapGrid = outputMapGrid;
+			this.allOutputNodeMapping = allOutputNodeMapping;
+			this.allOutputWayMapping = allOutputWayMapping;
+			this.emptyWay = emptyWay;
+		}
+	}
+	
+	/**
+	 * The sample counts of one root.
+	 */
+	private static class RootResult {
+		private final int gtSampleCount;
+		private final int outputSampleCount;
+		private final int matchedCount;
+		private final boolean isMissing;    // the root has no correspondence in the output map
+		
+		private RootResult(int gtSampleCount, int outputSampleCount, int matchedCount, boolean isMissing) {
+			this.gtSampleCount = gtSampleCount;
+			this.outputSampleCount = outputSampleCount;
+			this.matchedCount = matchedCount;
+			this.isMissing = isMissing;
+		}
+	}
+}
\ No newline at end of file
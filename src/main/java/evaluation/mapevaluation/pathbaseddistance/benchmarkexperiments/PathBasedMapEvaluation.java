@@ -39,6 +39,7 @@ import java.util.*;
 public class PathBasedMapEvaluation {
 	
 	private static final Logger LOG = Logger.getLogger(PathBasedMapEvaluation.class);
+	private static final long PATH_SAMPLING_SEED = 30;    // the paths sampled in the in-memory evaluation are the same in every run
 	
 	/**
 	 * Evaluate the map similarity based on their path-based distance. The Frechet distance is used as distance function. These functions
@@ -206,6 +207,79 @@ public class PathBasedMapEvaluation {
 		return minDist + "," + maxDist + "," + totalDist / distList.size();
 	}
 	
+	/**
+	 * Evaluate the map similarity based on their path-based distance using Frechet distance, same as
+	 * {@link #pathBasedFrechetMapEval(RoadNetworkGraph, RoadNetworkGraph, String, String)} but the generated paths are evaluated in memory
+	 * by multiple threads instead of being written to and read from path files.
+	 *
+	 * @param outputMap    The map constructed by algorithm.
+	 * @param gtMap        The ground-truth map.
+	 * @param linkLength   The length of the link per path.
+	 * @param numOfThreads The number of threads computing the distances, =-1 if full utilisation is expected.
+	 * @param sampleRate   The probability of a generated path being evaluated, =1 if all paths are evaluated.
+	 * @return The returning path-based distance.
+	 */
+	public static String pathBasedFrechetMapEval(RoadNetworkGraph outputMap, RoadNetworkGraph gtMap, String linkLength,
+												 int numOfThreads, double sampleRate) {
+		checkMapType(outputMap, gtMap);
+		LOG.info("Start the in-memory path-based distance evaluation using Frechet distance.");
+		ArrayList<PBDVertex> outputGraph = convertMap(new HashMap<>(), outputMap);
+		PathStreamEvaluator evaluator = new PathStreamEvaluator(numOfThreads, sampleRate, PATH_SAMPLING_SEED);
+		PathStreamEvaluator.PathDistanceSummary summary = evaluator.evaluate(
+				pathConsumer -> new GeneratePaths().generatePathsLinkLength(outputGraph, linkLength, pathConsumer),
+				() -> {
+					ArrayList<PBDVertex> gtGraph = convertMap(new HashMap<>(), gtMap);    // each worker modifies its own graph
+					MapMatching mapMatching = new MapMatching();
+					return path -> mapMatching.pathDistance(gtGraph, path);
+				});
+		
+		int minDist = summary.getCount() == 0 ? Integer.MAX_VALUE : (int) summary.getMinDistance();
+		int maxDist = (int) summary.getMaxDistance();
+		LOG.info(linkLength + " result: min distance=" + minDist + ", max distance=" + maxDist + ", average distance=" +
+				summary.getAverageDistance() + ", total paths=" + summary.getCount());
+		return minDist + "," + maxDist + "," + summary.getAverageDistance();
+	}
+	
+	/**
+	 * Evaluate the map similarity based on their path-based distance using Hausdorff distance, same as
+	 * {@link #pathBasedHausdorffMapEval(RoadNetworkGraph, RoadNetworkGraph, String, String)} but the generated paths are evaluated in
+	 * memory by multiple threads instead of being written to and read from path files.
+	 *
+	 * @param outputMap    The map constructed by algorithm.
+	 * @param gtMap        The ground-truth map.
+	 * @param linkLength   The length of the link per path.
+	 * @param numOfThreads The number of threads computing the distances, =-1 if full utilisation is expected.
+	 * @param sampleRate   The probability of a generated path being evaluated, =1 if all paths are evaluated.
+	 * @return The returning path-based distance.
+	 */
+	public static String pathBasedHausdorffMapEval(RoadNetworkGraph outputMap, RoadNetworkGraph gtMap, String linkLength,
+												   int numOfThreads, double sampleRate) {
+		checkMapType(outputMap, gtMap);
+		LOG.info("Start the in-memory path-based distance evaluation using Hausdorff distance.");
+		ArrayList<PBDVertex> outputGraph = convertMap(new HashMap<>(), outputMap);
+		PathStreamEvaluator evaluator = new PathStreamEvaluator(numOfThreads, sampleRate, PATH_SAMPLING_SEED);
+		PathStreamEvaluator.PathDistanceSummary summary = evaluator.evaluate(
+				pathConsumer -> new GeneratePaths().generatePathsLinkLength(outputGraph, linkLength, pathConsumer),
+				() -> {
+					HausdorffDistance hausdorffDistance = new HausdorffDistance();
+					ArrayList<PBDEdge> eGraph = hausdorffDistance.getGraphEdge(convertMap(new HashMap<>(), gtMap));
+					return path -> hausdorffDistance.pathDistance(eGraph, path);
+				});
+		
+		double minDist = summary.getCount() == 0 ? Double.MAX_VALUE : summary.getMinDistance();
+		LOG.info(linkLength + " result: min distance=" + minDist + ", max distance=" + summary.getMaxDistance() + ", average distance="
+				+ summary.getAverageDistance() + ", total paths=" + summary.getCount());
+		return minDist + "," + summary.getMaxDistance() + "," + summary.getAverageDistance();
+	}
+	
+	private static void checkMapType(RoadNetworkGraph outputMap, RoadNetworkGraph gtMap) {
+		if (outputMap.getDistanceFunction().getClass() != gtMap.getDistanceFunction().getClass())
+			throw new IllegalArgumentException("Input map and ground-truth map has different coordinate system.");
+		if (outputMap.isDirectedMap() != gtMap.isDirectedMap())
+			throw new IllegalArgumentException("Different map type, the constructed map is " + (outputMap.isDirectedMap() ?
+					"directed" : "undirected") + " map while the ground-truth is not.");
+	}
+	
 	public static ArrayList<PBDVertex> convertMap(HashMap<String, Integer> id2VertexIndex, RoadNetworkGraph map) {
 		ArrayList<PBDVertex> vList = new ArrayList<>();
 		boolean isDirected = map.isDirectedMap();
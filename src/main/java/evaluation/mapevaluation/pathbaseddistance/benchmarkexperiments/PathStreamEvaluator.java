@@ -0,0 +1,183 @@
+package evaluation.mapevaluation.pathbaseddistance.benchmarkexperiments;
+
+import evaluation.mapevaluation.pathbaseddistance.mapmatchingbasics.PBDVertex;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Evaluate the generated paths in memory. The paths are handed over from the generator on the calling thread to a pool of workers
+ * through a bounded queue, so the generator waits when the workers fall behind and no path is kept after its distance is computed. Each
+ * worker owns its distance function, as the path-based distance modifies the graph during the computation, and keeps its own summary,
+ * which is merged after all paths are processed.
+ * <p>
+ * The paths can be sampled, in which case each path is kept with the given probability. The decision only depends on the seed and the
+ * generation order, so the same paths are evaluated in every run.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+final class PathStreamEvaluator {
+
+	private static final Logger LOG = Logger.getLogger(PathStreamEvaluator.class);
+	private static final int QUEUE_CAPACITY_PER_THREAD = 64;
+	private static final ArrayList<PBDVertex> END_OF_PATHS = new ArrayList<>();    // tells a worker to stop
+
+	private final int numOfThreads;
+	private final double sampleRate;
+	private final long seed;
+
+	/**
+	 * @param numOfThreads The number of worker threads, =-1 if full utilisation is expected.
+	 * @param sampleRate   The probability of a path being evaluated, in (0,1].
+	 * @param seed         The random seed of the path sampling.
+	 */
+	PathStreamEvaluator(int numOfThreads, double sampleRate, long seed) {
+		this.numOfThreads = numOfThreads == -1 ? Runtime.getRuntime().availableProcessors() : numOfThreads;
+		if (this.numOfThreads <= 0)
+			throw new IllegalArgumentException("The number of threads should be positive: " + numOfThreads);
+		if (!(sampleRate > 0 && sampleRate <= 1))
+			throw new IllegalArgumentException("The path sample rate should be within (0,1]: " + sampleRate);
+		this.sampleRate = sampleRate;
+		this.seed = seed;
+	}
+
+	/**
+	 * Generate the paths and evaluate their distances.
+	 *
+	 * @param pathGenerator Generates all paths into the given consumer on the calling thread.
+	 * @param workerFactory Creates the distance function of one worker. It is called on the calling thread before the generation starts,
+	 *                      and each function is only used by one worker.
+	 * @return The summary of the path distances.
+	 */
+	PathDistanceSummary evaluate(Consumer<Consumer<ArrayList<PBDVertex>>> pathGenerator,
+								 Supplier<ToDoubleFunction<ArrayList<PBDVertex>>> workerFactory) {
+		List<ToDoubleFunction<ArrayList<PBDVertex>>> workerList = new ArrayList<>(numOfThreads);
+		for (int i = 0; i < numOfThreads; i++)
+			workerList.add(workerFactory.get());
+
+		BlockingQueue<ArrayList<PBDVertex>> pathQueue = new ArrayBlockingQueue<>(numOfThreads * QUEUE_CAPACITY_PER_THREAD);
+		ExecutorService workerPool = Executors.newFixedThreadPool(numOfThreads);
+		List<Future<PathDistanceSummary>> resultList = new ArrayList<>(numOfThreads);
+		long startTime = System.currentTimeMillis();
+		int[] pathCount = new int[2];    // {generated, queued}
+		try {
+			for (ToDoubleFunction<ArrayList<PBDVertex>> worker : workerList)
+				resultList.add(workerPool.submit(() -> runWorker(pathQueue, worker)));
+			Random random = new Random(seed);
+			pathGenerator.accept(path -> {
+				pathCount[0]++;
+				if (sampleRate < 1 && random.nextDouble() >= sampleRate)
+					return;
+				try {
+					pathQueue.put(path);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("The path evaluation is interrupted.", e);
+				}
+				pathCount[1]++;
+			});
+			for (int i = 0; i < numOfThreads; i++)
+				pathQueue.put(END_OF_PATHS);
+			PathDistanceSummary summary = new PathDistanceSummary();
+			for (Future<PathDistanceSummary> result : resultList)
+				summary.merge(result.get());
+			summary.generatedCount = pathCount[0];
+			LOG.info("In-memory path evaluation finished, generated paths: " + pathCount[0] + ", sampled paths: " + pathCount[1]
+					+ ", evaluated paths: " + summary.count + ", time spent: " + (System.currentTimeMillis() - startTime) / 1000.0 + "s.");
+			return summary;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("The path evaluation is interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException("The path evaluation failed.", e.getCause());
+		} finally {
+			workerPool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Compute the distances of the queued paths until the end mark. After a failure, the worker keeps taking paths without computing so
+	 * that the generator is not blocked, and reports the failure at the end.
+	 */
+	private static PathDistanceSummary runWorker(BlockingQueue<ArrayList<PBDVertex>> pathQueue,
+												 ToDoubleFunction<ArrayList<PBDVertex>> worker) throws InterruptedException {
+		PathDistanceSummary summary = new PathDistanceSummary();
+		RuntimeException failure = null;
+		while (true) {
+			ArrayList<PBDVertex> path = pathQueue.take();
+			if (path == END_OF_PATHS)
+				break;
+			if (failure != null || path.size() < 2)    // a path with less than two vertices is skipped as in the file-based evaluation
+				continue;
+			try {
+				summary.add(worker.applyAsDouble(path));
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+		}
+		if (failure != null)
+			throw failure;
+		return summary;
+	}
+
+	/**
+	 * The minimum, maximum and total of the path distances. The distances are integer values, so the total is exact regardless of the
+	 * order the distances are added.
+	 */
+	static final class PathDistanceSummary {
+		private int generatedCount = 0;
+		private int count = 0;
+		private double minDistance = Double.POSITIVE_INFINITY;
+		private double maxDistance = 0;
+		private double totalDistance = 0;
+
+		private void add(double distance) {
+			count++;
+			minDistance = Math.min(minDistance, distance);
+			maxDistance = Math.max(maxDistance, distance);
+			totalDistance += distance;
+		}
+
+		private void merge(PathDistanceSummary summary) {
+			count += summary.count;
+			minDistance = Math.min(minDistance, summary.minDistance);
+			maxDistance = Math.max(maxDistance, summary.maxDistance);
+			totalDistance += summary.totalDistance;
+		}
+
+		/**
+		 * @return The number of generated paths, including the ones not sampled.
+		 */
+		int getGeneratedCount() {
+			return generatedCount;
+		}
+
+		/**
+		 * @return The number of evaluated paths.
+		 */
+		int getCount() {
+			return count;
+		}
+
+		double getMinDistance() {
+			return minDistance;
+		}
+
+		double getMaxDistance() {
+			return maxDistance;
+		}
+
+		double getAverageDistance() {
+			return totalDistance / count;
+		}
+	}
+}
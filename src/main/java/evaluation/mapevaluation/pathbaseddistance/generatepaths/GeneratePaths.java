@@ -37,9 +37,12 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
 
 public class GeneratePaths {
 	
+	private Consumer<ArrayList<PBDVertex>> pathConsumer = null;    // receives the generated paths instead of the path files if set
+	
 	private void generateLineSegmentPaths(ArrayList<PBDVertex> graph, String filepath) {
 		try {
 			ArrayList<Integer> vList = new ArrayList<>();
@@ -85,15 +88,7 @@ public class GeneratePaths {
 			Stack<Integer> stack;
 			int no = 0, index1, index2;
 			PBDVertex v1;
-			System.out.println("I am deleting files....");
-			File fin = new File(filepath);
-			
-			for (File file : Objects.requireNonNull(fin.listFiles())) {
-				if (file.isDirectory()) {
-					for (File file2 : Objects.requireNonNull(file.listFiles()))
-						file2.delete();
-				}
-			}
+			clearPathFolder(filepath);
 			System.out.println("Generating line segment paths: ");
 			for (int k = 0; k < vList.size(); k++) {
 				
@@ -223,15 +218,7 @@ public class GeneratePaths {
 		Stack<Integer> stack;
 		PBDVertex v1;
 		int no = 0, index1, index2;
-		System.out.println("I am deleting files....");
-		File fin = new File(filepath);
-		
-		for (File file : Objects.requireNonNull(fin.listFiles())) {
-			if (file.isDirectory()) {
-				for (File file2 : Objects.requireNonNull(file.listFiles()))
-					file2.delete();
-			}
-		}
+		clearPathFolder(filepath);
 		System.out.println("Generating length one paths: ");
 		for (int i = 0; i < vList.size(); i++) {
 			
@@ -269,15 +256,7 @@ public class GeneratePaths {
 		PBDVertex v1, v2;
 		int index1, index2, index3;
 		int no = 0;
-		System.out.println("I am deleting files....");
-		File fin = new File(filepath);
-		
-		for (File file : Objects.requireNonNull(fin.listFiles())) {
-			if (file.isDirectory()) {
-				for (File file2 : Objects.requireNonNull(file.listFiles()))
-					file2.delete();
-			}
-		}
+		clearPathFolder(filepath);
 		System.out.println("Generating length Two paths: ");
 		for (int i = 0; i < vList.size(); i++) {
 			index1 = i;
@@ -323,15 +302,7 @@ public class GeneratePaths {
 		int index1, index2, index3, index4;
 		int no = 0;
 		
-		System.out.println("I am deleting files....");
-		File fin = new File(filepath);
-		
-		for (File file : Objects.requireNonNull(fin.listFiles())) {
-			if (file.isDirectory()) {
-				for (File file2 : Objects.requireNonNull(file.listFiles()))
-					file2.delete();
-			}
-		}
+		clearPathFolder(filepath);
 		
 		System.out.println("Generating length Three paths: ");
 		for (int i = 0; i < vList.size(); i++) {
@@ -386,15 +357,7 @@ public class GeneratePaths {
 		int index1, index2, index3, index4, index5;
 		int no = 0;
 		
-		System.out.println("I am deleting files....");
-		File fin = new File(filepath);
-		
-		for (File file : Objects.requireNonNull(fin.listFiles())) {
-			if (file.isDirectory()) {
-				for (File file2 : Objects.requireNonNull(file.listFiles()))
-					file2.delete();
-			}
-		}
+		clearPathFolder(filepath);
 		
 		System.out.println("Generating length four paths: ");
 		for (int i = 0; i < vList.size(); i++) {
@@ -461,15 +424,7 @@ public class GeneratePaths {
 		int index1, index2, index3, index4, index5, index6;
 		int no = 0;
 		
-		System.out.println("I am deleting files....");
-		File fin = new File(filepath);
-		
-		for (File file : Objects.requireNonNull(fin.listFiles())) {
-			if (file.isDirectory()) {
-				for (File file2 : Objects.requireNonNull(file.listFiles()))
-					file2.delete();
-			}
-		}
+		clearPathFolder(filepath);
 		
 		System.out.println("Generating length five paths: ");
 		for (int i = 0; i < vList.size(); i++) {
@@ -545,15 +500,7 @@ public class GeneratePaths {
 		int index1, index2, index3, index4, index5, index6, index7;
 		int no = 0;
 		
-		System.out.println("I am deleting files....");
-		File fin = new File(filepath);
-		
-		for (File file : Objects.requireNonNull(fin.listFiles())) {
-			if (file.isDirectory()) {
-				for (File file2 : Objects.requireNonNull(file.listFiles()))
-					file2.delete();
-			}
-		}
+		clearPathFolder(filepath);
 		
 		System.out.println("Generating length six paths: ");
 		for (int i = 0; i < vList.size(); i++) {
@@ -638,15 +585,7 @@ public class GeneratePaths {
 		int index1, index2, index3, index4, index5, index6, index7, index8;
 		int no = 0;
 		
-		System.out.println("I am deleting files....");
-		File fin = new File(filepath);
-		
-		for (File file : Objects.requireNonNull(fin.listFiles())) {
-			if (file.isDirectory()) {
-				for (File file2 : Objects.requireNonNull(file.listFiles()))
-					file2.delete();
-			}
-		}
+		clearPathFolder(filepath);
 		
 		System.out.println("Generating length seven paths: ");
 		for (int i = 0; i < vList.size(); i++) {
@@ -739,15 +678,7 @@ public class GeneratePaths {
 		int index1, index2, index3, index4, index5, index6, index7, index8, index9;
 		int no = 0;
 		
-		System.out.println("I am deleting files....");
-		File fin = new File(filepath);
-		
-		for (File file : Objects.requireNonNull(fin.listFiles())) {
-			if (file.isDirectory()) {
-				for (File file2 : Objects.requireNonNull(file.listFiles()))
-					file2.delete();
-			}
-		}
+		clearPathFolder(filepath);
 		
 		System.out.println("Generating length eight paths: ");
 		for (int i = 0; i < vList.size(); i++) {
@@ -852,15 +783,7 @@ public class GeneratePaths {
 		int index1, index2, index3, index4, index5, index6, index7, index8, index9, index10;
 		int no = 0;
 		
-		System.out.println("I am deleting files....");
-		File fin = new File(filepath);
-		
-		for (File file : Objects.requireNonNull(fin.listFiles())) {
-			if (file.isDirectory()) {
-				for (File file2 : Objects.requireNonNull(file.listFiles()))
-					file2.delete();
-			}
-		}
+		clearPathFolder(filepath);
 		
 		System.out.println("Generating length nine paths: ");
 		for (int i = 0; i < vList.size(); i++) {
@@ -977,15 +900,7 @@ public class GeneratePaths {
 		int index1, index2, index3, index4, index5, index6, index7, index8, index9, index10, index11;
 		int no = 0;
 		
-		System.out.println("I am deleting files....");
-		File fin = new File(filepath);
-		
-		for (File file : Objects.requireNonNull(fin.listFiles())) {
-			if (file.isDirectory()) {
-				for (File file2 : Objects.requireNonNull(file.listFiles()))
-					file2.delete();
-			}
-		}
+		clearPathFolder(filepath);
 		
 		System.out.println("Generating length ten paths: ");
 		for (int i = 0; i < vList.size(); i++) {
@@ -1154,15 +1069,7 @@ public class GeneratePaths {
 		
 		double[][] pathLength = (double[][]) obj[2];
 		
-		System.out.println("I am deleting files....");
-		File fin = new File(filepath);
-		
-		for (File file : Objects.requireNonNull(fin.listFiles())) {
-			if (file.isDirectory()) {
-				for (File file2 : Objects.requireNonNull(file.listFiles()))
-					file2.delete();
-			}
-		}
+		clearPathFolder(filepath);
 		int no = 0;
 		
 		for (int start = 0; start < vList.size(); start++) {
@@ -1326,13 +1233,25 @@ public class GeneratePaths {
 	public void printPath(ArrayList<PBDVertex> graph, Stack<Integer> stack, ArrayList<Integer> vList, ArrayList<PBDVertex>[][] curves,
 						  String filepath, int no) {
 		
+		if (pathConsumer != null) {
+			ArrayList<PBDVertex> path = getPathVertices(graph, stack, vList, curves);
+			if (path == null)
+				return;
+			// hand over copies as the matching modifies the vertices, same as the vertices read from the path file
+			ArrayList<PBDVertex> pathCopy = new ArrayList<>(path.size());
+			for (PBDVertex vertex : path)
+				pathCopy.add(new PBDVertex(vertex.x, vertex.y));
+			pathConsumer.accept(pathCopy);
+			return;
+		}
 		try {
 			
 			int numf = 5;// number of folders to store files
 			
-			int index1 = stack.pop();// stack has indices of vList
-			if (index1 == -1)
+			if (stack.peek() == -1) {
+				stack.pop();
 				return;
+			}
 			
 			File file = new File(filepath + no % numf + "/");
 			if (!file.exists()) {
@@ -1347,46 +1266,79 @@ public class GeneratePaths {
 					+ no % numf + "/" + no + ".dat";
 			
 			BufferedWriter bwWays = new BufferedWriter(new FileWriter(fileName));
+			for (PBDVertex vertex : Objects.requireNonNull(getPathVertices(graph, stack, vList, curves)))
+				bwWays.write(vertex.getKeyString() + "\n");
+			//if(found1&&found2)System.out.println(fileName);
+			bwWays.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+	}
+	
+	/**
+	 * Pop the stack and list the vertices along the path, including the vertices on the curves between intersections.
+	 *
+	 * @return The path vertices, or null if the path starts from an invalid index.
+	 */
+	private ArrayList<PBDVertex> getPathVertices(ArrayList<PBDVertex> graph, Stack<Integer> stack, ArrayList<Integer> vList,
+												 ArrayList<PBDVertex>[][] curves) {
+		int index1 = stack.pop();// stack has indices of vList
+		if (index1 == -1)
+			return null;
+		ArrayList<PBDVertex> path = new ArrayList<>();
+		
+		int p = vList.get(index1);
+		int q;
+		
+		path.add(graph.get(p));
+		
+		while (!stack.isEmpty()) {
 			
-			int p = vList.get(index1);
-			int q;
+			int index3 = stack.pop();
+			// System.out.println(index3);
+			q = graph.indexOf(graph.get(vList.get(index3)));
 			
-			bwWays.write(graph.get(p).getKeyString() + "\n");
+			int index2 = graph.get(p).getIndexAdjacent(q);
 			
-			while (!stack.isEmpty()) {
-				
-				int index3 = stack.pop();
-				// System.out.println(index3);
-				q = graph.indexOf(graph.get(vList.get(index3)));
-				
-				int index2 = graph.get(p).getIndexAdjacent(q);
-				
-				// System.out.println("q = "+q+ " index1="+index1+
-				// " index3="+index3);
-				
-				if (q != -1) {
-					int h = 1;
-					while (h < curves[index1][index2].size() - 1) {
-						bwWays.write(curves[index1][index2].get(h).getKeyString() + "\n");
-						h++;
-					}
-				} else {
-					
-					System.out.println("I am break.");
-					break;
-					
+			// System.out.println("q = "+q+ " index1="+index1+
+			// " index3="+index3);
+			
+			if (q != -1) {
+				int h = 1;
+				while (h < curves[index1][index2].size() - 1) {
+					path.add(curves[index1][index2].get(h));
+					h++;
 				}
-				p = q;
-				bwWays.write(graph.get(p).getKeyString() + "\n");
+			} else {
+				
+				System.out.println("I am break.");
+				break;
 				
-				index1 = index3;
 			}
-			//if(found1&&found2)System.out.println(fileName);
-			bwWays.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+			p = q;
+			path.add(graph.get(p));
+			
+			index1 = index3;
 		}
+		return path;
+	}
+	
+	/**
+	 * Remove the path files generated previously, nothing to do if the paths are not written to files.
+	 */
+	private void clearPathFolder(String filepath) {
+		if (pathConsumer != null)
+			return;
+		System.out.println("I am deleting files....");
+		File fin = new File(filepath);
 		
+		for (File file : Objects.requireNonNull(fin.listFiles())) {
+			if (file.isDirectory()) {
+				for (File file2 : Objects.requireNonNull(file.listFiles()))
+					file2.delete();
+			}
+		}
 	}
 	
 	public void printVList(ArrayList<Integer> vList, ArrayList<PBDVertex> graph, int[] parent) {
@@ -1479,16 +1431,36 @@ public class GeneratePaths {
 		}
 	}
 	
+	/**
+	 * Generate the paths of the given link length and hand each path over to the consumer on the calling thread instead of writing
+	 * one file per path. The paths are the same as the files written by {@link #generatePathsLinkLength(ArrayList, String, String)}
+	 * and are generated in the same order.
+	 *
+	 * @param graph        The map to generate paths from, which is modified during the generation.
+	 * @param linkLength   The link length, same as the file-based generation.
+	 * @param pathConsumer Receives the vertices of each path.
+	 */
+	public void generatePathsLinkLength(ArrayList<PBDVertex> graph, String linkLength, Consumer<ArrayList<PBDVertex>> pathConsumer) {
+		if (pathConsumer == null)
+			throw new IllegalArgumentException("The path consumer must not be null.");
+		this.pathConsumer = pathConsumer;
+		try {
+			generatePathsLinkLength(graph, "", linkLength);
+		} finally {
+			this.pathConsumer = null;
+		}
+	}
+	
 	public void generatePathsLinkLength(ArrayList<PBDVertex> graph, String pathPath, String linkLength) {
 		
 		File pathFile = new File(pathPath);
 		
-		if (!pathFile.exists())
+		if (pathConsumer == null && !pathFile.exists())
 			pathFile.mkdirs();
 		
 		if (linkLength.equals("LineSegment")) {
 			pathFile = new File(pathPath + "LineSegment/");
-			if (!pathFile.exists())
+			if (pathConsumer == null && !pathFile.exists())
 				pathFile.mkdirs();
 			this.generateLineSegmentPaths(graph, pathPath + linkLength + "/");
 			return;
@@ -1501,7 +1473,7 @@ public class GeneratePaths {
 		Object[] obj1 = this.generatePaths(graph);
 		
 		pathFile = new File(pathPath + linkLength + "/");
-		if (!pathFile.exists())
+		if (pathConsumer == null && !pathFile.exists())
 			pathFile.mkdirs();
 		switch (linkLength) {
 			case "LinkOne":
@@ -249,10 +249,34 @@ public class HausdorffDistance {
 		}
 	}
 	
+	/**
+	 * Compute the Hausdorff distance between a path and the graph, which is searched between 1 and 1600 first and then up to 2400.
+	 *
+	 * @param graph  The graph edges, which are modified during the computation, so the graph should not be shared by concurrent
+	 *               computations.
+	 * @param curves The path with at least two vertices.
+	 * @return The Hausdorff distance.
+	 */
+	public double pathDistance(ArrayList<PBDEdge> graph, ArrayList<PBDVertex> curves) {
+		int min = 1, max = 1600;
+		this.found = false;
+		this.getEpsilon(graph, curves, min, max);
+		
+		if (this.min == max + 1) {
+			this.found = false;
+			int i = 0;
+			while (i < graph.size()) {
+				graph.get(i).reset();
+				i++;
+			}
+			this.getEpsilon(graph, curves, max, max + 800);
+		}
+		return this.min;
+	}
+	
 	public List<Double> pathSimilarity(ArrayList<PBDEdge> graph, File fin, String strInput, int fileNo) {
 		boolean debug = false;
 		ArrayList<PBDVertex> curves;
-		int min = 1, max = 1600;
 		List<Double> distanceList = new ArrayList<>();
 		File file1 = new File(strInput);
 		if (!file1.exists())
@@ -274,18 +298,7 @@ public class HausdorffDistance {
 						continue;
 					}
 					
-					this.found = false;
-					this.getEpsilon(graph, curves, min, max);
-					
-					if (this.min == max + 1) {
-						this.found = false;
-						int i = 0;
-						while (i < graph.size()) {
-							graph.get(i).reset();
-							i++;
-						}
-						this.getEpsilon(graph, curves, max, max + 800);
-					}
+					this.pathDistance(graph, curves);
 				}
 				
 				double dist = Math.sqrt(Math.pow(
@@ -602,10 +602,28 @@ public class MapMatching {
 		}
 	}
 	
+	/**
+	 * Compute the Frechet distance between a path and the graph, which is searched between 1 and 1600.
+	 *
+	 * @param graph  The graph, whose vertices are modified during the computation, so the graph should not be shared by concurrent
+	 *               computations.
+	 * @param curves The path with at least two vertices.
+	 * @return The Frechet distance.
+	 */
+	public int pathDistance(ArrayList<PBDVertex> graph, ArrayList<PBDVertex> curves) {
+		int min = 1, max = 1600;
+		this.found = false;
+//		this.min = 10000000;
+		this.getEpsilon(graph, curves, min, max);
+		if (this.min == max + 1) {
+			this.found = false;
+		}
+		return this.min;
+	}
+	
 	public List<Integer> pathSimilarity(ArrayList<PBDVertex> graph, File fin, String strInput, int fileNo) {
 		boolean debug = false;
 		ArrayList<PBDVertex> curves;
-		int min = 1, max = 1600;
 		int count = 0;
 		List<Integer> distanceList = new ArrayList<>();
 		try {
@@ -630,12 +648,7 @@ public class MapMatching {
 						continue;
 					}
 					
-					this.found = false;
-//					this.min = 10000000;
-					this.getEpsilon(graph, curves, min, max);
-					if (this.min == max + 1) {
-						this.found = false;
-					}
+					this.pathDistance(graph, curves);
 				}
 				double dist = Math.sqrt(Math.pow(curves.get(0).x - curves.get(curves.size() - 1).x, 2) + Math.pow(
 						curves.get(0).y - curves.get(curves.size() - 1).y, 2));
@@ -298,7 +298,7 @@ public class TrajectoryGenerator {
 	 * @param samplingInterval The number of seconds per point.
 	 * @return The generated trajectories, ground-truth route and point matching result.
 	 */
-	private static Pair<List<Trajectory>, List<Triplet<Integer, List<String>, List<PointMatch>>>> rawTrajGenerator(List<Pair<Integer,
+	static Pair<List<Trajectory>, List<Triplet<Integer, List<String>, List<PointMatch>>>> rawTrajGenerator(List<Pair<Integer,
 			List<String>>> gtRouteList, Map<Integer, Long> id2timeDiffMap, RoadNetworkGraph map, double sigma, int samplingInterval) {
 		DistanceFunction distFunc = map.getDistanceFunction();
 		Map<String, RoadWay> id2WayMap = new HashMap<>();
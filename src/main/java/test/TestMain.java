@@ -1,20 +1,40 @@
 package test;
 
+import algorithm.mapmatching.MatchingMapSnapshot;
+import algorithm.mapmatching.hmm.HMMMapMatching;
+import algorithm.mapmatching.mht.MHTMapMatching;
+import algorithm.mapmatching.simpleHMM.OnlineMatchingService;
+import algorithm.mapmatching.simpleHMM.SimpleHMMMatching;
 import util.dijkstra.MinPriorityQueue;
+import util.function.DistanceFunction;
 import util.function.GreatCircleDistanceFunction;
 import util.function.SpatialUtils;
+import util.object.roadnetwork.RoadNetworkGraph;
+import util.object.roadnetwork.RoadNode;
+import util.object.roadnetwork.RoadWay;
 import util.object.spatialobject.Point;
+import util.object.spatialobject.Segment;
+import util.object.spatialobject.Trajectory;
+import util.object.spatialobject.TrajectoryPoint;
 import util.object.structure.InverselyComparableObject;
 import util.object.structure.Pair;
+import util.object.structure.PointMatch;
+import util.object.structure.SimpleTrajectoryMatchResult;
+import util.settings.MapMatchingProperty;
 
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Random;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class TestMain {
-	public static void main(String[] args) {
+	public static void main(String[] args) throws Exception {
 //		minPriorityQueueTest();
 //		converterTest();
+//		candidateSearchTest();
+//		onlineMatchingServiceTest();
+//		mhtMatchingTest();
 		testProjection();
 	}
 	
@@ -94,4 +114,281 @@ public class TestMain {
 		System.out.println(res1.toString());
 		System.out.println(res2.toString());
 	}
+	
+	/**
+	 * The OF-HMM-old matching with the segment grid candidate search should produce the same result as the R-tree candidate search.
+	 */
+	private static void candidateSearchTest() {
+		RoadNetworkGraph roadMap = generateTestMap(15, 0.002, 1);
+		List<Trajectory> trajList = generateTestTrajectories(roadMap, 50, 15, 5, 2);
+		MapMatchingProperty property = getTestMatchingProperty("OF-HMM-old");
+		HMMMapMatching gridMatching = new HMMMapMatching(roadMap, property);
+		property.setProperty("algorithm.mapmatching.hmm.RTreeCandidateSearch", "true");
+		HMMMapMatching rTreeMatching = new HMMMapMatching(roadMap, property);
+		int diffCount = 0;
+		for (Trajectory traj : trajList) {
+			String gridResult = gridMatching.trajectorySingleMatchingProcess(traj).toString();
+			String rTreeResult = rTreeMatching.trajectorySingleMatchingProcess(traj).toString();
+			if (!gridResult.equals(rTreeResult)) {
+				System.out.println("Different match result for trajectory " + traj.getID() + ":\n" + gridResult + "\n" + rTreeResult);
+				diffCount++;
+			}
+		}
+		if (diffCount != 0)
+			throw new IllegalStateException(diffCount + " out of " + trajList.size() + " trajectories are matched differently.");
+		System.out.println("Candidate search test passed on " + trajList.size() + " trajectories.");
+	}
+	
+	/**
+	 * The online matching service fed with the interleaved points of many vehicles from multiple threads should produce, for each
+	 * vehicle, the same point matches and route as the online matching of its trajectory.
+	 */
+	private static void onlineMatchingServiceTest() throws Exception {
+		RoadNetworkGraph roadMap = generateTestMap(15, 0.002, 1);
+		List<Trajectory> trajList = generateTestTrajectories(roadMap, 60, 15, 5, 2);
+		int numOfThreads = 4;
+		for (String matchingMethod : new String[]{"ON-HMM-goh", "ON-HMM-eddy", "ON-HMM-fixed"}) {
+			MapMatchingProperty property = getTestMatchingProperty(matchingMethod);
+			MatchingMapSnapshot mapSnapshot = new MatchingMapSnapshot(roadMap, false, property);
+			Map<String, List<String>> id2ExpectedResult = new HashMap<>();
+			for (Trajectory traj : trajList) {
+				SimpleTrajectoryMatchResult matchResult = new SimpleHMMMatching(mapSnapshot, property).onlineMatching(traj)._2();
+				List<String> resultList = new ArrayList<>();
+				for (PointMatch pointMatch : matchResult.getPointMatchResultList())
+					resultList.add(pointMatch.toString());
+				resultList.add(matchResult.getRouteMatchResultList().toString());
+				id2ExpectedResult.put(traj.getID(), resultList);
+			}
+			
+			Map<String, List<String>> id2PointMatchList = new ConcurrentHashMap<>();
+			Map<String, List<String>> id2Route = new ConcurrentHashMap<>();
+			OnlineMatchingService service = new OnlineMatchingService(mapSnapshot, property, matchedPoint -> {
+				// the matches of one vehicle are emitted one by one, so the lists of a vehicle are never updated concurrently
+				id2PointMatchList.computeIfAbsent(matchedPoint.getVehicleID(), k -> new ArrayList<>()).add(matchedPoint.getPointMatch().toString());
+				List<String> route = id2Route.computeIfAbsent(matchedPoint.getVehicleID(), k -> new ArrayList<>());
+				for (String roadID : matchedPoint.getRoute())
+					if (route.isEmpty() || !route.get(route.size() - 1).equals(roadID))
+						route.add(roadID);
+			});
+			// each thread feeds its vehicles in turn, one point at a time, so the points of all vehicles arrive interleaved
+			ExecutorService executor = Executors.newFixedThreadPool(numOfThreads);
+			List<Future<Integer>> futureList = new ArrayList<>();
+			for (int i = 0; i < numOfThreads; i++) {
+				List<Trajectory> threadTrajList = new ArrayList<>();
+				for (int j = i; j < trajList.size(); j += numOfThreads)
+					threadTrajList.add(trajList.get(j));
+				futureList.add(executor.submit(() -> {
+					int droppedCount = 0;
+					for (int pointIndex = 0; ; pointIndex++) {
+						boolean hasPoint = false;
+						for (Trajectory traj : threadTrajList) {
+							if (pointIndex < traj.size()) {
+								hasPoint = true;
+								if (!service.accept(traj.getID(), traj.get(pointIndex)))
+									droppedCount++;
+							}
+						}
+						if (!hasPoint)
+							return droppedCount;
+					}
+				}));
+			}
+			int droppedCount = 0;
+			try {
+				for (Future<Integer> future : futureList)
+					droppedCount += future.get();
+			} finally {
+				executor.shutdown();
+			}
+			service.closeAll();
+			
+			int diffCount = 0;
+			for (Trajectory traj : trajList) {
+				List<String> resultList = new ArrayList<>(id2PointMatchList.getOrDefault(traj.getID(), Collections.emptyList()));
+				resultList.add(id2Route.getOrDefault(traj.getID(), Collections.emptyList()).toString());
+				if (!resultList.equals(id2ExpectedResult.get(traj.getID())))
+					diffCount++;
+			}
+			if (droppedCount != 0 || diffCount != 0)
+				throw new IllegalStateException(matchingMethod + ": " + droppedCount + " points are dropped and " + diffCount + " out of "
+						+ trajList.size() + " trajectories are matched differently.");
+			System.out.println(matchingMethod + " online matching service test passed on " + trajList.size() + " trajectories.");
+		}
+	}
+	
+	/**
+	 * The ON-MHT matching of noisy trajectories, some of whose points are too far from any road, should give every point a match or an
+	 * empty match and decide each match within <tt>WindowSize</tt> matched points. It runs with the smallest beam, the default beam and a
+	 * beam large enough to keep every hypothesis. The route should be connected except with the smallest beam, where the only hypothesis
+	 * often misses the next point and the matching restarts with a gap in the route.
+	 */
+	private static void mhtMatchingTest() {
+		RoadNetworkGraph roadMap = generateTestMap(15, 0.002, 1);
+		Map<String, RoadWay> id2Way = new HashMap<>();
+		for (RoadWay way : roadMap.getWays())
+			id2Way.put(way.getID(), way);
+		MapMatchingProperty property = getTestMatchingProperty("ON-MHT");
+		property.setProperty("algorithm.mapmatching.CandidateRange", "30");
+		property.setProperty("algorithm.mapmatching.mht.SigmaA", "3");
+		property.setProperty("algorithm.mapmatching.mht.SigmaV", "30");
+		property.setProperty("algorithm.mapmatching.mht.PredictionThreshold", "0.00001");
+		property.setProperty("algorithm.mapmatching.mht.UpdateThreshold", "0.00001");
+		int windowSize = property.getPropertyInteger("algorithm.mapmatching.WindowSize");
+		int candidateRange = property.getPropertyInteger("algorithm.mapmatching.CandidateRange");
+		MatchingMapSnapshot mapSnapshot = new MatchingMapSnapshot(roadMap, false, property);
+		List<Trajectory> trajList = new ArrayList<>();
+		Random random = new Random(3);
+		for (Trajectory traj : generateTestTrajectories(roadMap, 60, 15, 5, 2)) {
+			// move some points away from the roads so that they have no candidate
+			List<TrajectoryPoint> pointList = new ArrayList<>();
+			for (TrajectoryPoint point : traj) {
+				TrajectoryPoint outlier = new TrajectoryPoint(point.x() + 0.001, point.y() + 0.001, point.time(), point.getDistanceFunction());
+				if (random.nextDouble() < 0.05 && mapSnapshot.getSegmentIndex().searchNeighbours(outlier, candidateRange).isEmpty())
+					pointList.add(outlier);
+				else
+					pointList.add(point);
+			}
+			trajList.add(new Trajectory(traj.getID(), pointList));
+		}
+		for (int beamWidth : new int[]{1, 30, 10000}) {
+			property.setProperty("algorithm.mapmatching.mht.BeamWidth", beamWidth + "");
+			MHTMapMatching mhtMatching = new MHTMapMatching(mapSnapshot, property);
+			int emptyMatchCount = 0;
+			int routeBreakCount = 0;
+			for (Trajectory traj : trajList) {
+				Pair<List<Double>, SimpleTrajectoryMatchResult> result = mhtMatching.onlineMatching(traj);
+				List<Double> latencyList = result._1();
+				List<PointMatch> pointMatchList = result._2().getPointMatchResultList();
+				if (pointMatchList.size() != traj.size() || latencyList.size() != traj.size())
+					throw new IllegalStateException("Trajectory " + traj.getID() + " has " + traj.size() + " points but " + pointMatchList.size()
+							+ " matches and " + latencyList.size() + " latencies.");
+				for (int i = 0; i < traj.size(); i++) {
+					if (pointMatchList.get(i) == null)
+						throw new IllegalStateException("Point " + i + " of trajectory " + traj.getID() + " is not matched.");
+					if (pointMatchList.get(i).getRoadID().isEmpty())
+						emptyMatchCount++;
+					// the match should be decided no later than the WindowSize-th matched point after it, or the last point
+					int lastIndex = i;
+					for (int matchedCount = 0; lastIndex < traj.size() - 1 && matchedCount < windowSize; ) {
+						lastIndex++;
+						if (!pointMatchList.get(lastIndex).getRoadID().isEmpty())
+							matchedCount++;
+					}
+					double latency = latencyList.get(i);
+					if (latency < 0 || latency > traj.get(lastIndex).time() - traj.get(i).time())
+						throw new IllegalStateException("Point " + i + " of trajectory " + traj.getID() + " has latency " + latency + ".");
+				}
+				List<String> routeMatchList = result._2().getRouteMatchResultList();
+				for (int i = 1; i < routeMatchList.size(); i++) {
+					RoadWay prevWay = id2Way.get(routeMatchList.get(i - 1));
+					RoadWay currWay = id2Way.get(routeMatchList.get(i));
+					if (!prevWay.getToNode().getID().equals(currWay.getFromNode().getID())) {
+						if (beamWidth > 1)
+							throw new IllegalStateException("The route of trajectory " + traj.getID() + " is broken between road " + prevWay.getID()
+									+ " and " + currWay.getID() + ".");
+						routeBreakCount++;
+					}
+				}
+			}
+			System.out.println("ON-MHT matching test passed on " + trajList.size() + " trajectories with beam width " + beamWidth + ", "
+					+ emptyMatchCount + " points have empty match, " + routeBreakCount + " route breaks.");
+		}
+	}
+	
+	/**
+	 * Generate a grid map of <tt>gridSize</tt> x <tt>gridSize</tt> intersections. Every intersection is moved by a small random offset
+	 * and each road has one intermediate node. Most roads are double-directed.
+	 */
+	private static RoadNetworkGraph generateTestMap(int gridSize, double gridInterval, long seed) {
+		DistanceFunction distFunc = new GreatCircleDistanceFunction();
+		Random random = new Random(seed);
+		double jitter = gridInterval * 0.15;
+		RoadNetworkGraph roadMap = new RoadNetworkGraph(false, distFunc);
+		RoadNode[][] intersections = new RoadNode[gridSize][gridSize];
+		List<RoadNode> nodeList = new ArrayList<>();
+		for (int i = 0; i < gridSize; i++) {
+			for (int j = 0; j < gridSize; j++) {
+				intersections[i][j] = new RoadNode(i * gridSize + j + "", 116.3 + i * gridInterval + random.nextDouble() * jitter,
+						39.9 + j * gridInterval + random.nextDouble() * jitter, distFunc);
+				nodeList.add(intersections[i][j]);
+			}
+		}
+		roadMap.addNodes(nodeList);
+		List<RoadWay> wayList = new ArrayList<>();
+		int miniNodeCount = 0;
+		for (int i = 0; i < gridSize; i++) {
+			for (int j = 0; j < gridSize; j++) {
+				int[][] neighbours = {{i + 1, j}, {i, j + 1}};
+				for (int[] neighbour : neighbours) {
+					if (neighbour[0] >= gridSize || neighbour[1] >= gridSize)
+						continue;
+					RoadNode startNode = intersections[i][j];
+					RoadNode endNode = intersections[neighbour[0]][neighbour[1]];
+					double midLon = (startNode.lon() + endNode.lon()) / 2 + (random.nextDouble() - 0.5) * jitter;
+					double midLat = (startNode.lat() + endNode.lat()) / 2 + (random.nextDouble() - 0.5) * jitter;
+					String wayID = wayList.size() + 1 + "";
+					wayList.add(new RoadWay(wayID, new ArrayList<>(Arrays.asList(startNode, new RoadNode(miniNodeCount++ + "-", midLon, midLat,
+							distFunc), endNode)), distFunc));
+					if (random.nextDouble() < 0.8)
+						wayList.add(new RoadWay("-" + wayID, new ArrayList<>(Arrays.asList(endNode, new RoadNode(miniNodeCount++ + "-", midLon,
+								midLat, distFunc), startNode)), distFunc));
+				}
+			}
+		}
+		roadMap.addWays(wayList);
+		return roadMap;
+	}
+	
+	/**
+	 * Generate trajectories along random walks on the map. A point is sampled every 50 meters, which is five seconds at 10m/s, and is
+	 * shifted by Gaussian noise of <tt>sigma</tt> meters.
+	 */
+	private static List<Trajectory> generateTestTrajectories(RoadNetworkGraph roadMap, int trajCount, int routeSize, double sigma,
+															 long seed) {
+		Map<String, List<RoadWay>> nodeID2OutgoingWays = new HashMap<>();
+		for (RoadWay way : roadMap.getWays())
+			nodeID2OutgoingWays.computeIfAbsent(way.getFromNode().getID(), k -> new ArrayList<>()).add(way);
+		DistanceFunction distFunc = roadMap.getDistanceFunction();
+		Random random = new Random(seed);
+		List<Trajectory> trajList = new ArrayList<>();
+		while (trajList.size() < trajCount) {
+			RoadWay currWay = roadMap.getWays().get(random.nextInt(roadMap.getWays().size()));
+			List<TrajectoryPoint> pointList = new ArrayList<>();
+			double distToNextPoint = 0;
+			for (int i = 0; i < routeSize && currWay != null; i++) {
+				for (Segment edge : currWay.getEdges()) {
+					double length = distFunc.distance(edge.p1(), edge.p2());
+					for (; distToNextPoint < length; distToNextPoint += 50) {
+						double ratio = distToNextPoint / length;
+						double lat = edge.y1() + (edge.y2() - edge.y1()) * ratio + random.nextGaussian() * sigma / 110540;
+						double lon = edge.x1() + (edge.x2() - edge.x1()) * ratio
+								+ random.nextGaussian() * sigma / (111320 * Math.cos(Math.toRadians(lat)));
+						pointList.add(new TrajectoryPoint(lon, lat, pointList.size() * 5L, distFunc));
+					}
+					distToNextPoint -= length;
+				}
+				List<RoadWay> nextWayList = new ArrayList<>();
+				for (RoadWay way : nodeID2OutgoingWays.getOrDefault(currWay.getToNode().getID(), Collections.emptyList()))
+					if (!way.getToNode().equals(currWay.getFromNode()))    // avoid u-turn
+						nextWayList.add(way);
+				currWay = nextWayList.isEmpty() ? null : nextWayList.get(random.nextInt(nextWayList.size()));
+			}
+			if (pointList.size() > 1)
+				trajList.add(new Trajectory(trajList.size() + "", pointList));
+		}
+		return trajList;
+	}
+	
+	private static MapMatchingProperty getTestMatchingProperty(String matchingMethod) {
+		MapMatchingProperty property = new MapMatchingProperty();
+		property.setProperty("algorithm.mapmatching.MatchingMethod", matchingMethod);
+		property.setProperty("algorithm.mapmatching.CandidateRange", "20");
+		property.setProperty("algorithm.mapmatching.Sigma", "4");
+		property.setProperty("algorithm.mapmatching.hmm.Beta", "0.008");
+		property.setProperty("algorithm.mapmatching.hmm.RankLength", "1");
+		property.setProperty("algorithm.mapmatching.WindowSize", "10");
+		property.setProperty("algorithm.mapmatching.hmm.Eddy.Gamma", "0.01");
+		property.setProperty("algorithm.mapmatching.hmm.turnWeight", "0");
+		return property;
+	}
 }
@@ -0,0 +1,539 @@
+package util.dijkstra;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Contraction Hierarchies index of the {@link RoutingGraph}. The vertices are contracted one by one in the order of their edge
+ * difference, and a shortcut arc is added between two neighbours whenever the contracted vertex lies on their only shortest path. The
+ * shortest distance between two vertices is then found by a forward search on the arcs leading to higher-ranked vertices and a backward
+ * search on the arcs coming from higher-ranked vertices, both of which only visit a small part of the graph.
+ * <p>
+ * Each arc is either an original mini edge or a shortcut of two other arcs, so the path found on the hierarchy is unpacked into the
+ * original mini edges, which gives the road IDs passed by the path. The index only holds for the graph it is built from, it should be
+ * rebuilt once the road ways in the routing graph are changed.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+class ContractionHierarchy {
+
+	private static final Logger LOG = Logger.getLogger(ContractionHierarchy.class);
+	private static final int FILE_MAGIC = 0x43484958;    // "CHIX"
+	private static final int FILE_VERSION = 1;
+	private static final int WITNESS_SETTLE_LIMIT = 500;    // the maximum number of vertices visited by a witness search
+
+	private final int vertexCount;
+	private final long graphFingerprint;    // the fingerprint of the routing graph the hierarchy is built from
+	private final int[] rank;    // the contraction order of each vertex
+	private final int[] arcFrom;    // all arcs in the hierarchy, including the original mini edges and the shortcuts
+	private final int[] arcTo;
+	private final double[] arcLength;
+	private final int[] arcEdge;    // the original mini edge index of the arc, -1 for shortcut
+	private final int[] arcFirst;    // the first and second arcs replaced by the shortcut, -1 for original mini edge
+	private final int[] arcSecond;
+	private final int[] upStart;    // the arcs leading to higher-ranked vertices in compressed sparse row format, indexed by from vertex
+	private final int[] upArc;
+	private final int[] downStart;    // the arcs coming from higher-ranked vertices in compressed sparse row format, indexed by to vertex
+	private final int[] downArc;
+	private final ThreadLocal<QueryWorkspace> workspaces;    // the search state of each thread
+
+	private ContractionHierarchy(int vertexCount, long graphFingerprint, int[] rank, int[] arcFrom, int[] arcTo, double[] arcLength,
+								 int[] arcEdge, int[] arcFirst, int[] arcSecond) {
+		this.vertexCount = vertexCount;
+		this.graphFingerprint = graphFingerprint;
+		this.rank = rank;
+		this.arcFrom = arcFrom;
+		this.arcTo = arcTo;
+		this.arcLength = arcLength;
+		this.arcEdge = arcEdge;
+		this.arcFirst = arcFirst;
+		this.arcSecond = arcSecond;
+		this.upStart = new int[vertexCount + 1];
+		this.downStart = new int[vertexCount + 1];
+		for (int a = 0; a < arcFrom.length; a++) {
+			if (rank[arcFrom[a]] < rank[arcTo[a]])
+				upStart[arcFrom[a] + 1]++;
+			else downStart[arcTo[a] + 1]++;
+		}
+		for (int v = 0; v < vertexCount; v++) {
+			upStart[v + 1] += upStart[v];
+			downStart[v + 1] += downStart[v];
+		}
+		this.upArc = new int[upStart[vertexCount]];
+		this.downArc = new int[downStart[vertexCount]];
+		int[] upCursor = Arrays.copyOf(upStart, vertexCount);
+		int[] downCursor = Arrays.copyOf(downStart, vertexCount);
+		for (int a = 0; a < arcFrom.length; a++) {
+			if (rank[arcFrom[a]] < rank[arcTo[a]])
+				upArc[upCursor[arcFrom[a]]++] = a;
+			else downArc[downCursor[arcTo[a]]++] = a;
+		}
+		this.workspaces = ThreadLocal.withInitial(() -> new QueryWorkspace(vertexCount));
+	}
+
+	/**
+	 * Build the hierarchy from the current adjacency of the routing graph.
+	 *
+	 * @param vertices         The routing vertices with their outgoing edges.
+	 * @param routingEdges     All mini edges of the routing graph, indexed by edge index.
+	 * @param graphFingerprint The fingerprint of the routing graph, used to validate the hierarchy file.
+	 * @return The hierarchy.
+	 */
+	static ContractionHierarchy build(RoutingVertex[] vertices, RoutingEdge[] routingEdges, long graphFingerprint) {
+		long startTime = System.currentTimeMillis();
+		Builder builder = new Builder(vertices.length, routingEdges.length);
+		for (RoutingVertex vertex : vertices) {
+			for (RoutingEdge edge : vertex.getOutGoingRoutingEdges()) {
+				if (edge.getFromNodeIndex() != edge.getToNodeIndex())
+					builder.addArc(edge.getFromNodeIndex(), edge.getToNodeIndex(), edge.getLength(), edge.getIndex(), -1, -1);
+			}
+		}
+		int originalArcCount = builder.arcCount;
+		int[] rank = builder.contractAll();
+		ContractionHierarchy hierarchy = new ContractionHierarchy(vertices.length, graphFingerprint, rank,
+				Arrays.copyOf(builder.arcFrom, builder.arcCount), Arrays.copyOf(builder.arcTo, builder.arcCount),
+				Arrays.copyOf(builder.arcLength, builder.arcCount), Arrays.copyOf(builder.arcEdge, builder.arcCount),
+				Arrays.copyOf(builder.arcFirst, builder.arcCount), Arrays.copyOf(builder.arcSecond, builder.arcCount));
+		LOG.info("Contraction hierarchy built. Total vertices: " + vertices.length + ", original arcs: " + originalArcCount
+				+ ", shortcuts: " + (builder.arcCount - originalArcCount) + ", build time: "
+				+ (System.currentTimeMillis() - startTime) / 1000.0 + "s.");
+		return hierarchy;
+	}
+
+	/**
+	 * Write the hierarchy to a binary file.
+	 *
+	 * @param filePath The output file path.
+	 * @throws IOException Failed file writing.
+	 */
+	void write(String filePath) throws IOException {
+		File file = new File(filePath);
+		if (file.getParentFile() != null && !file.getParentFile().exists()) {
+			if (!file.getParentFile().mkdirs())
+				throw new IOException("Failed to create folder for contraction hierarchy write: " + file.getParent());
+		}
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(FILE_VERSION);
+			out.writeLong(graphFingerprint);
+			out.writeInt(vertexCount);
+			out.writeInt(arcFrom.length);
+			for (int v = 0; v < vertexCount; v++)
+				out.writeInt(rank[v]);
+			for (int a = 0; a < arcFrom.length; a++) {
+				out.writeInt(arcFrom[a]);
+				out.writeInt(arcTo[a]);
+				out.writeDouble(arcLength[a]);
+				out.writeInt(arcEdge[a]);
+				out.writeInt(arcFirst[a]);
+				out.writeInt(arcSecond[a]);
+			}
+		}
+		LOG.info("Contraction hierarchy written to " + filePath);
+	}
+
+	/**
+	 * Read the hierarchy from a binary file.
+	 *
+	 * @param filePath         The input file path.
+	 * @param graphFingerprint The fingerprint of the current routing graph.
+	 * @return The hierarchy, or null if the file is built by a different version or for a different graph.
+	 * @throws IOException Failed file reading.
+	 */
+	static ContractionHierarchy read(String filePath, long graphFingerprint) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+			if (in.readInt() != FILE_MAGIC)
+				throw new IOException("The file is not a contraction hierarchy file: " + filePath);
+			int version = in.readInt();
+			long fingerprint = in.readLong();
+			if (version != FILE_VERSION || fingerprint != graphFingerprint) {
+				LOG.warn("The contraction hierarchy file is outdated: " + filePath);
+				return null;
+			}
+			int vertexCount = in.readInt();
+			int arcCount = in.readInt();
+			int[] rank = new int[vertexCount];
+			for (int v = 0; v < vertexCount; v++)
+				rank[v] = in.readInt();
+			int[] arcFrom = new int[arcCount];
+			int[] arcTo = new int[arcCount];
+			double[] arcLength = new double[arcCount];
+			int[] arcEdge = new int[arcCount];
+			int[] arcFirst = new int[arcCount];
+			int[] arcSecond = new int[arcCount];
+			for (int a = 0; a < arcCount; a++) {
+				arcFrom[a] = in.readInt();
+				arcTo[a] = in.readInt();
+				arcLength[a] = in.readDouble();
+				arcEdge[a] = in.readInt();
+				arcFirst[a] = in.readInt();
+				arcSecond[a] = in.readInt();
+			}
+			LOG.info("Contraction hierarchy loaded from " + filePath + ". Total vertices: " + vertexCount + ", total arcs: " + arcCount);
+			return new ContractionHierarchy(vertexCount, fingerprint, rank, arcFrom, arcTo, arcLength, arcEdge, arcFirst, arcSecond);
+		}
+	}
+
+	/**
+	 * Search upwards from the start vertex. The result is kept in the workspace of the current thread and used by the following
+	 * {@link #connect(TargetSearchSpace, List)} calls of the same thread.
+	 *
+	 * @param startIndex    The start vertex.
+	 * @param maxSearchDist The maximum search range where the search terminates.
+	 */
+	void forwardSearch(int startIndex, double maxSearchDist) {
+		QueryWorkspace workspace = workspaces.get();
+		workspace.reset();
+		workspace.reach(startIndex, 0, -1);
+		int currIndex = startIndex;
+		while (currIndex != -1 && workspace.distance[currIndex] < maxSearchDist) {
+			double currDistance = workspace.distance[currIndex];
+			for (int i = upStart[currIndex]; i < upStart[currIndex + 1]; i++) {
+				int a = upArc[i];
+				workspace.relax(arcTo[a], currDistance + arcLength[a], a);
+			}
+			currIndex = workspace.minHeap.extractMin();
+		}
+	}
+
+	/**
+	 * Search upwards from the target vertex on the reversed arcs. The search space is returned so that it can be connected to the
+	 * forward search of any source.
+	 *
+	 * @param targetIndex   The target vertex.
+	 * @param maxSearchDist The maximum search range where the search terminates.
+	 * @return The vertices visited by the search and their distances to the target.
+	 */
+	TargetSearchSpace backwardSearch(int targetIndex, double maxSearchDist) {
+		QueryWorkspace workspace = workspaces.get();
+		workspace.reset();
+		workspace.reach(targetIndex, 0, -1);
+		TargetSearchSpace space = new TargetSearchSpace();
+		int currIndex = targetIndex;
+		while (currIndex != -1 && workspace.distance[currIndex] < maxSearchDist) {
+			double currDistance = workspace.distance[currIndex];
+			int parentArc = workspace.parentArc[currIndex];
+			space.add(currIndex, currDistance, parentArc, parentArc == -1 ? -1 : workspace.slot[arcTo[parentArc]]);
+			workspace.slot[currIndex] = space.size - 1;
+			for (int i = downStart[currIndex]; i < downStart[currIndex + 1]; i++) {
+				int a = downArc[i];
+				workspace.relax(arcFrom[a], currDistance + arcLength[a], a);
+			}
+			currIndex = workspace.minHeap.extractMin();
+		}
+		return space;
+	}
+
+	/**
+	 * Find the shortest path between the last forward search of the current thread and the given target.
+	 *
+	 * @param space    The search space of the target.
+	 * @param edgePath The output list of the original mini edge indices along the shortest path, in travel order.
+	 * @return The shortest distance, or Double.POSITIVE_INFINITY if the two searches do not meet.
+	 */
+	double connect(TargetSearchSpace space, List<Integer> edgePath) {
+		QueryWorkspace workspace = workspaces.get();
+		double minDistance = Double.POSITIVE_INFINITY;
+		int meetingSlot = -1;
+		for (int k = 0; k < space.size; k++) {
+			int vertex = space.vertex[k];
+			if (workspace.isReached(vertex) && workspace.distance[vertex] + space.distance[k] < minDistance) {
+				minDistance = workspace.distance[vertex] + space.distance[k];
+				meetingSlot = k;
+			}
+		}
+		if (meetingSlot == -1)
+			return minDistance;
+
+		// unpack the forward half in reverse order, then the backward half
+		List<Integer> arcPath = new ArrayList<>();
+		for (int a = workspace.parentArc[space.vertex[meetingSlot]]; a != -1; a = workspace.parentArc[arcFrom[a]])
+			arcPath.add(a);
+		Collections.reverse(arcPath);
+		for (int k = meetingSlot; space.parentArc[k] != -1; k = space.parentSlot[k])
+			arcPath.add(space.parentArc[k]);
+		Deque<Integer> stack = new ArrayDeque<>();
+		for (int a : arcPath) {
+			stack.push(a);
+			while (!stack.isEmpty()) {
+				int curr = stack.pop();
+				if (arcEdge[curr] != -1)
+					edgePath.add(arcEdge[curr]);
+				else {
+					stack.push(arcSecond[curr]);
+					stack.push(arcFirst[curr]);
+				}
+			}
+		}
+		return minDistance;
+	}
+
+	/**
+	 * The vertices visited by a backward search, with their distances to the target and the arcs towards the target.
+	 */
+	static class TargetSearchSpace {
+		private int[] vertex = new int[16];
+		private double[] distance = new double[16];
+		private int[] parentArc = new int[16];    // the arc from the vertex towards the target, -1 for the target itself
+		private int[] parentSlot = new int[16];    // the slot of the next vertex towards the target
+		private int size = 0;
+
+		private void add(int vertexIndex, double dist, int arc, int nextSlot) {
+			if (size == vertex.length) {
+				vertex = Arrays.copyOf(vertex, size * 2);
+				distance = Arrays.copyOf(distance, size * 2);
+				parentArc = Arrays.copyOf(parentArc, size * 2);
+				parentSlot = Arrays.copyOf(parentSlot, size * 2);
+			}
+			vertex[size] = vertexIndex;
+			distance[size] = dist;
+			parentArc[size] = arc;
+			parentSlot[size] = nextSlot;
+			size++;
+		}
+	}
+
+	/**
+	 * Reusable query state of one thread, stamped by generation in the same way as {@link RoutingWorkspace}.
+	 */
+	private static class QueryWorkspace {
+		private final double[] distance;
+		private final int[] parentArc;
+		private final int[] slot;    // the slot of the vertex in the target search space during a backward search
+		private final int[] reachedStamp;
+		private int generation = 0;
+		private final IndexedMinHeap minHeap;
+
+		private QueryWorkspace(int vertexCount) {
+			this.distance = new double[vertexCount];
+			this.parentArc = new int[vertexCount];
+			this.slot = new int[vertexCount];
+			this.reachedStamp = new int[vertexCount];
+			this.minHeap = new IndexedMinHeap(vertexCount);
+		}
+
+		private void reset() {
+			if (generation == Integer.MAX_VALUE) {
+				Arrays.fill(reachedStamp, 0);
+				generation = 0;
+			}
+			generation++;
+			minHeap.clear();
+		}
+
+		private boolean isReached(int vertexIndex) {
+			return reachedStamp[vertexIndex] == generation;
+		}
+
+		private void reach(int vertexIndex, double dist, int arc) {
+			reachedStamp[vertexIndex] = generation;
+			distance[vertexIndex] = dist;
+			parentArc[vertexIndex] = arc;
+		}
+
+		private void relax(int vertexIndex, double dist, int arc) {
+			if (!isReached(vertexIndex)) {
+				reach(vertexIndex, dist, arc);
+				minHeap.decreaseKey(vertexIndex, dist);
+			} else if (minHeap.contains(vertexIndex) && dist < distance[vertexIndex]) {
+				reach(vertexIndex, dist, arc);
+				minHeap.decreaseKey(vertexIndex, dist);
+			}
+		}
+	}
+
+	/**
+	 * The growing arc lists and the contraction state used during the hierarchy construction.
+	 */
+	private static class Builder {
+		private final int vertexCount;
+		private int[] arcFrom;
+		private int[] arcTo;
+		private double[] arcLength;
+		private int[] arcEdge;
+		private int[] arcFirst;
+		private int[] arcSecond;
+		private int arcCount = 0;
+		private final int[][] outArcs;    // the arcs of each vertex, including the ones to contracted vertices
+		private final int[] outSize;
+		private final int[][] inArcs;
+		private final int[] inSize;
+		private final boolean[] isContracted;
+		private final int[] contractedNeighbourCount;
+		// witness search state
+		private final double[] witnessDist;
+		private final int[] witnessStamp;
+		private int witnessGeneration = 0;
+		private final IndexedMinHeap witnessHeap;
+
+		private Builder(int vertexCount, int edgeCount) {
+			this.vertexCount = vertexCount;
+			int capacity = Math.max(16, edgeCount * 2);
+			this.arcFrom = new int[capacity];
+			this.arcTo = new int[capacity];
+			this.arcLength = new double[capacity];
+			this.arcEdge = new int[capacity];
+			this.arcFirst = new int[capacity];
+			this.arcSecond = new int[capacity];
+			this.outArcs = new int[vertexCount][];
+			this.outSize = new int[vertexCount];
+			this.inArcs = new int[vertexCount][];
+			this.inSize = new int[vertexCount];
+			for (int v = 0; v < vertexCount; v++) {
+				outArcs[v] = new int[4];
+				inArcs[v] = new int[4];
+			}
+			this.isContracted = new boolean[vertexCount];
+			this.contractedNeighbourCount = new int[vertexCount];
+			this.witnessDist = new double[vertexCount];
+			this.witnessStamp = new int[vertexCount];
+			this.witnessHeap = new IndexedMinHeap(vertexCount);
+		}
+
+		private void addArc(int from, int to, double length, int edgeIndex, int first, int second) {
+			if (arcCount == arcFrom.length) {
+				int capacity = arcCount * 2;
+				arcFrom = Arrays.copyOf(arcFrom, capacity);
+				arcTo = Arrays.copyOf(arcTo, capacity);
+				arcLength = Arrays.copyOf(arcLength, capacity);
+				arcEdge = Arrays.copyOf(arcEdge, capacity);
+				arcFirst = Arrays.copyOf(arcFirst, capacity);
+				arcSecond = Arrays.copyOf(arcSecond, capacity);
+			}
+			arcFrom[arcCount] = from;
+			arcTo[arcCount] = to;
+			arcLength[arcCount] = length;
+			arcEdge[arcCount] = edgeIndex;
+			arcFirst[arcCount] = first;
+			arcSecond[arcCount] = second;
+			if (outSize[from] == outArcs[from].length)
+				outArcs[from] = Arrays.copyOf(outArcs[from], outSize[from] * 2);
+			outArcs[from][outSize[from]++] = arcCount;
+			if (inSize[to] == inArcs[to].length)
+				inArcs[to] = Arrays.copyOf(inArcs[to], inSize[to] * 2);
+			inArcs[to][inSize[to]++] = arcCount;
+			arcCount++;
+		}
+
+		/**
+		 * Contract all vertices in the order of their priority. The priority is updated lazily, a vertex is contracted only if its
+		 * updated priority is still the smallest.
+		 *
+		 * @return The rank of each vertex.
+		 */
+		private int[] contractAll() {
+			int[] rank = new int[vertexCount];
+			IndexedMinHeap priorityHeap = new IndexedMinHeap(vertexCount);
+			for (int v = 0; v < vertexCount; v++)
+				priorityHeap.decreaseKey(v, contract(v, true));
+			int order = 0;
+			while (!priorityHeap.isEmpty()) {
+				int v = priorityHeap.extractMin();
+				double priority = contract(v, true);
+				if (!priorityHeap.isEmpty() && priority > priorityHeap.getKey(priorityHeap.peekMin())) {
+					priorityHeap.decreaseKey(v, priority);
+					continue;
+				}
+				contract(v, false);
+				isContracted[v] = true;
+				rank[v] = order++;
+				for (int i = 0; i < outSize[v]; i++)
+					contractedNeighbourCount[arcTo[outArcs[v][i]]]++;
+				for (int i = 0; i < inSize[v]; i++)
+					contractedNeighbourCount[arcFrom[inArcs[v][i]]]++;
+			}
+			return rank;
+		}
+
+		/**
+		 * Contract the vertex by adding a shortcut for every pair of its uncontracted neighbours that has no witness path.
+		 *
+		 * @param v          The vertex to be contracted.
+		 * @param isSimulate True if the shortcuts are only counted for the priority calculation.
+		 * @return The priority of the vertex, which is its edge difference plus the number of contracted neighbours.
+		 */
+		private double contract(int v, boolean isSimulate) {
+			int shortcutCount = 0;
+			int degree = 0;
+			for (int i = 0; i < outSize[v]; i++) {
+				if (!isContracted[arcTo[outArcs[v][i]]])
+					degree++;
+			}
+			for (int i = 0; i < inSize[v]; i++) {
+				int inArc = inArcs[v][i];
+				int u = arcFrom[inArc];
+				if (isContracted[u])
+					continue;
+				degree++;
+				double maxDistance = -1;
+				for (int j = 0; j < outSize[v]; j++) {
+					int w = arcTo[outArcs[v][j]];
+					if (!isContracted[w] && w != u)
+						maxDistance = Math.max(maxDistance, arcLength[inArc] + arcLength[outArcs[v][j]]);
+				}
+				if (maxDistance < 0)
+					continue;
+				witnessSearch(u, v, maxDistance);
+				// the shortcuts added by the current contraction are not followed
+				int currOutSize = outSize[v];
+				for (int j = 0; j < currOutSize; j++) {
+					int outArc = outArcs[v][j];
+					int w = arcTo[outArc];
+					if (isContracted[w] || w == u)
+						continue;
+					double viaDistance = arcLength[inArc] + arcLength[outArc];
+					if (witnessStamp[w] == witnessGeneration && witnessDist[w] <= viaDistance)
+						continue;
+					shortcutCount++;
+					if (!isSimulate)
+						addArc(u, w, viaDistance, -1, inArc, outArc);
+				}
+			}
+			return shortcutCount - degree + contractedNeighbourCount[v];
+		}
+
+		/**
+		 * Search the shortest distances from the start vertex without passing the contracted vertices and the excluded vertex. The
+		 * search stops once it exceeds the max distance or visits too many vertices, so the result is an upper bound.
+		 */
+		private void witnessSearch(int start, int excluded, double maxDistance) {
+			if (witnessGeneration == Integer.MAX_VALUE) {
+				Arrays.fill(witnessStamp, 0);
+				witnessGeneration = 0;
+			}
+			witnessGeneration++;
+			witnessHeap.clear();
+			witnessStamp[start] = witnessGeneration;
+			witnessDist[start] = 0;
+			int currIndex = start;
+			int settledCount = 0;
+			while (currIndex != -1 && witnessDist[currIndex] <= maxDistance && settledCount < WITNESS_SETTLE_LIMIT) {
+				settledCount++;
+				for (int i = 0; i < outSize[currIndex]; i++) {
+					int arc = outArcs[currIndex][i];
+					int next = arcTo[arc];
+					if (isContracted[next] || next == excluded)
+						continue;
+					double distance = witnessDist[currIndex] + arcLength[arc];
+					if (witnessStamp[next] != witnessGeneration) {
+						witnessStamp[next] = witnessGeneration;
+						witnessDist[next] = distance;
+						witnessHeap.decreaseKey(next, distance);
+					} else if (distance < witnessDist[next] && witnessHeap.contains(next)) {
+						witnessDist[next] = distance;
+						witnessHeap.decreaseKey(next, distance);
+					}
+				}
+				currIndex = witnessHeap.extractMin();
+			}
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package util.dijkstra;
+
+import java.util.Arrays;
+
+/**
+ * Indexed d-ary minimal heap used in Dijkstra and A* algorithm. The heap stores integer ids within [0, capacity) with double keys.
+ * The keys and ids are kept in parallel primitive arrays in heap order, and a position array maps each id to its slot so that
+ * decrease-key locates the item in O(1) without any object allocation or boxed lookup.
+ * <p>
+ * Items with the same key are ordered by their id, which is consistent with {@link MinPriorityQueue}.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+public class IndexedMinHeap {
+
+	private static final int DEFAULT_ARITY = 4;
+
+	private final int arity;
+	private final double[] heapKey;    // the key of each heap slot
+	private final int[] heapID;    // the id stored in each heap slot
+	private final int[] position;    // the heap slot of each id, -1 if the id is not in the heap
+	private int heapSize;
+
+	/**
+	 * Create an empty 4-ary heap.
+	 *
+	 * @param capacity The number of possible ids, all ids should be in the range of [0, capacity).
+	 */
+	public IndexedMinHeap(int capacity) {
+		this(capacity, DEFAULT_ARITY);
+	}
+
+	/**
+	 * Create an empty d-ary heap.
+	 *
+	 * @param capacity The number of possible ids, all ids should be in the range of [0, capacity).
+	 * @param arity    The number of children of each heap node, =2 for a binary heap.
+	 */
+	public IndexedMinHeap(int capacity, int arity) {
+		if (arity < 2)
+			throw new IllegalArgumentException("The arity of the heap should be at least 2: " + arity);
+		this.arity = arity;
+		this.heapKey = new double[capacity];
+		this.heapID = new int[capacity];
+		this.position = new int[capacity];
+		Arrays.fill(position, -1);
+		this.heapSize = 0;
+	}
+
+	public boolean isEmpty() {
+		return heapSize == 0;
+	}
+
+	public int size() {
+		return heapSize;
+	}
+
+	public boolean contains(int id) {
+		return position[id] != -1;
+	}
+
+	/**
+	 * @param id The id in the heap.
+	 * @return The current key of the id.
+	 */
+	public double getKey(int id) {
+		if (position[id] == -1)
+			throw new IllegalArgumentException("The id is not in the heap: " + id);
+		return heapKey[position[id]];
+	}
+
+	/**
+	 * Update the existing heap item or insert a new one.
+	 *
+	 * @param id  The id of the currently updating item.
+	 * @param key The current calculated key.
+	 * @return false if the key is not smaller than the previous one, otherwise true
+	 */
+	public boolean decreaseKey(int id, double key) {
+		int pos = position[id];
+		if (pos == -1) {
+			siftUp(heapSize++, id, key);
+			return true;
+		} else if (key < heapKey[pos]) {
+			siftUp(pos, id, key);
+			return true;
+		} else return false;
+	}
+
+	/**
+	 * @return The id with the smallest key without removing it, returns -1 if the heap is empty.
+	 */
+	public int peekMin() {
+		return heapSize == 0 ? -1 : heapID[0];
+	}
+
+	/**
+	 * Extract the id with the smallest key.
+	 *
+	 * @return The id of the next item, returns -1 if the heap is empty.
+	 */
+	public int extractMin() {
+		if (heapSize == 0)
+			return -1;
+		int minID = heapID[0];
+		position[minID] = -1;
+		heapSize--;
+		if (heapSize > 0)
+			siftDown(0, heapID[heapSize], heapKey[heapSize]);
+		return minID;
+	}
+
+	/**
+	 * Remove all items from the heap. The cost is proportional to the number of remaining items rather than the capacity.
+	 */
+	public void clear() {
+		for (int i = 0; i < heapSize; i++)
+			position[heapID[i]] = -1;
+		heapSize = 0;
+	}
+
+	private void siftUp(int pos, int id, double key) {
+		while (pos > 0) {
+			int parentPos = (pos - 1) / arity;
+			if (!isSmaller(key, id, heapKey[parentPos], heapID[parentPos]))
+				break;
+			place(pos, heapID[parentPos], heapKey[parentPos]);
+			pos = parentPos;
+		}
+		place(pos, id, key);
+	}
+
+	private void siftDown(int pos, int id, double key) {
+		while (true) {
+			int firstChild = pos * arity + 1;
+			if (firstChild >= heapSize)
+				break;
+			int lastChild = Math.min(firstChild + arity, heapSize);
+			int minChild = firstChild;
+			for (int child = firstChild + 1; child < lastChild; child++) {
+				if (isSmaller(heapKey[child], heapID[child], heapKey[minChild], heapID[minChild]))
+					minChild = child;
+			}
+			if (!isSmaller(heapKey[minChild], heapID[minChild], key, id))
+				break;
+			place(pos, heapID[minChild], heapKey[minChild]);
+			pos = minChild;
+		}
+		place(pos, id, key);
+	}
+
+	private void place(int pos, int id, double key) {
+		heapKey[pos] = key;
+		heapID[pos] = id;
+		position[id] = pos;
+	}
+
+	private static boolean isSmaller(double key1, int id1, double key2, int id2) {
+		return key1 < key2 || (key1 == key2 && id1 < id2);
+	}
+}
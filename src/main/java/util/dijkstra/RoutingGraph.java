@@ -10,6 +10,9 @@ import util.object.structure.Pair;
 import util.object.structure.PointMatch;
 import util.settings.BaseProperty;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 
@@ -27,7 +30,12 @@ public class RoutingGraph implements Serializable {
 	// and its distance to the current edge
 	private RoutingVertex[] vertices;
 	private RoutingEdge[] routingEdges;
+	private String[] edgeRoadIDs;    // the road ID of each mini edge, indexed by edge index
+	private double[] vertexX;    // the coordinates of each vertex, used in heuristic distance calculation
+	private double[] vertexY;
 	private DistanceFunction distFunc;
+	private transient ThreadLocal<RoutingWorkspace> workspaces;    // the search state of each thread
+	private transient ContractionHierarchy hierarchy = null;    // the optional shortest path index, null if not used
 	private HashSet<Integer> newNodeSet = new HashSet<>();  // useful only when isPartial = true;
 	private HashSet<Integer> newEdgeSet = new HashSet<>();  // useful only when isPartial = true;
 	private HashMap<String, List<Integer>> roadID2NewNodeList = new HashMap<>();  // for each new road, the generated node ID list.
@@ -44,7 +52,6 @@ public class RoutingGraph implements Serializable {
 		// insert the road node into node list
 		HashMap<String, Integer> nodeID2Index = new HashMap<>();
 		HashMap<Integer, Point> vertexID2Loc = new LinkedHashMap<>();
-		HashSet<Integer> outGoingNodeSet = new HashSet<>();
 		// the size of the vertex list and the current index of the new vertex
 		int vertexIndex = 0;
 		for (RoadNode node : roadNetwork.getNodes()) {
@@ -103,20 +110,97 @@ public class RoutingGraph implements Serializable {
 			}
 		}
 		this.routingEdges = new RoutingEdge[routingEdgeList.size()];
+		this.edgeRoadIDs = new String[routingEdgeList.size()];
 		for (int i = 0; i < routingEdgeList.size(); i++) {
 			RoutingEdge currRoutingEdge = routingEdgeList.get(i);
 			if (currRoutingEdge.getIndex() != i)
 				throw new IllegalArgumentException("The current routing edge id is inconsistent: " + currRoutingEdge.getIndex() + "," + i + ".");
 			this.routingEdges[i] = currRoutingEdge;
+			this.edgeRoadIDs[i] = edgeIndex2RoadID.get(i);
 		}
 		
 		// create all vertices ready to be updated with the routingEdges
 		this.vertices = new RoutingVertex[vertexIndex];
+		this.vertexX = new double[vertexIndex];
+		this.vertexY = new double[vertexIndex];
 		for (int n = 0; n < vertexIndex; n++) {
 			this.vertices[n] = new RoutingVertex();
 			this.vertices[n].setIndex(n);
 			this.vertices[n].setVertexPoint(vertexID2Loc.get(n));
+			this.vertexX[n] = vertexID2Loc.get(n).x();
+			this.vertexY[n] = vertexID2Loc.get(n).y();
+		}
+		initSearch(isNewRoadIncluded, prop);
+	}
+	
+	/**
+	 * Create routing graph for map-matching from a map snapshot, see {@link util.io.BinaryMapSnapshot}. The graph is the same as the one
+	 * created by {@link #RoutingGraph(RoadNetworkGraph, boolean, BaseProperty)} without new roads, including its edge index mappings, but
+	 * the mini edge lengths are taken from the snapshot and the uniqueness checks, which passed when the snapshot was written, are skipped.
+	 *
+	 * @param roadNetwork The map read from the snapshot.
+	 * @param edgeLengths The length of each mini edge, ordered by road way and then by the node sequence within the road.
+	 */
+	public RoutingGraph(RoadNetworkGraph roadNetwork, double[] edgeLengths, BaseProperty prop) {
+		this.distFunc = roadNetwork.getDistanceFunction();
+		int vertexCount = roadNetwork.getNodes().size();
+		int edgeCount = 0;
+		for (RoadWay way : roadNetwork.getWays()) {
+			vertexCount += Math.max(way.getNodes().size() - 2, 0);
+			edgeCount += way.getNodes().size() - 1;
+		}
+		if (edgeCount != edgeLengths.length)
+			throw new IllegalArgumentException("The number of edge lengths " + edgeLengths.length + " is inconsistent with the map: "
+					+ edgeCount);
+		HashMap<String, Integer> nodeID2Index = new HashMap<>(roadNetwork.getNodes().size() * 2);
+		this.vertices = new RoutingVertex[vertexCount];
+		this.vertexX = new double[vertexCount];
+		this.vertexY = new double[vertexCount];
+		this.routingEdges = new RoutingEdge[edgeCount];
+		this.edgeRoadIDs = new String[edgeCount];
+		int vertexIndex = 0;
+		for (RoadNode node : roadNetwork.getNodes()) {
+			nodeID2Index.put(node.getID(), vertexIndex);
+			addVertex(vertexIndex++, node);
 		}
+		int edgeIndex = 0;
+		for (RoadWay way : roadNetwork.getWays()) {
+			int prevIndex = nodeID2Index.get(way.getFromNode().getID());
+			for (int i = 1; i < way.getNodes().size(); i++) {
+				int currIndex;
+				if (i == way.getNodes().size() - 1)
+					currIndex = nodeID2Index.get(way.getToNode().getID());
+				else {
+					currIndex = vertexIndex;
+					addVertex(vertexIndex++, way.getNode(i));
+				}
+				RoadNode startNode = way.getNode(i - 1);
+				RoadNode endNode = way.getNode(i);
+				edgeIndex2RoadID.put(edgeIndex, way.getID());
+				endPointLoc2EdgeIndex.put(startNode.lon() + "_" + startNode.lat() + "," + endNode.lon() + "_" + endNode.lat() + "," + way.getID(), edgeIndex);
+				endPointsIndex2EdgeIndex.put(new Pair<>(prevIndex, currIndex), edgeIndex);
+				this.routingEdges[edgeIndex] = new RoutingEdge(edgeIndex, prevIndex, currIndex, edgeLengths[edgeIndex]);
+				this.edgeRoadIDs[edgeIndex] = way.getID();
+				prevIndex = currIndex;
+				edgeIndex++;
+			}
+		}
+		initSearch(false, prop);
+	}
+	
+	private void addVertex(int index, RoadNode node) {
+		this.vertices[index] = new RoutingVertex();
+		this.vertices[index].setIndex(index);
+		this.vertices[index].setVertexPoint(node.toPoint());
+		this.vertexX[index] = node.lon();
+		this.vertexY[index] = node.lat();
+	}
+	
+	/**
+	 * Link the edges to their start vertices and prepare the search state, the last step of the graph construction.
+	 */
+	private void initSearch(boolean isNewRoadIncluded, BaseProperty prop) {
+		this.workspaces = ThreadLocal.withInitial(() -> new RoutingWorkspace(vertices.length));
 		
 		// add all the routingEdges to the vertices, each edge added to only from vertices
 		for (int i = 0; i < this.routingEdges.length; i++) {
@@ -125,6 +209,7 @@ public class RoutingGraph implements Serializable {
 		}
 		
 		// check the completeness of the graph
+		HashSet<Integer> outGoingNodeSet = new HashSet<>();
 		for (RoutingVertex currVertex : this.vertices) {
 			if (currVertex.getOutGoingRoutingEdges().size() != 0) {
 				for (RoutingEdge e : currVertex.getOutGoingRoutingEdges()) {
@@ -136,7 +221,67 @@ public class RoutingGraph implements Serializable {
 			if (this.vertices[i].getOutGoingRoutingEdges().size() == 0 && !outGoingNodeSet.contains(i) && !newNodeSet.contains(i))
 				LOG.error("Isolated node detected: No. " + i);
 		}
-		LOG.info("Shortest path graph generated. Total vertices:" + vertexIndex + ", total edges:" + edgeIndex);
+		LOG.info("Shortest path graph generated. Total vertices:" + vertices.length + ", total edges:" + routingEdges.length);
+		
+		if (prop != null && prop.contains("algorithm.mapmatching.path.ContractionHierarchyFile")) {
+			if (isNewRoadIncluded)
+				LOG.warn("Contraction hierarchy is not used as the routing graph includes new roads.");
+			else
+				enableContractionHierarchy(prop.getPropertyString("algorithm.mapmatching.path.ContractionHierarchyFile"));
+		}
+	}
+	
+	/**
+	 * Use the Contraction Hierarchies index in the following shortest path calculations. The index is read from the given file if it
+	 * is built for the same graph, otherwise it is built from the graph and written to the file, so that the preprocessing only runs
+	 * once for each map version.
+	 * <p>
+	 * With the index, every destination whose shortest distance is within the search range is reported, while the bounded A* search may
+	 * terminate before some of them are reached. The index is dropped once a road is added to or removed from the graph.
+	 *
+	 * @param hierarchyFilePath The file where the index is stored, see {@link #getContractionHierarchyPath(String)}.
+	 */
+	public void enableContractionHierarchy(String hierarchyFilePath) {
+		long fingerprint = getGraphFingerprint();
+		ContractionHierarchy currHierarchy = null;
+		if (new File(hierarchyFilePath).exists()) {
+			try {
+				currHierarchy = ContractionHierarchy.read(hierarchyFilePath, fingerprint);
+			} catch (IOException e) {
+				LOG.warn("Failed to read the contraction hierarchy file, rebuild it: " + e.getMessage());
+			}
+		}
+		if (currHierarchy == null) {
+			currHierarchy = ContractionHierarchy.build(vertices, routingEdges, fingerprint);
+			try {
+				currHierarchy.write(hierarchyFilePath);
+			} catch (IOException e) {
+				LOG.error("Failed to write the contraction hierarchy file: " + e.getMessage());
+			}
+		}
+		this.hierarchy = currHierarchy;
+	}
+	
+	public void disableContractionHierarchy() {
+		this.hierarchy = null;
+	}
+	
+	public boolean isContractionHierarchyEnabled() {
+		return hierarchy != null;
+	}
+	
+	/**
+	 * The Contraction Hierarchies index file is stored next to the map files with the name prefix "hierarchy_".
+	 *
+	 * @param mapFilePath The map file path without "vertices_"/"edges_" included, same as the one used in MapReader.
+	 * @return The index file path.
+	 */
+	public static String getContractionHierarchyPath(String mapFilePath) {
+		String folderPath = mapFilePath.substring(0, mapFilePath.lastIndexOf('/') + 1);
+		String fileName = mapFilePath.substring(mapFilePath.lastIndexOf('/') + 1);
+		if (fileName.contains("."))
+			fileName = fileName.substring(0, fileName.lastIndexOf('.'));
+		return folderPath + "hierarchy_" + fileName + ".bin";
 	}
 	
 	/**
@@ -150,150 +295,7 @@ public class RoutingGraph implements Serializable {
 	 * reachable within maxSearchDist.
 	 */
 	public List<Pair<Double, List<String>>> calculateOneToNDijkstraSP(PointMatch source, List<PointMatch> pointList, double maxSearchDist) {
-		double[] distance = new double[pointList.size()];   // the distance to every destination
-		List<List<String>> path = new ArrayList<>(pointList.size());     // the path to every destination
-		HashMap<Integer, Integer> parent = new HashMap<>();        // the parent of each vertex, used during Dijkstra traversal
-		HashMap<Integer, Double> vertexDistFromSource = new HashMap<>();    // the distance from the vertex to the source node
-		HashSet<Integer> vertexVisited = new HashSet<>();        // set of vertices visited
-		List<Pair<Double, List<String>>> result;
-		
-		Arrays.fill(distance, Double.POSITIVE_INFINITY);
-		for (int i = 0; i < pointList.size(); i++) {
-			path.add(new ArrayList<>());
-		}
-		// the variables have been initialized during the last calculation. Start the process right away
-		HashMap<Integer, Set<Integer>> vertexID2DestIndexSet = new HashMap<>();        // all destinations that requires Dijkstra search,
-		// (destination vertex ID and destination index in pointList)
-		
-		
-		// if source point doesn't exist, return infinity to all distances
-//		String sourceLocID = source.getMatchedSegment().x1() + "_" + source.getMatchedSegment().y1() + "," + source.getMatchedSegment()
-//				.x2() + "_" + source.getMatchedSegment().y2() + "," + source.getRoadID();
-		
-		String sourceLocID = source.getMatchedSegment().x1() + "_" + source.getMatchedSegment().y1() +
-				"," + source.getMatchedSegment().x2() + "_" +
-				source.getMatchedSegment().y2() + "," + source.getRoadID().strip().split("\\|")[0];
-		
-		if (!this.endPointLoc2EdgeIndex.containsKey(sourceLocID)) {
-			LOG.error("Shortest distance calculation failed: Source node is not found: " + sourceLocID);
-			result = new ArrayList<>(resultOutput(distance, path));
-			return result;
-		}
-		
-		// the start node of the current Dijkstra rotation
-		int startEdgeIndex = endPointLoc2EdgeIndex.get(sourceLocID);
-		String startRoadID = edgeIndex2RoadID.get(startEdgeIndex);
-		int startNodeIndex = this.routingEdges[startEdgeIndex].getToNodeIndex();
-		double sourceDistance = this.distFunc.distance(source.getMatchPoint(), source.getMatchedSegment().p2());
-		
-		// attach all destination points to the graph
-		int destPointCount = pointList.size();
-		for (int i = 0; i < pointList.size(); i++) {
-
-//			String destLocID = pointList.get(i).getMatchedSegment().x1() + "_" + pointList.get(i).getMatchedSegment().y1() + "," +
-//					pointList.get(i).getMatchedSegment().x2() + "_" + pointList.get(i).getMatchedSegment().y2() + "," + pointList.get(i)
-//					.getRoadID();
-			String destLocID = pointList.get(i).getMatchedSegment().x1() + "_" + pointList.get(i).getMatchedSegment().y1()
-					+ "," + pointList.get(i).getMatchedSegment().x2() + "_" + pointList.get(i).getMatchedSegment().y2()
-					+ "," + pointList.get(i).getRoadID().strip().split("\\|")[0];
-			
-			if (!endPointLoc2EdgeIndex.containsKey(destLocID)) {
-				LOG.error("Destination node is not found: " + destLocID);
-				destPointCount--;
-//            } else if (pointList.get(i).getMatchPoint().equals2D(pointList.get(i).getMatchedSegment().p1())) {
-//                destPointCount--;
-			} else {
-				int destEdgeIndex = endPointLoc2EdgeIndex.get(destLocID);
-				String destRoadID = edgeIndex2RoadID.get(destEdgeIndex);
-//				double candidateRange = prop.getPropertyDouble("algorithm.mapmatching.CandidateRange");
-//				double backwardsFactor = prop.getPropertyDouble("algorithm.mapmatching.hmm.BackwardsFactor");
-				if (destEdgeIndex == startEdgeIndex && distFunc.distance(source.getMatchPoint(), source.getMatchedSegment().p2()) >=
-						distFunc.distance(pointList.get(i).getMatchPoint(), pointList.get(i).getMatchedSegment().p2())) {    // two segments
-					// refer to the same mini edge and they are in the right order
-					if (!startRoadID.equals(destRoadID))
-						throw new IllegalArgumentException("Same mini edge occurred in different roads: " + destEdgeIndex + " .");
-					distance[i] = distFunc.distance(source.getMatchPoint(), pointList.get(i).getMatchPoint());
-//						path.get(i).add(pointList.get(i).getRoadID());
-					path.get(i).add(destRoadID);
-					destPointCount--;
-//					} else if (destEdgeIndex == startEdgeIndex && distFunc.distance(source.getMatchPoint(),
-//							pointList.get(i).getMatchPoint()) < candidateRange * backwardsFactor) {  // vehicle may stop on the road
-//						// and the sampling point may be located backward, it is not initially inside the algorithm
-//						distance[i] = 1.1 * distFunc.distance(source.getMatchPoint(), pointList.get(i).getMatchPoint());
-//						path.get(i).add(pointList.get(i).getRoadID());
-//						destPointCount--;
-				} else if (vertexID2DestIndexSet.containsKey(this.routingEdges[destEdgeIndex].getFromNodeIndex())) {
-					vertexID2DestIndexSet.get(this.routingEdges[destEdgeIndex].getFromNodeIndex()).add(i);
-				} else {
-					Set<Integer> indexSet = new HashSet<>();
-					indexSet.add(i);
-					vertexID2DestIndexSet.put(this.routingEdges[destEdgeIndex].getFromNodeIndex(), indexSet);
-				}
-			}
-		}
-		
-		// the rest of the destinations are on different mini edges, now set the end of the current mini edge as start vertex
-		if (destPointCount > 0) {
-			// Dijkstra start node
-			vertexDistFromSource.put(startNodeIndex, 0d);
-			parent.put(startNodeIndex, startNodeIndex);
-			MinPriorityQueue minHeap = new MinPriorityQueue();
-			int currIndex = startNodeIndex;
-
-//			LOG.info("start new shortest distance");
-			// visit every node
-			while (currIndex != -1 && vertexDistFromSource.get(currIndex) < (maxSearchDist - sourceDistance)) {
-				// loop around the edges of current node
-//				LOG.info(vertexDistFromSource.get(currIndex));
-				List<RoutingEdge> currentOutgoingRoutingEdges = vertices[currIndex].getOutGoingRoutingEdges();
-				for (RoutingEdge currEdge : currentOutgoingRoutingEdges) {
-					int nextVertexIndex = currEdge.getToNodeIndex();
-					double tentative = vertexDistFromSource.get(currIndex) + currEdge.getLength();
-					if (!vertexVisited.contains(nextVertexIndex) && minHeap.decreaseKey(nextVertexIndex, tentative)) {
-						vertexDistFromSource.put(nextVertexIndex, tentative);
-						parent.put(nextVertexIndex, currIndex);
-					}
-				}
-				// all neighbours checked so node visited
-				vertexVisited.add(currIndex);
-				if (vertexID2DestIndexSet.containsKey(currIndex)) {
-					for (Integer i : vertexID2DestIndexSet.get(currIndex)) {
-						destPointCount--;
-						distance[i] = vertexDistFromSource.get(currIndex);
-						distance[i] += sourceDistance;
-						distance[i] += distFunc.distance(pointList.get(i).getMatchedSegment().p1(), pointList.get(i).getMatchPoint());
-						if (sourceDistance != 0)
-							path.get(i).add(startRoadID);
-						path.get(i).addAll(findPath(currIndex, parent));
-						if (path.get(i).size() > 1 && path.get(i).get(0).equals(path.get(i).get(1)))
-							path.get(i).remove(1);    // remove the duplicated start road ID
-						String lastRoadID = pointList.get(i).getRoadID().strip().split("\\|")[0];
-						if (!pointList.get(i).getMatchedSegment().p1().equals2D(pointList.get(i).getMatchPoint())) {
-							if (path.get(i).isEmpty() || !lastRoadID.equals(path.get(i).get(path.get(i).size() - 1)))
-								path.get(i).add(lastRoadID);
-						}
-					}
-				}
-				if (destPointCount == 0) {
-					result = new ArrayList<>(resultOutput(distance, path));
-					return result;
-				}
-				// next node must be with shortest distance
-//                minHeap.buildMinHeap();
-//                currNode = minHeap.extractMin().getIndex();
-				currIndex = minHeap.extractMin();
-//            if(index!=currNode){
-//                double value1 = vertices[index].getDistanceFromSource();
-//                double value2 = vertices[currNode].getDistanceFromSource();
-//                LOG.info("Inconsistent index");
-//            }
-			}
-//            LOG.info((pointList.size() - destPointCount) + "/" + pointList.size() + "distances are found.");
-			result = new ArrayList<>(resultOutput(distance, path));
-			return result;
-		}
-		result = new ArrayList<>(resultOutput(distance, path));
-		return result;
+		return calculateManyToNSP(Collections.singletonList(source), pointList, null, maxSearchDist).get(0);
 	}
 	
 	/**
@@ -309,174 +311,349 @@ public class RoutingGraph implements Serializable {
 	 */
 	public List<Pair<Double, List<String>>> calculateOneToNAStarSP(PointMatch source, List<PointMatch> pointList,
 																   Point referencePoint, double maxSearchDist) {
-		double[] distance = new double[pointList.size()];   // the distance to every destination
-		List<List<String>> path = new ArrayList<>(pointList.size());     // the path to every destination
-		HashMap<Integer, Integer> parent = new HashMap<>();        // the parent of each vertex, used during A* traversal
-		HashMap<Integer, Double> vertexDistFromSource = new HashMap<>();    // the distance from the vertex to the source node
-		HashSet<Integer> vertexVisited = new HashSet<>();        // set of vertices visited
-		List<Pair<Double, List<String>>> result;
-		
-		Arrays.fill(distance, Double.POSITIVE_INFINITY);
-		for (int i = 0; i < pointList.size(); i++) {
-			path.add(new ArrayList<>());
+		return calculateManyToNSP(Collections.singletonList(source), pointList, referencePoint, maxSearchDist).get(0);
+	}
+	
+	/**
+	 * Given a list of source match points and a set of destination points, the function calculate the shortest path from every source
+	 * to every destination using Dijkstra algorithm.
+	 *
+	 * @param sourceList    The source match point list.
+	 * @param pointList     The destination match point list.
+	 * @param maxSearchDist The maximum search range where shortest path search terminates.
+	 * @return The result matrix indexed by [source][destination], each entry is the same as the result of
+	 * {@link #calculateOneToNDijkstraSP(PointMatch, List, double)} for the corresponding source and destination.
+	 */
+	public List<List<Pair<Double, List<String>>>> calculateManyToNDijkstraSP(List<PointMatch> sourceList, List<PointMatch> pointList,
+																			 double maxSearchDist) {
+		return calculateManyToNSP(sourceList, pointList, null, maxSearchDist);
+	}
+	
+	/**
+	 * Given a list of source match points and a set of destination points, the function calculate the shortest path from every source
+	 * to every destination using A* algorithm.
+	 *
+	 * @param sourceList     The source match point list.
+	 * @param pointList      The destination match point list.
+	 * @param referencePoint The point used to calculate heuristic reference distance.
+	 * @param maxSearchDist  The maximum search range where shortest path search terminates.
+	 * @return The result matrix indexed by [source][destination], each entry is the same as the result of
+	 * {@link #calculateOneToNAStarSP(PointMatch, List, Point, double)} for the corresponding source and destination.
+	 */
+	public List<List<Pair<Double, List<String>>>> calculateManyToNAStarSP(List<PointMatch> sourceList, List<PointMatch> pointList,
+																		  Point referencePoint, double maxSearchDist) {
+		return calculateManyToNSP(sourceList, pointList, referencePoint, maxSearchDist);
+	}
+	
+	/**
+	 * The shortest path search shared by Dijkstra and A* algorithm. The destinations are located in the graph only once for all sources.
+	 * The search of a source starts from the end vertex of its mini edge, so the sources whose mini edges end at the same vertex, e.g.
+	 * the candidates on different roads entering the same intersection, share one search. The search order does not depend on the
+	 * source, only the search range does, so each source stops collecting destinations at the point where its own search would have
+	 * terminated and the result is identical to searching the sources one by one.
+	 * <p>
+	 * The search state is kept in the workspace of the current thread so that no per-vertex object is created during the search. If the
+	 * Contraction Hierarchies index is enabled, each source group and each destination runs one search on the index instead.
+	 *
+	 * @param sourceList     The source match point list.
+	 * @param pointList      The destination match point list.
+	 * @param referencePoint The point used to calculate heuristic reference distance, = null if Dijkstra is used.
+	 * @param maxSearchDist  The maximum search range where shortest path search terminates.
+	 * @return The result matrix indexed by [source][destination].
+	 */
+	private List<List<Pair<Double, List<String>>>> calculateManyToNSP(List<PointMatch> sourceList, List<PointMatch> pointList,
+																	  Point referencePoint, double maxSearchDist) {
+		int sourceCount = sourceList.size();
+		int destCount = pointList.size();
+		double[][] distance = new double[sourceCount][destCount];   // the distance from every source to every destination
+		List<List<List<String>>> path = new ArrayList<>(sourceCount);     // the path from every source to every destination
+		for (int s = 0; s < sourceCount; s++) {
+			Arrays.fill(distance[s], Double.POSITIVE_INFINITY);
+			List<List<String>> currPathList = new ArrayList<>(destCount);
+			for (int i = 0; i < destCount; i++) {
+				currPathList.add(new ArrayList<>());
+			}
+			path.add(currPathList);
 		}
-		// the variables have been initialized during the last calculation. Start the process right away
-		HashMap<Integer, Set<Integer>> vertexID2DestIndexSet = new HashMap<>();        // all destinations that requires A* search,
-		// (destination vertex ID and destination index in pointList)
-		
-		
-		// if source point doesn't exist, return infinity to all distances
-//		String sourceLocID = source.getMatchedSegment().x1() + "_" + source.getMatchedSegment().y1() + "," + source.getMatchedSegment()
-//				.x2() + "_" + source.getMatchedSegment().y2() + "," + source.getRoadID();
 		
-		String sourceLocID = source.getMatchedSegment().x1() + "_" + source.getMatchedSegment().y1() +
-				"," + source.getMatchedSegment().x2() + "_" +
-				source.getMatchedSegment().y2() + "," + source.getRoadID().strip().split("\\|")[0];
-		
-		if (!this.endPointLoc2EdgeIndex.containsKey(sourceLocID)) {
-			LOG.error("Shortest distance calculation failed: Source node is not found: " + sourceLocID);
-			result = new ArrayList<>(resultOutput(distance, path));
-			return result;
+		// locate all destination points in the graph
+		int[] destEdgeIndex = new int[destCount];
+		double[] destStartOffset = new double[destCount];    // the distance from the start of the mini edge to the destination point
+		double[] destEndOffset = new double[destCount];    // the distance from the destination point to the end of the mini edge
+		for (int i = 0; i < destCount; i++) {
+			PointMatch dest = pointList.get(i);
+			destEdgeIndex[i] = getMiniEdgeIndex(dest);
+			if (destEdgeIndex[i] == -1) {
+				LOG.error("Destination node is not found: " + getEndPointLocID(dest));
+				continue;
+			}
+			destStartOffset[i] = distFunc.distance(dest.getMatchedSegment().p1(), dest.getMatchPoint());
+			destEndOffset[i] = distFunc.distance(dest.getMatchPoint(), dest.getMatchedSegment().p2());
 		}
 		
-		// the start node of the current A* rotation
-		int startEdgeIndex = endPointLoc2EdgeIndex.get(sourceLocID);
-		String startRoadID = edgeIndex2RoadID.get(startEdgeIndex);
-		int startNodeIndex = this.routingEdges[startEdgeIndex].getToNodeIndex();
-		double sourceDistance = this.distFunc.distance(source.getMatchPoint(), source.getMatchedSegment().p2());
+		// group the sources by their start vertex, if source point doesn't exist, return infinity to all distances
+		int[] startEdgeIndex = new int[sourceCount];
+		double[] sourceDistance = new double[sourceCount];
+		double minSourceDistance = Double.POSITIVE_INFINITY;
+		Map<Integer, List<Integer>> startNode2SourceList = new LinkedHashMap<>();
+		for (int s = 0; s < sourceCount; s++) {
+			PointMatch source = sourceList.get(s);
+			startEdgeIndex[s] = getMiniEdgeIndex(source);
+			if (startEdgeIndex[s] == -1) {
+				LOG.error("Shortest distance calculation failed: Source node is not found: " + getEndPointLocID(source));
+				continue;
+			}
+			sourceDistance[s] = this.distFunc.distance(source.getMatchPoint(), source.getMatchedSegment().p2());
+			minSourceDistance = Math.min(minSourceDistance, sourceDistance[s]);
+			startNode2SourceList.computeIfAbsent(this.routingEdges[startEdgeIndex[s]].getToNodeIndex(), k -> new ArrayList<>()).add(s);
+		}
 		
-		// attach all destination points to the graph
-		int destPointCount = pointList.size();
-		for (int i = 0; i < pointList.size(); i++) {
-
-//			String destLocID = pointList.get(i).getMatchedSegment().x1() + "_" + pointList.get(i).getMatchedSegment().y1() + "," +
-//					pointList.get(i).getMatchedSegment().x2() + "_" + pointList.get(i).getMatchedSegment().y2() + "," + pointList.get(i)
-//					.getRoadID();
-			String destLocID = pointList.get(i).getMatchedSegment().x1() + "_" + pointList.get(i).getMatchedSegment().y1()
-					+ "," + pointList.get(i).getMatchedSegment().x2() + "_" + pointList.get(i).getMatchedSegment().y2()
-					+ "," + pointList.get(i).getRoadID().strip().split("\\|")[0];
+		RoutingWorkspace workspace = getWorkspace();
+		boolean[][] isFound = new boolean[sourceCount][destCount];
+		int[] remainingDestCount = new int[sourceCount];
+		ContractionHierarchy.TargetSearchSpace[] targetSpaces = null;    // the backward search of each destination, used by hierarchy
+		for (Map.Entry<Integer, List<Integer>> entry : startNode2SourceList.entrySet()) {
+			int startNodeIndex = entry.getKey();
+			List<Integer> groupSourceList = entry.getValue();
+			// the destinations on the same mini edge and after the source point are reached directly
+			int pendingDestCount = 0;
+			for (int s : groupSourceList) {
+				String startRoadID = edgeRoadIDs[startEdgeIndex[s]];
+				for (int i = 0; i < destCount; i++) {
+					if (destEdgeIndex[i] == -1) {
+						isFound[s][i] = true;
+					} else if (destEdgeIndex[i] == startEdgeIndex[s] && sourceDistance[s] >= destEndOffset[i]) {
+						// two segments refer to the same mini edge and they are in the right order
+						String destRoadID = edgeRoadIDs[destEdgeIndex[i]];
+						if (!startRoadID.equals(destRoadID))
+							throw new IllegalArgumentException("Same mini edge occurred in different roads: " + destEdgeIndex[i] + ".");
+						distance[s][i] = distFunc.distance(sourceList.get(s).getMatchPoint(), pointList.get(i).getMatchPoint());
+						path.get(s).get(i).add(destRoadID);
+						isFound[s][i] = true;
+					} else {
+						remainingDestCount[s]++;
+					}
+				}
+				pendingDestCount += remainingDestCount[s];
+			}
+			if (pendingDestCount == 0)
+				continue;
 			
-			if (!endPointLoc2EdgeIndex.containsKey(destLocID)) {
-				LOG.error("Destination node is not found: " + destLocID);
-				destPointCount--;
-//            } else if (pointList.get(i).getMatchPoint().equals2D(pointList.get(i).getMatchedSegment().p1())) {
-//                destPointCount--;
-			} else {
-				int destEdgeIndex = endPointLoc2EdgeIndex.get(destLocID);
-				String destRoadID = edgeIndex2RoadID.get(destEdgeIndex);
-//				double candidateRange = prop.getPropertyDouble("algorithm.mapmatching.CandidateRange");
-//				double backwardsFactor = prop.getPropertyDouble("algorithm.mapmatching.hmm.BackwardsFactor");
-				if (destEdgeIndex == startEdgeIndex && distFunc.distance(source.getMatchPoint(), source.getMatchedSegment().p2()) >=
-						distFunc.distance(pointList.get(i).getMatchPoint(), pointList.get(i).getMatchedSegment().p2())) {    // two segments
-					// refer to the same mini edge and they are in the right order
-					if (!startRoadID.equals(destRoadID))
-						throw new IllegalArgumentException("Same mini edge occurred in different roads: " + destEdgeIndex + ".");
-					distance[i] = distFunc.distance(source.getMatchPoint(), pointList.get(i).getMatchPoint());
-//						path.get(i).add(pointList.get(i).getRoadID());
-					path.get(i).add(destRoadID);
-					destPointCount--;
-//					} else if (destEdgeIndex == startEdgeIndex && distFunc.distance(source.getMatchPoint(),
-//							pointList.get(i).getMatchPoint()) < candidateRange * backwardsFactor) {  // vehicle may stop on the road
-//						// and the sampling point may be located backward, it is not initially inside the algorithm
-//						distance[i] = 1.1 * distFunc.distance(source.getMatchPoint(), pointList.get(i).getMatchPoint());
-//						path.get(i).add(pointList.get(i).getRoadID());
-//						destPointCount--;
-				} else if (vertexID2DestIndexSet.containsKey(this.routingEdges[destEdgeIndex].getFromNodeIndex())) {
-					vertexID2DestIndexSet.get(this.routingEdges[destEdgeIndex].getFromNodeIndex()).add(i);
-				} else {
-					Set<Integer> indexSet = new HashSet<>();
-					indexSet.add(i);
-					vertexID2DestIndexSet.put(this.routingEdges[destEdgeIndex].getFromNodeIndex(), indexSet);
+			if (hierarchy != null) {
+				if (targetSpaces == null)
+					targetSpaces = getTargetSearchSpaces(destEdgeIndex, maxSearchDist - minSourceDistance);
+				double groupMinSourceDistance = Double.POSITIVE_INFINITY;
+				for (int s : groupSourceList)
+					groupMinSourceDistance = Math.min(groupMinSourceDistance, sourceDistance[s]);
+				hierarchy.forwardSearch(startNodeIndex, maxSearchDist - groupMinSourceDistance);
+				for (int i = 0; i < destCount; i++) {
+					if (destEdgeIndex[i] == -1)
+						continue;
+					List<Integer> edgePath = new ArrayList<>();
+					double currDistance = hierarchy.connect(targetSpaces[i], edgePath);
+					if (currDistance == Double.POSITIVE_INFINITY)
+						continue;
+					List<String> passingRoadIDs = null;
+					for (int s : groupSourceList) {
+						if (isFound[s][i] || currDistance >= maxSearchDist - sourceDistance[s])
+							continue;
+						isFound[s][i] = true;
+						if (passingRoadIDs == null)
+							passingRoadIDs = findPath(edgePath);
+						PointMatch dest = pointList.get(i);
+						distance[s][i] = currDistance + sourceDistance[s] + destStartOffset[i];
+						completePath(path.get(s).get(i), edgeRoadIDs[startEdgeIndex[s]], sourceDistance[s], passingRoadIDs, dest);
+					}
 				}
+				continue;
 			}
-		}
-		
-		// the rest of the destinations are on different mini edges, now set the end of the current mini edge as start vertex
-		if (destPointCount > 0) {
-			// A* start node
-			double hDist;
-			double distFromSource;
-			double searchDist;
-			int nextVertexIndex;
-			vertexDistFromSource.put(startNodeIndex, 0d);
-			parent.put(startNodeIndex, startNodeIndex);
-			MinPriorityQueue minHeap = new MinPriorityQueue();
+			
+			// the sources with a larger search range stay active longer, the search terminates when no source is active
+			List<Integer> activeSourceList = new ArrayList<>(groupSourceList);
+			activeSourceList.sort(Comparator.comparingDouble(s -> sourceDistance[s]));
+			int activeCount = activeSourceList.size();
+			workspace.reset(destCount);
+			for (int i = 0; i < destCount; i++) {
+				if (destEdgeIndex[i] != -1)
+					workspace.addDestination(this.routingEdges[destEdgeIndex[i]].getFromNodeIndex(), i);
+			}
+			
+			// the rest of the destinations are on different mini edges, now set the end of the current mini edge as start vertex
+			workspace.setStart(startNodeIndex);
 			int currIndex = startNodeIndex;
-
-//			LOG.info("start new shortest distance");
 			// visit every node
-			while (currIndex != -1 && vertexDistFromSource.get(currIndex) < (maxSearchDist - sourceDistance)) {
+			while (currIndex != -1) {
+				double currDistance = workspace.getDistance(currIndex);
+				while (activeCount > 0 && currDistance >= maxSearchDist - sourceDistance[activeSourceList.get(activeCount - 1)]) {
+					activeCount--;
+					pendingDestCount -= remainingDestCount[activeSourceList.get(activeCount)];
+				}
+				if (activeCount == 0)
+					break;
 				// loop around the edges of current node
-//				LOG.info(vertexDistFromSource.get(currIndex));
 				List<RoutingEdge> currentOutgoingRoutingEdges = vertices[currIndex].getOutGoingRoutingEdges();
-				for (RoutingEdge currEdge : currentOutgoingRoutingEdges) {
-					nextVertexIndex = currEdge.getToNodeIndex();
-					distFromSource = vertexDistFromSource.get(currIndex) + currEdge.getLength();
-					hDist = distFunc.distance(this.vertices[nextVertexIndex].getVertexPoint(), referencePoint);
-					searchDist = distFromSource + hDist;
-					if (!vertexVisited.contains(nextVertexIndex) && minHeap.decreaseKey(nextVertexIndex, searchDist)
-							&& (!vertexDistFromSource.containsKey(nextVertexIndex) || vertexDistFromSource.get(nextVertexIndex) > distFromSource)) {
-						vertexDistFromSource.put(nextVertexIndex, distFromSource);
-						parent.put(nextVertexIndex, currIndex);
-					}
+				for (int e = 0; e < currentOutgoingRoutingEdges.size(); e++) {
+					RoutingEdge currEdge = currentOutgoingRoutingEdges.get(e);
+					int nextVertexIndex = currEdge.getToNodeIndex();
+					if (workspace.isVisited(nextVertexIndex))
+						continue;
+					double distFromSource = currDistance + currEdge.getLength();
+					double searchDist = distFromSource;
+					if (referencePoint != null)
+						searchDist += distFunc.pointToPointDistance(vertexX[nextVertexIndex], vertexY[nextVertexIndex], referencePoint.x(),
+								referencePoint.y());
+					workspace.relax(nextVertexIndex, distFromSource, searchDist, currEdge.getIndex());
 				}
 				// all neighbours checked so node visited
-				vertexVisited.add(currIndex);
-				if (vertexID2DestIndexSet.containsKey(currIndex)) {
-					for (Integer i : vertexID2DestIndexSet.get(currIndex)) {
-						destPointCount--;
-						distance[i] = vertexDistFromSource.get(currIndex);
-						distance[i] += sourceDistance;
-						distance[i] += distFunc.distance(pointList.get(i).getMatchedSegment().p1(), pointList.get(i).getMatchPoint());
-						if (sourceDistance != 0)
-							path.get(i).add(startRoadID);
-						path.get(i).addAll(findPath(currIndex, parent));
-						if (path.get(i).size() > 1 && path.get(i).get(0).equals(path.get(i).get(1)))
-							path.get(i).remove(1);    // remove the duplicated start road ID
-						String lastRoadID = pointList.get(i).getRoadID().strip().split("\\|")[0];
-						if (!pointList.get(i).getMatchedSegment().p1().equals2D(pointList.get(i).getMatchPoint())) {
-							if (path.get(i).isEmpty() || !lastRoadID.equals(path.get(i).get(path.get(i).size() - 1)))
-								path.get(i).add(lastRoadID);
-						}
+				workspace.setVisited(currIndex);
+				List<String> currPath = null;
+				for (int i = workspace.firstDestination(currIndex); i != -1; i = workspace.nextDestination(i)) {
+					PointMatch dest = pointList.get(i);
+					for (int a = 0; a < activeCount; a++) {
+						int s = activeSourceList.get(a);
+						if (isFound[s][i])
+							continue;
+						isFound[s][i] = true;
+						remainingDestCount[s]--;
+						pendingDestCount--;
+						if (currPath == null)
+							currPath = findPath(currIndex, workspace);
+						distance[s][i] = currDistance + sourceDistance[s] + destStartOffset[i];
+						completePath(path.get(s).get(i), edgeRoadIDs[startEdgeIndex[s]], sourceDistance[s], currPath, dest);
 					}
 				}
-				if (destPointCount == 0) {
-					result = new ArrayList<>(resultOutput(distance, path));
-					return result;
-				}
+				if (pendingDestCount == 0)
+					break;
 				// next node must be with shortest distance
-//                minHeap.buildMinHeap();
-//                currNode = minHeap.extractMin().getIndex();
-				currIndex = minHeap.extractMin();
-//            if(index!=currNode){
-//                double value1 = vertices[index].getDistanceFromSource();
-//                double value2 = vertices[currNode].getDistanceFromSource();
-//                LOG.info("Inconsistent index");
-//            }
+				currIndex = workspace.extractMin();
 			}
-//            LOG.info((pointList.size() - destPointCount) + "/" + pointList.size() + "distances are found.");
-			result = new ArrayList<>(resultOutput(distance, path));
-			return result;
 		}
-		result = new ArrayList<>(resultOutput(distance, path));
+		
+		List<List<Pair<Double, List<String>>>> result = new ArrayList<>(sourceCount);
+		for (int s = 0; s < sourceCount; s++) {
+			result.add(resultOutput(distance[s], path.get(s)));
+		}
 		return result;
 	}
 	
-	private List<String> findPath(int index, HashMap<Integer, Integer> parent) {
+	
+	/**
+	 * Find the mini edge that the match point is located on.
+	 *
+	 * @param pointMatch The match point and its segment.
+	 * @return The mini edge index, or -1 if the segment is not part of the graph.
+	 */
+	private int getMiniEdgeIndex(PointMatch pointMatch) {
+		Integer edgeIndex = endPointLoc2EdgeIndex.get(getEndPointLocID(pointMatch));
+		return edgeIndex == null ? -1 : edgeIndex;
+	}
+	
+	private String getEndPointLocID(PointMatch pointMatch) {
+		return pointMatch.getMatchedSegment().x1() + "_" + pointMatch.getMatchedSegment().y1() + "," + pointMatch.getMatchedSegment().x2()
+				+ "_" + pointMatch.getMatchedSegment().y2() + "," + pointMatch.getRoadID().strip().split("\\|")[0];
+	}
+	
+	/**
+	 * Retrieve the roads passed by the shortest path from the start vertex to the given vertex.
+	 *
+	 * @param index     The end vertex of the path.
+	 * @param workspace The workspace which holds the search result.
+	 * @return The list of road IDs in travel order.
+	 */
+	private List<String> findPath(int index, RoutingWorkspace workspace) {
 		Set<String> roadIDSet = new LinkedHashSet<>();
-		while (parent.get(index) != index) {
-			if (parent.get(index) == -1)
-				LOG.error("Road path is broken!");
-			Pair<Integer, Integer> currentSegment = new Pair<>(parent.get(index), index);
-			int edgeID = endPointsIndex2EdgeIndex.get(currentSegment);
-			roadIDSet.add(edgeIndex2RoadID.get(edgeID));
-			index = parent.get(index);
+		int edgeIndex = workspace.getParentEdge(index);
+		while (edgeIndex != -1) {
+			roadIDSet.add(edgeRoadIDs[edgeIndex]);
+			edgeIndex = workspace.getParentEdge(routingEdges[edgeIndex].getFromNodeIndex());
 		}
 		List<String> roadIDList = new ArrayList<>(roadIDSet);
 		Collections.reverse(roadIDList);
 		return roadIDList;
 	}
 	
+	/**
+	 * Retrieve the roads passed by a path given as a sequence of mini edges, the result is the same as {@link #findPath(int,
+	 * RoutingWorkspace)} for the same path.
+	 *
+	 * @param edgePath The mini edge indices in travel order.
+	 * @return The list of road IDs in travel order.
+	 */
+	private List<String> findPath(List<Integer> edgePath) {
+		Set<String> roadIDSet = new LinkedHashSet<>();
+		for (int i = edgePath.size() - 1; i >= 0; i--)
+			roadIDSet.add(edgeRoadIDs[edgePath.get(i)]);
+		List<String> roadIDList = new ArrayList<>(roadIDSet);
+		Collections.reverse(roadIDList);
+		return roadIDList;
+	}
+	
+	/**
+	 * Complete the path to a destination which is reached through the graph, with the source road and the destination road added.
+	 *
+	 * @param destPath       The output path.
+	 * @param startRoadID    The road of the source point.
+	 * @param sourceDistance The distance from the source point to the end of its mini edge.
+	 * @param passingRoadIDs The roads passed between the source mini edge and the destination mini edge.
+	 * @param dest           The destination match point.
+	 */
+	private void completePath(List<String> destPath, String startRoadID, double sourceDistance, List<String> passingRoadIDs,
+							  PointMatch dest) {
+		if (sourceDistance != 0)
+			destPath.add(startRoadID);
+		destPath.addAll(passingRoadIDs);
+		if (destPath.size() > 1 && destPath.get(0).equals(destPath.get(1)))
+			destPath.remove(1);    // remove the duplicated start road ID
+		String lastRoadID = dest.getRoadID().strip().split("\\|")[0];
+		if (!dest.getMatchedSegment().p1().equals2D(dest.getMatchPoint())) {
+			if (destPath.isEmpty() || !lastRoadID.equals(destPath.get(destPath.size() - 1)))
+				destPath.add(lastRoadID);
+		}
+	}
+	
+	/**
+	 * Run the backward hierarchy search of every destination, the destinations on the same mini edge share one search.
+	 *
+	 * @param destEdgeIndex The mini edge of each destination, -1 if not found.
+	 * @param maxSearchDist The maximum search range.
+	 * @return The search space of each destination, null if the destination is not found.
+	 */
+	private ContractionHierarchy.TargetSearchSpace[] getTargetSearchSpaces(int[] destEdgeIndex, double maxSearchDist) {
+		ContractionHierarchy.TargetSearchSpace[] targetSpaces = new ContractionHierarchy.TargetSearchSpace[destEdgeIndex.length];
+		Map<Integer, ContractionHierarchy.TargetSearchSpace> vertex2SearchSpace = new HashMap<>();
+		for (int i = 0; i < destEdgeIndex.length; i++) {
+			if (destEdgeIndex[i] != -1)
+				targetSpaces[i] = vertex2SearchSpace.computeIfAbsent(this.routingEdges[destEdgeIndex[i]].getFromNodeIndex(),
+						v -> hierarchy.backwardSearch(v, maxSearchDist));
+		}
+		return targetSpaces;
+	}
+	
+	/**
+	 * The fingerprint of the current graph topology and edge lengths, used to check whether a stored hierarchy is still valid.
+	 */
+	private long getGraphFingerprint() {
+		long fingerprint = vertices.length;
+		for (RoutingVertex vertex : vertices) {
+			for (RoutingEdge edge : vertex.getOutGoingRoutingEdges()) {
+				fingerprint = fingerprint * 31 + edge.getIndex();
+				fingerprint = fingerprint * 31 + edge.getFromNodeIndex();
+				fingerprint = fingerprint * 31 + edge.getToNodeIndex();
+				fingerprint = fingerprint * 31 + Double.doubleToLongBits(edge.getLength());
+			}
+		}
+		return fingerprint;
+	}
+	
+	private RoutingWorkspace getWorkspace() {
+		return workspaces.get();
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.workspaces = ThreadLocal.withInitial(() -> new RoutingWorkspace(vertices.length));
+	}
+	
 	private List<Pair<Double, List<String>>> resultOutput(double[] distance, List<List<String>> path) {
 		List<Pair<Double, List<String>>> result = new ArrayList<>();
 		for (int i = 0; i < distance.length; i++) {
@@ -488,6 +665,10 @@ public class RoutingGraph implements Serializable {
 	public void addRoadByID(String roadID) {
 		if (!roadID2NewEdgeList.containsKey(roadID) || !roadID2NewNodeList.containsKey(roadID))
 			throw new IllegalArgumentException("ERROR! The road to be inserted has wrong ID: " + roadID);
+		if (hierarchy != null) {
+			LOG.warn("The routing graph is changed, contraction hierarchy is disabled.");
+			hierarchy = null;
+		}
 		
 		for (int i : roadID2NewNodeList.get(roadID))
 			newNodeSet.remove(i);
@@ -501,6 +682,10 @@ public class RoutingGraph implements Serializable {
 	public void removeRoadByID(String roadID) {
 		if (!roadID2NewEdgeList.containsKey(roadID) || !roadID2NewNodeList.containsKey(roadID))
 			throw new IllegalArgumentException("ERROR! The road to be removed has wrong ID.");
+		if (hierarchy != null) {
+			LOG.warn("The routing graph is changed, contraction hierarchy is disabled.");
+			hierarchy = null;
+		}
 		
 		newNodeSet.addAll(roadID2NewNodeList.get(roadID));
 		// add all the routingEdges to the vertices, each edge added to only from vertices
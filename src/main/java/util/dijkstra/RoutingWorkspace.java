@@ -0,0 +1,136 @@
+package util.dijkstra;
+
+import java.util.Arrays;
+
+/**
+ * Reusable search state for the shortest path calculation in {@link RoutingGraph}. Each thread owns one workspace, all vertex states
+ * are stored in primitive arrays indexed by vertex index. Instead of clearing the arrays before each search, a generation stamp is
+ * increased and any vertex whose stamp differs from the current generation is treated as untouched.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+class RoutingWorkspace {
+
+	private final double[] distFromSource;    // the distance from the vertex to the source node
+	private final int[] parentEdge;    // the index of the edge that reaches the vertex on the current shortest path, -1 for the start
+	private final int[] reachedStamp;    // = generation if the vertex has been reached in the current search
+	private final int[] visitedStamp;    // = generation if the vertex has been visited in the current search
+	private final int[] destHead;    // the first destination index attached to the vertex, valid only if destStamp = generation
+	private final int[] destStamp;
+	private int[] destNext;    // the next destination attached to the same vertex, indexed by destination index
+	private int generation = 0;
+	private final IndexedMinHeap minHeap;    // the unvisited vertices, key = distance + heuristic distance
+
+	RoutingWorkspace(int vertexCount) {
+		this.distFromSource = new double[vertexCount];
+		this.parentEdge = new int[vertexCount];
+		this.reachedStamp = new int[vertexCount];
+		this.visitedStamp = new int[vertexCount];
+		this.destHead = new int[vertexCount];
+		this.destStamp = new int[vertexCount];
+		this.destNext = new int[16];
+		this.minHeap = new IndexedMinHeap(vertexCount);
+	}
+
+	/**
+	 * Invalidate the states of the previous search and prepare for a new search.
+	 *
+	 * @param destCount The number of destinations in the coming search.
+	 */
+	void reset(int destCount) {
+		if (generation == Integer.MAX_VALUE) {    // stamp overflow, clear all stamps and restart
+			Arrays.fill(reachedStamp, 0);
+			Arrays.fill(visitedStamp, 0);
+			Arrays.fill(destStamp, 0);
+			generation = 0;
+		}
+		generation++;
+		minHeap.clear();
+		if (destNext.length < destCount)
+			destNext = new int[Math.max(destCount, destNext.length * 2)];
+	}
+
+	/**
+	 * Attach a destination to the given vertex.
+	 *
+	 * @param vertexIndex The vertex where the destination search stops.
+	 * @param destIndex   The index of the destination in the query list.
+	 */
+	void addDestination(int vertexIndex, int destIndex) {
+		destNext[destIndex] = destStamp[vertexIndex] == generation ? destHead[vertexIndex] : -1;
+		destHead[vertexIndex] = destIndex;
+		destStamp[vertexIndex] = generation;
+	}
+
+	/**
+	 * @return The first destination index attached to the vertex, or -1 if the vertex is not a destination.
+	 */
+	int firstDestination(int vertexIndex) {
+		return destStamp[vertexIndex] == generation ? destHead[vertexIndex] : -1;
+	}
+
+	/**
+	 * @return The next destination attached to the same vertex as the given destination, or -1 if none.
+	 */
+	int nextDestination(int destIndex) {
+		return destNext[destIndex];
+	}
+
+	/**
+	 * Set the start vertex of the search. The start vertex is not inserted into the heap.
+	 *
+	 * @param vertexIndex The start vertex.
+	 */
+	void setStart(int vertexIndex) {
+		reachedStamp[vertexIndex] = generation;
+		distFromSource[vertexIndex] = 0;
+		parentEdge[vertexIndex] = -1;
+	}
+
+	/**
+	 * Relax the vertex with a new tentative distance. The heap key is updated if the new key is smaller and the path is updated if
+	 * the new distance is shorter.
+	 *
+	 * @param vertexIndex The vertex to be relaxed.
+	 * @param distance    The tentative distance from the source.
+	 * @param key         The tentative heap key, which includes the heuristic distance.
+	 * @param edgeIndex   The edge which leads to the vertex.
+	 */
+	void relax(int vertexIndex, double distance, double key, int edgeIndex) {
+		if (reachedStamp[vertexIndex] != generation) {
+			reachedStamp[vertexIndex] = generation;
+			distFromSource[vertexIndex] = distance;
+			parentEdge[vertexIndex] = edgeIndex;
+			minHeap.decreaseKey(vertexIndex, key);
+		} else if (minHeap.contains(vertexIndex) && minHeap.decreaseKey(vertexIndex, key) && distance < distFromSource[vertexIndex]) {
+			distFromSource[vertexIndex] = distance;
+			parentEdge[vertexIndex] = edgeIndex;
+		}
+	}
+
+	void setVisited(int vertexIndex) {
+		visitedStamp[vertexIndex] = generation;
+	}
+
+	boolean isVisited(int vertexIndex) {
+		return visitedStamp[vertexIndex] == generation;
+	}
+
+	double getDistance(int vertexIndex) {
+		return distFromSource[vertexIndex];
+	}
+
+	int getParentEdge(int vertexIndex) {
+		return parentEdge[vertexIndex];
+	}
+
+	/**
+	 * Extract the unvisited vertex with the smallest key. Ties are broken by the smaller vertex index.
+	 *
+	 * @return The index of the next vertex, returns -1 if all reached vertices are visited.
+	 */
+	int extractMin() {
+		return minHeap.extractMin();
+	}
+}
@@ -13,7 +13,8 @@ import java.text.DecimalFormat;
  * @author uqdalves, Hellisk
  */
 public class EuclideanDistanceFunction implements DistanceFunction, VectorDistanceFunction {
-	private final DecimalFormat df = new DecimalFormat(".00000");
+	// DecimalFormat is not thread-safe, each thread keeps its own so that the distance function can be shared across threads
+	private static final ThreadLocal<DecimalFormat> DF = ThreadLocal.withInitial(() -> new DecimalFormat(".00000"));
 	
 	/**
 	 * Euclidean distance between two spatial points.
@@ -165,8 +166,8 @@ public class EuclideanDistanceFunction implements DistanceFunction, VectorDistan
 		double pointX = 0;
 		double pointY = 0;
 		try {
-			pointX = Double.parseDouble(df.format(ppx));
-			pointY = Double.parseDouble(df.format(ppy));
+			pointX = Double.parseDouble(DF.get().format(ppx));
+			pointY = Double.parseDouble(DF.get().format(ppy));
 		} catch (NumberFormatException e) {
 			e.printStackTrace();
 		}
@@ -14,7 +14,8 @@ import java.text.DecimalFormat;
  */
 public class GreatCircleDistanceFunction implements DistanceFunction {
 	
-	private final DecimalFormat df = new DecimalFormat(".00000");
+	// DecimalFormat is not thread-safe, each thread keeps its own so that the distance function can be shared across threads
+	private static final ThreadLocal<DecimalFormat> DF = ThreadLocal.withInitial(() -> new DecimalFormat(".00000"));
 	
 	@Override
 	public double distance(Point p1, Point p2) {
@@ -187,8 +188,8 @@ public class GreatCircleDistanceFunction implements DistanceFunction {
 		double pointX = 0;
 		double pointY = 0;
 		try {
-			pointX = Double.parseDouble(df.format(ppx));
-			pointY = Double.parseDouble(df.format(ppy));
+			pointX = Double.parseDouble(DF.get().format(ppx));
+			pointY = Double.parseDouble(DF.get().format(ppy));
 		} catch (NumberFormatException e) {
 			e.printStackTrace();
 		}
@@ -1,30 +1,325 @@
 package util.function;
 
 import util.object.spatialobject.Trajectory;
-import util.object.spatialobject.TrajectoryPoint;
 
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hausdorff distance between trajectories. The computation works on the primitive coordinate arrays of {@link IndexedTrajectory} and
+ * uses the early-break rule of Taha and Hanbury: the scan of a point stops once a neighbour closer than the current maximum is found, as
+ * the point can no longer raise the result. The result is identical to the exhaustive max-min loop.
+ * <p>
+ * The threshold-aware methods, {@link #distance(Trajectory, Trajectory, double)} and
+ * {@link #isWithinDistance(Trajectory, Trajectory, double)}, further skip the points and trajectories that are known to be beyond the
+ * threshold: a trajectory pair fails if their bounding boxes differ by more than the coordinate offset of the threshold, a point fails if
+ * it is that far from the bounding box of the other trajectory, and for trajectories of at least {@value #GRID_MIN_SIZE} points only the
+ * grid cells around a point are scanned.
+ */
 public class HausdorffDistanceFunction {
+
+	// The coordinate offset of the threshold is enlarged by this ratio to absorb the rounding of the distance function.
+	private static final double OFFSET_MARGIN = 1.01;
+	// The minimum number of points of a trajectory to build its point grid.
+	private static final int GRID_MIN_SIZE = 64;
+
 	private DistanceFunction distFunc;
-	
+
 	public HausdorffDistanceFunction(DistanceFunction distFunc) {
         this.distFunc = distFunc;
     }
 
+    /**
+     * Prepare a trajectory for repeated distance calculation, which is worthwhile if the trajectory is compared more than once.
+     *
+     * @param traj The trajectory.
+     * @return The coordinate arrays and the bounding box of the trajectory.
+     */
+    public IndexedTrajectory index(Trajectory traj) {
+        return new IndexedTrajectory(traj);
+    }
+
     public double distance(Trajectory traj1, Trajectory traj2) {
-        return Math.max(maxMinDistance(traj1, traj2), maxMinDistance(traj2, traj1));
+        return distance(index(traj1), index(traj2));
     }
 
-    // TODO: Optimize the performance if needed.
-    private double maxMinDistance(Trajectory traj1, Trajectory traj2) {
-        double maxDistance = 0;
-        for (TrajectoryPoint aTraj1 : traj1) {
-            double minDistance = Double.POSITIVE_INFINITY;
-            for (TrajectoryPoint aTraj2 : traj2) {
-                double currDistance = distFunc.distance(aTraj1, aTraj2);
-                minDistance = minDistance > currDistance ? currDistance : minDistance;
-            }
+    public double distance(IndexedTrajectory traj1, IndexedTrajectory traj2) {
+        double maxDistance = maxMinDistance(traj1, traj2, Double.POSITIVE_INFINITY, 0);
+        return maxMinDistance(traj2, traj1, Double.POSITIVE_INFINITY, maxDistance);
+    }
+
+    /**
+     * Calculate the Hausdorff distance between two trajectories if it is below the threshold, otherwise stop as soon as the distance is
+     * known to be no less than the threshold.
+     *
+     * @param traj1     The first trajectory.
+     * @param traj2     The second trajectory.
+     * @param threshold The distance threshold.
+     * @return The same value as {@link #distance(Trajectory, Trajectory)} if it is less than the threshold, otherwise
+     * {@link Double#POSITIVE_INFINITY}.
+     */
+    public double distance(Trajectory traj1, Trajectory traj2, double threshold) {
+        return distance(index(traj1), index(traj2), threshold);
+    }
+
+    public double distance(IndexedTrajectory traj1, IndexedTrajectory traj2, double threshold) {
+        if (!isBoundaryClose(traj1, traj2, threshold))
+            return Double.POSITIVE_INFINITY;
+        double maxDistance = maxMinDistance(traj1, traj2, threshold, 0);
+        if (maxDistance < threshold)
+            maxDistance = maxMinDistance(traj2, traj1, threshold, maxDistance);
+        return maxDistance < threshold ? maxDistance : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Check whether the Hausdorff distance between two trajectories is below the threshold, which gives the same result as
+     * <tt>distance(traj1, traj2) < threshold</tt> but stops as soon as the answer is known: the scan of a point ends once a point of the
+     * other trajectory is found within the threshold, and the check fails once a point has no such neighbour.
+     *
+     * @param traj1     The first trajectory.
+     * @param traj2     The second trajectory.
+     * @param threshold The distance threshold.
+     * @return True if the Hausdorff distance is strictly less than the threshold.
+     */
+    public boolean isWithinDistance(Trajectory traj1, Trajectory traj2, double threshold) {
+        return isWithinDistance(index(traj1), index(traj2), threshold);
+    }
+
+    public boolean isWithinDistance(IndexedTrajectory traj1, IndexedTrajectory traj2, double threshold) {
+        if (!isBoundaryClose(traj1, traj2, threshold))
+            return false;
+        // any neighbour closer than the threshold is enough for a point
+        double breakDistance = Math.nextDown(threshold);
+        return maxMinDistance(traj1, traj2, threshold, breakDistance) < threshold
+                && maxMinDistance(traj2, traj1, threshold, breakDistance) < threshold;
+    }
+
+    /**
+     * The directed Hausdorff distance from <tt>traj1</tt> to <tt>traj2</tt>, or the given lower bound if it is larger. The scan of a point
+     * stops once a neighbour within the current maximum is found, and the whole calculation stops once a point has no neighbour closer
+     * than the threshold.
+     *
+     * @param traj1      The source trajectory.
+     * @param traj2      The target trajectory.
+     * @param threshold  The distance threshold, infinity if all distances are required.
+     * @param lowerBound The initial maximum, the distance of a point is not needed if it is no more than this value.
+     * @return The directed distance if it is above the lower bound and below the threshold, the lower bound if the directed distance is
+     * lower, or a value no less than the threshold.
+     */
+    private double maxMinDistance(IndexedTrajectory traj1, IndexedTrajectory traj2, double threshold, double lowerBound) {
+        double maxDistance = lowerBound;
+        boolean isThresholdSet = threshold != Double.POSITIVE_INFINITY;
+        double offsetX = 0;
+        double offsetY = 0;
+        PointGrid grid = null;
+        if (isThresholdSet) {
+            offsetX = getOffsetX(threshold, Math.max(traj1.maxAbsY(), traj2.maxAbsY()));
+            offsetY = getOffsetY(threshold);
+            if (traj2.size() >= GRID_MIN_SIZE)
+                grid = traj2.getGrid(getOffsetX(threshold, traj2.maxAbsY()), offsetY);
+        }
+        for (int i = 0; i < traj1.size(); i++) {
+            double x = traj1.x[i];
+            double y = traj1.y[i];
+            double minDistance;
+            if (isThresholdSet) {
+                // the point is beyond the threshold from every point of the other trajectory
+                if (x < traj2.minX - offsetX || x > traj2.maxX + offsetX || y < traj2.minY - offsetY || y > traj2.maxY + offsetY)
+                    return Double.POSITIVE_INFINITY;
+                minDistance = grid != null ? grid.minDistance(distFunc, x, y, offsetX, offsetY, maxDistance)
+                        : minDistance(distFunc, x, y, traj2, 0, traj2.size(), null, maxDistance);
+                if (minDistance >= threshold)
+                    return Double.POSITIVE_INFINITY;
+            } else
+                minDistance = minDistance(distFunc, x, y, traj2, 0, traj2.size(), null, maxDistance);
             maxDistance = maxDistance < minDistance ? minDistance : maxDistance;
         }
         return maxDistance;
     }
+
+    /**
+     * The minimum distance from the point to the given points of the trajectory, or any value no more than <tt>breakDistance</tt> if
+     * such a neighbour exists.
+     *
+     * @param pointIndex The indices of the points to be checked, or null if the points from <tt>start</tt> to <tt>end</tt> are checked.
+     */
+    private static double minDistance(DistanceFunction distFunc, double x, double y, IndexedTrajectory traj, int start, int end,
+                                      int[] pointIndex, double breakDistance) {
+        double minDistance = Double.POSITIVE_INFINITY;
+        for (int i = start; i < end; i++) {
+            int index = pointIndex == null ? i : pointIndex[i];
+            double currDistance = distFunc.pointToPointDistance(x, y, traj.x[index], traj.y[index]);
+            if (currDistance <= breakDistance)
+                return currDistance;
+            minDistance = minDistance > currDistance ? currDistance : minDistance;
+        }
+        return minDistance;
+    }
+
+    /**
+     * @return True unless the bounding boxes show that the Hausdorff distance is no less than the threshold: in that case one corner of
+     * a box is farther than the threshold from the same corner of the other box.
+     */
+    private boolean isBoundaryClose(IndexedTrajectory traj1, IndexedTrajectory traj2, double threshold) {
+        if (threshold <= 0)
+            return false;
+        if (threshold == Double.POSITIVE_INFINITY || traj1.size() == 0 || traj2.size() == 0)
+            return true;
+        double offsetX = getOffsetX(threshold, Math.max(traj1.maxAbsY(), traj2.maxAbsY()));
+        double offsetY = getOffsetY(threshold);
+        return Math.abs(traj1.minX - traj2.minX) <= offsetX && Math.abs(traj1.maxX - traj2.maxX) <= offsetX
+                && Math.abs(traj1.minY - traj2.minY) <= offsetY && Math.abs(traj1.maxY - traj2.maxY) <= offsetY;
+    }
+
+    /**
+     * @return The longitude offset of the distance, which is the largest at the highest latitude.
+     */
+    private double getOffsetX(double distance, double maxAbsY) {
+        return distFunc.getCoordinateOffsetX(distance, maxAbsY) * OFFSET_MARGIN;
+    }
+
+    private double getOffsetY(double distance) {
+        return distFunc.getCoordinateOffsetY(distance, 0) * OFFSET_MARGIN;
+    }
+
+    /**
+     * The coordinates and the bounding box of a trajectory. A point grid is built on the first threshold-aware comparison with a long
+     * trajectory and reused afterwards as long as the threshold is the same. The object can be shared by multiple threads.
+     */
+    public static final class IndexedTrajectory {
+        private final double[] x;
+        private final double[] y;
+        private final double minX;
+        private final double minY;
+        private final double maxX;
+        private final double maxY;
+        private volatile PointGrid grid = null;
+
+        private IndexedTrajectory(Trajectory traj) {
+            this.x = traj.getXValues();
+            this.y = traj.getYValues();
+            double currMinX = Double.POSITIVE_INFINITY;
+            double currMinY = Double.POSITIVE_INFINITY;
+            double currMaxX = Double.NEGATIVE_INFINITY;
+            double currMaxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < x.length; i++) {
+                currMinX = Math.min(currMinX, x[i]);
+                currMinY = Math.min(currMinY, y[i]);
+                currMaxX = Math.max(currMaxX, x[i]);
+                currMaxY = Math.max(currMaxY, y[i]);
+            }
+            this.minX = currMinX;
+            this.minY = currMinY;
+            this.maxX = currMaxX;
+            this.maxY = currMaxY;
+        }
+
+        public int size() {
+            return x.length;
+        }
+
+        public double minX() {
+            return minX;
+        }
+
+        public double minY() {
+            return minY;
+        }
+
+        public double maxX() {
+            return maxX;
+        }
+
+        public double maxY() {
+            return maxY;
+        }
+
+        private double maxAbsY() {
+            return Math.max(Math.abs(minY), Math.abs(maxY));
+        }
+
+        private PointGrid getGrid(double cellWidth, double cellHeight) {
+            PointGrid currGrid = grid;
+            if (currGrid == null || currGrid.cellWidth != cellWidth || currGrid.cellHeight != cellHeight) {
+                currGrid = new PointGrid(this, cellWidth, cellHeight);
+                grid = currGrid;
+            }
+            return currGrid;
+        }
+    }
+
+    /**
+     * The points of a trajectory bucketed into cells, the point indices of each cell are stored consecutively in one array.
+     */
+    private static final class PointGrid {
+        private final IndexedTrajectory traj;
+        private final double cellWidth;
+        private final double cellHeight;
+        private final Map<Long, Integer> cell2Start = new HashMap<>();
+        private final int[] cellEnd;    // indexed by the start position of the cell
+        private final int[] pointIndex;
+
+        private PointGrid(IndexedTrajectory traj, double cellWidth, double cellHeight) {
+            this.traj = traj;
+            this.cellWidth = cellWidth;
+            this.cellHeight = cellHeight;
+            int size = traj.size();
+            long[] cellID = new long[size];
+            Map<Long, Integer> cell2Count = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                cellID[i] = getCellID(cellIndex(traj.x[i], cellWidth), cellIndex(traj.y[i], cellHeight));
+                cell2Count.merge(cellID[i], 1, Integer::sum);
+            }
+            this.cellEnd = new int[size];
+            int currStart = 0;
+            for (Map.Entry<Long, Integer> entry : cell2Count.entrySet()) {
+                cell2Start.put(entry.getKey(), currStart);
+                currStart += entry.getValue();
+            }
+            this.pointIndex = new int[size];
+            Map<Long, Integer> cell2Next = new HashMap<>(cell2Start);
+            for (int i = 0; i < size; i++) {
+                int position = cell2Next.get(cellID[i]);
+                pointIndex[position] = i;
+                cell2Next.put(cellID[i], position + 1);
+            }
+            for (Map.Entry<Long, Integer> entry : cell2Next.entrySet())
+                cellEnd[cell2Start.get(entry.getKey())] = entry.getValue();
+        }
+
+        /**
+         * The minimum distance from the point to the grid points within the coordinate offsets. Points outside the offsets are ignored,
+         * so the result is exact only if it is within the offsets.
+         */
+        private double minDistance(DistanceFunction distFunc, double x, double y, double offsetX, double offsetY, double breakDistance) {
+            long minCellX = cellIndex(x - offsetX, cellWidth);
+            long maxCellX = cellIndex(x + offsetX, cellWidth);
+            long minCellY = cellIndex(y - offsetY, cellHeight);
+            long maxCellY = cellIndex(y + offsetY, cellHeight);
+            if ((maxCellX - minCellX + 1) * (maxCellY - minCellY + 1) > traj.size())    // cheaper to scan all points
+                return HausdorffDistanceFunction.minDistance(distFunc, x, y, traj, 0, traj.size(), null, breakDistance);
+            double minDistance = Double.POSITIVE_INFINITY;
+            for (long cellX = minCellX; cellX <= maxCellX; cellX++) {
+                for (long cellY = minCellY; cellY <= maxCellY; cellY++) {
+                    Integer start = cell2Start.get(getCellID(cellX, cellY));
+                    if (start == null)
+                        continue;
+                    double currDistance = HausdorffDistanceFunction.minDistance(distFunc, x, y, traj, start, cellEnd[start],
+                            pointIndex, breakDistance);
+                    if (currDistance <= breakDistance)
+                        return currDistance;
+                    minDistance = minDistance > currDistance ? currDistance : minDistance;
+                }
+            }
+            return minDistance;
+        }
+
+        private long cellIndex(double value, double cellSize) {
+            return (long) Math.floor(value / cellSize);
+        }
+
+        private long getCellID(long cellX, long cellY) {
+            return cellX * 0x9E3779B97F4A7C15L + cellY;    // collisions only merge cells, which does not change the result
+        }
+    }
 }
@@ -0,0 +1,446 @@
+package util.index.grid;
+
+import org.apache.log4j.Logger;
+import util.function.DistanceFunction;
+import util.object.roadnetwork.RoadNetworkGraph;
+import util.object.roadnetwork.RoadNode;
+import util.object.roadnetwork.RoadWay;
+import util.object.spatialobject.Point;
+import util.object.spatialobject.Segment;
+import util.object.structure.PointMatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Candidate search index over the road segments of a map. The segment endpoints and road indices are stored in flat primitive arrays
+ * and bucketed into a uniform grid in compressed sparse row format. A radius query scans the cells around the query point, computes
+ * the point-to-segment distance inline and only creates {@link PointMatch} for the segments within the range.
+ * <p>
+ * A segment overlapping several cells is reported only in the first cell of its overlap with the query box, so no per-query state is
+ * kept. The index is immutable after construction and can be shared by concurrent readers.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+public class SegmentGridIndex {
+
+	private static final Logger LOG = Logger.getLogger(SegmentGridIndex.class);
+	private static final double DEFAULT_CELL_SIZE = 100;    // in meter
+	private static final int MAX_CELL_COUNT_PER_DIMENSION = 4096;
+	// The closest point used by the final range check is rounded by the distance function, so the inline distance is allowed to exceed
+	// the range by this margin (in meter) before a segment is dropped.
+	private static final double DISTANCE_TOLERANCE = 2;
+	private static final double UNIT_DISTANCE = 1000;    // the distance (in meter) used to measure the coordinate scale
+	private static final int WINDOW_CELL_MARGIN = 2;    // the extra cells a batch query window may cover beyond its first point
+
+	private final DistanceFunction distFunc;
+	private final String[] roadIDs;
+	private final double[] segmentX1;
+	private final double[] segmentY1;
+	private final double[] segmentX2;
+	private final double[] segmentY2;
+	private final int[] segmentRoadIndex;    // the index of the road way which the segment belongs to
+	private final int[] segmentPosition;    // the position of the segment in its road way
+
+	private final double minX;
+	private final double minY;
+	private final double cellWidth;
+	private final double cellHeight;
+	private final int cellCountX;
+	private final int cellCountY;
+	private final int[] cellStart;    // the segments of cell c are cellSegments[cellStart[c], cellStart[c + 1]), c = x * cellCountY + y
+	private final int[] cellSegments;
+
+	public SegmentGridIndex(RoadNetworkGraph roadMap) {
+		this(roadMap, DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * Build the index for all road ways in the map.
+	 *
+	 * @param roadMap  The road map to be indexed.
+	 * @param cellSize The side length of each grid cell in meter.
+	 */
+	public SegmentGridIndex(RoadNetworkGraph roadMap, double cellSize) {
+		if (cellSize <= 0)
+			throw new IllegalArgumentException("The grid cell size should be positive: " + cellSize);
+		long startTime = System.currentTimeMillis();
+		this.distFunc = roadMap.getDistanceFunction();
+		List<RoadWay> wayList = roadMap.getWays();
+		int segmentCount = 0;
+		for (RoadWay way : wayList)
+			segmentCount += Math.max(way.getNodes().size() - 1, 0);
+		this.roadIDs = new String[wayList.size()];
+		this.segmentX1 = new double[segmentCount];
+		this.segmentY1 = new double[segmentCount];
+		this.segmentX2 = new double[segmentCount];
+		this.segmentY2 = new double[segmentCount];
+		this.segmentRoadIndex = new int[segmentCount];
+		this.segmentPosition = new int[segmentCount];
+		double currMinX = Double.POSITIVE_INFINITY;
+		double currMinY = Double.POSITIVE_INFINITY;
+		double currMaxX = Double.NEGATIVE_INFINITY;
+		double currMaxY = Double.NEGATIVE_INFINITY;
+		int segmentIndex = 0;
+		for (int i = 0; i < wayList.size(); i++) {
+			RoadWay way = wayList.get(i);
+			roadIDs[i] = way.getID();
+			for (int j = 0; j < way.getNodes().size() - 1; j++) {
+				RoadNode startNode = way.getNode(j);
+				RoadNode endNode = way.getNode(j + 1);
+				segmentX1[segmentIndex] = startNode.lon();
+				segmentY1[segmentIndex] = startNode.lat();
+				segmentX2[segmentIndex] = endNode.lon();
+				segmentY2[segmentIndex] = endNode.lat();
+				segmentRoadIndex[segmentIndex] = i;
+				segmentPosition[segmentIndex] = j;
+				currMinX = Math.min(currMinX, Math.min(startNode.lon(), endNode.lon()));
+				currMinY = Math.min(currMinY, Math.min(startNode.lat(), endNode.lat()));
+				currMaxX = Math.max(currMaxX, Math.max(startNode.lon(), endNode.lon()));
+				currMaxY = Math.max(currMaxY, Math.max(startNode.lat(), endNode.lat()));
+				segmentIndex++;
+			}
+		}
+		if (segmentCount == 0) {
+			currMinX = currMinY = currMaxX = currMaxY = 0;
+		}
+		this.minX = currMinX;
+		this.minY = currMinY;
+		// the grid is at most MAX_CELL_COUNT_PER_DIMENSION cells wide in each dimension, the cells are enlarged otherwise
+		double width = Math.max(distFunc.getCoordinateOffsetX(cellSize, (currMinY + currMaxY) / 2),
+				(currMaxX - currMinX) / MAX_CELL_COUNT_PER_DIMENSION);
+		double height = Math.max(distFunc.getCoordinateOffsetY(cellSize, (currMinX + currMaxX) / 2),
+				(currMaxY - currMinY) / MAX_CELL_COUNT_PER_DIMENSION);
+		this.cellWidth = width;
+		this.cellHeight = height;
+		this.cellCountX = Math.min((int) ((currMaxX - currMinX) / width) + 1, MAX_CELL_COUNT_PER_DIMENSION);
+		this.cellCountY = Math.min((int) ((currMaxY - currMinY) / height) + 1, MAX_CELL_COUNT_PER_DIMENSION);
+
+		// bucket the segments into every cell their bounding box overlaps
+		this.cellStart = new int[cellCountX * cellCountY + 1];
+		for (int s = 0; s < segmentCount; s++) {
+			for (int x = getCellX(Math.min(segmentX1[s], segmentX2[s])); x <= getCellX(Math.max(segmentX1[s], segmentX2[s])); x++) {
+				for (int y = getCellY(Math.min(segmentY1[s], segmentY2[s])); y <= getCellY(Math.max(segmentY1[s], segmentY2[s])); y++)
+					cellStart[x * cellCountY + y + 1]++;
+			}
+		}
+		for (int c = 0; c < cellCountX * cellCountY; c++)
+			cellStart[c + 1] += cellStart[c];
+		this.cellSegments = new int[cellStart[cellCountX * cellCountY]];
+		int[] cursor = Arrays.copyOf(cellStart, cellCountX * cellCountY);
+		for (int s = 0; s < segmentCount; s++) {
+			for (int x = getCellX(Math.min(segmentX1[s], segmentX2[s])); x <= getCellX(Math.max(segmentX1[s], segmentX2[s])); x++) {
+				for (int y = getCellY(Math.min(segmentY1[s], segmentY2[s])); y <= getCellY(Math.max(segmentY1[s], segmentY2[s])); y++)
+					cellSegments[cursor[x * cellCountY + y]++] = s;
+			}
+		}
+		LOG.info("Segment grid index built with " + segmentCount + " road segments in " + cellCountX + "*" + cellCountY + " cells, " +
+				"time spent: " + (System.currentTimeMillis() - startTime) + "ms.");
+	}
+
+	/**
+	 * Search the road segments within the given range of the query point. The result is the same as
+	 * {@link util.index.rtree.RTreeIndexing#searchNeighbours(Point, double)}, the road ID of each candidate is in the form of
+	 * <tt>roadID|segmentIndex</tt>. Candidates are ordered by their appearance in the road map.
+	 *
+	 * @param from    Query point.
+	 * @param radiusM Searching radius around the query point in meter.
+	 * @return List of candidate matches.
+	 */
+	public List<PointMatch> searchNeighbours(Point from, double radiusM) {
+		return search(from, radiusM, true);
+	}
+
+	/**
+	 * Search the road segments within the given range of the query point. Same as {@link #searchNeighbours(Point, double)} except that
+	 * the road ID of each candidate is the ID of its road way.
+	 *
+	 * @param from    Query point.
+	 * @param radiusM Searching radius around the query point in meter.
+	 * @return List of candidate matches.
+	 */
+	public List<PointMatch> searchRoadNeighbours(Point from, double radiusM) {
+		return search(from, radiusM, false);
+	}
+
+	/**
+	 * Batch version of {@link #searchNeighbours(Point, double)} for a sequence of nearby points, such as the points of a trajectory.
+	 * The index is walked once along the corridor of the sequence, see {@link #batchSearchSegments(List, double)}. The result is the
+	 * same as querying the points one by one.
+	 *
+	 * @param pointList The query points, consecutive points are expected to be close to each other.
+	 * @param radiusM   Searching radius around each query point in meter.
+	 * @return The candidate list of each query point, in the same order as the query points.
+	 */
+	public List<List<PointMatch>> searchNeighbours(List<? extends Point> pointList, double radiusM) {
+		return batchSearch(pointList, radiusM, true);
+	}
+
+	/**
+	 * Batch version of {@link #searchRoadNeighbours(Point, double)}.
+	 *
+	 * @param pointList The query points, consecutive points are expected to be close to each other.
+	 * @param radiusM   Searching radius around each query point in meter.
+	 * @return The candidate list of each query point, in the same order as the query points.
+	 */
+	public List<List<PointMatch>> searchRoadNeighbours(List<? extends Point> pointList, double radiusM) {
+		return batchSearch(pointList, radiusM, false);
+	}
+
+	/**
+	 * Find at most <tt>candidateCount</tt> closest road segments within the range of each query point. Ties are broken by the order of
+	 * the segments in the road map. The road ID of each candidate is in the form of <tt>roadID|segmentIndex</tt>.
+	 *
+	 * @param pointList      The query points, consecutive points are expected to be close to each other.
+	 * @param candidateCount The maximum number of candidates of each point.
+	 * @param maxRadiusM     The maximum distance allowed for a candidate.
+	 * @return The candidate list of each query point sorted by distance, in the same order as the query points.
+	 */
+	public List<List<PointMatch>> searchKNeighbours(List<? extends Point> pointList, int candidateCount, double maxRadiusM) {
+		if (candidateCount <= 0)
+			throw new IllegalArgumentException("The number of candidates should be positive: " + candidateCount);
+		List<int[]> hitsList = batchSearchSegments(pointList, maxRadiusM);
+		List<List<PointMatch>> result = new ArrayList<>(pointList.size());
+		for (int i = 0; i < pointList.size(); i++) {
+			Point from = pointList.get(i);
+			List<PointMatch> neighbourList = new ArrayList<>();
+			List<Double> distanceList = new ArrayList<>();
+			for (int s : hitsList.get(i)) {
+				Point closestPoint = distFunc.getClosestPoint(from.x(), from.y(), segmentX1[s], segmentY1[s], segmentX2[s], segmentY2[s]);
+				double distance = distFunc.pointToPointDistance(from.x(), from.y(), closestPoint.x(), closestPoint.y());
+				if (distance >= maxRadiusM)
+					continue;
+				neighbourList.add(createPointMatch(closestPoint, s, true));
+				distanceList.add(distance);
+			}
+			// stable sort on distance, so that equally close candidates remain in map order
+			Integer[] order = new Integer[neighbourList.size()];
+			for (int j = 0; j < order.length; j++)
+				order[j] = j;
+			Arrays.sort(order, (a, b) -> Double.compare(distanceList.get(a), distanceList.get(b)));
+			List<PointMatch> kNeighbourList = new ArrayList<>(Math.min(candidateCount, order.length));
+			for (int j = 0; j < Math.min(candidateCount, order.length); j++)
+				kNeighbourList.add(neighbourList.get(order[j]));
+			result.add(kNeighbourList);
+		}
+		return result;
+	}
+
+	private List<PointMatch> search(Point from, double radiusM, boolean isSegmentIDIncluded) {
+		return materialise(from, searchSegments(from.x(), from.y(), radiusM), radiusM, isSegmentIDIncluded);
+	}
+
+	private List<List<PointMatch>> batchSearch(List<? extends Point> pointList, double radiusM, boolean isSegmentIDIncluded) {
+		List<int[]> hitsList = batchSearchSegments(pointList, radiusM);
+		List<List<PointMatch>> result = new ArrayList<>(pointList.size());
+		for (int i = 0; i < pointList.size(); i++)
+			result.add(materialise(pointList.get(i), hitsList.get(i), radiusM, isSegmentIDIncluded));
+		return result;
+	}
+
+	/**
+	 * Create candidates for the segments that pass the final range check on the rounded closest point, which is the point stored in
+	 * the candidate.
+	 */
+	private List<PointMatch> materialise(Point from, int[] hits, double radiusM, boolean isSegmentIDIncluded) {
+		double x = from.x();
+		double y = from.y();
+		List<PointMatch> neighbourList = new ArrayList<>(hits.length);
+		for (int s : hits) {
+			Point closestPoint = distFunc.getClosestPoint(x, y, segmentX1[s], segmentY1[s], segmentX2[s], segmentY2[s]);
+			if (distFunc.pointToPointDistance(x, y, closestPoint.x(), closestPoint.y()) >= radiusM)
+				continue;
+			neighbourList.add(createPointMatch(closestPoint, s, isSegmentIDIncluded));
+		}
+		return neighbourList;
+	}
+
+	private PointMatch createPointMatch(Point closestPoint, int s, boolean isSegmentIDIncluded) {
+		Segment segment = new Segment(segmentX1[s], segmentY1[s], segmentX2[s], segmentY2[s], distFunc);
+		String roadID = isSegmentIDIncluded ? roadIDs[segmentRoadIndex[s]] + "|" + segmentPosition[s] : roadIDs[segmentRoadIndex[s]];
+		return new PointMatch(closestPoint, segment, roadID);
+	}
+
+	/**
+	 * Find the segments which are possibly within the range of each point in a sequence. Consecutive points are grouped into windows as
+	 * long as the cells covered by the window are at most {@link #WINDOW_CELL_MARGIN} cells wider than those of its first point. The
+	 * segments of each window are collected only once, and every point of the window then checks the collected segments against its
+	 * own search box before computing the inline distance.
+	 *
+	 * @return The sorted segment indices of each point.
+	 */
+	private List<int[]> batchSearchSegments(List<? extends Point> pointList, double radiusM) {
+		List<int[]> hitsList = new ArrayList<>(pointList.size());
+		int[] windowSegments = new int[64];
+		double[] windowBounds = new double[256];    // minX, maxX, minY, maxY of each window segment
+		int start = 0;
+		while (start < pointList.size()) {
+			int[] windowCells = getQueryCellRange(pointList.get(start).x(), pointList.get(start).y(), radiusM);
+			if (windowCells == null) {    // the point is outside the map
+				hitsList.add(new int[0]);
+				start++;
+				continue;
+			}
+			int maxWidth = windowCells[1] - windowCells[0] + WINDOW_CELL_MARGIN;
+			int maxHeight = windowCells[3] - windowCells[2] + WINDOW_CELL_MARGIN;
+			int end = start + 1;
+			while (end < pointList.size()) {
+				int[] currCells = getQueryCellRange(pointList.get(end).x(), pointList.get(end).y(), radiusM);
+				if (currCells == null)
+					break;
+				int minCellX = Math.min(windowCells[0], currCells[0]);
+				int maxCellX = Math.max(windowCells[1], currCells[1]);
+				int minCellY = Math.min(windowCells[2], currCells[2]);
+				int maxCellY = Math.max(windowCells[3], currCells[3]);
+				if (maxCellX - minCellX > maxWidth || maxCellY - minCellY > maxHeight)
+					break;
+				windowCells[0] = minCellX;
+				windowCells[1] = maxCellX;
+				windowCells[2] = minCellY;
+				windowCells[3] = maxCellY;
+				end++;
+			}
+
+			// collect the segments of the window once
+			int windowSegmentCount = 0;
+			for (int cellX = windowCells[0]; cellX <= windowCells[1]; cellX++) {
+				for (int cellY = windowCells[2]; cellY <= windowCells[3]; cellY++) {
+					int cell = cellX * cellCountY + cellY;
+					for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+						int s = cellSegments[k];
+						double segmentMinX = Math.min(segmentX1[s], segmentX2[s]);
+						double segmentMinY = Math.min(segmentY1[s], segmentY2[s]);
+						if (Math.max(getCellX(segmentMinX), windowCells[0]) != cellX || Math.max(getCellY(segmentMinY), windowCells[2]) != cellY)
+							continue;
+						if (windowSegmentCount == windowSegments.length) {
+							windowSegments = Arrays.copyOf(windowSegments, windowSegmentCount * 2);
+							windowBounds = Arrays.copyOf(windowBounds, windowSegmentCount * 8);
+						}
+						windowSegments[windowSegmentCount] = s;
+						windowBounds[windowSegmentCount * 4] = segmentMinX;
+						windowBounds[windowSegmentCount * 4 + 1] = Math.max(segmentX1[s], segmentX2[s]);
+						windowBounds[windowSegmentCount * 4 + 2] = segmentMinY;
+						windowBounds[windowSegmentCount * 4 + 3] = Math.max(segmentY1[s], segmentY2[s]);
+						windowSegmentCount++;
+					}
+				}
+			}
+
+			// check the collected segments for each point in the window
+			for (int i = start; i < end; i++) {
+				double x = pointList.get(i).x();
+				double y = pointList.get(i).y();
+				double offsetX = distFunc.getCoordinateOffsetX(radiusM * 1.1, y);
+				double offsetY = distFunc.getCoordinateOffsetY(radiusM * 1.1, x);
+				double unitX = UNIT_DISTANCE / distFunc.getCoordinateOffsetX(UNIT_DISTANCE, y);
+				double unitY = UNIT_DISTANCE / distFunc.getCoordinateOffsetY(UNIT_DISTANCE, x);
+				int[] hits = new int[16];
+				int hitCount = 0;
+				for (int j = 0; j < windowSegmentCount; j++) {
+					if (windowBounds[j * 4] > x + offsetX || windowBounds[j * 4 + 1] < x - offsetX || windowBounds[j * 4 + 2] > y + offsetY
+							|| windowBounds[j * 4 + 3] < y - offsetY)
+						continue;
+					int s = windowSegments[j];
+					if (segmentX1[s] != segmentX2[s] && getSegmentDistance(x, y, s, unitX, unitY) >= radiusM + DISTANCE_TOLERANCE)
+						continue;
+					if (hitCount == hits.length)
+						hits = Arrays.copyOf(hits, hitCount * 2);
+					hits[hitCount++] = s;
+				}
+				hits = Arrays.copyOf(hits, hitCount);
+				Arrays.sort(hits);
+				hitsList.add(hits);
+			}
+			start = end;
+		}
+		return hitsList;
+	}
+
+	/**
+	 * @return The cell range {minCellX, maxCellX, minCellY, maxCellY} covered by the search box of the point, or null if the search
+	 * box does not overlap the map.
+	 */
+	private int[] getQueryCellRange(double x, double y, double radiusM) {
+		// enlarge the search box slightly as the coordinate offset is an approximation of the distance
+		double offsetX = distFunc.getCoordinateOffsetX(radiusM * 1.1, y);
+		double offsetY = distFunc.getCoordinateOffsetY(radiusM * 1.1, x);
+		if (segmentX1.length == 0 || x + offsetX < minX || y + offsetY < minY || x - offsetX > minX + cellWidth * cellCountX
+				|| y - offsetY > minY + cellHeight * cellCountY)
+			return null;
+		return new int[]{getCellX(x - offsetX), getCellX(x + offsetX), getCellY(y - offsetY), getCellY(y + offsetY)};
+	}
+
+	/**
+	 * Find the segments which are possibly within the range according to the inline distance.
+	 *
+	 * @return The sorted indices of the segments.
+	 */
+	private int[] searchSegments(double x, double y, double radiusM) {
+		int[] queryCells = getQueryCellRange(x, y, radiusM);
+		if (queryCells == null)
+			return new int[0];
+		int queryMinCellX = queryCells[0];
+		int queryMaxCellX = queryCells[1];
+		int queryMinCellY = queryCells[2];
+		int queryMaxCellY = queryCells[3];
+		double unitX = UNIT_DISTANCE / distFunc.getCoordinateOffsetX(UNIT_DISTANCE, y);
+		double unitY = UNIT_DISTANCE / distFunc.getCoordinateOffsetY(UNIT_DISTANCE, x);
+		int[] hits = new int[16];
+		int hitCount = 0;
+		for (int cellX = queryMinCellX; cellX <= queryMaxCellX; cellX++) {
+			for (int cellY = queryMinCellY; cellY <= queryMaxCellY; cellY++) {
+				int cell = cellX * cellCountY + cellY;
+				for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+					int s = cellSegments[k];
+					// report the segment only in the first cell it shares with the query box
+					if (Math.max(getCellX(Math.min(segmentX1[s], segmentX2[s])), queryMinCellX) != cellX
+							|| Math.max(getCellY(Math.min(segmentY1[s], segmentY2[s])), queryMinCellY) != cellY)
+						continue;
+					// vertical segments are left to the exact check as the distance function projects them differently
+					if (segmentX1[s] != segmentX2[s] && getSegmentDistance(x, y, s, unitX, unitY) >= radiusM + DISTANCE_TOLERANCE)
+						continue;
+					if (hitCount == hits.length)
+						hits = Arrays.copyOf(hits, hitCount * 2);
+					hits[hitCount++] = s;
+				}
+			}
+		}
+		hits = Arrays.copyOf(hits, hitCount);
+		Arrays.sort(hits);
+		return hits;
+	}
+
+	/**
+	 * The distance between the point and the closest point on the segment, computed without creating any object. The distance is
+	 * measured in a local equirectangular approximation, which is accurate enough for the range of a candidate search.
+	 *
+	 * @param unitX The length (in meter) of a unit coordinate offset along the x axis around the point.
+	 * @param unitY The length (in meter) of a unit coordinate offset along the y axis around the point.
+	 */
+	private double getSegmentDistance(double x, double y, int s, double unitX, double unitY) {
+		double xDelta = segmentX2[s] - segmentX1[s];
+		double yDelta = segmentY2[s] - segmentY1[s];
+		double ratio = ((x - segmentX1[s]) * xDelta + (y - segmentY1[s]) * yDelta) / (xDelta * xDelta + yDelta * yDelta);
+		ratio = Math.max(0, Math.min(1, ratio));
+		double distX = (segmentX1[s] + ratio * xDelta - x) * unitX;
+		double distY = (segmentY1[s] + ratio * yDelta - y) * unitY;
+		return Math.sqrt(distX * distX + distY * distY);
+	}
+
+	private int getCellX(double x) {
+		return Math.max(0, Math.min((int) ((x - minX) / cellWidth), cellCountX - 1));
+	}
+
+	private int getCellY(double y) {
+		return Math.max(0, Math.min((int) ((y - minY) / cellHeight), cellCountY - 1));
+	}
+
+	/**
+	 * @return The total number of road segments in the index.
+	 */
+	public int size() {
+		return segmentX1.length;
+	}
+}
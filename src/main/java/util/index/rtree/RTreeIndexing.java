@@ -1,12 +1,14 @@
 package util.index.rtree;
 
 import com.github.davidmoten.grumpy.core.Position;
+import com.github.davidmoten.rtree.Entries;
 import com.github.davidmoten.rtree.Entry;
 import com.github.davidmoten.rtree.RTree;
 import com.github.davidmoten.rtree.geometry.Geometries;
 import com.github.davidmoten.rtree.geometry.Line;
 import com.github.davidmoten.rtree.geometry.Rectangle;
 import com.github.davidmoten.rtree.geometry.internal.PointDouble;
+import org.apache.log4j.Logger;
 import rx.Observable;
 import util.function.DistanceFunction;
 import util.function.GreatCircleDistanceFunction;
@@ -22,47 +24,53 @@ import java.util.List;
 import java.util.PriorityQueue;
 
 /**
- * This class index road network using an R tree
+ * This class index road network using an R tree. Each instance owns the tree of one road map, which is bulk loaded once in the
+ * constructor and never modified afterwards, so the index can be shared by concurrent readers and indices of different maps can
+ * coexist in one JVM.
  */
 public class RTreeIndexing {
-	// load road nodes
 	
-	private static RTree<String, Line> rTree = RTree.star().create();
-	private static RoadNetworkGraph currMap = null;
+	private static final Logger LOG = Logger.getLogger(RTreeIndexing.class);
+	
+	private final RTree<String, Line> rTree;
+	private final DistanceFunction distFunc;
 	
 	public RTreeIndexing(RoadNetworkGraph currMap) {
-		RTreeIndexing.currMap = currMap;
-		buildTree();
+		this.distFunc = currMap.getDistanceFunction();
+		long startTime = System.currentTimeMillis();
+		this.rTree = buildTree(currMap);
+		LOG.info("R-tree index built with " + rTree.size() + " road segments, time spent: " + (System.currentTimeMillis() - startTime) +
+				"ms.");
 	}
 	
 	
 	/**
-	 * Add polyline to rtree. One polyline is allowed to contain multiple simple lines.
-	 * Each simple line is an geometric object in rtree with a unique id in the tree: polylineID + startNodeId + endNodeID
+	 * Bulk load all polylines of the map into an R-tree using Sort-Tile-Recursive packing. One polyline is allowed to contain multiple
+	 * simple lines. Each simple line is an geometric object in rtree with a unique id in the tree: polylineID + "|" + segment index
+	 *
+	 * @param currMap The road map to be indexed.
+	 * @return The packed R-tree.
 	 */
-	private void buildTree() {
+	private static RTree<String, Line> buildTree(RoadNetworkGraph currMap) {
+		List<Entry<String, Line>> entryList = new ArrayList<>();
 		for (RoadWay way : currMap.getWays()) {
 			String polylineID = way.getID();
 			for (int i = 0; i < way.getNodes().size() - 1; i++) {
 				RoadNode startNode = way.getNode(i);
-				double[] curCoord = new double[]{startNode.lon(), startNode.lat()};
-				
 				RoadNode endNode = way.getNode(i + 1);
-				double[] nextCoord = new double[]{endNode.lon(), endNode.lat()};
-
-//				String lineID = polylineID + "|" + startNode.getID() + "|" + endNode.getID();
 				String lineID = polylineID + "|" + i;
-				rTree = rTree.add(lineID, Geometries.line(curCoord[0], curCoord[1], nextCoord[0], nextCoord[1]));
+				entryList.add(Entries.entry(lineID, Geometries.line(startNode.lon(), startNode.lat(), endNode.lon(), endNode.lat())));
 			}
 		}
+		return RTree.star().create(entryList);
 	}
 	
 	/**
 	 * Get the road network rTree
 	 *
-	 * @return loaded rtree
+	 * @return loaded rtree, which is immutable
 	 */
-	public static RTree<String, Line> getTree() {
+	public RTree<String, Line> getTree() {
 		return rTree;
 	}
 	
@@ -89,7 +97,6 @@ public class RTreeIndexing {
 	private Observable<Entry<String, Line>> priSearch(double lon, double lat, final double distanceM) {
 		// First we need to calculate an enclosing lat long rectangle for this distance then we refine on the exact distance
 		final Position from = Position.create(lat, lon);
-		DistanceFunction distFunc = currMap.getDistanceFunction();
 		final Point searchPoint = new Point(lon, lat, distFunc);
 		Rectangle bounds = createBounds(from, distanceM * 1.5 / 1000);
 //		Rectangle bounds = createBounds(from, distanceM / 1000);
@@ -0,0 +1,290 @@
+package util.io;
+
+import org.apache.log4j.Logger;
+import util.dijkstra.RoutingGraph;
+import util.function.DistanceFunction;
+import util.object.roadnetwork.RoadNetworkGraph;
+import util.object.roadnetwork.RoadNetworkPrimitive;
+import util.object.roadnetwork.RoadNode;
+import util.object.roadnetwork.RoadWay;
+import util.settings.BaseProperty;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A road map stored in a versioned binary file, which is loaded much faster than the CSV map files as no text is parsed. The snapshot
+ * contains the road nodes, the road ways with their mini nodes and tags, and the length of every mini edge of the routing graph, so that
+ * {@link RoutingGraph} is built without recalculating the distances. The file consists of:
+ * <ul>
+ * <li>A header: magic number, format version, the class name of the distance function and the number of nodes, ways and mini
+ * edges.</li>
+ * <li>The road nodes: ID, longitude, latitude and tags.</li>
+ * <li>The road ways: ID, new road flag, tags, the indices of the two endpoints in the node list and the mini nodes in between.</li>
+ * <li>The mini edge lengths, ordered by road way and then by the node sequence within the road.</li>
+ * </ul>
+ * The coordinates are stored as they are in memory, not rounded to five decimal places as in the CSV files. The tag values are restored
+ * as strings, the same as reading the CSV files, except the way type which is restored as a <tt>BitSet</tt>.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+public class BinaryMapSnapshot {
+
+	private static final Logger LOG = Logger.getLogger(BinaryMapSnapshot.class);
+	private static final int MAGIC_NUMBER = 0x4D415053;    // "MAPS"
+	private static final int FORMAT_VERSION = 1;
+	private static final byte TAG_STRING = 0;
+	private static final byte TAG_BIT_SET = 1;
+
+	private final RoadNetworkGraph roadMap;
+	private final double[] edgeLengths;    // null if the lengths are not precomputed
+
+	private BinaryMapSnapshot(RoadNetworkGraph roadMap, double[] edgeLengths) {
+		this.roadMap = roadMap;
+		this.edgeLengths = edgeLengths;
+	}
+
+	public RoadNetworkGraph getRoadMap() {
+		return roadMap;
+	}
+
+	/**
+	 * Build the routing graph of the map. The mini edge lengths in the snapshot are used if available. Each call creates a new graph.
+	 *
+	 * @param prop The map-matching properties, used to configure the routing graph.
+	 * @return The routing graph without new roads.
+	 */
+	public RoutingGraph createRoutingGraph(BaseProperty prop) {
+		if (edgeLengths == null)
+			return new RoutingGraph(roadMap, false, prop);
+		return new RoutingGraph(roadMap, edgeLengths, prop);
+	}
+
+	/**
+	 * The snapshot file is stored next to the map files with the name prefix "snapshot_".
+	 *
+	 * @param mapFilePath The map file path without "vertices_"/"edges_" included, same as the one used in MapReader.
+	 * @return The snapshot file path.
+	 */
+	public static String getSnapshotPath(String mapFilePath) {
+		String folderPath = mapFilePath.substring(0, mapFilePath.lastIndexOf('/') + 1);
+		String fileName = mapFilePath.substring(mapFilePath.lastIndexOf('/') + 1);
+		if (fileName.contains("."))
+			fileName = fileName.substring(0, fileName.lastIndexOf('.'));
+		return folderPath + "snapshot_" + fileName + ".bin";
+	}
+
+	/**
+	 * Read the map from the snapshot file next to the CSV map files if the snapshot is newer than both CSV files. Otherwise, read the CSV
+	 * map files and write the snapshot for the next run.
+	 *
+	 * @param mapFilePath The map file path without "vertices_"/"edges_" included, same as the one used in MapReader.
+	 * @param isUpdatable True if this map will be used for map update.
+	 * @param df          The distance function of the map.
+	 * @return The map snapshot.
+	 */
+	public static BinaryMapSnapshot readOrCreate(String mapFilePath, boolean isUpdatable, DistanceFunction df) {
+		String snapshotPath = getSnapshotPath(mapFilePath);
+		String folderPath = mapFilePath.substring(0, mapFilePath.lastIndexOf('/') + 1);
+		String fileName = mapFilePath.substring(mapFilePath.lastIndexOf('/') + 1);
+		File snapshotFile = new File(snapshotPath);
+		long sourceModifiedTime = Math.max(new File(folderPath + "vertices_" + fileName).lastModified(),
+				new File(folderPath + "edges_" + fileName).lastModified());
+		if (snapshotFile.exists() && snapshotFile.lastModified() >= sourceModifiedTime) {
+			try {
+				return read(snapshotPath, isUpdatable, df);
+			} catch (IOException | IllegalArgumentException e) {
+				LOG.warn("Failed to read the map snapshot, read the map files instead: " + e.getMessage());
+			}
+		}
+		RoadNetworkGraph roadMap = MapReader.readMap(mapFilePath, isUpdatable, df);
+		try {
+			MapWriter.writeMapSnapshot(roadMap, snapshotPath);
+		} catch (IOException e) {
+			LOG.error("Failed to write the map snapshot: " + e.getMessage());
+		}
+		return new BinaryMapSnapshot(roadMap, null);
+	}
+
+	/**
+	 * Read a snapshot file. The file is memory-mapped and released once the map is built.
+	 *
+	 * @param filePath    The snapshot file path.
+	 * @param isUpdatable True if this map will be used for map update.
+	 * @param df          The distance function of the map, which should be the same as the one of the written map.
+	 * @return The map snapshot.
+	 * @throws IOException Failed file reading.
+	 */
+	public static BinaryMapSnapshot read(String filePath, boolean isUpdatable, DistanceFunction df) throws IOException {
+		long startTime = System.currentTimeMillis();
+		ByteBuffer content;
+		try (FileChannel channel = FileChannel.open(new File(filePath).toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("The map snapshot is larger than 2GB: " + filePath);
+			content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());    // valid after the channel is closed
+		}
+		if (content.limit() < 8 || content.getInt() != MAGIC_NUMBER)
+			throw new IllegalArgumentException("The input file is not a map snapshot: " + filePath);
+		int version = content.getInt();
+		if (version != FORMAT_VERSION)
+			throw new IllegalArgumentException("Unsupported map snapshot version " + version + ": " + filePath);
+		String distFuncName = readString(content);
+		if (!distFuncName.equals(df.getClass().getName()))
+			throw new IllegalArgumentException("The map snapshot is written with a different distance function: " + distFuncName);
+		int nodeCount = content.getInt();
+		int wayCount = content.getInt();
+		int edgeCount = content.getInt();
+
+		List<RoadNode> nodeList = new ArrayList<>(nodeCount);
+		for (int i = 0; i < nodeCount; i++)
+			nodeList.add(readNode(content, df));
+		List<RoadWay> wayList = new ArrayList<>(wayCount);
+		for (int i = 0; i < wayCount; i++) {
+			RoadWay currWay = new RoadWay(readString(content), df);
+			currWay.setNewRoad(content.get() != 0);
+			readTags(content, currWay);
+			RoadNode fromNode = nodeList.get(content.getInt());
+			RoadNode toNode = nodeList.get(content.getInt());
+			int miniNodeCount = content.getInt();
+			List<RoadNode> miniNodeList = new ArrayList<>(miniNodeCount + 2);
+			miniNodeList.add(fromNode);
+			for (int j = 0; j < miniNodeCount; j++)
+				miniNodeList.add(readNode(content, df));
+			miniNodeList.add(toNode);
+			currWay.setNodes(miniNodeList);
+			wayList.add(currWay);
+		}
+		double[] edgeLengths = new double[edgeCount];
+		content.asDoubleBuffer().get(edgeLengths);
+
+		RoadNetworkGraph roadGraph = new RoadNetworkGraph(isUpdatable, df);
+		roadGraph.setNodes(nodeList);
+		roadGraph.addWays(wayList);
+		roadGraph.updateBoundary();
+		LOG.info("Map snapshot " + filePath + " read done. total nodes:" + roadGraph.getNodes().size() + ", total road ways: "
+				+ roadGraph.getWays().size() + ", time spent: " + (System.currentTimeMillis() - startTime) / 1000.0 + "s.");
+		return new BinaryMapSnapshot(roadGraph, edgeLengths);
+	}
+
+	/**
+	 * Write the map to a snapshot file, the existing file is overwritten. The isolated nodes are not written, same as they are removed
+	 * when reading the CSV files.
+	 *
+	 * @param roadGraph The map to be written.
+	 * @param filePath  The snapshot file path.
+	 * @throws IOException Failed file writing.
+	 */
+	public static void write(RoadNetworkGraph roadGraph, String filePath) throws IOException {
+		File file = new File(filePath);
+		if (file.getParentFile() != null && !file.getParentFile().exists()) {
+			if (!file.getParentFile().mkdirs())
+				throw new IOException("Failed to create folder for map snapshot write: " + file.getParent());
+		}
+		Map<RoadNode, Integer> node2Index = new IdentityHashMap<>();
+		List<RoadNode> nodeList = new ArrayList<>();
+		for (RoadNode node : roadGraph.getNodes()) {
+			if (node.getDegree() != 0) {
+				node2Index.put(node, nodeList.size());
+				nodeList.add(node);
+			}
+		}
+		int edgeCount = 0;
+		for (RoadWay way : roadGraph.getWays()) {
+			if (!node2Index.containsKey(way.getFromNode()) || !node2Index.containsKey(way.getToNode()))
+				throw new IllegalArgumentException("The endpoints of road way " + way.getID() + " are not in the node list of the map.");
+			edgeCount += way.getNodes().size() - 1;
+		}
+		DistanceFunction distFunc = roadGraph.getDistanceFunction();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC_NUMBER);
+			out.writeInt(FORMAT_VERSION);
+			writeString(out, distFunc.getClass().getName());
+			out.writeInt(nodeList.size());
+			out.writeInt(roadGraph.getWays().size());
+			out.writeInt(edgeCount);
+			for (RoadNode node : nodeList)
+				writeNode(out, node);
+			for (RoadWay way : roadGraph.getWays()) {
+				writeString(out, way.getID());
+				out.writeByte(way.isNewRoad() ? 1 : 0);
+				writeTags(out, way.getTags());
+				out.writeInt(node2Index.get(way.getFromNode()));
+				out.writeInt(node2Index.get(way.getToNode()));
+				out.writeInt(way.getNodes().size() - 2);
+				for (int i = 1; i < way.getNodes().size() - 1; i++)
+					writeNode(out, way.getNode(i));
+			}
+			// the same lengths as calculated in the routing graph
+			for (RoadWay way : roadGraph.getWays()) {
+				for (int i = 0; i < way.getNodes().size() - 1; i++)
+					out.writeDouble(distFunc.distance(way.getNode(i).toPoint(), way.getNode(i + 1).toPoint()));
+			}
+		}
+		LOG.info("Map snapshot written to " + filePath + ", total nodes: " + nodeList.size() + ", total road ways: "
+				+ roadGraph.getWays().size());
+	}
+
+	private static void writeNode(DataOutputStream out, RoadNode node) throws IOException {
+		writeString(out, node.getID());
+		out.writeDouble(node.lon());
+		out.writeDouble(node.lat());
+		writeTags(out, node.getTags());
+	}
+
+	private static RoadNode readNode(ByteBuffer content, DistanceFunction df) {
+		RoadNode node = new RoadNode(readString(content), content.getDouble(), content.getDouble(), df);
+		readTags(content, node);
+		return node;
+	}
+
+	private static void writeTags(DataOutputStream out, Map<String, Object> tags) throws IOException {
+		out.writeInt(tags.size());
+		for (Map.Entry<String, Object> entry : tags.entrySet()) {
+			writeString(out, entry.getKey());
+			if (entry.getValue() instanceof BitSet) {
+				out.writeByte(TAG_BIT_SET);
+				long[] words = ((BitSet) entry.getValue()).toLongArray();
+				out.writeInt(words.length);
+				for (long word : words)
+					out.writeLong(word);
+			} else {
+				out.writeByte(TAG_STRING);
+				writeString(out, String.valueOf(entry.getValue()));
+			}
+		}
+	}
+
+	private static void readTags(ByteBuffer content, RoadNetworkPrimitive primitive) {
+		int tagCount = content.getInt();
+		for (int i = 0; i < tagCount; i++) {
+			String key = readString(content);
+			byte tagType = content.get();
+			if (tagType == TAG_BIT_SET) {
+				long[] words = new long[content.getInt()];
+				for (int j = 0; j < words.length; j++)
+					words[j] = content.getLong();
+				primitive.addTag(key, BitSet.valueOf(words));
+			} else if (tagType == TAG_STRING) {
+				primitive.addTag(key, readString(content));
+			} else
+				throw new IllegalArgumentException("Unknown tag type in the map snapshot: " + tagType);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer content) {
+		byte[] bytes = new byte[content.getInt()];
+		content.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
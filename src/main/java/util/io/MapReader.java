@@ -6,6 +6,7 @@ import util.object.roadnetwork.RoadNetworkGraph;
 import util.object.roadnetwork.RoadNode;
 import util.object.roadnetwork.RoadWay;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -52,6 +53,19 @@ public class MapReader {
 		return roadGraph;
 	}
 	
+	/**
+	 * Read the map from a binary snapshot written by {@link MapWriter#writeMapSnapshot(RoadNetworkGraph, String)}.
+	 *
+	 * @param filePath    The snapshot file path.
+	 * @param isUpdatable True if this map will be used for map updateGoh.
+	 * @param df          The distance function of the map.
+	 * @return The map snapshot, which also builds the routing graph of the map.
+	 * @throws IOException Failed file reading.
+	 */
+	public static BinaryMapSnapshot readMapSnapshot(String filePath, boolean isUpdatable, DistanceFunction df) throws IOException {
+		return BinaryMapSnapshot.read(filePath, isUpdatable, df);
+	}
+	
 	/**
 	 * Read the ground truth map and extract the sub graph enclosed by the bounding box.
 	 *
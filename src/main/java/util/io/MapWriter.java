@@ -48,6 +48,21 @@ public class MapWriter {
 				+ ", total number of mini nodes: " + (roadGraph.getAllTypeOfNodes().size() - roadGraph.getNodes().size()));
 	}
 	
+	/**
+	 * Write a road network to a binary snapshot, which is loaded much faster than the CSV files. See {@link BinaryMapSnapshot}.
+	 *
+	 * @param roadGraph The map to be written.
+	 * @param filePath  The snapshot file path, see {@link BinaryMapSnapshot#getSnapshotPath(String)}.
+	 * @throws IOException Failed map writing.
+	 */
+	public static void writeMapSnapshot(RoadNetworkGraph roadGraph, String filePath) throws IOException {
+		if (roadGraph.getNodes().size() == 0) {
+			LOG.warn("The map to be written is empty. Skip the writing step.");
+			return;
+		}
+		BinaryMapSnapshot.write(roadGraph, filePath);
+	}
+	
 	/**
 	 * Write a list of road way results.
 	 *
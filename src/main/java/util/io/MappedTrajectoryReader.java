@@ -0,0 +1,307 @@
+package util.io;
+
+import org.apache.log4j.Logger;
+import util.function.DistanceFunction;
+import util.object.spatialobject.Trajectory;
+import util.object.spatialobject.TrajectoryPoint;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Read a trajectory file in the format of {@link TrajectoryPoint#toString()}, one point per line. The coordinates and timestamps are
+ * parsed directly from the file bytes into primitive arrays without creating line strings, and no global lock is held, so multiple files
+ * can be read concurrently.
+ * <p>
+ * Files larger than {@link #MAPPING_THRESHOLD} are memory-mapped. Smaller files, which covers most trip files, are read into a
+ * per-thread buffer instead, as mapping hundreds of thousands of small files can exceed the limit of memory mappings of a process
+ * before the mappings are released by the garbage collector.
+ * <p>
+ * The result is identical to parsing each line by {@link TrajectoryPoint#parseTrajectoryPoint(String, DistanceFunction)}.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+final class MappedTrajectoryReader {
+
+	private static final Logger LOG = Logger.getLogger(MappedTrajectoryReader.class);
+	private static final int MAPPING_THRESHOLD = 1 << 16;    // in byte
+	private static final ThreadLocal<ByteBuffer> READ_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAPPING_THRESHOLD));
+	private static final double[] POWER_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14,
+			1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;    // integers below it are exactly represented by double
+
+	private MappedTrajectoryReader() {
+	}
+
+	/**
+	 * Read the trajectory file and down-sample it in the same way as {@link TrajectoryReader}.
+	 *
+	 * @param file           The trajectory file.
+	 * @param trajID         The trajectory ID.
+	 * @param downSampleRate Keep one point in every <tt>downSampleRate</tt> points, the first and the last points are always kept.
+	 * @param distFunc       The distance function.
+	 * @return The trajectory, empty if the file cannot be read.
+	 */
+	static Trajectory readTrajectory(File file, String trajID, int downSampleRate, DistanceFunction distFunc) {
+		try {
+			return toTrajectory(parsePoints(file), trajID, downSampleRate, distFunc);
+		} catch (IOException e) {
+			LOG.error("Error reading input file.", e);
+			return new Trajectory(trajID, distFunc);
+		}
+	}
+
+	/**
+	 * Parse all points in the trajectory file without down-sampling.
+	 *
+	 * @param file The trajectory file.
+	 * @return The parsed points.
+	 * @throws IOException The file cannot be read.
+	 */
+	static PointColumns parsePoints(File file) throws IOException {
+		ByteBuffer content;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			if (fileSize >= MAPPING_THRESHOLD) {
+				if (fileSize > Integer.MAX_VALUE)
+					throw new IllegalArgumentException("The trajectory file is too large: " + file.getAbsolutePath());
+				content = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);    // valid after the channel is closed
+			} else {
+				content = READ_BUFFER.get();
+				content.clear();
+				while (content.position() < fileSize && channel.read(content) >= 0) {
+					// read until the file is fully loaded
+				}
+				content.flip();
+			}
+		}
+		return parsePoints(content);
+	}
+
+	/**
+	 * Build the trajectory from the parsed points. Keep one point in every <tt>downSampleRate</tt> points as well as the first and the
+	 * last points, and skip the points whose timestamp equals the previous kept point.
+	 *
+	 * @param columns        The parsed points.
+	 * @param trajID         The trajectory ID.
+	 * @param downSampleRate The down-sample rate.
+	 * @param distFunc       The distance function.
+	 * @return The trajectory.
+	 */
+	static Trajectory toTrajectory(PointColumns columns, String trajID, int downSampleRate, DistanceFunction distFunc) {
+		Trajectory newTrajectory = new Trajectory(trajID, distFunc);
+		long prevTime = 0;
+		for (int i = 0; i < columns.size; i++) {
+			if (i == 0 || i % downSampleRate == 0 || i == columns.size - 1) {
+				if (prevTime == 0 || columns.time[i] != prevTime) {
+					newTrajectory.add(columns.toTrajectoryPoint(i, distFunc));
+					prevTime = columns.time[i];
+				}
+			}
+		}
+		return newTrajectory;
+	}
+
+	/**
+	 * Parse all lines in the buffer. A line contains either 2 (x y), 3 (x y time) or 5 (x y time speed heading) fields separated by
+	 * one space.
+	 *
+	 * @param content The file content, from position 0 to the limit.
+	 * @return The parsed points.
+	 */
+	static PointColumns parsePoints(ByteBuffer content) {
+		PointColumns columns = new PointColumns(Math.max(16, content.limit() / 40));    // a typical line has around 40 characters
+		int[] fieldStart = new int[6];
+		int[] fieldEnd = new int[6];
+		int limit = content.limit();
+		int lineStart = 0;
+		while (lineStart < limit) {
+			int lineEnd = lineStart;
+			while (lineEnd < limit && content.get(lineEnd) != '\n')
+				lineEnd++;
+			int contentEnd = lineEnd;
+			if (contentEnd > lineStart && content.get(contentEnd - 1) == '\r')
+				contentEnd--;
+			// split the fields, the trailing empty fields are ignored as in String.split()
+			int fieldCount = 0;
+			int currStart = lineStart;
+			for (int i = lineStart; i <= contentEnd && fieldCount < fieldStart.length; i++) {
+				if (i == contentEnd || content.get(i) == ' ') {
+					fieldStart[fieldCount] = currStart;
+					fieldEnd[fieldCount] = i;
+					fieldCount++;
+					currStart = i + 1;
+				}
+			}
+			while (fieldCount > 1 && fieldStart[fieldCount - 1] == fieldEnd[fieldCount - 1])
+				fieldCount--;
+			if (fieldCount != 2 && fieldCount != 3 && fieldCount != 5)
+				throw new IllegalArgumentException("The input text cannot be parsed to a trajectory point: " + asString(content, lineStart,
+						contentEnd));
+			double x = parseDouble(content, fieldStart[0], fieldEnd[0]);
+			double y = parseDouble(content, fieldStart[1], fieldEnd[1]);
+			if (fieldCount == 2) {
+				columns.add(x, y, Long.MIN_VALUE, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
+			} else if (fieldCount == 3) {
+				// the fractional part of the time is dropped
+				int timeEnd = fieldEnd[2];
+				for (int i = fieldEnd[2] - 1; i >= fieldStart[2]; i--) {
+					if (content.get(i) == '.') {
+						timeEnd = i;
+						break;
+					}
+				}
+				columns.add(x, y, parseLong(content, fieldStart[2], timeEnd), Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
+			} else {
+				columns.add(x, y, parseLong(content, fieldStart[2], fieldEnd[2]), parseDouble(content, fieldStart[3], fieldEnd[3]),
+						parseDouble(content, fieldStart[4], fieldEnd[4]));
+			}
+			lineStart = lineEnd + 1;
+		}
+		return columns;
+	}
+
+	/**
+	 * Parse a plain decimal number. The value is exact when the number has at most 15 significant digits and 22 fractional digits, as
+	 * both the integer mantissa and the power of ten are exact doubles and the division is correctly rounded. Other forms, such as
+	 * exponents or NaN, fall back to {@link Double#parseDouble(String)}.
+	 */
+	private static double parseDouble(ByteBuffer content, int start, int end) {
+		int i = start;
+		boolean isNegative = false;
+		if (i < end && (content.get(i) == '-' || content.get(i) == '+')) {
+			isNegative = content.get(i) == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int fractionDigits = 0;
+		boolean hasDigit = false;
+		boolean hasDot = false;
+		for (; i < end; i++) {
+			byte c = content.get(i);
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				if (mantissa >= MAX_EXACT_MANTISSA)
+					return Double.parseDouble(asString(content, start, end));
+				if (hasDot)
+					fractionDigits++;
+				hasDigit = true;
+			} else if (c == '.' && !hasDot) {
+				hasDot = true;
+			} else
+				return Double.parseDouble(asString(content, start, end));
+		}
+		if (!hasDigit || fractionDigits >= POWER_OF_TEN.length)
+			return Double.parseDouble(asString(content, start, end));
+		double value = mantissa / POWER_OF_TEN[fractionDigits];
+		return isNegative ? -value : value;
+	}
+
+	private static long parseLong(ByteBuffer content, int start, int end) {
+		int i = start;
+		boolean isNegative = false;
+		if (i < end && (content.get(i) == '-' || content.get(i) == '+')) {
+			isNegative = content.get(i) == '-';
+			i++;
+		}
+		if (i == end || end - i > 18)    // empty or may overflow
+			return Long.parseLong(asString(content, start, end));
+		long value = 0;
+		for (; i < end; i++) {
+			byte c = content.get(i);
+			if (c < '0' || c > '9')
+				return Long.parseLong(asString(content, start, end));
+			value = value * 10 + (c - '0');
+		}
+		return isNegative ? -value : value;
+	}
+
+	private static String asString(ByteBuffer content, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = start; i < end; i++)
+			bytes[i - start] = content.get(i);
+		return new String(bytes, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * The attributes of the parsed points, stored column by column. Also used as the column layout of {@link TrajectoryStoreWriter}.
+	 */
+	static final class PointColumns {
+		private double[] x;
+		private double[] y;
+		private long[] time;
+		private double[] speed;
+		private double[] heading;
+		private int size = 0;
+
+		PointColumns(int initialCapacity) {
+			x = new double[initialCapacity];
+			y = new double[initialCapacity];
+			time = new long[initialCapacity];
+			speed = new double[initialCapacity];
+			heading = new double[initialCapacity];
+		}
+
+		PointColumns(double[] x, double[] y, long[] time, double[] speed, double[] heading) {
+			if (y.length != x.length || time.length != x.length || speed.length != x.length || heading.length != x.length)
+				throw new IllegalArgumentException("The point columns have different lengths.");
+			this.x = x;
+			this.y = y;
+			this.time = time;
+			this.speed = speed;
+			this.heading = heading;
+			this.size = x.length;
+		}
+
+		void add(double pointX, double pointY, long pointTime, double pointSpeed, double pointHeading) {
+			if (size == x.length) {
+				int newCapacity = Math.max(16, size * 2);
+				x = Arrays.copyOf(x, newCapacity);
+				y = Arrays.copyOf(y, newCapacity);
+				time = Arrays.copyOf(time, newCapacity);
+				speed = Arrays.copyOf(speed, newCapacity);
+				heading = Arrays.copyOf(heading, newCapacity);
+			}
+			x[size] = pointX;
+			y[size] = pointY;
+			time[size] = pointTime;
+			speed[size] = pointSpeed;
+			heading[size] = pointHeading;
+			size++;
+		}
+
+		int size() {
+			return size;
+		}
+
+		double x(int index) {
+			return x[index];
+		}
+
+		double y(int index) {
+			return y[index];
+		}
+
+		long time(int index) {
+			return time[index];
+		}
+
+		double speed(int index) {
+			return speed[index];
+		}
+
+		double heading(int index) {
+			return heading[index];
+		}
+
+		TrajectoryPoint toTrajectoryPoint(int index, DistanceFunction distFunc) {
+			return new TrajectoryPoint(x[index], y[index], time[index], speed[index], heading[index], distFunc);
+		}
+	}
+}
@@ -83,6 +83,20 @@ public class MatchResultWriter {
 		LOG.debug("Matching results written, total file count: " + matchingList.size());
 	}
 	
+	/**
+	 * Write one matching result to the output folder, used when the results are written while the matching is in progress. The
+	 * output folder should be created and cleaned beforehand. The format follows the <tt>SimpleTrajectoryMatchResult.toString()</tt>
+	 * format.
+	 *
+	 * @param matchResult The matching result.
+	 * @param fileFolder  The output folder path.
+	 */
+	public static void writeMatchResult(SimpleTrajectoryMatchResult matchResult, String fileFolder) {
+		if (matchResult == null)
+			throw new NullPointerException("The input matching result is empty.");
+		IOService.writeFile(matchResult.toString(), fileFolder, "matchresult_" + matchResult.getTrajID() + ".txt");
+	}
+	
 	/**
 	 * Writer for writing point match results. The result format follows the <tt>PointMatch.toString()</tt> format.
 	 *
@@ -7,6 +7,7 @@ import util.object.spatialobject.Trajectory;
 import util.object.spatialobject.TrajectoryPoint;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -22,31 +23,56 @@ public class TrajectoryReader {
 	
 	private static final Logger LOG = Logger.getLogger(TrajectoryReader.class);
 	
+	/**
+	 * Read one trajectory file. The file is parsed by {@link MappedTrajectoryReader} without the global lock of {@link IOService}, so
+	 * the parallel trajectory streams read multiple files at the same time.
+	 *
+	 * @param filePath       The trajectory file path.
+	 * @param trajID         The trajectory ID.
+	 * @param downSampleRate Down-sample the input trajectory rate by.
+	 * @param distFunc       The distance function.
+	 * @return The trajectory.
+	 */
 	private static Trajectory readTrajectory(String filePath, String trajID, int downSampleRate, DistanceFunction distFunc) {
-		List<String> pointInfo = IOService.readFile(filePath);
-		Trajectory newTrajectory = new Trajectory(trajID, distFunc);
-		long prevTime = 0;
-		for (int i = 0; i < pointInfo.size(); i++) {
-			String s = pointInfo.get(i);
-			TrajectoryPoint newTrajectoryPoint = TrajectoryPoint.parseTrajectoryPoint(s, distFunc);
-
-//			// Only used for temp work, remove it when it's done
-//			Pair<Double, Double> gcjCoordinate = SpatialUtils.convertWGS2GCJ(newTrajectoryPoint.x(), newTrajectoryPoint.y());
-//			newTrajectoryPoint.setX(gcjCoordinate._1());
-//			newTrajectoryPoint.setY(gcjCoordinate._2());
-			
-			if (i == 0 || i % downSampleRate == 0 || i == pointInfo.size() - 1) {
-				if (prevTime == 0 || newTrajectoryPoint.time() != prevTime) {
-					newTrajectory.add(newTrajectoryPoint);
-					prevTime = newTrajectoryPoint.time();
-				}
-			}
+		return MappedTrajectoryReader.readTrajectory(new File(filePath), trajID, downSampleRate, distFunc);
+	}
+	
+	/**
+	 * Open the trajectory store if the input path is a store file written by {@link TrajectoryStoreWriter}.
+	 *
+	 * @param filePath The input path.
+	 * @param distFunc The distance function.
+	 * @return The store reader, or null if the path is a trajectory folder or a text trajectory file.
+	 */
+	private static TrajectoryStoreReader openTrajectoryStore(String filePath, DistanceFunction distFunc) {
+		if (!TrajectoryStoreReader.isTrajectoryStore(new File(filePath)))
+			return null;
+		try {
+			return new TrajectoryStoreReader(filePath, distFunc);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("The trajectory store cannot be read: " + filePath, e);
 		}
-		return newTrajectory;
 	}
 	
 	/**
-	 * Read all trajectories from a folder and store as a list.
+	 * Compress the trajectory by the Douglas-Peucker filter.
+	 *
+	 * @param trajectory The input trajectory.
+	 * @param dpFilter   The DP filter.
+	 * @return The compressed trajectory.
+	 */
+	private static Trajectory compressTrajectory(Trajectory trajectory, DouglasPeuckerFilter dpFilter) {
+		List<Integer> keyTrajPointList = dpFilter.dpSimplifier(trajectory);    // the indices of the compressed trajectory points
+		List<TrajectoryPoint> compressedTrajPointList = new ArrayList<>();
+		for (Integer index : keyTrajPointList) {
+			compressedTrajPointList.add(trajectory.get(index));
+		}
+		return new Trajectory(trajectory.getID(), compressedTrajPointList);
+	}
+	
+	/**
+	 * Read all trajectories from a folder and store as a list. The folder can also be a trajectory store written by
+	 * {@link TrajectoryStoreWriter}.
 	 *
 	 * @param fileFolder The folder path.
 	 * @param df         The distance function
@@ -57,7 +83,10 @@ public class TrajectoryReader {
 		List<Trajectory> trajectoryList = new ArrayList<>();
 		if (!inputFile.exists())
 			throw new IllegalArgumentException("The input trajectory path doesn't exist: " + fileFolder);
-		if (inputFile.isDirectory()) {
+		TrajectoryStoreReader storeReader = openTrajectoryStore(fileFolder, df);
+		if (storeReader != null) {
+			storeReader.readTrajectories(downSampleRate).forEach(trajectoryList::add);
+		} else if (inputFile.isDirectory()) {
 			File[] trajectoryFiles = inputFile.listFiles();
 			if (trajectoryFiles != null) {
 				for (File trajectoryFile : trajectoryFiles) {
@@ -85,7 +114,7 @@ public class TrajectoryReader {
 	
 	/**
 	 * Read and parse the input CSV trajectory files to a Stream
-	 * of trajectories.
+	 * of trajectories. The input path can also be a trajectory store written by {@link TrajectoryStoreWriter}.
 	 *
 	 * @param fileFolder     The trajectory input path.
 	 * @param downSampleRate Down-sample the input trajectory rate by
@@ -97,8 +126,12 @@ public class TrajectoryReader {
 		File inputFile = new File(fileFolder);
 		if (!inputFile.exists())
 			LOG.error("The input trajectory path doesn't exist: " + fileFolder);
-		Stream<File> dataFiles = IOService.getFiles(fileFolder);
 		DouglasPeuckerFilter dpFilter = new DouglasPeuckerFilter(tolerance, df);
+		TrajectoryStoreReader storeReader = openTrajectoryStore(fileFolder, df);
+		if (storeReader != null)
+			return storeReader.readTrajectories(downSampleRate).parallel().map(
+					trajectory -> tolerance != 0 ? compressTrajectory(trajectory, dpFilter) : trajectory);
+		Stream<File> dataFiles = IOService.getFiles(fileFolder);
 //		if (indexType != 0)
 //			indexPointList = Collections.synchronizedList(new ArrayList<>());
 		return dataFiles.parallel().map(
@@ -110,13 +143,7 @@ public class TrajectoryReader {
 					String trajID = file.getName().substring(file.getName().indexOf('_') + 1, file.getName().lastIndexOf('.'));
 					Trajectory newTrajectory = readTrajectory(file.getAbsolutePath(), trajID, downSampleRate, df);
 					if (tolerance != 0) {
-						List<Integer> keyTrajPointList = dpFilter.dpSimplifier(newTrajectory);    // the indices of the compressed
-						// trajectory points
-						List<TrajectoryPoint> compressedTrajPointList = new ArrayList<>();
-						for (Integer index : keyTrajPointList) {
-							compressedTrajPointList.add(newTrajectory.get(index));
-						}
-						newTrajectory = new Trajectory(trajID, compressedTrajPointList);
+						newTrajectory = compressTrajectory(newTrajectory, dpFilter);
 					}
 					// segmentation
 					newTrajectory.setID(trajID);
@@ -125,7 +152,8 @@ public class TrajectoryReader {
 	}
 	
 	/**
-	 * Read and parse the input CSV trajectory files to a Stream of trajectories given a list of trajectory ID.
+	 * Read and parse the input CSV trajectory files to a Stream of trajectories given a list of trajectory ID. If the input path is a
+	 * trajectory store, the trajectories are located through its index instead of scanning the folder.
 	 *
 	 * @param fileFolder The trajectory input path
 	 * @param trajIDSet  The set of trajectory ID to be read
@@ -135,6 +163,9 @@ public class TrajectoryReader {
 		File inputFile = new File(fileFolder);
 		if (!inputFile.exists())
 			LOG.error("ERROR! The input trajectory path doesn't exist: " + fileFolder);
+		TrajectoryStoreReader storeReader = openTrajectoryStore(fileFolder, df);
+		if (storeReader != null)
+			return storeReader.readTrajectories(trajIDSet, 1).parallel();
 		Stream<File> dataFiles = IOService.getFilesWithIDs(fileFolder, trajIDSet);
 		return dataFiles.parallel().map(
 				file -> {
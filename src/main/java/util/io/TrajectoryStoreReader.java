@@ -0,0 +1,254 @@
+package util.io;
+
+import util.function.DistanceFunction;
+import util.object.spatialobject.Trajectory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read trajectories from a binary trajectory store written by {@link TrajectoryStoreWriter}. The whole store is memory-mapped once and
+ * its index is loaded on open, so a trajectory is located by its ID without scanning and no file handle is kept afterwards. The reader
+ * is immutable after construction and can be used by multiple threads.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+public class TrajectoryStoreReader {
+
+	private final String filePath;
+	private final ByteBuffer content;
+	private final boolean isCompressed;
+	private final DistanceFunction distFunc;
+	private final List<String> trajIDList;    // in storage order
+	private final Map<String, Integer> id2IndexMap;
+	private final long[] blockOffset;
+	private final int[] blockLength;
+	private final int[] rawLength;
+	private final int[] pointCount;
+
+	/**
+	 * Open a trajectory store.
+	 *
+	 * @param filePath The store file path.
+	 * @param distFunc The distance function of the trajectories.
+	 * @throws IOException The file cannot be read.
+	 */
+	public TrajectoryStoreReader(String filePath, DistanceFunction distFunc) throws IOException {
+		this.filePath = filePath;
+		this.distFunc = distFunc;
+		try (FileChannel channel = FileChannel.open(new File(filePath).toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > TrajectoryStoreWriter.MAX_STORE_SIZE)
+				throw new IllegalArgumentException("The trajectory store is larger than 2GB, split the trajectories into multiple stores: "
+						+ filePath);
+			this.content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());    // valid after the channel is closed
+		}
+		if (content.limit() < TrajectoryStoreWriter.HEADER_SIZE || content.getInt(0) != TrajectoryStoreWriter.MAGIC_NUMBER)
+			throw new IllegalArgumentException("The input file is not a trajectory store: " + filePath);
+		if (content.getInt(4) != TrajectoryStoreWriter.FORMAT_VERSION)
+			throw new IllegalArgumentException("Unsupported trajectory store version " + content.getInt(4) + ": " + filePath);
+		this.isCompressed = (content.getInt(8) & TrajectoryStoreWriter.FLAG_COMPRESSED) != 0;
+		int trajCount = content.getInt(12);
+		long indexOffset = content.getLong(16);
+
+		ByteBuffer index = content.duplicate();
+		index.position((int) indexOffset);
+		this.trajIDList = new ArrayList<>(trajCount);
+		this.id2IndexMap = new HashMap<>(trajCount * 2);
+		this.blockOffset = new long[trajCount];
+		this.blockLength = new int[trajCount];
+		this.rawLength = new int[trajCount];
+		this.pointCount = new int[trajCount];
+		for (int i = 0; i < trajCount; i++) {
+			byte[] idBytes = new byte[index.getInt()];
+			index.get(idBytes);
+			String trajID = new String(idBytes, StandardCharsets.UTF_8);
+			trajIDList.add(trajID);
+			id2IndexMap.put(trajID, i);
+			blockOffset[i] = index.getLong();
+			blockLength[i] = index.getInt();
+			rawLength[i] = index.getInt();
+			pointCount[i] = index.getInt();
+		}
+	}
+
+	/**
+	 * @param file The file to check.
+	 * @return True if the file starts with the magic number of a trajectory store.
+	 */
+	public static boolean isTrajectoryStore(File file) {
+		if (!file.isFile() || file.length() < TrajectoryStoreWriter.HEADER_SIZE)
+			return false;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			while (magic.hasRemaining() && channel.read(magic) >= 0) {
+				// read the magic number
+			}
+			return magic.getInt(0) == TrajectoryStoreWriter.MAGIC_NUMBER;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	public int size() {
+		return trajIDList.size();
+	}
+
+	public boolean contains(String trajID) {
+		return id2IndexMap.containsKey(trajID);
+	}
+
+	/**
+	 * @return The IDs of all trajectories in storage order.
+	 */
+	public List<String> getTrajectoryIDList() {
+		return Collections.unmodifiableList(trajIDList);
+	}
+
+	/**
+	 * @param trajID The trajectory ID.
+	 * @return The number of points stored for the trajectory, before down-sampling.
+	 */
+	public int getPointCount(String trajID) {
+		return pointCount[getIndex(trajID)];
+	}
+
+	/**
+	 * Read one trajectory by its ID.
+	 *
+	 * @param trajID         The trajectory ID.
+	 * @param downSampleRate Down-sample the trajectory in the same way as {@link TrajectoryReader}, =1 if not required.
+	 * @return The trajectory.
+	 */
+	public Trajectory readTrajectory(String trajID, int downSampleRate) {
+		return readTrajectory(getIndex(trajID), downSampleRate);
+	}
+
+	/**
+	 * Scan all trajectories in storage order.
+	 *
+	 * @param downSampleRate Down-sample the trajectories in the same way as {@link TrajectoryReader}, =1 if not required.
+	 * @return The trajectory stream, which is sequential but can be turned into parallel.
+	 */
+	public Stream<Trajectory> readTrajectories(int downSampleRate) {
+		List<Integer> indexList = new ArrayList<>(trajIDList.size());
+		for (int i = 0; i < trajIDList.size(); i++)
+			indexList.add(i);
+		return indexList.stream().map(i -> readTrajectory(i, downSampleRate));
+	}
+
+	/**
+	 * Read the trajectories of the given IDs in storage order, the IDs that are not in the store are ignored.
+	 *
+	 * @param trajIDSet      The IDs of the trajectories to read.
+	 * @param downSampleRate Down-sample the trajectories in the same way as {@link TrajectoryReader}, =1 if not required.
+	 * @return The trajectory stream.
+	 */
+	public Stream<Trajectory> readTrajectories(Set<String> trajIDSet, int downSampleRate) {
+		List<Integer> indexList = new ArrayList<>(trajIDSet.size());
+		for (String trajID : trajIDSet) {
+			Integer index = id2IndexMap.get(trajID);
+			if (index != null)
+				indexList.add(index);
+		}
+		Collections.sort(indexList);
+		return indexList.stream().map(i -> readTrajectory(i, downSampleRate));
+	}
+
+	private int getIndex(String trajID) {
+		Integer index = id2IndexMap.get(trajID);
+		if (index == null)
+			throw new IllegalArgumentException("The trajectory " + trajID + " is not found in the store: " + filePath);
+		return index;
+	}
+
+	private Trajectory readTrajectory(int index, int downSampleRate) {
+		ByteBuffer block = content.duplicate();    // the position of the shared buffer is never changed
+		block.position((int) blockOffset[index]);
+		block.limit((int) blockOffset[index] + blockLength[index]);
+		block = block.slice();
+		if (isCompressed) {
+			byte[] compressedBlock = new byte[blockLength[index]];
+			block.get(compressedBlock);
+			byte[] rawBlock = new byte[rawLength[index]];
+			Inflater inflater = new Inflater();
+			try {
+				inflater.setInput(compressedBlock);
+				if (inflater.inflate(rawBlock) != rawBlock.length)
+					throw new IllegalStateException("The trajectory block is truncated: " + trajIDList.get(index));
+			} catch (DataFormatException e) {
+				throw new IllegalStateException("The trajectory block is corrupted: " + trajIDList.get(index), e);
+			} finally {
+				inflater.end();
+			}
+			block = ByteBuffer.wrap(rawBlock);
+		}
+		return MappedTrajectoryReader.toTrajectory(decodeBlock(block), trajIDList.get(index), downSampleRate, distFunc);
+	}
+
+	private static MappedTrajectoryReader.PointColumns decodeBlock(ByteBuffer block) {
+		int columnFlag = block.get();
+		int size = (int) readVarLong(block);
+		double[] x = new double[size];
+		double[] y = new double[size];
+		long[] time = new long[size];
+		if ((columnFlag & TrajectoryStoreWriter.COLUMN_FIXED_COORDINATE) != 0) {
+			long currX = 0;
+			for (int i = 0; i < size; i++) {
+				currX += unZigZag(readVarLong(block));
+				x[i] = currX / TrajectoryStoreWriter.COORDINATE_SCALE;
+			}
+			long currY = 0;
+			for (int i = 0; i < size; i++) {
+				currY += unZigZag(readVarLong(block));
+				y[i] = currY / TrajectoryStoreWriter.COORDINATE_SCALE;
+			}
+		} else {
+			for (int i = 0; i < size; i++)
+				x[i] = block.getDouble();
+			for (int i = 0; i < size; i++)
+				y[i] = block.getDouble();
+		}
+		long currTime = 0;
+		for (int i = 0; i < size; i++) {
+			currTime += unZigZag(readVarLong(block));
+			time[i] = currTime;
+		}
+		double[] speed = new double[size];
+		double[] heading = new double[size];
+		if ((columnFlag & TrajectoryStoreWriter.COLUMN_SPEED_HEADING) != 0) {
+			for (int i = 0; i < size; i++)
+				speed[i] = block.getDouble();
+			for (int i = 0; i < size; i++)
+				heading[i] = block.getDouble();
+		} else {
+			Arrays.fill(speed, Double.NEGATIVE_INFINITY);
+			Arrays.fill(heading, Double.NEGATIVE_INFINITY);
+		}
+		return new MappedTrajectoryReader.PointColumns(x, y, time, speed, heading);
+	}
+
+	private static long readVarLong(ByteBuffer block) {
+		long value = 0;
+		int shift = 0;
+		byte currByte;
+		do {
+			currByte = block.get();
+			value |= (long) (currByte & 0x7F) << shift;
+			shift += 7;
+		} while ((currByte & 0x80) != 0);
+		return value;
+	}
+
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -0,0 +1,272 @@
+package util.io;
+
+import org.apache.log4j.Logger;
+import util.object.spatialobject.Trajectory;
+import util.object.spatialobject.TrajectoryPoint;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Write trajectories into a single binary trajectory store, which is read by {@link TrajectoryStoreReader}. The store consists of:
+ * <ul>
+ * <li>A header of {@value #HEADER_SIZE} bytes: magic number, format version, flags, number of trajectories and the offset of the
+ * index.</li>
+ * <li>One block per trajectory, optionally compressed by Deflate. A block stores the point count followed by the x, y, time and,
+ * if available, speed and heading columns. Coordinates with at most five decimal places, the precision of
+ * {@link TrajectoryPoint#toString()}, are stored as delta-encoded fixed-point varints, otherwise as raw doubles. Timestamps are always
+ * delta-encoded.</li>
+ * <li>The index: ID, block offset, block length, uncompressed length and point count of each trajectory.</li>
+ * </ul>
+ * The points are stored as they are in the input without down-sampling or de-duplication, the readers apply the same down-sampling as
+ * {@link TrajectoryReader} on read.
+ *
+ * @author Hellisk
+ * @since 16/10/2026
+ */
+public class TrajectoryStoreWriter implements Closeable {
+
+	private static final Logger LOG = Logger.getLogger(TrajectoryStoreWriter.class);
+	static final int MAGIC_NUMBER = 0x4D545331;    // "MTS1"
+	static final int FORMAT_VERSION = 1;
+	static final int HEADER_SIZE = 24;
+	static final int FLAG_COMPRESSED = 1;
+	static final int COLUMN_FIXED_COORDINATE = 1;
+	static final int COLUMN_SPEED_HEADING = 2;
+	static final double COORDINATE_SCALE = 1e5;
+	static final long MAX_STORE_SIZE = Integer.MAX_VALUE;    // the reader maps the whole store into one buffer, which is int-indexed
+
+	private final String filePath;
+	private final RandomAccessFile outputFile;
+	private final boolean isCompressed;
+	private final Deflater deflater;
+	private final List<IndexEntry> indexEntryList = new ArrayList<>();
+	private final Set<String> trajIDSet = new HashSet<>();
+	private long currOffset = HEADER_SIZE;
+	private long indexSize = 0;    // the size of the index to be written on close
+	private boolean isClosed = false;
+
+	/**
+	 * Create a new store file, the existing file is overwritten.
+	 *
+	 * @param filePath     The output file path.
+	 * @param isCompressed Compress each trajectory block by Deflate.
+	 * @throws IOException The file cannot be created.
+	 */
+	public TrajectoryStoreWriter(String filePath, boolean isCompressed) throws IOException {
+		this.filePath = filePath;
+		File file = new File(filePath);
+		if (file.getParentFile() != null)
+			IOService.createFolder(file.getParent());
+		this.outputFile = new RandomAccessFile(file, "rw");
+		this.outputFile.setLength(0);
+		this.outputFile.seek(HEADER_SIZE);    // the header is written on close
+		this.isCompressed = isCompressed;
+		this.deflater = isCompressed ? new Deflater(Deflater.BEST_SPEED) : null;
+	}
+
+	/**
+	 * Append a trajectory to the store. The trajectory is rejected if the store, including its index, would exceed
+	 * {@value #MAX_STORE_SIZE} bytes, which is the largest store the reader can map.
+	 *
+	 * @param trajectory The trajectory, whose ID should be unique in the store.
+	 * @throws IOException Writing failure.
+	 */
+	public void write(Trajectory trajectory) throws IOException {
+		MappedTrajectoryReader.PointColumns columns = new MappedTrajectoryReader.PointColumns(trajectory.size());
+		for (TrajectoryPoint point : trajectory)
+			columns.add(point.x(), point.y(), point.time(), point.speed(), point.heading());
+		write(trajectory.getID(), columns);
+	}
+
+	void write(String trajID, MappedTrajectoryReader.PointColumns columns) throws IOException {
+		if (isClosed)
+			throw new IllegalStateException("The trajectory store is already closed: " + filePath);
+		if (trajID == null || trajIDSet.contains(trajID))
+			throw new IllegalArgumentException("The trajectory ID is null or already exists in the store: " + trajID);
+		byte[] rawBlock = encodeBlock(columns);
+		byte[] block = rawBlock;
+		int blockLength = rawBlock.length;
+		if (isCompressed) {
+			deflater.reset();
+			deflater.setInput(rawBlock);
+			deflater.finish();
+			block = new byte[rawBlock.length + 64];
+			blockLength = 0;
+			while (!deflater.finished()) {
+				if (blockLength == block.length)
+					block = Arrays.copyOf(block, block.length * 2);
+				blockLength += deflater.deflate(block, blockLength, block.length - blockLength);
+			}
+		}
+		// 20 bytes of offset, lengths and point count per index entry besides the ID
+		long entrySize = 20 + trajID.getBytes(StandardCharsets.UTF_8).length;
+		if (currOffset + blockLength + indexSize + entrySize > MAX_STORE_SIZE)
+			throw new IllegalArgumentException("The trajectory store would exceed " + MAX_STORE_SIZE + " bytes after adding trajectory "
+					+ trajID + ", split the trajectories into multiple stores: " + filePath);
+		outputFile.write(block, 0, blockLength);
+		trajIDSet.add(trajID);
+		indexSize += entrySize;
+		indexEntryList.add(new IndexEntry(trajID, currOffset, blockLength, rawBlock.length, columns.size()));
+		currOffset += blockLength;
+	}
+
+	/**
+	 * Write the index and the header, then close the file.
+	 *
+	 * @throws IOException Writing failure.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (isClosed)
+			return;
+		isClosed = true;
+		try {
+			ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+			DataOutputStream indexOutput = new DataOutputStream(indexBytes);
+			for (IndexEntry entry : indexEntryList) {
+				byte[] idBytes = entry.trajID.getBytes(StandardCharsets.UTF_8);
+				indexOutput.writeInt(idBytes.length);
+				indexOutput.write(idBytes);
+				indexOutput.writeLong(entry.offset);
+				indexOutput.writeInt(entry.length);
+				indexOutput.writeInt(entry.rawLength);
+				indexOutput.writeInt(entry.pointCount);
+			}
+			indexOutput.flush();
+			outputFile.write(indexBytes.toByteArray());
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC_NUMBER).putInt(FORMAT_VERSION).putInt(isCompressed ? FLAG_COMPRESSED : 0).putInt(indexEntryList.size())
+					.putLong(currOffset);
+			outputFile.seek(0);
+			outputFile.write(header.array());
+		} finally {
+			outputFile.close();
+			if (deflater != null)
+				deflater.end();
+		}
+		LOG.debug("Trajectory store written, total trajectories: " + indexEntryList.size() + ", file size: " + currOffset + " bytes.");
+	}
+
+	/**
+	 * Convert a folder of <tt>trip_ID.txt</tt> files, the layout read by {@link TrajectoryReader}, into a trajectory store.
+	 *
+	 * @param inputFolder  The trajectory folder.
+	 * @param outputFile   The output store file.
+	 * @param isCompressed Compress each trajectory block by Deflate.
+	 * @return The number of trajectories converted.
+	 * @throws IOException Reading or writing failure.
+	 */
+	public static int convertTextFolder(String inputFolder, String outputFile, boolean isCompressed) throws IOException {
+		File[] trajectoryFiles = new File(inputFolder).listFiles((dir, name) -> name.matches("trip[_][0-9]*[.]txt"));
+		if (trajectoryFiles == null)
+			throw new IllegalArgumentException("The input trajectory folder doesn't exist: " + inputFolder);
+		Arrays.sort(trajectoryFiles);
+		try (TrajectoryStoreWriter writer = new TrajectoryStoreWriter(outputFile, isCompressed)) {
+			for (File trajectoryFile : trajectoryFiles) {
+				String trajID = trajectoryFile.getName().substring(trajectoryFile.getName().indexOf('_') + 1,
+						trajectoryFile.getName().lastIndexOf('.'));
+				writer.write(trajID, MappedTrajectoryReader.parsePoints(trajectoryFile));
+			}
+		}
+		LOG.info("Trajectory folder " + inputFolder + " is converted to " + outputFile + ", total trajectories: " + trajectoryFiles.length);
+		return trajectoryFiles.length;
+	}
+
+	private static byte[] encodeBlock(MappedTrajectoryReader.PointColumns columns) {
+		int size = columns.size();
+		boolean isFixedCoordinate = true;
+		boolean hasSpeedHeading = false;
+		for (int i = 0; i < size; i++) {
+			if (isFixedCoordinate && (!isFixedPoint(columns.x(i)) || !isFixedPoint(columns.y(i))))
+				isFixedCoordinate = false;
+			if (columns.speed(i) != Double.NEGATIVE_INFINITY || columns.heading(i) != Double.NEGATIVE_INFINITY)
+				hasSpeedHeading = true;
+		}
+		ByteArrayOutputStream blockBytes = new ByteArrayOutputStream(size * 8 + 8);
+		blockBytes.write((isFixedCoordinate ? COLUMN_FIXED_COORDINATE : 0) | (hasSpeedHeading ? COLUMN_SPEED_HEADING : 0));
+		writeVarLong(blockBytes, size);
+		if (isFixedCoordinate) {
+			long prevX = 0;
+			for (int i = 0; i < size; i++) {
+				long currX = Math.round(columns.x(i) * COORDINATE_SCALE);
+				writeVarLong(blockBytes, zigZag(currX - prevX));
+				prevX = currX;
+			}
+			long prevY = 0;
+			for (int i = 0; i < size; i++) {
+				long currY = Math.round(columns.y(i) * COORDINATE_SCALE);
+				writeVarLong(blockBytes, zigZag(currY - prevY));
+				prevY = currY;
+			}
+		} else {
+			for (int i = 0; i < size; i++)
+				writeDouble(blockBytes, columns.x(i));
+			for (int i = 0; i < size; i++)
+				writeDouble(blockBytes, columns.y(i));
+		}
+		long prevTime = 0;
+		for (int i = 0; i < size; i++) {
+			writeVarLong(blockBytes, zigZag(columns.time(i) - prevTime));    // the difference may overflow but is restored on read
+			prevTime = columns.time(i);
+		}
+		if (hasSpeedHeading) {
+			for (int i = 0; i < size; i++)
+				writeDouble(blockBytes, columns.speed(i));
+			for (int i = 0; i < size; i++)
+				writeDouble(blockBytes, columns.heading(i));
+		}
+		return blockBytes.toByteArray();
+	}
+
+	/**
+	 * @return True if the value is restored exactly from its fixed-point form.
+	 */
+	private static boolean isFixedPoint(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) > 1e9)
+			return false;
+		long fixedValue = Math.round(value * COORDINATE_SCALE);
+		return Double.doubleToRawLongBits(fixedValue / COORDINATE_SCALE) == Double.doubleToRawLongBits(value);    // also rejects -0.0
+	}
+
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static void writeVarLong(ByteArrayOutputStream output, long value) {
+		while ((value & ~0x7FL) != 0) {
+			output.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		output.write((int) value);
+	}
+
+	private static void writeDouble(ByteArrayOutputStream output, double value) {
+		long bits = Double.doubleToRawLongBits(value);
+		for (int shift = 56; shift >= 0; shift -= 8)
+			output.write((int) (bits >>> shift));
+	}
+
+	private static class IndexEntry {
+		private final String trajID;
+		private final long offset;
+		private final int length;
+		private final int rawLength;
+		private final int pointCount;
+
+		private IndexEntry(String trajID, long offset, int length, int rawLength, int pointCount) {
+			this.trajID = trajID;
+			this.offset = offset;
+			this.length = length;
+			this.rawLength = rawLength;
+			this.pointCount = pointCount;
+		}
+	}
+}
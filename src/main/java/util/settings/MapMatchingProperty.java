@@ -149,6 +149,7 @@ public class MapMatchingProperty extends BaseProperty {
         super.setProperty("path.InputMapFolder", rootPath + "input/map/");
         super.setProperty("path.GroundTruthMapFolder", rootPath + "groundTruth/map/");
         super.setProperty("path.OutputMatchResultFolder", rootPath + "output/matchResult/" + (dataSpec.equals("") ? "" : dataSpec + "/"));
+        super.setProperty("path.OutputMatchingMetricsFolder", rootPath + "output/metrics/" + (dataSpec.equals("") ? "" : dataSpec + "/"));
         super.setProperty("path.GroundTruthRouteMatchResultFolder",
                 rootPath + "groundTruth/matchResult/route/" + (dataSpec.equals("") ? "" : dataSpec + "/"));
         super.setProperty("path.GroundTruthPointMatchResultFolder",